@@ -166,6 +166,11 @@ void Simulation::Context::makeCurrent()
     }
 }
 
+bool Simulation::Context::isCurrent() const
+{
+    return valid && eglGetCurrentContext() == context;
+}
+
 EGLDisplay Simulation::Context::getDisplay()
 {
     LOGI("getDisplay");
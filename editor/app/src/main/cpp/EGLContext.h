@@ -51,6 +51,9 @@ public:
 
     void makeCurrent();
 
+    // True if the context is current on the calling thread
+    bool isCurrent() const;
+
     EGLDisplay getDisplay();
 
     bool isContextValid(EGLContextError* rete = nullptr) const;
@@ -326,6 +326,28 @@ void Simulation::EGLMap::bindFBO() const
 
     glBindFramebuffer(GL_FRAMEBUFFER, fbo);
     CHECK_GL_ERROR;
+
+    // The viewport is context state, a mapping created after this one may have changed it
+    glViewport(0, 0, buffer->getHardwareBufferWidth(), buffer->getHardwareBufferHeight());
+}
+
+Simulation::CachedEGLMap::CachedEGLMap(AHardwareBuffer* target, EGLDisplay display, GLenum texSource)
+    : target(target)
+    , buffer(target)
+{
+    LOGI("CachedEGLMap CTOR");
+
+    AHardwareBuffer_acquire(target);
+    map = std::unique_ptr<EGLMap>(new EGLMap(buffer, display, texSource));
+}
+
+Simulation::CachedEGLMap::~CachedEGLMap()
+{
+    LOGI("CachedEGLMap DTOR");
+
+    // GL objects go before the buffer reference they were created from
+    map.reset();
+    AHardwareBuffer_release(target);
 }
 
 
@@ -87,6 +87,23 @@ private:
     bool        valid = true;
     EGLMapError error = EGLMapError::NO_ERROR;
 };
+
+// EGLMap that holds a reference on its AHardwareBuffer, so the EGLImage, textures and FBO can be
+// kept for as long as the buffer is recycled by its ImageReader or ImageWriter.
+class CachedEGLMap
+{
+public:
+    CachedEGLMap(AHardwareBuffer* target, EGLDisplay display, GLenum texSource = GL_TEXTURE_2D);
+
+    ~CachedEGLMap();
+
+    EGLMap& getMap() { return *map; }
+
+private:
+    AHardwareBuffer*        target;
+    HardwareBuffer          buffer;
+    std::unique_ptr<EGLMap> map;
+};
 } // namespace Simulation
 
 #endif //FILTERSIMULATION_EGLMAP_H
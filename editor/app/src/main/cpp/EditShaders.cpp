@@ -285,9 +285,22 @@ void EditShaders::Init(
     mEditShadersUniformBlock.SetDefaults();
     if (mTestStrobe)
         mEditShadersUniformBlock.setTestEffectParams(); // For test only
+    mUniformBlockVersion++;
+    // Defaults replaced the Java parameters, apply the next snapshot whatever its version
+    mAppliedParameterVersion = -1;
 
-    // Set up the compositing image
-    mTextTextureData.resize(mOutputWidth * mOutputHeight * 4);
+    // Set up the compositing image, a single transparent pixel until an overlay is set
+    if (mTestStrobe)
+    {
+        mCompositingWidth = mOutputWidth;
+        mCompositingHeight = mOutputHeight;
+    }
+    else
+    {
+        mCompositingWidth = 1;
+        mCompositingHeight = 1;
+    }
+    mTextTextureData.resize(mCompositingWidth * mCompositingHeight * 4);
     memset(mTextTextureData.data(), 0, mTextTextureData.size());
     if (mTestStrobe)
         CompositingImageTestPattern();
@@ -316,11 +329,22 @@ void EditShaders::ReleaseAll()
 
     // Nuke the textures
     DeleteTexture(mCompositingTextureID);
+    mCompositingTextureWidth = 0;
+    mCompositingTextureHeight = 0;
     DeleteTexture(mTransferTextureID);
     DeleteTexture(m3dLutTextureID);
+    DeleteTexture(mBakedLutTextureID);
+    mBakedLutKey = 0;
+    mBakedLutEnable = false;
 
     // Nuke the programs
     DeleteProgram(mEditComputeProgram);
+    mShaderVariants.Release();
+    mUniformsProgram = GL_INVALID_VALUE;
+
+    // Nuke the uniform buffer
+    DeleteBuffer(mUniformBuffer);
+    mUploadedUniformBlockVersion = 0;
 
    // Nuke the compositing data
 // The clear processing delay is too long while loading 8k content.
@@ -336,8 +360,13 @@ void EditShaders::ReleaseAll()
     mCompositingTextureHandle = GL_INVALID_VALUE;
     mInputTextureHandle = GL_INVALID_VALUE;
     m3dLutHandle = GL_INVALID_VALUE;
+    mLutSizeHandle = GL_INVALID_VALUE;
+    mBakedLutHandle = GL_INVALID_VALUE;
+    mBakedLutEnableHandle = GL_INVALID_VALUE;
     mInputTransformHandle = GL_INVALID_VALUE;
     mCompositorTransformHandle = GL_INVALID_VALUE;
+    mCompositingLayersHandle = GL_INVALID_VALUE;
+    mCompositingLayerCountHandle = GL_INVALID_VALUE;
     mEditShadersUniformBlockIndex = GL_INVALID_VALUE;
     mTransferTextureHandle = GL_INVALID_VALUE;
 }
@@ -354,18 +383,72 @@ void EditShaders::SetParameter(EditShadersUniformBlock::EffectParameters paramet
     // Arbitrate UI control with uniform block and compositing texture access
     std::unique_lock<std::mutex> lock(mPipelineMutex);
     mEditShadersUniformBlock.SetParameter(parameter, val);
+    mUniformBlockVersion++;
+}
+
+void EditShaders::ApplyParameters(const float *values, int count, uint64_t mask, int64_t version)
+{
+    // Called by the render thread before each frame, the lock is only contended by the
+    // remaining single-parameter setters
+    std::unique_lock<std::mutex> lock(mPipelineMutex);
+    if (version == mAppliedParameterVersion) return;
+
+    int n = std::min(count, (int)EditShadersUniformBlock::PARAMETER_COUNT);
+    for (int i = 0; i < n && i < 64; i++)
+    {
+        if ((mask >> i) & 1u)
+        {
+            mEditShadersUniformBlock.SetParameter((EditShadersUniformBlock::EffectParameters)i, values[i]);
+        }
+    }
+    mAppliedParameterVersion = version;
+    mUniformBlockVersion++;
 }
 
 void EditShaders::EnableLut(bool enable)
 {
+    // A loaded LUT stays on, the choice is kept for when it is reset
+    mBuiltInLutEnable = enable;
+    enable = enable || !mLoadedLutData.empty();
     SetParameter(EditShadersUniformBlock::LUT_ENABLE, enable ? 1.0f : 0.0f);
 }
 
+bool EditShaders::SetLut(const uint16_t *data, int size)
+{
+    if (size < 2) return true;
+    {
+        // Arbitrate UI control with uniform block and texture data access
+        std::unique_lock<std::mutex> lock(mPipelineMutex);
+        mLoadedLutData.assign(data, data + (size_t) size * size * size * 3);
+        mLoadedLutSize = size;
+        mReloadLut = true;
+    }
+    SetParameter(EditShadersUniformBlock::LUT_ENABLE, 1.0f);
+    LOGI("EditShaders::SetLut: size = %d", size);
+    return false;
+}
+
+void EditShaders::ResetLut()
+{
+    {
+        // Arbitrate UI control with uniform block and texture data access
+        std::unique_lock<std::mutex> lock(mPipelineMutex);
+        if (mLoadedLutData.empty()) return;
+        mLoadedLutData.clear();
+        mLoadedLutData.shrink_to_fit();
+        mLoadedLutSize = 0;
+        mReloadLut = true;
+    }
+    SetParameter(EditShadersUniformBlock::LUT_ENABLE, mBuiltInLutEnable ? 1.0f : 0.0f);
+    LOGI("EditShaders::ResetLut");
+}
+
 void EditShaders::SetEffectDefaults()
 {
     // Arbitrate UI control with uniform block and compositing texture access
     std::unique_lock<std::mutex> lock(mPipelineMutex);
     mEditShadersUniformBlock.SetEffectDefaults();
+    mUniformBlockVersion++;
 }
 
 void EditShaders::SetInputTransformMatrix(float transformMatrix[4][4])
@@ -382,28 +465,37 @@ void EditShaders::SetCompositorTransformMatrix(float transformMatrix[4][4])
     memcpy(mCompositorTransformMatrix, transformMatrix, sizeof(mCompositorTransformMatrix));
 };
 
-bool EditShaders::SetCompositingImage(const char *data)
+bool EditShaders::SetCompositingImage(const char *data, int width, int height, const float transformMatrix[4][4])
 {
     if (!IsValidSetup()) return true;
+    if (width <= 0 || height <= 0) return true;
     // Arbitrate UI control with uniform block and compositing texture access
     std::unique_lock<std::mutex> lock(mPipelineMutex);
+    mTextTextureData.resize((size_t) width * height * 4);
     memcpy(mTextTextureData.data(), data, mTextTextureData.size());
+    mCompositingBytesCopied += mTextTextureData.size();
+    mCompositingUploads++;
+    mCompositingLayerCount = -1;
+    mCompositingWidth = width;
+    mCompositingHeight = height;
+    if (transformMatrix != nullptr)
+        memcpy(mCompositorTransformMatrix, transformMatrix, sizeof(mCompositorTransformMatrix));
     mReloadCompositingTexture = true;
     return false;
 }
 
 bool EditShaders::CompositingImageTestPattern()
 {
-    LOGI("EditShaders::CompositingImageTestPattern: mOutputWidth = %d, mOutputHeight = %d", mOutputWidth, mOutputHeight);
-    if (mOutputWidth == 0 || mOutputHeight == 0) return false; // No compositing texture
+    LOGI("EditShaders::CompositingImageTestPattern: mCompositingWidth = %d, mCompositingHeight = %d", mCompositingWidth, mCompositingHeight);
+    if (mCompositingWidth < 2 || mCompositingHeight < 2) return false; // No room for a pattern
 
     int i = 0;
-    for (int row = 0; row < mOutputHeight; row++)
+    for (int row = 0; row < mCompositingHeight; row++)
     {
-        float row_fade = (float)row / (float)(mOutputHeight - 1);
-        for (int col = 0; col < mOutputWidth; col++)
+        float row_fade = (float)row / (float)(mCompositingHeight - 1);
+        for (int col = 0; col < mCompositingWidth; col++)
         {
-            float col_fade = (float)col / (float)(mOutputWidth - 1);
+            float col_fade = (float)col / (float)(mCompositingWidth - 1);
             mTextTextureData[i++] = (unsigned char) (255.0f * (1.0f - col_fade));
             mTextTextureData[i++] = (unsigned char) (255.0f * (1.0f - row_fade));
             mTextTextureData[i++] = (unsigned char) (255.0f * col_fade);
@@ -423,41 +515,16 @@ bool EditShaders::ReloadCompositingTextureIfNeeded()
     if (mReloadCompositingTexture)
     {
         LOGI("EditShaders::ReloadCompositingTextureIfNeeded: Set up Texture");
-        if ((mCompositingTextureID == GL_INVALID_VALUE) && (mTextTextureData.size() > 0))
-        {
-            GLuint item[1];
-            glGenTextures(1, item);
-            if (CHECK_GL_ERROR) return true;
-            mCompositingTextureID = item[0];
-            glActiveTexture(TEX_NUM_COMPOSITING);
-            if (CHECK_GL_ERROR) return true;
-            glBindTexture(GL_TEXTURE_2D, mCompositingTextureID);
-            if (CHECK_GL_ERROR) return true;
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-            if (CHECK_GL_ERROR) return true;
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-            if (CHECK_GL_ERROR) return true;
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_BORDER);
-            if (CHECK_GL_ERROR) return true;
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_BORDER);
-            if (CHECK_GL_ERROR) return true;
-            glTexStorage2D(GL_TEXTURE_2D, 1, GL_RGBA8, mOutputWidth, mOutputHeight);
-            if (CHECK_GL_ERROR) return true;
-            glBindImageTexture(TEX_BINDING_COMPOSITING, mCompositingTextureID, 0, GL_FALSE, 0, GL_READ_WRITE, GL_RGBA8);
-            if (CHECK_GL_ERROR) return true;
-        }
-
         if (mTextTextureData.size() > 0)
         {
+            if (AssureCompositingTexture(mCompositingWidth, mCompositingHeight)) return true;
+
             unsigned char *ptr = mTextTextureData.data();
 
-            glActiveTexture(TEX_NUM_COMPOSITING);
-            if (CHECK_GL_ERROR) return true;
-            glBindTexture(GL_TEXTURE_2D, mCompositingTextureID);
-            if (CHECK_GL_ERROR) return true;
             LOGI("EditShaders::ReloadCompositingTextureIfNeeded: call glTexSubImage2D");
-            glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, mOutputWidth, mOutputHeight, GL_RGBA, GL_UNSIGNED_BYTE, ptr);
+            glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, mCompositingWidth, mCompositingHeight, GL_RGBA, GL_UNSIGNED_BYTE, ptr);
             if (CHECK_GL_ERROR) return true;
+            mCompositingBytesUploaded += mTextTextureData.size();
             LOGI("EditShaders::ReloadCompositingTextureIfNeeded: mCompositingTextureID = %d", mCompositingTextureID);
             mReloadCompositingTexture = false;
         }
@@ -470,6 +537,188 @@ bool EditShaders::ReloadCompositingTextureIfNeeded()
     return false;
 }
 
+bool EditShaders::AssureCompositingTexture(int width, int height)
+{
+    // Texture storage is immutable, a differently sized overlay needs a new texture
+    if ((mCompositingTextureID != GL_INVALID_VALUE) &&
+        (mCompositingTextureWidth != width || mCompositingTextureHeight != height))
+    {
+        DeleteTexture(mCompositingTextureID);
+    }
+    if (mCompositingTextureID == GL_INVALID_VALUE)
+    {
+        GLuint item[1];
+        glGenTextures(1, item);
+        if (CHECK_GL_ERROR) return true;
+        mCompositingTextureID = item[0];
+        glActiveTexture(TEX_NUM_COMPOSITING);
+        if (CHECK_GL_ERROR) return true;
+        glBindTexture(GL_TEXTURE_2D, mCompositingTextureID);
+        if (CHECK_GL_ERROR) return true;
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        if (CHECK_GL_ERROR) return true;
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        if (CHECK_GL_ERROR) return true;
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_BORDER);
+        if (CHECK_GL_ERROR) return true;
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_BORDER);
+        if (CHECK_GL_ERROR) return true;
+        glTexStorage2D(GL_TEXTURE_2D, 1, GL_RGBA8, width, height);
+        if (CHECK_GL_ERROR) return true;
+        mCompositingTextureWidth = width;
+        mCompositingTextureHeight = height;
+        glBindImageTexture(TEX_BINDING_COMPOSITING, mCompositingTextureID, 0, GL_FALSE, 0, GL_READ_WRITE, GL_RGBA8);
+        if (CHECK_GL_ERROR) return true;
+    }
+
+    glActiveTexture(TEX_NUM_COMPOSITING);
+    if (CHECK_GL_ERROR) return true;
+    glBindTexture(GL_TEXTURE_2D, mCompositingTextureID);
+    if (CHECK_GL_ERROR) return true;
+    return false;
+}
+
+bool EditShaders::UploadCompositingImage(const void *pixels, int width, int height, int row_bytes, const float transformMatrix[4][4])
+{
+    if (!IsValidSetup()) return true;
+    if (width <= 0 || height <= 0 || row_bytes < width * 4 || row_bytes % 4 != 0) return true;
+    // Arbitrate UI control with uniform block and compositing texture access
+    std::unique_lock<std::mutex> lock(mPipelineMutex);
+
+    if (AssureCompositingTexture(width, height)) return true;
+    // Read straight from the caller's rows, stride included
+    glPixelStorei(GL_UNPACK_ROW_LENGTH, row_bytes / 4);
+    glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+    glPixelStorei(GL_UNPACK_ROW_LENGTH, 0);
+    if (CHECK_GL_ERROR) return true;
+    mCompositingBytesUploaded += (uint64_t) width * height * 4;
+    mCompositingUploads++;
+
+    // The texture is now the only copy, drop the staged one
+    mCompositingWidth = width;
+    mCompositingHeight = height;
+    vector<unsigned char>().swap(mTextTextureData);
+    mReloadCompositingTexture = false;
+    mCompositingLayerCount = -1;
+    if (transformMatrix != nullptr)
+        memcpy(mCompositorTransformMatrix, transformMatrix, sizeof(mCompositorTransformMatrix));
+    return false;
+}
+
+bool EditShaders::UploadCompositingRegion(const void *pixels, int atlas_width, int atlas_height, int x, int y, int width, int height, int row_bytes)
+{
+    if (!IsValidSetup()) return true;
+    if (width <= 0 || height <= 0 || x < 0 || y < 0 || x + width > atlas_width || y + height > atlas_height) return true;
+    if (row_bytes < width * 4 || row_bytes % 4 != 0) return true;
+    // Arbitrate UI control with uniform block and compositing texture access
+    std::unique_lock<std::mutex> lock(mPipelineMutex);
+
+    // A new atlas size reallocates the texture, the caller uploads every layer again then
+    if (AssureCompositingTexture(atlas_width, atlas_height)) return true;
+    glPixelStorei(GL_UNPACK_ROW_LENGTH, row_bytes / 4);
+    glTexSubImage2D(GL_TEXTURE_2D, 0, x, y, width, height, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+    glPixelStorei(GL_UNPACK_ROW_LENGTH, 0);
+    if (CHECK_GL_ERROR) return true;
+    mCompositingBytesUploaded += (uint64_t) width * height * 4;
+    mCompositingUploads++;
+
+    // The atlas is the compositing texture now, a staged single overlay must not replace it
+    mCompositingWidth = atlas_width;
+    mCompositingHeight = atlas_height;
+    vector<unsigned char>().swap(mTextTextureData);
+    mReloadCompositingTexture = false;
+    return false;
+}
+
+void EditShaders::SetCompositingLayers(const float *layers, int count)
+{
+    // Arbitrate UI control with uniform block and compositing texture access
+    std::unique_lock<std::mutex> lock(mPipelineMutex);
+    count = std::max(0, std::min(count, MAX_COMPOSITING_LAYERS));
+    memcpy(mCompositingLayers, layers, count * COMPOSITING_LAYER_FLOATS * sizeof(float));
+    mCompositingLayerCount = count;
+}
+
+void EditShaders::CountCompositingBytesCopied(uint64_t bytes)
+{
+    std::unique_lock<std::mutex> lock(mPipelineMutex);
+    mCompositingBytesCopied += bytes;
+}
+
+void EditShaders::GetCompositingCopyStats(uint64_t &bytes_copied, uint64_t &bytes_uploaded, uint64_t &uploads)
+{
+    std::unique_lock<std::mutex> lock(mPipelineMutex);
+    bytes_copied = mCompositingBytesCopied;
+    bytes_uploaded = mCompositingBytesUploaded;
+    uploads = mCompositingUploads;
+}
+
+void EditShaders::GetParameters(float *values, int count)
+{
+    std::unique_lock<std::mutex> lock(mPipelineMutex);
+    count = std::min(count, (int)EditShadersUniformBlock::PARAMETER_COUNT);
+    memcpy(values, mEditShadersUniformBlock.GetFloatPointer(), count * sizeof(float));
+}
+
+bool EditShaders::UploadBakedLut(const float *data, int size, int64_t key)
+{
+    if (size != BAKED_LUT_SIZE) return true;
+    // Arbitrate UI control with uniform block and compositing texture access
+    std::unique_lock<std::mutex> lock(mPipelineMutex);
+
+    if (AssureBakedLutTexture()) return true;
+    glTexSubImage3D(GL_TEXTURE_3D, 0, 0, 0, 0, size, size, size, GL_RGB, GL_FLOAT, data);
+    if (CHECK_GL_ERROR) return true;
+    mBakedLutKey = key;
+    mBakedLutEnable = false; // Until the frame with these parameters selects it
+    return false;
+}
+
+bool EditShaders::SelectBakedLut(int64_t key)
+{
+    std::unique_lock<std::mutex> lock(mPipelineMutex);
+    mBakedLutEnable = key != 0 && key == mBakedLutKey;
+    return mBakedLutEnable;
+}
+
+bool EditShaders::AssureBakedLutTexture()
+{
+    if (mBakedLutTextureID != GL_INVALID_VALUE)
+    {
+        glActiveTexture(TEX_NUM_BAKED_LUT);
+        if (CHECK_GL_ERROR) return true;
+        glBindTexture(GL_TEXTURE_3D, mBakedLutTextureID);
+        return CHECK_GL_ERROR;
+    }
+
+    GLuint item[1];
+    glGenTextures(1, item);
+    if (CHECK_GL_ERROR) return true;
+    mBakedLutTextureID = item[0];
+
+    glActiveTexture(TEX_NUM_BAKED_LUT);
+    if (CHECK_GL_ERROR) return true;
+    glBindTexture(GL_TEXTURE_3D, mBakedLutTextureID);
+    if (CHECK_GL_ERROR) return true;
+
+    glTexParameteri(GL_TEXTURE_3D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+    if (CHECK_GL_ERROR) return true;
+    glTexParameteri(GL_TEXTURE_3D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+    if (CHECK_GL_ERROR) return true;
+    glTexParameteri(GL_TEXTURE_3D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+    if (CHECK_GL_ERROR) return true;
+    glTexParameteri(GL_TEXTURE_3D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+    if (CHECK_GL_ERROR) return true;
+    glTexParameteri(GL_TEXTURE_3D, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
+    if (CHECK_GL_ERROR) return true;
+
+    glTexStorage3D(GL_TEXTURE_3D, 1, GL_RGB32F, BAKED_LUT_SIZE, BAKED_LUT_SIZE, BAKED_LUT_SIZE);
+    if (CHECK_GL_ERROR) return true;
+
+    LOGI("EditShaders::AssureBakedLutTexture: mBakedLutTextureID = %d", mBakedLutTextureID);
+    return false;
+}
+
 bool EditShaders::CreateTransferTexture()
 {
     GLuint item[1];
@@ -523,8 +772,8 @@ std::string EditShaders::EditShaderPreamble(bool include_version)
     snprintf(
         buffer,
         SafeSize(buffer),
-        "#define LUT_SIZE %d.0f\n",
-        m3dLutSize);
+        "#define LUT_SIZE lutSize\n#define BAKED_LUT_SIZE %d.0f\n",
+        BAKED_LUT_SIZE);
     preamble += buffer;
 
     snprintf(
@@ -563,8 +812,8 @@ bool EditShaders::BuildEditComputeShader()
         return true;
     }
 
-    std::string shader_code = EditShaderPreamble();
-    shader_code += mEditComputeShaderDeclarations;
+    std::string preamble = EditShaderPreamble();
+    std::string shader_code = mEditComputeShaderDeclarations;
     shader_code += mEditShadersUniformBlock.mUniformBlock;
     shader_code += mColorMatrixLibrary;
 
@@ -584,9 +833,22 @@ bool EditShaders::BuildEditComputeShader()
         shader_code += mEditComputeShaderBody;
     }
 
-    if (CompileAndLinkShader(mEditComputeProgram, shader_code.c_str())) return true;
+    // Saved binaries are named after the frame setup, the clips opened recently all stay cached
+    char name[64];
+    snprintf(name, SafeSize(name), "edit_%dx%d_%d_%d_%d",
+             mOutputWidth, mOutputHeight, mColorStandard, mInputColorSpace, mOutputColorSpace);
+    std::string source = preamble + shader_code;
+    if (!mProgramBinaries.Load(mEditComputeProgram, source, name))
+    {
+        if (CompileAndLinkShader(mEditComputeProgram, source.c_str(), nullptr, true)) return true;
+        mProgramBinaries.Save(mEditComputeProgram, source, name);
+    }
     if (AssureLutLoaded()) return true;
     FindUniforms(mEditComputeProgram);
+    mUniformsProgram = mEditComputeProgram;
+
+    // Pass-through has no stages to specialize
+    mShaderVariants.Reset(preamble, mShaderEditMode != eShaderEditModePassThrough ? shader_code : "", &mProgramBinaries, name);
 
     // Transfer texture
     CreateTransferTexture();
@@ -618,9 +880,23 @@ bool EditShaders::FindUniforms(GLuint program)
     mCompositorTransformHandle = glGetUniformLocation(program, "compositorTextureTransform");
     if (CHECK_GL_ERROR) return true;
 
+    // Get handles for the compositing layer table
+    mCompositingLayersHandle = glGetUniformLocation(program, "compositingLayers");
+    if (CHECK_GL_ERROR) return true;
+    mCompositingLayerCountHandle = glGetUniformLocation(program, "compositingLayerCount");
+    if (CHECK_GL_ERROR) return true;
+
     //  Get handle for 3D LUT
     m3dLutHandle = glGetUniformLocation(program, "lut3dtex");
     if (CHECK_GL_ERROR) return true;
+    mLutSizeHandle = glGetUniformLocation(program, "lutSize");
+    if (CHECK_GL_ERROR) return true;
+
+    //  Get handles for the baked colour LUT
+    mBakedLutHandle = glGetUniformLocation(program, "bakedLut3dtex");
+    if (CHECK_GL_ERROR) return true;
+    mBakedLutEnableHandle = glGetUniformLocation(program, "bakedLutEnable");
+    if (CHECK_GL_ERROR) return true;
 
     //  Get Uniform for Block index
     mEditShadersUniformBlockIndex = glGetUniformBlockIndex(program, "EditShadersUniformBlock");
@@ -658,6 +934,21 @@ bool EditShaders::LoadUniforms(GLuint program, GLuint input_texture_id)
     if (CHECK_GL_ERROR) return true;
     glUniform1i(m3dLutHandle, TEX_BINDING_LUT);
     if (CHECK_GL_ERROR) return true;
+    glUniform1f(mLutSizeHandle, (float) m3dLutSize);
+    if (CHECK_GL_ERROR) return true;
+
+    // Baked colour LUT, only sampled while enabled
+    if (mBakedLutTextureID != GL_INVALID_VALUE)
+    {
+        glActiveTexture(TEX_NUM_BAKED_LUT);
+        if (CHECK_GL_ERROR) return true;
+        glBindTexture(GL_TEXTURE_3D, mBakedLutTextureID);
+        if (CHECK_GL_ERROR) return true;
+    }
+    glUniform1i(mBakedLutHandle, TEX_BINDING_BAKED_LUT);
+    if (CHECK_GL_ERROR) return true;
+    glUniform1i(mBakedLutEnableHandle, mBakedLutEnable ? 1 : 0);
+    if (CHECK_GL_ERROR) return true;
 
     // Transfer texture
     glActiveTexture(TEX_NUM_TRANSFER);
@@ -671,15 +962,30 @@ bool EditShaders::LoadUniforms(GLuint program, GLuint input_texture_id)
     glUniformMatrix4fv(mCompositorTransformHandle, 1, false, mCompositorTransformMatrix[0]);
     if (CHECK_GL_ERROR) return true;
 
+    // Compositing layers
+    glUniform1i(mCompositingLayerCountHandle, mCompositingLayerCount);
+    if (CHECK_GL_ERROR) return true;
+    if (mCompositingLayerCount > 0)
+    {
+        glUniform4fv(mCompositingLayersHandle, mCompositingLayerCount * COMPOSITING_LAYER_FLOATS / 4, mCompositingLayers);
+        if (CHECK_GL_ERROR) return true;
+    }
+
     return false;
 }
 
 bool EditShaders::AssureLutLoaded()
 {
+    if (m3dLutTextureID != GL_INVALID_VALUE && !mReloadLut)
+        return false; // Already loaded
+
     LOGI("EditShaders::AssureLutLoaded");
 
-    if (m3dLutTextureID != GL_INVALID_VALUE)
-        return false; // Already loaded
+    // The storage is immutable, a LUT of another size or format needs a new texture
+    DeleteTexture(m3dLutTextureID);
+    bool loaded = !mLoadedLutData.empty();
+    m3dLutSize = loaded ? mLoadedLutSize : LUT_33_SIZE;
+    mReloadLut = false;
 
     GLuint item[1];
     glGenTextures(1, item);
@@ -703,7 +1009,7 @@ bool EditShaders::AssureLutLoaded()
     glTexParameteri(GL_TEXTURE_3D, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
     if (CHECK_GL_ERROR) return true;
 
-    glTexStorage3D(GL_TEXTURE_3D, 1, GL_RGB32F, m3dLutSize, m3dLutSize, m3dLutSize);
+    glTexStorage3D(GL_TEXTURE_3D, 1, loaded ? GL_RGB16F : GL_RGB32F, m3dLutSize, m3dLutSize, m3dLutSize);
     if (CHECK_GL_ERROR) return true;
 
     glActiveTexture(TEX_NUM_LUT);
@@ -711,7 +1017,10 @@ bool EditShaders::AssureLutLoaded()
     glBindTexture(GL_TEXTURE_3D, m3dLutTextureID);
     if (CHECK_GL_ERROR) return true;
 
-    glTexSubImage3D(GL_TEXTURE_3D, 0, 0, 0, 0, m3dLutSize, m3dLutSize, m3dLutSize, GL_RGB, GL_FLOAT, m3dLutData);
+    if (loaded)
+        glTexSubImage3D(GL_TEXTURE_3D, 0, 0, 0, 0, m3dLutSize, m3dLutSize, m3dLutSize, GL_RGB, GL_HALF_FLOAT, mLoadedLutData.data());
+    else
+        glTexSubImage3D(GL_TEXTURE_3D, 0, 0, 0, 0, m3dLutSize, m3dLutSize, m3dLutSize, GL_RGB, GL_FLOAT, m3dLutData);
     if (CHECK_GL_ERROR) return true;
 
     LOGI("EditShaders::AssureLutLoaded: m3dLutTextureID = %d", m3dLutTextureID);
@@ -719,6 +1028,21 @@ bool EditShaders::AssureLutLoaded()
     return false;
 }
 
+void EditShaders::GetProgramCacheStats(uint64_t &loads, uint64_t &misses, uint64_t &rejects, uint64_t &saves)
+{
+    std::unique_lock<std::mutex> lock(mPipelineMutex);
+    loads = mProgramBinaries.GetLoads();
+    misses = mProgramBinaries.GetMisses();
+    rejects = mProgramBinaries.GetRejects();
+    saves = mProgramBinaries.GetSaves();
+}
+
+std::string EditShaders::GetShaderVariantReport()
+{
+    std::unique_lock<std::mutex> lock(mPipelineMutex);
+    return mShaderVariants.Report();
+}
+
 bool EditShaders::RunEditComputeShader(
         GLuint input_texture_id,
         int input_texture_width,
@@ -741,10 +1065,9 @@ bool EditShaders::RunEditComputeShader(
     std::unique_lock<std::mutex> lock(mPipelineMutex);
 
     // Lambda cleanup function to sweep up the floor after the party is over no matter how we leave
-    GLuint binding_point = 0, buffer = GL_INVALID_VALUE;
+    GLuint binding_point = 0;
     ScopeExitFunction cleanup([&]()
     {
-        DeleteBuffer(buffer);
         glUseProgram(0);
     });
 
@@ -752,21 +1075,51 @@ bool EditShaders::RunEditComputeShader(
     // If so, adjust for the shader's sampler coordinate system
     if (input_texture_width == 0) input_texture_width = mOutputWidth;
     if (input_texture_height == 0) input_texture_height = mOutputHeight;
-    mEditShadersUniformBlock.inputVideoScaleX = std::min(1.0f, (float)mOutputWidth / (float)input_texture_width);
-    mEditShadersUniformBlock.inputVideoScaleY = std::min(1.0f, (float)mOutputHeight / (float)input_texture_height);
+    float scaleX = std::min(1.0f, (float)mOutputWidth / (float)input_texture_width);
+    float scaleY = std::min(1.0f, (float)mOutputHeight / (float)input_texture_height);
+    if (scaleX != mEditShadersUniformBlock.inputVideoScaleX || scaleY != mEditShadersUniformBlock.inputVideoScaleY)
+    {
+        mEditShadersUniformBlock.inputVideoScaleX = scaleX;
+        mEditShadersUniformBlock.inputVideoScaleY = scaleY;
+        mUniformBlockVersion++;
+    }
 
     if (mTestStrobe)
     {
         mEditShadersUniformBlock.gamutEnable = (float)(mFrameCounter % 60 >= 30);
         mEditShadersUniformBlock.zebraEnable = (float)(mFrameCounter % 120 >= 60);
         mEditShadersUniformBlock.compositorEnable = (float)(mFrameCounter % 240 >= 120);
+        mUniformBlockVersion++;
+    }
+
+    // The variant for the stages this frame uses, until it is compiled the generic shader
+    GLuint program = 0;
+    if (mUseShaderVariants)
+    {
+        uint32_t features = 0;
+        if (mEditShadersUniformBlock.lutEnable >= 0.5f) features |= SHADER_FEATURE_LUT;
+        if (mEditShadersUniformBlock.zebraEnable > 0.5f) features |= SHADER_FEATURE_ZEBRA;
+        if (mEditShadersUniformBlock.gamutEnable > 0.5f) features |= SHADER_FEATURE_GAMUT;
+        if (mEditShadersUniformBlock.compositorEnable > 0.5f) features |= SHADER_FEATURE_COMPOSITOR;
+        if (mBakedLutEnable) features |= SHADER_FEATURE_BAKED_LUT;
+        program = mShaderVariants.Select(features);
+    }
+    if (program == 0) program = mEditComputeProgram;
+    if (program != mUniformsProgram)
+    {
+        // Uniform locations are per program
+        if (FindUniforms(program)) return true;
+        mTransferTextureHandle = glGetUniformLocation(program, "transferTexture");
+        if (CHECK_GL_ERROR) return true;
+        mUniformsProgram = program;
     }
 
-    glUseProgram(mEditComputeProgram);
+    glUseProgram(program);
     if (CHECK_GL_ERROR) return true;
 
     if (ReloadCompositingTextureIfNeeded()) return true;
-    if (LoadUniforms(mEditComputeProgram, input_texture_id)) return true;
+    if (AssureLutLoaded()) return true;
+    if (LoadUniforms(program, input_texture_id)) return true;
 
     glActiveTexture(TEX_NUM_TRANSFER);
     if (CHECK_GL_ERROR) return true;
@@ -774,15 +1127,24 @@ bool EditShaders::RunEditComputeShader(
     if (CHECK_GL_ERROR) return true;
 
     // Uniform Block
-    glUniformBlockBinding(mEditComputeProgram, mEditShadersUniformBlockIndex, binding_point);
-    if (CHECK_GL_ERROR) return true;
-    glGenBuffers(1, &buffer);
+    glUniformBlockBinding(program, mEditShadersUniformBlockIndex, binding_point);
     if (CHECK_GL_ERROR) return true;
-    glBindBuffer(GL_UNIFORM_BUFFER, buffer);
-    if (CHECK_GL_ERROR) return true;
-    glBufferData(GL_UNIFORM_BUFFER, sizeof(mEditShadersUniformBlock), &mEditShadersUniformBlock, GL_DYNAMIC_DRAW);
+    if (mUniformBuffer == GL_INVALID_VALUE)
+    {
+        glGenBuffers(1, &mUniformBuffer);
+        if (CHECK_GL_ERROR) return true;
+        mUploadedUniformBlockVersion = 0;
+    }
+    glBindBuffer(GL_UNIFORM_BUFFER, mUniformBuffer);
     if (CHECK_GL_ERROR) return true;
-    glBindBufferBase(GL_UNIFORM_BUFFER, mEditShadersUniformBlockIndex, buffer);
+    // Only upload when a parameter changed since the last frame
+    if (mUploadedUniformBlockVersion != mUniformBlockVersion)
+    {
+        glBufferData(GL_UNIFORM_BUFFER, sizeof(mEditShadersUniformBlock), &mEditShadersUniformBlock, GL_DYNAMIC_DRAW);
+        if (CHECK_GL_ERROR) return true;
+        mUploadedUniformBlockVersion = mUniformBlockVersion;
+    }
+    glBindBufferBase(GL_UNIFORM_BUFFER, mEditShadersUniformBlockIndex, mUniformBuffer);
     if (CHECK_GL_ERROR) return true;
 
     ScopeTimerGPU scope_timer("RunEditComputeShader ", mTimingLoops, &mAccumulator);
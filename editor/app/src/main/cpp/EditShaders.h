@@ -58,6 +58,8 @@
 #endif // LOG_TAG
 
 #include "hlg_lut_1000_bt2020_pq_33.h"
+#include "ProgramBinaryCache.h"
+#include "ShaderVariantCache.h"
 
 using namespace std;
 using namespace std::chrono;
@@ -222,15 +224,25 @@ public:
 ///////////////////////////////////////////////////////////////////////////////
 // EditShaders
 
+// Must match MAX_COMPOSITING_LAYERS in the shader and OverlayCompositor.MAX_LAYERS in Java
+#define MAX_COMPOSITING_LAYERS 8
+// Three vec4 per layer: frame bounds, atlas region and opacity
+#define COMPOSITING_LAYER_FLOATS 12
+
 #define TEX_NUM_INPUT       GL_TEXTURE1
 #define TEX_NUM_COMPOSITING GL_TEXTURE5
 #define TEX_NUM_LUT         GL_TEXTURE3
 #define TEX_NUM_TRANSFER    GL_TEXTURE4
+#define TEX_NUM_BAKED_LUT   GL_TEXTURE6
 
 #define TEX_BINDING_INPUT       1
 #define TEX_BINDING_COMPOSITING 5
 #define TEX_BINDING_LUT         3
 #define TEX_BINDING_TRANSFER    4
+#define TEX_BINDING_BAKED_LUT   6
+
+// Must match StaticColorLut.SIZE in Java
+#define BAKED_LUT_SIZE 65
 
 class EditShaders
 {
@@ -281,32 +293,88 @@ public:
     void EnableLut(bool enable = true);
     float GetParameter(EditShadersUniformBlock::EffectParameters parameter);
     void SetParameter(EditShadersUniformBlock::EffectParameters parameter, float val);
+    // Applies a snapshot of all parameters published from Java. Only parameters whose bit is set
+    // in mask are written, and a version that was already applied is skipped.
+    void ApplyParameters(const float *values, int count, uint64_t mask, int64_t version);
     void SetInputTransformMatrix(float transformMatrix[4][4]);
     void SetCompositorTransformMatrix(float transformMatrix[4][4]);
-    bool SetCompositingImage(const char *data);
+    // Sets the overlay image, width x height RGBA pixels, and optionally its placement in the frame.
+    bool SetCompositingImage(const char *data, int width, int height, const float transformMatrix[4][4] = nullptr);
+    // Uploads an overlay straight from caller memory, with no intermediate copy. Must run on the
+    // thread the GL context is current on; the pixels are only read during the call.
+    bool UploadCompositingImage(const void *pixels, int width, int height, int row_bytes, const float transformMatrix[4][4] = nullptr);
+    // Bytes of overlay data copied on the CPU and uploaded to the GPU, and the number of overlays set
+    void GetCompositingCopyStats(uint64_t &bytes_copied, uint64_t &bytes_uploaded, uint64_t &uploads);
+    void CountCompositingBytesCopied(uint64_t bytes);
+    // Writes pixels of one overlay layer to its region of the atlas, which becomes the compositing
+    // texture. Must run on the thread the GL context is current on.
+    bool UploadCompositingRegion(const void *pixels, int atlas_width, int atlas_height, int x, int y, int width, int height, int row_bytes);
+    // Layers blended over the frame back to front, COMPOSITING_LAYER_FLOATS each. Switches the
+    // compositing texture from a single overlay to the layer atlas.
+    void SetCompositingLayers(const float *layers, int count);
+    // Copies the parameters the next frame renders with, up to PARAMETER_COUNT floats
+    void GetParameters(float *values, int count);
+    bool IsEditRec2020() const { return mColorStandard == eColorStandard10BitRec2020; }
+    // Built-in output LUT applied when LUT_ENABLE is set, size^3 RGB floats
+    const float *GetOutputLut(int &size) const { size = LUT_33_SIZE; return hlg_lut_1000_bt2020_pq_33; }
+    // Replaces the output LUT with size^3 RGB half floats, red fastest, and enables it.
+    // The data is copied, the texture is reloaded by the next frame.
+    bool SetLut(const uint16_t *data, int size);
+    // Goes back to the built-in output LUT, enabled as last set by EnableLut
+    void ResetLut();
+    // Sets the static colour chain and output LUT baked into one LUT of BAKED_LUT_SIZE^3 RGB
+    // floats, see StaticColorLut in Java. Must run on the thread the GL context is current on.
+    bool UploadBakedLut(const float *data, int size, int64_t key);
+    // The shader uses the baked LUT while key is the one it was uploaded with, 0 turns it off.
+    // Returns false if the baked LUT is not used.
+    bool SelectBakedLut(int64_t key);
     bool CompositingImageTestPattern();
     bool RunEditComputeShader(
         GLuint input_texture_id,
         int input_texture_width = 0,
         int input_texture_height = 0);
     GLuint GetTransferTextureID() const { return mTransferTextureID ; }
+    // Compile times and hit rate of the shader variants since the shader was built
+    std::string GetShaderVariantReport();
+    // Programs created from saved binaries, not found, refused by the driver, and saved
+    void GetProgramCacheStats(uint64_t &loads, uint64_t &misses, uint64_t &rejects, uint64_t &saves);
 
 protected:
     bool BuildCopyFragmentShader();
     bool FindUniforms(GLuint program);
     bool LoadUniforms(GLuint program, GLuint input_texture_id);
     std::string EditShaderPreamble(bool include_version = true);
-    bool AssureLutLoaded();
+    bool AssureLutLoaded(); // Also reloads it after SetLut or ResetLut
+    bool AssureBakedLutTexture(); // Leaves it bound to TEX_NUM_BAKED_LUT
     bool ReloadCompositingTextureIfNeeded();
+    bool AssureCompositingTexture(int width, int height); // Leaves it bound to TEX_NUM_COMPOSITING
     bool CreateTransferTexture(); // Used between compute shader and copy fragment shader
 
     // Pipeline mutex is used to arbitrate UI access to real-time GPU objects
     // such as uniform and texture data
     std::mutex mPipelineMutex;
     float mInputTransformMatrix[4][4];
-    float mCompositorTransformMatrix[4][4]; // Not yet used
+    // Maps normalized output coordinates to normalized overlay coordinates
+    float mCompositorTransformMatrix[4][4];
+    // Overlay image, it only covers the part of the frame given by mCompositorTransformMatrix
     vector<unsigned char> mTextTextureData;
+    int mCompositingWidth = 0;
+    int mCompositingHeight = 0;
+    uint64_t mCompositingBytesCopied = 0;
+    uint64_t mCompositingBytesUploaded = 0;
+    uint64_t mCompositingUploads = 0;
+    // Layer table of the atlas, -1 layers while the compositing texture is a single overlay
+    float mCompositingLayers[MAX_COMPOSITING_LAYERS * COMPOSITING_LAYER_FLOATS];
+    int mCompositingLayerCount = -1;
+    // Parameters key of the baked LUT in its texture, 0 if there is none
+    int64_t mBakedLutKey = 0;
+    bool mBakedLutEnable = false;
     EditShadersUniformBlock mEditShadersUniformBlock;
+    // Bumped on every change of mEditShadersUniformBlock, the UBO is only uploaded when it moved
+    uint64_t mUniformBlockVersion = 1;
+    uint64_t mUploadedUniformBlockVersion = 0;
+    // Version of the last Java parameter snapshot written to the uniform block
+    int64_t mAppliedParameterVersion = -1;
 
     // Shader source texts
     static const char mEditLibrary[];
@@ -330,6 +398,11 @@ protected:
     volatile bool mReloadCompositingTexture = true;
     int m3dLutSize = LUT_33_SIZE;
     float *m3dLutData = hlg_lut_1000_bt2020_pq_33;
+    // Output LUT loaded at runtime as RGB half floats, used instead of m3dLutData while not empty
+    vector<uint16_t> mLoadedLutData;
+    int mLoadedLutSize = 0;
+    bool mBuiltInLutEnable = false;
+    volatile bool mReloadLut = false;
 
     // Compute shader configuration options
     int mComputeShaderQuadFactor = 4; // Compute shader body does: 1 = single pixel at a time, 4 = 4 pixels at a time
@@ -337,19 +410,35 @@ protected:
 
     // OpenGL Programs
     GLuint mEditComputeProgram = GL_INVALID_VALUE;
+    // Specialized versions of mEditComputeProgram, and the program the uniform handles are of
+    bool mUseShaderVariants = true;
+    ShaderVariantCache mShaderVariants;
+    ProgramBinaryCache mProgramBinaries;
+    GLuint mUniformsProgram = GL_INVALID_VALUE;
 
     // OpenGL Textures
     GLuint mCompositingTextureID = GL_INVALID_VALUE;
+    int mCompositingTextureWidth = 0;
+    int mCompositingTextureHeight = 0;
     GLuint mTransferTextureID = GL_INVALID_VALUE;
     GLuint m3dLutTextureID = GL_INVALID_VALUE;
+    GLuint mBakedLutTextureID = GL_INVALID_VALUE;
+
+    // OpenGL Buffers
+    GLuint mUniformBuffer = GL_INVALID_VALUE;
 
     // OpenGL Uniform handles
     // Handles are only indices and posess no resources and so do not need to be released
     GLuint mInputTextureHandle = GL_INVALID_VALUE;
     GLuint mCompositingTextureHandle = GL_INVALID_VALUE;
     GLuint m3dLutHandle = GL_INVALID_VALUE;
+    GLuint mLutSizeHandle = GL_INVALID_VALUE;
+    GLuint mBakedLutHandle = GL_INVALID_VALUE;
+    GLuint mBakedLutEnableHandle = GL_INVALID_VALUE;
     GLuint mInputTransformHandle = GL_INVALID_VALUE;
     GLuint mCompositorTransformHandle = GL_INVALID_VALUE;
+    GLuint mCompositingLayersHandle = GL_INVALID_VALUE;
+    GLuint mCompositingLayerCountHandle = GL_INVALID_VALUE;
     GLuint mEditShadersUniformBlockIndex = GL_INVALID_VALUE;
     GLuint mTransferTextureHandle = GL_INVALID_VALUE;
 
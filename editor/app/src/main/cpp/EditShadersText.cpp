@@ -118,10 +118,18 @@ uniform EditShadersUniformBlock
 #define U_CONTRAST   editKnobs.contrast
 #define U_SATURATION editKnobs.saturation
 
+// A shader variant has the stage enables compiled in as constants, see ShaderVariantCache
+#ifdef VARIANT_LUT_ENABLE
+#define U_LUT_ENABLE        VARIANT_LUT_ENABLE
+#define U_ZEBRA_ENABLE      VARIANT_ZEBRA_ENABLE
+#define U_GAMUT_ENABLE      VARIANT_GAMUT_ENABLE
+#define U_COMPOSITOR_ENABLE VARIANT_COMPOSITOR_ENABLE
+#else // !VARIANT_LUT_ENABLE
 #define U_LUT_ENABLE        editKnobs.lutEnable
 #define U_ZEBRA_ENABLE      editKnobs.zebraEnable
 #define U_GAMUT_ENABLE      editKnobs.gamutEnable
 #define U_COMPOSITOR_ENABLE editKnobs.compositorEnable
+#endif // !VARIANT_LUT_ENABLE
 
 #define U_GAMUT_MAX_LUMA editKnobs.gamutLMaxLuma
 #define U_GAMUT_MID_LUMA editKnobs.gamutLMidLuma
@@ -323,13 +331,11 @@ vec3 icsc(vec3 pixel)
 #define LUT_SCALE vec3((LUT_SIZE-1.0f)/LUT_SIZE,(LUT_SIZE-1.0f)/LUT_SIZE,(LUT_SIZE-1.0f)/LUT_SIZE)
 #define LUT_OFFSET vec3(0.5/LUT_SIZE,0.5/LUT_SIZE,0.5/LUT_SIZE)
 
-vec3 ocsc(vec3 pixel)
-{
-    if (U_LUT_ENABLE >= 0.5f)
-    {
-        pixel = texture(lut3dtex, fma(pixel, LUT_SCALE, LUT_OFFSET)).rgb;
-    }
+#define BAKED_LUT_SCALE vec3((BAKED_LUT_SIZE-1.0f)/BAKED_LUT_SIZE)
+#define BAKED_LUT_OFFSET vec3(0.5/BAKED_LUT_SIZE)
 
+vec3 outputCsc(vec3 pixel)
+{
 #ifdef OUTPUT_CSC_YUV
 #ifdef OUTPUT_REC_2020_10_BIT
     pixel = (rec2020Rgb2Ycc10bit * pixel) + narrowRangeOffset;
@@ -341,6 +347,21 @@ vec3 ocsc(vec3 pixel)
     return pixel;
 }
 
+vec3 ocsc(vec3 pixel)
+{
+    if (U_LUT_ENABLE >= 0.5f)
+    {
+        pixel = texture(lut3dtex, fma(pixel, LUT_SCALE, LUT_OFFSET)).rgb;
+    }
+    return outputCsc(pixel);
+}
+
+// Gain through overrides, and the output LUT, in a single fetch
+vec3 BakedLut(vec3 pixel)
+{
+    return texture(bakedLut3dtex, fma(pixel, BAKED_LUT_SCALE, BAKED_LUT_OFFSET)).rgb;
+}
+
 vec3 editYUV(vec3 pixel)
 {
 #ifdef EDIT_REC_2020
@@ -399,7 +420,7 @@ vec3 Zebra(vec3 pixel, vec2 fCoords)
 
 vec2 Transform(mat4 matrix, vec2 coords)
 {
-    vec4 result = matrix * vec4(coords.x, coords.y, 0.0f, 0.0f);
+    vec4 result = matrix * vec4(coords.x, coords.y, 0.0f, 1.0f);
     return result.xy;
 }
 
@@ -413,6 +434,15 @@ vec4 editPixel(vec4 originalPixel, vec4 compositePixel, vec2 vidCoords, vec2 fCo
     // Input YUV? convert to RGB
     originalPixel.rgb = icsc(originalPixel.xyz);
 
+    // Static colour edits baked into one LUT, unless the pixel is left original, composited or striped
+    bool inWiper = vidCoords.x >= U_WIPER_LEFT && vidCoords.x <= U_WIPER_RIGHT && vidCoords.y >= U_WIPER_TOP && vidCoords.y <= U_WIPER_BOTTOM;
+    if (U_BAKED_LUT_ENABLE != 0 && inWiper && U_ZEBRA_ENABLE <= 0.5 && (U_COMPOSITOR_ENABLE <= 0.5f || compositePixel.a <= 0.0f))
+    {
+        vec4 bakedPixel = vec4(outputCsc(BakedLut(originalPixel.rgb)), originalPixel.a);
+        if (U_OVERRIDE_A >= 0.0) bakedPixel.a = U_OVERRIDE_A;
+        return bakedPixel;
+    }
+
 #ifdef EDIT_REC_2020
     // Convert from Rec709 RGB to Rec 2020 RGB
     vec3 linear;
@@ -579,19 +609,11 @@ mat4 icsc(mat4 pixels)
 #define LUT_SCALE vec3((LUT_SIZE-1.0f)/LUT_SIZE,(LUT_SIZE-1.0f)/LUT_SIZE,(LUT_SIZE-1.0f)/LUT_SIZE)
 #define LUT_OFFSET vec3(0.5/LUT_SIZE,0.5/LUT_SIZE,0.5/LUT_SIZE)
 
-mat4 ocsc(mat4 pixels)
-{
-    if (U_LUT_ENABLE >= 0.5f)
-    {
-        pixels[IRED] = fma(pixels[IRED], vec4(LUT_SCALE.x), vec4(LUT_OFFSET.x));
-        pixels[PGRN] = fma(pixels[PGRN], vec4(LUT_SCALE.y), vec4(LUT_OFFSET.y));
-        pixels[TBLU] = fma(pixels[TBLU], vec4(LUT_SCALE.z), vec4(LUT_OFFSET.z));
-        pixels = transpose(pixels);
-        for (int i = 0; i < 4; i++)
-            pixels[i].rgb = texture(lut3dtex, pixels[i].rgb).rgb;
-        pixels = transpose(pixels);
-    }
+#define BAKED_LUT_SCALE vec3((BAKED_LUT_SIZE-1.0f)/BAKED_LUT_SIZE)
+#define BAKED_LUT_OFFSET vec3(0.5/BAKED_LUT_SIZE)
 
+mat4 outputCsc(mat4 pixels)
+{
 #ifdef OUTPUT_CSC_YUV
 #ifdef OUTPUT_REC_2020_10_BIT
     pixels = ColorSpaceConversion(rec2020Rgb2Ycc10bit, pixels);
@@ -606,6 +628,33 @@ mat4 ocsc(mat4 pixels)
     return pixels;
 }
 
+mat4 ocsc(mat4 pixels)
+{
+    if (U_LUT_ENABLE >= 0.5f)
+    {
+        pixels[IRED] = fma(pixels[IRED], vec4(LUT_SCALE.x), vec4(LUT_OFFSET.x));
+        pixels[PGRN] = fma(pixels[PGRN], vec4(LUT_SCALE.y), vec4(LUT_OFFSET.y));
+        pixels[TBLU] = fma(pixels[TBLU], vec4(LUT_SCALE.z), vec4(LUT_OFFSET.z));
+        pixels = transpose(pixels);
+        for (int i = 0; i < 4; i++)
+            pixels[i].rgb = texture(lut3dtex, pixels[i].rgb).rgb;
+        pixels = transpose(pixels);
+    }
+    return outputCsc(pixels);
+}
+
+// Gain through overrides, and the output LUT, in a single fetch per pixel
+mat4 BakedLut(mat4 pixels)
+{
+    pixels[IRED] = fma(pixels[IRED], vec4(BAKED_LUT_SCALE.x), vec4(BAKED_LUT_OFFSET.x));
+    pixels[PGRN] = fma(pixels[PGRN], vec4(BAKED_LUT_SCALE.y), vec4(BAKED_LUT_OFFSET.y));
+    pixels[TBLU] = fma(pixels[TBLU], vec4(BAKED_LUT_SCALE.z), vec4(BAKED_LUT_OFFSET.z));
+    pixels = transpose(pixels);
+    for (int i = 0; i < 4; i++)
+        pixels[i].rgb = texture(bakedLut3dtex, pixels[i].rgb).rgb;
+    return transpose(pixels);
+}
+
 vec3 editYUV(vec3 pixel)
 {
 #ifdef EDIT_REC_2020
@@ -699,7 +748,7 @@ vec3 Zebra(vec3 pixel, vec2 fCoords)
 
 vec2 Transform(mat4 matrix, vec2 coords)
 {
-    vec4 result = matrix * vec4(coords.x, coords.y, 0.0f, 0.0f);
+    vec4 result = matrix * vec4(coords.x, coords.y, 0.0f, 1.0f);
     return result.xy;
 }
 
@@ -713,6 +762,22 @@ mat4 editPixel(mat4 originalPixel, mat4 compositePixel, mat2x4 vidCoords, mat4x2
     vec4 alpha = originalPixel[AKEY]; // Save off alpha key
     originalPixel = icsc(originalPixel); // Input YUV? convert to RGB
 
+    // Pixels outside the wiper are left original
+    vec4 orig = vec4(lessThan(vidCoords[0], vec4(U_WIPER_LEFT)));
+    orig += vec4(greaterThan(vidCoords[0], vec4(U_WIPER_RIGHT)));
+    orig += vec4(lessThan(vidCoords[1], vec4(U_WIPER_TOP)));
+    orig += vec4(greaterThan(vidCoords[1], vec4(U_WIPER_BOTTOM)));
+    orig = min(vec4(1.0f), orig);
+
+    // Static colour edits baked into one LUT, unless a pixel is left original, composited or striped
+    bool composited = U_COMPOSITOR_ENABLE > 0.5f && any(greaterThan(compositePixel[AKEY], vec4(0.0f)));
+    if (U_BAKED_LUT_ENABLE != 0 && U_ZEBRA_ENABLE <= 0.5 && !composited && all(equal(orig, vec4(0.0f))))
+    {
+        mat4 bakedPixels = outputCsc(BakedLut(originalPixel));
+        bakedPixels[AKEY] = alpha; // restore alpha
+        return bakedPixels;
+    }
+
 #ifdef EDIT_REC_2020
     // Convert from Rec709 RGB to Rec 2020 RGB
 //    mat4 linear = sRGB2L(compositePixel.rgb);
@@ -752,11 +817,6 @@ mat4 editPixel(mat4 originalPixel, mat4 compositePixel, mat2x4 vidCoords, mat4x2
     }
 
     // Wiper between original and processed
-    vec4 orig = vec4(lessThan(vidCoords[0], vec4(U_WIPER_LEFT)));
-    orig += vec4(greaterThan(vidCoords[0], vec4(U_WIPER_RIGHT)));
-    orig += vec4(lessThan(vidCoords[1], vec4(U_WIPER_TOP)));
-    orig += vec4(greaterThan(vidCoords[1], vec4(U_WIPER_BOTTOM)));
-    orig = min(vec4(1.0f), orig);
     texColor[IRED] = mix(texColor[IRED], originalPixel[IRED], orig);
     texColor[PGRN] = mix(texColor[PGRN], originalPixel[PGRN], orig);
     texColor[TBLU] = mix(texColor[TBLU], originalPixel[TBLU], orig);
@@ -786,6 +846,16 @@ uniform mat4 inputTextureTransform;
 uniform mat4 compositorTextureTransform;
 uniform __samplerExternal2DY2YEXT inputTexture;
 uniform highp sampler3D lut3dtex;
+// Points per side of lut3dtex, the built-in LUT or a loaded one
+uniform highp float lutSize;
+// Colour edits and output LUT baked into one LUT, only valid while bakedLutEnable is set
+uniform highp sampler3D bakedLut3dtex;
+uniform int bakedLutEnable;
+#ifdef VARIANT_BAKED_LUT_ENABLE
+#define U_BAKED_LUT_ENABLE VARIANT_BAKED_LUT_ENABLE
+#else // !VARIANT_BAKED_LUT_ENABLE
+#define U_BAKED_LUT_ENABLE bakedLutEnable
+#endif // !VARIANT_BAKED_LUT_ENABLE
 #ifdef COMPOSITING_SAMPLER
 uniform sampler2D compositingTexture;
 #else // !COMPOSITING_SAMPLER
@@ -795,6 +865,47 @@ layout (binding = 4, rgba16f) uniform writeonly highp image2D transferTexture;
 
 #define OUTPUT_DYXDY vec2(1.0f / (OUTPUT_WIDTH + 1.0f), 1.0f / (OUTPUT_HEIGHT + 1.0f))
 #define OUTPUT_OFFSET vec2(1.0f / OUTPUT_WIDTH, 1.0f / OUTPUT_HEIGHT)
+
+#ifndef COMPOSITING_SAMPLER
+#define MAX_COMPOSITING_LAYERS 8
+// Per layer: frame bounds (left, top, right, bottom), atlas region (x, y, width, height), opacity
+uniform highp vec4 compositingLayers[3 * MAX_COMPOSITING_LAYERS];
+// Layers are sorted back to front, -1 if the compositing texture is a single overlay
+uniform int compositingLayerCount;
+
+// The overlay may cover only part of the frame. compositorTextureTransform maps the pixel center,
+// in normalized output coordinates, to normalized overlay coordinates; outside the overlay the
+// pixel is transparent.
+vec4 CompositePixel(highp vec2 fcoords)
+{
+    highp vec2 frameCoords = (fcoords + 0.5f) / vec2(OUTPUT_WIDTH, OUTPUT_HEIGHT);
+    highp ivec2 size = imageSize(compositingTexture);
+    if (compositingLayerCount < 0)
+    {
+        highp vec2 overlayCoords = (compositorTextureTransform * vec4(frameCoords, 0.0f, 1.0f)).xy;
+        highp ivec2 texel = ivec2(floor(overlayCoords * vec2(size)));
+        if (any(lessThan(texel, ivec2(0))) || any(greaterThanEqual(texel, size))) return vec4(0.0f);
+        return imageLoad(compositingTexture, texel);
+    }
+
+    // Blend the layers of the atlas over each other, premultiplied, in one pass
+    vec4 result = vec4(0.0f);
+    for (int i = 0; i < compositingLayerCount; i++)
+    {
+        highp vec4 bounds = compositingLayers[3 * i];
+        if (any(lessThan(frameCoords, bounds.xy)) || any(greaterThanEqual(frameCoords, bounds.zw))) continue;
+        highp vec4 region = compositingLayers[3 * i + 1];
+        highp vec2 layerCoords = (frameCoords - bounds.xy) / (bounds.zw - bounds.xy);
+        highp ivec2 texel = ivec2(region.xy + min(floor(layerCoords * region.zw), region.zw - 1.0f));
+        if (any(greaterThanEqual(texel, size))) continue; // Atlas not uploaded yet
+        vec4 layerPixel = imageLoad(compositingTexture, texel);
+        float alpha = layerPixel.a * compositingLayers[3 * i + 2].x;
+        result = vec4(layerPixel.rgb * alpha, alpha) + result * (1.0f - alpha);
+    }
+    if (result.a > 0.0f) result.rgb /= result.a;
+    return result;
+}
+#endif // !COMPOSITING_SAMPLER
 )";
 
 const char EditShaders::mEditComputeShaderBody[] =
@@ -819,7 +930,7 @@ void main()
 #ifdef COMPOSITING_SAMPLER
     if (U_COMPOSITOR_ENABLE > 0.5f) compositePixel = texture(compositingTexture, Transform(compositorTextureTransform, outVidCoords));
 #else // !COMPOSITING_SAMPLER
-    if (U_COMPOSITOR_ENABLE > 0.5f) compositePixel = imageLoad(compositingTexture, icoords);
+    if (U_COMPOSITOR_ENABLE > 0.5f) compositePixel = CompositePixel(fcoords);
 #endif // !COMPOSITING_SAMPLER
 
 //    originalPixel = vec4(1.0f - outVidCoords.x, outVidCoords.y, outVidCoords.x, 1.0f);
@@ -866,7 +977,7 @@ void main()
     // Is compositor enabled?
     if (U_COMPOSITOR_ENABLE > 0.5f) for (int i = 0; i < 4; i++)
     {
-        compositingPixels[i] = imageLoad(compositingTexture, icrds[i]);
+        compositingPixels[i] = CompositePixel(fcrds[i]);
     }
 
 // Note that we can use either the quad processor or single pixel processor
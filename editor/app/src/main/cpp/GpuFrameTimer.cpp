@@ -0,0 +1,176 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+#ifndef LOG_TAG
+#define LOG_TAG "GpuFrameTimer"
+#endif // LOG_TAG
+
+#include <GLES2/gl2ext.h>
+
+#include "GpuFrameTimer.h"
+#include "Tools.h"
+
+namespace Simulation
+{
+
+bool GpuFrameTimer::Init()
+{
+    if (mInitialized) return mSupported;
+    mInitialized = true;
+
+    const char *extensions = (const char *) glGetString(GL_EXTENSIONS);
+    mSupported = extensions != nullptr && strstr(extensions, "GL_EXT_disjoint_timer_query") != nullptr;
+    if (!mSupported)
+    {
+        LOGE("GpuFrameTimer: no GL_EXT_disjoint_timer_query, GPU times are not measured");
+        return false;
+    }
+    for (auto &slot : mSlots)
+    {
+        glGenQueries(PASS_COUNT, slot.queries);
+        slot.pending = false;
+        slot.disjoint = false;
+    }
+    // Clears the disjoint flag, only what happens from now on counts
+    GLint disjoint = 0;
+    glGetIntegerv(GL_GPU_DISJOINT_EXT, &disjoint);
+    mSupported = !CHECK_GL_ERROR;
+    return mSupported;
+}
+
+void GpuFrameTimer::Release()
+{
+    if (mInitialized && mSupported)
+    {
+        for (auto &slot : mSlots)
+        {
+            glDeleteQueries(PASS_COUNT, slot.queries);
+            slot.pending = false;
+            slot.disjoint = false;
+        }
+    }
+    mInitialized = false;
+    mSupported = false;
+    mNext = 0;
+    mFrameActive = false;
+}
+
+void GpuFrameTimer::Collect()
+{
+    // A disjoint event, such as a frequency change, makes the queries that were in flight across it
+    // unreliable. Results collected before are kept.
+    GLint disjoint = 0;
+    glGetIntegerv(GL_GPU_DISJOINT_EXT, &disjoint);
+    if (disjoint)
+    {
+        for (auto &slot : mSlots)
+            slot.disjoint = slot.disjoint || slot.pending;
+    }
+
+    // Oldest first, so results stay in frame order
+    for (int i = 0; i < RING_FRAMES; i++)
+    {
+        Slot &slot = mSlots[(mNext + i) % RING_FRAMES];
+        if (!slot.pending) continue;
+
+        // The render pass ends last, once it is available the whole frame is
+        GLuint available = GL_FALSE;
+        glGetQueryObjectuiv(slot.queries[PASS_COUNT - 1], GL_QUERY_RESULT_AVAILABLE, &available);
+        if (available == GL_FALSE) break;
+
+        slot.pending = false;
+        if (slot.disjoint)
+        {
+            slot.disjoint = false;
+            mDropped++;
+            continue;
+        }
+        if (mResultCount == MAX_RESULTS)
+        {
+            // Nobody reads them, keep the latest
+            memmove(mResults[0], mResults[1], sizeof(mResults) - sizeof(mResults[0]));
+            mResultCount--;
+            mDropped++;
+        }
+        for (int pass = 0; pass < PASS_COUNT; pass++)
+        {
+            // 32 bits of nanoseconds hold more than 4 s, no frame pass takes that long
+            GLuint ns = 0;
+            glGetQueryObjectuiv(slot.queries[pass], GL_QUERY_RESULT, &ns);
+            mResults[mResultCount][pass] = ns;
+        }
+        mResultCount++;
+    }
+    CHECK_GL_ERROR;
+}
+
+void GpuFrameTimer::BeginFrame()
+{
+    if (!Init()) return;
+    Collect();
+    mFrameActive = !mSlots[mNext].pending;
+    if (!mFrameActive)
+        mDropped++; // The GPU is more than RING_FRAMES frames behind
+}
+
+void GpuFrameTimer::Begin(Pass pass)
+{
+    if (!mFrameActive) return;
+    glBeginQuery(GL_TIME_ELAPSED_EXT, mSlots[mNext].queries[pass]);
+}
+
+void GpuFrameTimer::End(Pass pass)
+{
+    if (!mFrameActive) return;
+    glEndQuery(GL_TIME_ELAPSED_EXT);
+}
+
+void GpuFrameTimer::EndFrame()
+{
+    if (!mFrameActive) return;
+    mSlots[mNext].pending = true;
+    mSlots[mNext].disjoint = false;
+    mNext = (mNext + 1) % RING_FRAMES;
+    mFrameActive = false;
+}
+
+int GpuFrameTimer::Read(int64_t *ns, int max, int64_t &dropped)
+{
+    int count = std::min(max, mResultCount);
+    memcpy(ns, mResults, count * sizeof(mResults[0]));
+    mResultCount -= count;
+    memmove(mResults[0], mResults[count], mResultCount * sizeof(mResults[0]));
+    dropped = mDropped;
+    mDropped = 0;
+    return count;
+}
+
+} // namespace Simulation
@@ -0,0 +1,97 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+#ifndef FILTERSIMULATION_GPUFRAMETIMER_H
+#define FILTERSIMULATION_GPUFRAMETIMER_H
+
+#include <cstdint>
+
+#include <GLES3/gl32.h>
+
+namespace Simulation
+{
+
+// GPU time of the passes of each frame, from GL_EXT_disjoint_timer_query. Nothing waits for the
+// GPU: the queries of a frame sit in a ring of RING_FRAMES slots and are read back when a later
+// frame comes round to their slot and finds them done. Frames whose slot is still busy, or whose
+// results the driver marks disjoint, are not measured and only counted as dropped.
+// Must be used on the thread the GL context is current on.
+class GpuFrameTimer
+{
+public:
+    enum Pass
+    {
+        PASS_COMPUTE,
+        PASS_RENDER,
+        PASS_COUNT
+    };
+
+    static constexpr int RING_FRAMES = 4;
+    // Measured frames kept until Read, older ones are dropped
+    static constexpr int MAX_RESULTS = 64;
+
+    // Returns false if the driver has no timer queries, all other calls then do nothing
+    bool Init();
+    void Release();
+
+    // Collects finished frames, then starts the queries of this frame
+    void BeginFrame();
+    void Begin(Pass pass);
+    void End(Pass pass);
+    void EndFrame();
+
+    // Moves up to max measured frames to ns, PASS_COUNT values each, oldest first. Returns the
+    // number of frames, dropped gets the number of frames not measured since the last call.
+    int Read(int64_t *ns, int max, int64_t &dropped);
+
+private:
+    struct Slot
+    {
+        GLuint queries[PASS_COUNT];
+        bool pending;
+        bool disjoint; // In flight during a disjoint event, dropped when it completes
+    };
+
+    void Collect();
+
+    bool mSupported = false;
+    bool mInitialized = false;
+    Slot mSlots[RING_FRAMES] = {};
+    int mNext = 0;            // Slot of the next frame
+    bool mFrameActive = false; // This frame has a slot
+    int64_t mResults[MAX_RESULTS][PASS_COUNT] = {};
+    int mResultCount = 0;
+    int64_t mDropped = 0;
+};
+
+} // namespace Simulation
+
+#endif //FILTERSIMULATION_GPUFRAMETIMER_H
@@ -0,0 +1,133 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+#ifndef FILTERSIMULATION_LRUCACHE_H
+#define FILTERSIMULATION_LRUCACHE_H
+
+#include <cstdint>
+#include <memory>
+#include <vector>
+
+namespace Simulation
+{
+
+// Small fixed-capacity cache that evicts the least recently used entry. Lookups scan linearly,
+// which beats hashing for the handful of buffers an ImageReader/ImageWriter pair cycles through,
+// and never allocate. Values are destroyed on eviction and clear(), so any GL objects they own
+// must be released with the right context current on the calling thread.
+// Has no EGL/GL dependency so the bookkeeping can be tested on the host.
+template <class KEY, class VALUE>
+class LruCache
+{
+public:
+    explicit LruCache(size_t capacity)
+        : capacity(capacity > 0 ? capacity : 1)
+    {
+        entries.reserve(this->capacity);
+    }
+
+    // Returns the cached value and marks it most recently used, or nullptr on a miss
+    VALUE* find(const KEY& key)
+    {
+        for (auto& entry : entries)
+        {
+            if (entry.key == key)
+            {
+                entry.lastUse = ++clock;
+                hits++;
+                return entry.value.get();
+            }
+        }
+        misses++;
+        return nullptr;
+    }
+
+    // Adds a value for a key that missed, evicting the least recently used entry when full
+    VALUE* insert(const KEY& key, std::unique_ptr<VALUE> value)
+    {
+        if (entries.size() < capacity)
+        {
+            entries.push_back(Entry{key, std::move(value), ++clock});
+            return entries.back().value.get();
+        }
+
+        Entry* oldest = &entries[0];
+        for (auto& entry : entries)
+        {
+            if (entry.lastUse < oldest->lastUse)
+            {
+                oldest = &entry;
+            }
+        }
+        evictions++;
+        oldest->key     = key;
+        oldest->value   = std::move(value);
+        oldest->lastUse = ++clock;
+        return oldest->value.get();
+    }
+
+    // Destroys all values, counters are kept
+    void clear()
+    {
+        entries.clear();
+    }
+
+    void resetStats()
+    {
+        hits      = 0;
+        misses    = 0;
+        evictions = 0;
+    }
+
+    size_t size() const { return entries.size(); }
+    size_t getCapacity() const { return capacity; }
+    uint64_t getHits() const { return hits; }
+    uint64_t getMisses() const { return misses; }
+    uint64_t getEvictions() const { return evictions; }
+
+private:
+    struct Entry
+    {
+        KEY                    key;
+        std::unique_ptr<VALUE> value;
+        uint64_t               lastUse;
+    };
+
+    std::vector<Entry> entries;
+    size_t             capacity;
+    uint64_t           clock     = 0;
+    uint64_t           hits      = 0;
+    uint64_t           misses    = 0;
+    uint64_t           evictions = 0;
+};
+} // namespace Simulation
+
+#endif //FILTERSIMULATION_LRUCACHE_H
@@ -0,0 +1,232 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+#ifndef LOG_TAG
+#define LOG_TAG "ProgramBinaryCache"
+#endif // LOG_TAG
+
+#include <dirent.h>
+#include <mutex>
+#include <sys/stat.h>
+#include <sys/time.h>
+#include <unistd.h>
+
+#include "ProgramBinaryCache.h"
+#include "Tools.h"
+
+using namespace std;
+
+namespace Simulation
+{
+
+static std::mutex sDirectoryMutex;
+static std::string sDirectory;
+
+static const char FILE_PREFIX[] = "program_";
+static const char FILE_SUFFIX[] = ".bin";
+static const uint32_t FILE_MAGIC = 0x42504544; // "DEPB"
+static const uint32_t FILE_VERSION = 1;
+
+struct ProgramBinaryHeader
+{
+    uint32_t magic;
+    uint32_t version;
+    uint64_t key;
+    uint32_t format;
+    uint32_t length;
+};
+
+static uint64_t Fnv1a(uint64_t hash, const std::string &text)
+{
+    for (unsigned char c : text)
+        hash = (hash ^ c) * 0x100000001b3ULL;
+    return hash;
+}
+
+void ProgramBinaryCache::SetDirectory(const std::string &directory)
+{
+    std::unique_lock<std::mutex> lock(sDirectoryMutex);
+    sDirectory = directory;
+}
+
+bool ProgramBinaryCache::IsEnabled()
+{
+    if (!mFormatsChecked)
+    {
+        mFormatsChecked = true;
+        GLint formats = 0;
+        glGetIntegerv(GL_NUM_PROGRAM_BINARY_FORMATS, &formats);
+        CHECK_GL_ERROR;
+        mSupported = formats > 0;
+        const char *strings[] = {
+            (const char *) glGetString(GL_VENDOR),
+            (const char *) glGetString(GL_RENDERER),
+            (const char *) glGetString(GL_VERSION)};
+        for (const char *s : strings)
+        {
+            mDriver += s != nullptr ? s : "";
+            mDriver += '\n';
+        }
+    }
+    return mSupported;
+}
+
+std::string ProgramBinaryCache::Path(const std::string &source, const std::string &name, uint64_t &key)
+{
+    std::string directory;
+    {
+        std::unique_lock<std::mutex> lock(sDirectoryMutex);
+        directory = sDirectory;
+    }
+    if (directory.empty()) return directory;
+
+    key = Fnv1a(Fnv1a(0xcbf29ce484222325ULL, mDriver), source);
+    char file[64];
+    snprintf(file, SafeSize(file), "_%016llx", (unsigned long long) key);
+    return directory + "/" + FILE_PREFIX + name + file + FILE_SUFFIX;
+}
+
+bool ProgramBinaryCache::Load(GLuint &program, const std::string &source, const std::string &name)
+{
+    if (!IsEnabled()) return false;
+    uint64_t key = 0;
+    std::string path = Path(source, name, key);
+    if (path.empty()) return false;
+
+    FILE *file = fopen(path.c_str(), "rb");
+    if (file == nullptr)
+    {
+        mMisses++;
+        return false;
+    }
+    ProgramBinaryHeader header = {};
+    std::vector<char> binary;
+    bool valid = fread(&header, sizeof(header), 1, file) == 1
+        && header.magic == FILE_MAGIC && header.version == FILE_VERSION && header.key == key;
+    if (valid)
+    {
+        binary.resize(header.length);
+        valid = header.length > 0 && fread(binary.data(), 1, binary.size(), file) == binary.size();
+    }
+    fclose(file);
+
+    GLuint loaded = GL_INVALID_VALUE;
+    GLint linked = GL_FALSE;
+    if (valid)
+    {
+        loaded = glCreateProgram();
+        glProgramBinary(loaded, header.format, binary.data(), (GLsizei) binary.size());
+        // A driver update may refuse old binaries, that is not an error
+        glGetError();
+        glGetProgramiv(loaded, GL_LINK_STATUS, &linked);
+        CHECK_GL_ERROR;
+    }
+    if (linked == GL_FALSE)
+    {
+        LOGE("ProgramBinaryCache::Load: %s rejected, compiling from source", path.c_str());
+        DeleteProgram(loaded);
+        unlink(path.c_str());
+        mRejects++;
+        return false;
+    }
+
+    // Recently used files are the last to be trimmed
+    utimes(path.c_str(), nullptr);
+    program = loaded;
+    mLoads++;
+    return true;
+}
+
+void ProgramBinaryCache::Save(GLuint program, const std::string &source, const std::string &name)
+{
+    if (!IsEnabled()) return;
+    uint64_t key = 0;
+    std::string path = Path(source, name, key);
+    if (path.empty()) return;
+
+    GLint length = 0;
+    glGetProgramiv(program, GL_PROGRAM_BINARY_LENGTH, &length);
+    if (CHECK_GL_ERROR || length <= 0) return;
+    std::vector<char> binary(length);
+    GLenum format = 0;
+    glGetProgramBinary(program, length, &length, &format, binary.data());
+    if (CHECK_GL_ERROR || length <= 0) return;
+
+    // Written aside and renamed, a crash never leaves a partial file under the real name
+    ProgramBinaryHeader header = {FILE_MAGIC, FILE_VERSION, key, format, (uint32_t) length};
+    std::string temp = path + ".tmp";
+    FILE *file = fopen(temp.c_str(), "wb");
+    if (file == nullptr)
+    {
+        LOGE("ProgramBinaryCache::Save: cannot write %s", temp.c_str());
+        return;
+    }
+    bool written = fwrite(&header, sizeof(header), 1, file) == 1
+        && fwrite(binary.data(), 1, (size_t) length, file) == (size_t) length;
+    written = fclose(file) == 0 && written;
+    if (!written || rename(temp.c_str(), path.c_str()) != 0)
+    {
+        LOGE("ProgramBinaryCache::Save: cannot write %s", path.c_str());
+        unlink(temp.c_str());
+        return;
+    }
+    mSaves++;
+    Trim(path.substr(0, path.find_last_of('/')));
+}
+
+void ProgramBinaryCache::Trim(const std::string &directory)
+{
+    DIR *dir = opendir(directory.c_str());
+    if (dir == nullptr) return;
+
+    std::vector<std::pair<time_t, std::string>> files;
+    size_t prefix = strlen(FILE_PREFIX);
+    size_t suffix = strlen(FILE_SUFFIX);
+    while (struct dirent *entry = readdir(dir))
+    {
+        std::string file = entry->d_name;
+        if (file.size() <= prefix + suffix || file.compare(0, prefix, FILE_PREFIX) != 0
+            || file.compare(file.size() - suffix, suffix, FILE_SUFFIX) != 0)
+            continue;
+        std::string path = directory + "/" + file;
+        struct stat info = {};
+        if (stat(path.c_str(), &info) == 0)
+            files.emplace_back(info.st_mtime, path);
+    }
+    closedir(dir);
+
+    if (files.size() <= MAX_FILES) return;
+    std::sort(files.begin(), files.end());
+    for (size_t i = 0; i < files.size() - MAX_FILES; i++)
+        unlink(files[i].second.c_str());
+}
+
+} // namespace Simulation
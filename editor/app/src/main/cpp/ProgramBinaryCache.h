@@ -0,0 +1,85 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+#ifndef FILTERSIMULATION_PROGRAMBINARYCACHE_H
+#define FILTERSIMULATION_PROGRAMBINARYCACHE_H
+
+#include <cstdint>
+#include <string>
+
+#include <GLES3/gl32.h>
+
+namespace Simulation
+{
+
+// Linked programs saved with glGetProgramBinary, one file per program in the app's code cache
+// directory, so opening a clip again does not compile its shaders again. A file is only used for
+// the exact shader source on the exact driver build it was saved with: the file name has the
+// hash of both. Anything else, or a binary the driver rejects, compiles from source as before and
+// the new binary replaces the old one.
+// Must be used on the thread the GL context is current on.
+class ProgramBinaryCache
+{
+public:
+    // Oldest files are deleted beyond this many
+    static constexpr int MAX_FILES = 64;
+
+    // Where binaries are kept, an empty directory turns the cache off. May be called from any thread.
+    static void SetDirectory(const std::string &directory);
+
+    // Creates program from the saved binary of source. name tells apart programs in the directory.
+    // Returns false if there is no usable binary, program is then left as it was.
+    bool Load(GLuint &program, const std::string &source, const std::string &name);
+    // Saves the binary of program, which was linked from source
+    void Save(GLuint program, const std::string &source, const std::string &name);
+
+    uint64_t GetLoads() const { return mLoads; }
+    uint64_t GetMisses() const { return mMisses; }
+    uint64_t GetRejects() const { return mRejects; }
+    uint64_t GetSaves() const { return mSaves; }
+
+private:
+    bool IsEnabled();
+    std::string Path(const std::string &source, const std::string &name, uint64_t &key);
+    void Trim(const std::string &directory);
+
+    bool mFormatsChecked = false;
+    bool mSupported = false;
+    std::string mDriver; // Vendor, renderer and version strings of the driver
+    uint64_t mLoads = 0;
+    uint64_t mMisses = 0;
+    uint64_t mRejects = 0;
+    uint64_t mSaves = 0;
+};
+
+} // namespace Simulation
+
+#endif //FILTERSIMULATION_PROGRAMBINARYCACHE_H
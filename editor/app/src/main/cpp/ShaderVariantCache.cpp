@@ -0,0 +1,268 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+#ifndef LOG_TAG
+#define LOG_TAG "ShaderVariantCache"
+#endif // LOG_TAG
+
+#include <EGL/egl.h>
+
+#include "ShaderVariantCache.h"
+#include "Tools.h"
+
+using namespace std;
+
+namespace Simulation
+{
+
+// GL_KHR_parallel_shader_compile
+#define COMPLETION_STATUS_KHR 0x91B1
+typedef void (*PFN_MaxShaderCompilerThreadsKHR)(GLuint count);
+
+static const char *const sFeatureNames[SHADER_FEATURE_COUNT] = {"lut", "zebra", "gamut", "compositor", "baked"};
+
+void ShaderVariantCache::Reset(const std::string &head, const std::string &body,
+                               ProgramBinaryCache *binaries, const std::string &name)
+{
+    Release();
+    mVariants.clear();
+    mHead = head;
+    mBody = body;
+    mBinaries = binaries;
+    mName = name;
+    mLastFeatures = 0;
+    mStableFrames = 0;
+    mHits = 0;
+    mMisses = 0;
+}
+
+void ShaderVariantCache::Release()
+{
+    for (auto &variant : mVariants)
+    {
+        DeleteShader(variant.shader);
+        DeleteProgram(variant.program);
+        // Keep the entry for the report
+        if (variant.state == eVariantCompiling)
+            variant.state = eVariantFailed;
+    }
+    mBody.clear();
+}
+
+void ShaderVariantCache::CheckParallelCompile()
+{
+    mParallelCompileChecked = true;
+    const char *extensions = (const char *) glGetString(GL_EXTENSIONS);
+    if (extensions == nullptr || strstr(extensions, "GL_KHR_parallel_shader_compile") == nullptr)
+        return;
+    auto maxThreads = (PFN_MaxShaderCompilerThreadsKHR) eglGetProcAddress("glMaxShaderCompilerThreadsKHR");
+    if (maxThreads != nullptr)
+        maxThreads(0xFFFFFFFF); // As many as the driver likes
+    mParallelCompile = true;
+}
+
+ShaderVariantCache::Variant *ShaderVariantCache::Find(uint32_t features)
+{
+    for (auto &variant : mVariants)
+    {
+        if (variant.features == features)
+            return &variant;
+    }
+    return nullptr;
+}
+
+GLuint ShaderVariantCache::Select(uint32_t features)
+{
+    if (mBody.empty()) return 0;
+    if (!mParallelCompileChecked) CheckParallelCompile();
+
+    if (features == mLastFeatures)
+        mStableFrames++;
+    else
+    {
+        mLastFeatures = features;
+        mStableFrames = 0;
+    }
+
+    // Variants started on earlier frames, new ones are not looked at before the next frame
+    for (auto &variant : mVariants)
+    {
+        if (variant.state == eVariantCompiling)
+            Poll(variant);
+    }
+
+    Variant *variant = Find(features);
+    if (variant == nullptr && (mParallelCompile || mStableFrames >= STABLE_FRAMES))
+    {
+        StartCompile(features);
+        variant = &mVariants.back();
+        // Without parallel compile the link status waits for the compiler, this frame takes the
+        // stall and later sessions load the saved binary
+        if (!mParallelCompile && variant->state == eVariantCompiling)
+            Poll(*variant);
+    }
+    if (variant != nullptr && variant->state == eVariantReady)
+    {
+        mHits++;
+        variant->frames++;
+        return variant->program;
+    }
+    mMisses++;
+    return 0;
+}
+
+void ShaderVariantCache::StartCompile(uint32_t features)
+{
+    Variant variant = {features, GL_INVALID_VALUE, GL_INVALID_VALUE, eVariantFailed, chrono::steady_clock::now(), 0.0, 0, false};
+
+    std::string source = Source(features);
+    if (mBinaries != nullptr && mBinaries->Load(variant.program, source, Name(features)))
+    {
+        // Ready for this frame already
+        variant.state = eVariantReady;
+        variant.binary = true;
+        variant.compileMs = chrono::duration<double, milli>(chrono::steady_clock::now() - variant.start).count();
+        mVariants.push_back(variant);
+        return;
+    }
+    const char *text = source.c_str();
+
+    // Nothing here waits for the compiler, Poll asks for the status
+    variant.shader = glCreateShader(GL_COMPUTE_SHADER);
+    if (variant.shader != 0)
+    {
+        glShaderSource(variant.shader, 1, &text, nullptr);
+        glCompileShader(variant.shader);
+        variant.program = glCreateProgram();
+        glAttachShader(variant.program, variant.shader);
+        if (mBinaries != nullptr)
+            glProgramParameteri(variant.program, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+        glLinkProgram(variant.program);
+        if (!CHECK_GL_ERROR)
+            variant.state = eVariantCompiling;
+    }
+    if (variant.state == eVariantFailed)
+    {
+        LOGE("ShaderVariantCache: variant %s not started", FeatureNames(features).c_str());
+        DeleteShader(variant.shader);
+        DeleteProgram(variant.program);
+    }
+    mVariants.push_back(variant);
+}
+
+void ShaderVariantCache::Poll(Variant &variant)
+{
+    GLint status = GL_FALSE;
+    if (mParallelCompile)
+    {
+        glGetProgramiv(variant.program, COMPLETION_STATUS_KHR, &status);
+        if (status == GL_FALSE) return; // Still compiling
+    }
+
+    glGetProgramiv(variant.program, GL_LINK_STATUS, &status);
+    variant.compileMs = chrono::duration<double, milli>(chrono::steady_clock::now() - variant.start).count();
+    if (status == GL_FALSE)
+    {
+        char log[1024] = "";
+        glGetProgramInfoLog(variant.program, sizeof(log), nullptr, log);
+        LOGE("ShaderVariantCache: variant %s failed: %s", FeatureNames(variant.features).c_str(), log);
+        DeleteProgram(variant.program);
+        variant.state = eVariantFailed;
+    }
+    else
+    {
+        variant.state = eVariantReady;
+        if (mBinaries != nullptr)
+            mBinaries->Save(variant.program, Source(variant.features), Name(variant.features));
+    }
+    DeleteShader(variant.shader);
+    CHECK_GL_ERROR;
+}
+
+std::string ShaderVariantCache::Defines(uint32_t features)
+{
+    std::string defines;
+    defines += (features & SHADER_FEATURE_LUT) ? "#define VARIANT_LUT_ENABLE 1.0f\n" : "#define VARIANT_LUT_ENABLE 0.0f\n";
+    defines += (features & SHADER_FEATURE_ZEBRA) ? "#define VARIANT_ZEBRA_ENABLE 1.0f\n" : "#define VARIANT_ZEBRA_ENABLE 0.0f\n";
+    defines += (features & SHADER_FEATURE_GAMUT) ? "#define VARIANT_GAMUT_ENABLE 1.0f\n" : "#define VARIANT_GAMUT_ENABLE 0.0f\n";
+    defines += (features & SHADER_FEATURE_COMPOSITOR) ? "#define VARIANT_COMPOSITOR_ENABLE 1.0f\n" : "#define VARIANT_COMPOSITOR_ENABLE 0.0f\n";
+    defines += (features & SHADER_FEATURE_BAKED_LUT) ? "#define VARIANT_BAKED_LUT_ENABLE 1\n" : "#define VARIANT_BAKED_LUT_ENABLE 0\n";
+    return defines;
+}
+
+std::string ShaderVariantCache::Name(uint32_t features) const
+{
+    char suffix[16];
+    snprintf(suffix, SafeSize(suffix), "_v%02x", features);
+    return mName + suffix;
+}
+
+std::string ShaderVariantCache::FeatureNames(uint32_t features)
+{
+    std::string names;
+    for (int i = 0; i < SHADER_FEATURE_COUNT; i++)
+    {
+        if (features & (1u << i))
+        {
+            if (!names.empty()) names += "+";
+            names += sFeatureNames[i];
+        }
+    }
+    return names.empty() ? "none" : names;
+}
+
+std::string ShaderVariantCache::Report() const
+{
+    char buffer[256];
+    int ready = 0;
+    int failed = 0;
+    for (auto &variant : mVariants)
+    {
+        ready += variant.state == eVariantReady;
+        failed += variant.state == eVariantFailed;
+    }
+    uint64_t frames = mHits + mMisses;
+    snprintf(buffer, SafeSize(buffer), "variants=%d, failed=%d, hits=%llu, misses=%llu, hit rate=%.1f%%, parallel compile=%s",
+             ready, failed, (unsigned long long) mHits, (unsigned long long) mMisses,
+             frames > 0 ? 100.0 * mHits / frames : 0.0, mParallelCompile ? "yes" : "no");
+    std::string report = buffer;
+    for (auto &variant : mVariants)
+    {
+        snprintf(buffer, SafeSize(buffer), "; %s %.1f ms%s, %llu frames",
+                 FeatureNames(variant.features).c_str(), variant.compileMs,
+                 variant.state == eVariantFailed ? " failed" : variant.binary ? " from binary" : "",
+                 (unsigned long long) variant.frames);
+        report += buffer;
+    }
+    return report;
+}
+
+} // namespace Simulation
@@ -0,0 +1,130 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+#ifndef FILTERSIMULATION_SHADERVARIANTCACHE_H
+#define FILTERSIMULATION_SHADERVARIANTCACHE_H
+
+#include <chrono>
+#include <cstdint>
+#include <string>
+#include <vector>
+
+#include <GLES3/gl32.h>
+
+#include "ProgramBinaryCache.h"
+
+namespace Simulation
+{
+
+// Edit shader stages a variant is specialized for. A variant has the enable of each of these
+// compiled in as a constant, the stages it has off are removed by the shader compiler.
+enum ShaderFeature : uint32_t
+{
+    SHADER_FEATURE_LUT        = 1 << 0,
+    SHADER_FEATURE_ZEBRA      = 1 << 1,
+    SHADER_FEATURE_GAMUT      = 1 << 2,
+    SHADER_FEATURE_COMPOSITOR = 1 << 3,
+    SHADER_FEATURE_BAKED_LUT  = 1 << 4,
+};
+constexpr int SHADER_FEATURE_COUNT = 5;
+
+// Specialized edit compute shaders by feature set. They are compiled on demand while frames keep
+// rendering with the generic shader, which reads every enable from uniforms, and are swapped in
+// at the first frame after they linked.
+// With GL_KHR_parallel_shader_compile the driver compiles on its own threads and the render thread
+// only polls for completion. Without it a variant is compiled on the render thread, which stalls
+// the frame, so it is only done once its feature set was used for STABLE_FRAMES frames in a row;
+// the binary is saved so later sessions load it instead.
+// Must be used on the thread the GL context is current on.
+class ShaderVariantCache
+{
+public:
+    static constexpr int STABLE_FRAMES = 8;
+
+    // Drops the variants and starts a new session. head is the #version line and preamble of the
+    // generic shader, body the rest of it, the feature constants go between them. Variants are
+    // loaded from and saved to binaries, if given, as name with the features appended.
+    void Reset(const std::string &head, const std::string &body,
+               ProgramBinaryCache *binaries = nullptr, const std::string &name = "");
+    // Deletes the programs, the session stats are kept until the next Reset
+    void Release();
+    // Returns the program of the variant for this frame's features, or 0 to use the generic shader
+    GLuint Select(uint32_t features);
+    // Compile times, frames per variant and hit rate of the session
+    std::string Report() const;
+
+    // Preprocessor constants of a variant, see the U_*_ENABLE macros of the shader
+    static std::string Defines(uint32_t features);
+    static std::string FeatureNames(uint32_t features);
+
+private:
+    enum VariantState
+    {
+        eVariantCompiling,
+        eVariantReady,
+        eVariantFailed
+    };
+
+    struct Variant
+    {
+        uint32_t features;
+        GLuint program;
+        GLuint shader;
+        VariantState state;
+        std::chrono::steady_clock::time_point start;
+        double compileMs;
+        uint64_t frames;
+        bool binary; // Loaded from a saved binary
+    };
+
+    Variant *Find(uint32_t features);
+    void StartCompile(uint32_t features);
+    void Poll(Variant &variant);
+    void CheckParallelCompile();
+    std::string Source(uint32_t features) const { return mHead + Defines(features) + mBody; }
+    std::string Name(uint32_t features) const;
+
+    std::vector<Variant> mVariants; // At most 1 << SHADER_FEATURE_COUNT
+    std::string mHead;
+    std::string mBody;
+    ProgramBinaryCache *mBinaries = nullptr;
+    std::string mName;
+    bool mParallelCompileChecked = false;
+    bool mParallelCompile = false;
+    uint32_t mLastFeatures = 0;
+    int mStableFrames = 0;
+    uint64_t mHits = 0;
+    uint64_t mMisses = 0;
+};
+
+} // namespace Simulation
+
+#endif //FILTERSIMULATION_SHADERVARIANTCACHE_H
@@ -57,7 +57,7 @@ bool mDumpShaderErrors = true;
 bool mDumpShaderErrors = true; // Normally false for release
 #endif // ! _DEBUG
 
-bool CompileAndLinkShader(GLuint &program, char const *fragment_or_compute_text, char const *vertex_text)
+bool CompileAndLinkShader(GLuint &program, char const *fragment_or_compute_text, char const *vertex_text, bool retrievable)
 {
     DeleteProgram(program); // Nuke any existing program
 
@@ -162,6 +162,11 @@ bool CompileAndLinkShader(GLuint &program, char const *fragment_or_compute_text,
     }
     glAttachShader(program, main_shader);
     if (CHECK_GL_ERROR) return true;
+    if (retrievable)
+    {
+        glProgramParameteri(program, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+        if (CHECK_GL_ERROR) return true;
+    }
     glLinkProgram(program);
     if (CHECK_GL_ERROR) return true;
 
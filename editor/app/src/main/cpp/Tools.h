@@ -151,7 +151,8 @@ protected:
 ///////////////////////////////////////////////////////////////////////////////
 // Some OpenGL tools
 
-extern bool CompileAndLinkShader(GLuint &program, char const *fragment_or_compute_text, char const *vertex_text = nullptr);
+// retrievable asks the driver to keep the program binary for glGetProgramBinary
+extern bool CompileAndLinkShader(GLuint &program, char const *fragment_or_compute_text, char const *vertex_text = nullptr, bool retrievable = false);
 extern bool mDumpShaderErrors;
 
 // Note that the argument is passed by reference to these functions
@@ -36,12 +36,16 @@
 #include <android/log.h>
 #include <iostream>
 #include <memory>
+#include <mutex>
+#include <vector>
 
 #include <android/hardware_buffer_jni.h>
 
 #include "Renderer.h"
 #include "EGLContext.h"
 #include "EGLMap.h"
+#include "LruCache.h"
+#include "GpuFrameTimer.h"
 
 #include "EditShaders.h"
 
@@ -60,6 +64,38 @@ namespace JNI_GLOBAL
     // Texture dimensions
     int32_t textureWidth  = 0;
     int32_t textureHeight = 0;
+
+    // EGLImage, textures and FBO per hardware buffer, keyed by AHardwareBuffer id. ImageReader and
+    // ImageWriter each cycle through ImagePipeline.MAX_IMAGES (10) buffers. Only used on the
+    // FrameHandler render thread.
+    Simulation::LruCache<uint64_t, Simulation::CachedEGLMap> bufferCache(2 * 10 + 4);
+
+    // GPU time of the compute and render passes of each frame. Only used on the render thread.
+    Simulation::GpuFrameTimer gpuTimer;
+
+    // .cube LUT loaded before the renderer was created, handed to it when the shaders are initialised
+    std::mutex pendingLutMutex;
+    std::vector<uint16_t> pendingLut;
+    int pendingLutSize = 0;
+}
+
+static Simulation::EGLMap& mapHardwareBuffer(AHardwareBuffer* ahb)
+{
+    uint64_t id = 0;
+    if (AHardwareBuffer_getId(ahb, &id) != 0)
+    {
+        // Not expected, the pointer is stable while the buffer is referenced by the cache
+        LOGE("AHardwareBuffer_getId failed, keying by address");
+        id = reinterpret_cast<uintptr_t>(ahb);
+    }
+
+    Simulation::CachedEGLMap* cached = JNI_GLOBAL::bufferCache.find(id);
+    if (cached == nullptr)
+    {
+        cached = JNI_GLOBAL::bufferCache.insert(id,
+            std::unique_ptr<Simulation::CachedEGLMap>(new Simulation::CachedEGLMap(ahb, JNI_GLOBAL::context->getDisplay(), GL_TEXTURE_EXTERNAL_OES)));
+    }
+    return cached->getMap();
 }
 
 extern "C" JNIEXPORT jint JNICALL
@@ -79,42 +115,56 @@ Java_com_dolby_capture_filtersimulation_OpenGLContext_eglInit(JNIEnv *env, jobje
     JNI_GLOBAL::rendererCopyYUV = std::make_shared<Simulation::CopyRenderer>();
     JNI_GLOBAL::rendererCopyYUV->init(true);
 
+    // The context is made current again by the FrameHandler render thread
+    JNI_GLOBAL::context->makeUncurrent();
+
     return 0;
 }
 
-extern "C" JNIEXPORT jint JNICALL
-Java_com_dolby_capture_filtersimulation_FrameHandler_processFrame(JNIEnv *env, jobject thiz, jobject inbuf, jobject opbuf)
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_submitFrame(JNIEnv *env, jobject thiz, jobject inbuf, jobject opbuf)
 {
 
     AHardwareBuffer* inAHB = AHardwareBuffer_fromHardwareBuffer(env,inbuf);
 
     AHardwareBuffer* outAHB = AHardwareBuffer_fromHardwareBuffer(env,opbuf);
 
-    JNI_GLOBAL::context->makeCurrent();
-
-    Simulation::HardwareBuffer inputBuffer(inAHB);
-
-    Simulation::HardwareBuffer outputBuffer(outAHB);
+    // Only the render thread uses the context, so this is a no-op after its first frame
+    if (!JNI_GLOBAL::context->isCurrent())
+    {
+        JNI_GLOBAL::context->makeCurrent();
+    }
 
-    Simulation::EGLMap inputImage(inputBuffer, JNI_GLOBAL::context->getDisplay(), GL_TEXTURE_EXTERNAL_OES);
+    Simulation::EGLMap& inputImage = mapHardwareBuffer(inAHB);
 
-    Simulation::EGLMap outputImage(outputBuffer, JNI_GLOBAL::context->getDisplay(), GL_TEXTURE_EXTERNAL_OES);
+    Simulation::EGLMap& outputImage = mapHardwareBuffer(outAHB);
 
     outputImage.bindFBO();
 
+    // Always on and non-blocking, read back by readGpuTimes a few frames later
+    JNI_GLOBAL::gpuTimer.BeginFrame();
+
+    // Two passes: the edit compute shader writes the rgba16f transfer texture and the render pass
+    // converts it into the output buffer. The ImageWriter buffers are YCBCR_P010 or YCBCR_420_888,
+    // which only a fragment shader can write through GL_EXT_YUV_target; compute shaders cannot bind
+    // them, or one of their planes, as an image, so the edit cannot store to the output directly.
     // loop_count = 0 disables timing, set > 1 for GPU timing, 100 recommended.
     Simulation::ScopeTimerGPU scope_timer("ContentLoader_processFrame: ", 0);
     { // Note scope limit for timer
         for (int i = 0; i < scope_timer.LoopCount(); i++) {
             if (true)
             {
+                JNI_GLOBAL::gpuTimer.Begin(Simulation::GpuFrameTimer::PASS_COMPUTE);
                 JNI_GLOBAL::renderer->RunEditComputeShader(inputImage.getBufferTexture(),
                                                inputImage.getHardwareBufferWidth(),
                                                inputImage.getHardwareBufferHeight());
+                JNI_GLOBAL::gpuTimer.End(Simulation::GpuFrameTimer::PASS_COMPUTE);
+                JNI_GLOBAL::gpuTimer.Begin(Simulation::GpuFrameTimer::PASS_RENDER);
                 JNI_GLOBAL::renderer->render(JNI_GLOBAL::renderer->GetTransferTextureID(),
                                              outputImage.getLutTexture(),
                                              false,
                                              false);
+                JNI_GLOBAL::gpuTimer.End(Simulation::GpuFrameTimer::PASS_RENDER);
              } else { // For debugging
                 JNI_GLOBAL::renderer->render(inputImage.getBufferTexture(),
                                              outputImage.getLutTexture(),
@@ -124,6 +174,117 @@ Java_com_dolby_capture_filtersimulation_FrameHandler_processFrame(JNIEnv *env, j
         }
     }
 
+    JNI_GLOBAL::gpuTimer.EndFrame();
+
+    // Signalled once the GPU has finished with both buffers. The flush makes sure the fence is
+    // submitted, the render thread waits on it after it has submitted the next frame.
+    GLsync fence = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    glFlush();
+    if (fence == nullptr)
+    {
+        LOGE("glFenceSync failed: 0x%x, finishing synchronously", glGetError());
+        glFinish();
+        return 0;
+    }
+
+    return reinterpret_cast<jlong>(fence);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_waitFence(JNIEnv *env, jobject thiz, jlong fence, jlong timeoutNs)
+{
+    GLsync sync = reinterpret_cast<GLsync>(fence);
+    if (sync == nullptr)
+    {
+        return 0;
+    }
+
+    GLenum status = glClientWaitSync(sync, 0, static_cast<GLuint64>(timeoutNs));
+    glDeleteSync(sync);
+
+    if (status == GL_TIMEOUT_EXPIRED || status == GL_WAIT_FAILED)
+    {
+        LOGE("glClientWaitSync failed: 0x%x", status);
+        return -1;
+    }
+    return 0;
+}
+
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_readBufferCacheStats(JNIEnv *env, jobject thiz)
+{
+    jlong stats[] = {
+        static_cast<jlong>(JNI_GLOBAL::bufferCache.getHits()),
+        static_cast<jlong>(JNI_GLOBAL::bufferCache.getMisses()),
+        static_cast<jlong>(JNI_GLOBAL::bufferCache.getEvictions()),
+        static_cast<jlong>(JNI_GLOBAL::bufferCache.size())
+    };
+    jlongArray result = env->NewLongArray(4);
+    env->SetLongArrayRegion(result, 0, 4, stats);
+    return result;
+}
+
+extern "C" JNIEXPORT jstring JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_readShaderVariantReport(JNIEnv *env, jobject thiz)
+{
+    return env->NewStringUTF(JNI_GLOBAL::renderer->GetShaderVariantReport().c_str());
+}
+
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_readProgramCacheStats(JNIEnv *env, jobject thiz)
+{
+    uint64_t loads, misses, rejects, saves;
+    JNI_GLOBAL::renderer->GetProgramCacheStats(loads, misses, rejects, saves);
+    jlong stats[] = {(jlong) loads, (jlong) misses, (jlong) rejects, (jlong) saves};
+    jlongArray result = env->NewLongArray(4);
+    env->SetLongArrayRegion(result, 0, 4, stats);
+    return result;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_clearBufferCache(JNIEnv *env, jobject thiz)
+{
+    // Deletes GL objects, the context has to be current
+    if (JNI_GLOBAL::context && !JNI_GLOBAL::context->isCurrent())
+    {
+        JNI_GLOBAL::context->makeCurrent();
+    }
+    JNI_GLOBAL::bufferCache.clear();
+    JNI_GLOBAL::bufferCache.resetStats();
+    return 0;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_readGpuTimes(JNIEnv *env, jobject thiz, jlongArray times)
+{
+    const int passes = Simulation::GpuFrameTimer::PASS_COUNT;
+    int64_t ns[Simulation::GpuFrameTimer::MAX_RESULTS * passes + 1];
+    int max = std::min((int) (env->GetArrayLength(times) - 1) / passes, (int) Simulation::GpuFrameTimer::MAX_RESULTS);
+    if (max < 0) return 0;
+    int count = JNI_GLOBAL::gpuTimer.Read(ns + 1, max, ns[0]);
+    env->SetLongArrayRegion(times, 0, 1 + count * passes, reinterpret_cast<jlong *>(ns));
+    return count;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_releaseGpuTimer(JNIEnv *env, jobject thiz)
+{
+    // Deletes GL objects, the context has to be current
+    if (JNI_GLOBAL::context && !JNI_GLOBAL::context->isCurrent())
+    {
+        JNI_GLOBAL::context->makeCurrent();
+    }
+    JNI_GLOBAL::gpuTimer.Release();
+    return 0;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_releaseContext(JNIEnv *env, jobject thiz)
+{
+    if (JNI_GLOBAL::context && JNI_GLOBAL::context->isCurrent())
+    {
+        JNI_GLOBAL::context->makeUncurrent();
+    }
     return 0;
 }
 
@@ -134,6 +295,20 @@ Java_com_dolby_capture_filtersimulation_VideoDecoder_EditShadersInit(JNIEnv *env
     jint color_standard,
     jint input_colorspace,
     jint output_colorspace) {
+    // Builds GL objects, the context has to be current
+    if (JNI_GLOBAL::context && !JNI_GLOBAL::context->isCurrent())
+    {
+        JNI_GLOBAL::context->makeCurrent();
+    }
+    {
+        std::unique_lock<std::mutex> lock(JNI_GLOBAL::pendingLutMutex);
+        if (!JNI_GLOBAL::pendingLut.empty())
+        {
+            JNI_GLOBAL::renderer->SetLut(JNI_GLOBAL::pendingLut.data(), JNI_GLOBAL::pendingLutSize);
+            JNI_GLOBAL::pendingLut.clear();
+            JNI_GLOBAL::pendingLut.shrink_to_fit();
+        }
+    }
     JNI_GLOBAL::renderer->Init(
         output_width,
         output_height,
@@ -146,6 +321,11 @@ Java_com_dolby_capture_filtersimulation_VideoDecoder_EditShadersInit(JNIEnv *env
 
 extern "C" JNIEXPORT jint JNICALL
 Java_com_dolby_capture_filtersimulation_VideoDecoder_EditShadersRelease(JNIEnv *env, jobject thiz) {
+    // Deletes GL objects, the context has to be current
+    if (JNI_GLOBAL::context && !JNI_GLOBAL::context->isCurrent())
+    {
+        JNI_GLOBAL::context->makeCurrent();
+    }
     JNI_GLOBAL::renderer->ReleaseAll();
     return 0;
 }
@@ -157,9 +337,152 @@ Java_com_dolby_capture_filtersimulation_VideoDecoder_EditShadersEnableLut(JNIEnv
 }
 
 extern "C" JNIEXPORT jint JNICALL
-Java_com_dolby_capture_filtersimulation_ContentLoader_EditShadersSetParameter(JNIEnv *env, jobject thiz, jint parameter, jfloat val) {
-    JNI_GLOBAL::renderer->SetParameter((Simulation::EditShadersUniformBlock::EffectParameters) parameter, val);
-    return 0; //
+Java_com_dolby_capture_filtersimulation_FrameHandler_applyParameters(JNIEnv *env, jobject thiz, jobject values, jlong mask, jlong version) {
+    auto* data = static_cast<float*>(env->GetDirectBufferAddress(values));
+    jlong count = env->GetDirectBufferCapacity(values);
+    if (data == nullptr || count <= 0)
+    {
+        LOGE("applyParameters: not a direct buffer");
+        return -1;
+    }
+    JNI_GLOBAL::renderer->ApplyParameters(data, (int) count, (uint64_t) mask, version);
+    return 0;
+}
+
+// Reads a 4x4 compositor transform, returns false if there is none
+static bool getTransformMatrix(JNIEnv *env, jfloatArray transform, float matrix[4][4])
+{
+    if (transform == nullptr || env->GetArrayLength(transform) != 16) return false;
+    env->GetFloatArrayRegion(transform, 0, 16, matrix[0]);
+    return true;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_uploadCompositingBuffer(JNIEnv *env, jobject thiz, jobject pixels, jint width, jint height, jint rowBytes, jfloatArray transform) {
+    auto* data = env->GetDirectBufferAddress(pixels);
+    jlong capacity = env->GetDirectBufferCapacity(pixels);
+    if (data == nullptr || capacity < (jlong) rowBytes * (height - 1) + (jlong) width * 4)
+    {
+        LOGE("uploadCompositingBuffer: not a direct buffer of %d x %d pixels", width, height);
+        return -1;
+    }
+    if (JNI_GLOBAL::context && !JNI_GLOBAL::context->isCurrent())
+    {
+        JNI_GLOBAL::context->makeCurrent();
+    }
+    float matrix[4][4];
+    bool hasTransform = getTransformMatrix(env, transform, matrix);
+    return JNI_GLOBAL::renderer->UploadCompositingImage(data, width, height, rowBytes, hasTransform ? matrix : nullptr);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_uploadCompositingHardwareBuffer(JNIEnv *env, jobject thiz, jobject buffer, jfloatArray transform) {
+    AHardwareBuffer* ahb = AHardwareBuffer_fromHardwareBuffer(env, buffer);
+    AHardwareBuffer_Desc desc;
+    AHardwareBuffer_describe(ahb, &desc);
+    if (desc.format != AHARDWAREBUFFER_FORMAT_R8G8B8A8_UNORM || (desc.usage & AHARDWAREBUFFER_USAGE_CPU_READ_MASK) == 0)
+    {
+        LOGE("uploadCompositingHardwareBuffer: need a CPU readable RGBA8888 buffer");
+        return -1;
+    }
+    if (JNI_GLOBAL::context && !JNI_GLOBAL::context->isCurrent())
+    {
+        JNI_GLOBAL::context->makeCurrent();
+    }
+    // Read in place, the lock maps the buffer without copying it
+    void* data = nullptr;
+    if (AHardwareBuffer_lock(ahb, AHARDWAREBUFFER_USAGE_CPU_READ_OFTEN, -1, nullptr, &data) != 0)
+    {
+        LOGE("uploadCompositingHardwareBuffer: lock failed");
+        return -1;
+    }
+    float matrix[4][4];
+    bool hasTransform = getTransformMatrix(env, transform, matrix);
+    int result = JNI_GLOBAL::renderer->UploadCompositingImage(data, desc.width, desc.height, desc.stride * 4, hasTransform ? matrix : nullptr);
+    AHardwareBuffer_unlock(ahb, nullptr);
+    return result;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_uploadCompositingRegion(JNIEnv *env, jobject thiz, jobject pixels,
+    jint atlasWidth, jint atlasHeight, jint x, jint y, jint width, jint height, jint rowBytes) {
+    auto* data = env->GetDirectBufferAddress(pixels);
+    jlong capacity = env->GetDirectBufferCapacity(pixels);
+    if (data == nullptr || capacity < (jlong) rowBytes * (height - 1) + (jlong) width * 4)
+    {
+        LOGE("uploadCompositingRegion: not a direct buffer of %d x %d pixels", width, height);
+        return -1;
+    }
+    if (JNI_GLOBAL::context && !JNI_GLOBAL::context->isCurrent())
+    {
+        JNI_GLOBAL::context->makeCurrent();
+    }
+    return JNI_GLOBAL::renderer->UploadCompositingRegion(data, atlasWidth, atlasHeight, x, y, width, height, rowBytes);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_applyCompositingLayers(JNIEnv *env, jobject thiz, jfloatArray table, jint count) {
+    float layers[MAX_COMPOSITING_LAYERS * COMPOSITING_LAYER_FLOATS];
+    count = std::max(0, std::min((int) count, MAX_COMPOSITING_LAYERS));
+    if (env->GetArrayLength(table) < count * COMPOSITING_LAYER_FLOATS)
+    {
+        LOGE("applyCompositingLayers: table too short for %d layers", count);
+        return -1;
+    }
+    env->GetFloatArrayRegion(table, 0, count * COMPOSITING_LAYER_FLOATS, layers);
+    JNI_GLOBAL::renderer->SetCompositingLayers(layers, count);
+    return 0;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_readEffectParameters(JNIEnv *env, jobject thiz, jfloatArray values) {
+    float parameters[Simulation::EditShadersUniformBlock::PARAMETER_COUNT];
+    int count = std::min((int) env->GetArrayLength(values), (int) Simulation::EditShadersUniformBlock::PARAMETER_COUNT);
+    JNI_GLOBAL::renderer->GetParameters(parameters, count);
+    env->SetFloatArrayRegion(values, 0, count, parameters);
+    return JNI_GLOBAL::renderer->IsEditRec2020() ? 1 : 0;
+}
+
+extern "C" JNIEXPORT jfloatArray JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_readOutputLut(JNIEnv *env, jobject thiz) {
+    int size;
+    const float *lut = JNI_GLOBAL::renderer->GetOutputLut(size);
+    int count = size * size * size * 3;
+    jfloatArray result = env->NewFloatArray(count);
+    env->SetFloatArrayRegion(result, 0, count, lut);
+    return result;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_uploadBakedLut(JNIEnv *env, jobject thiz, jobject lut, jint size, jlong key) {
+    auto* data = static_cast<float*>(env->GetDirectBufferAddress(lut));
+    jlong capacity = env->GetDirectBufferCapacity(lut);
+    if (data == nullptr || capacity < (jlong) size * size * size * 3)
+    {
+        LOGE("uploadBakedLut: not a direct buffer of a %d^3 LUT", size);
+        return -1;
+    }
+    if (JNI_GLOBAL::context && !JNI_GLOBAL::context->isCurrent())
+    {
+        JNI_GLOBAL::context->makeCurrent();
+    }
+    return JNI_GLOBAL::renderer->UploadBakedLut(data, size, key);
+}
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_dolby_capture_filtersimulation_FrameHandler_selectBakedLut(JNIEnv *env, jobject thiz, jlong key) {
+    return JNI_GLOBAL::renderer->SelectBakedLut(key);
+}
+
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_dolby_capture_filtersimulation_ContentLoader_EditShadersGetCompositingCopyStats(JNIEnv *env, jobject thiz)
+{
+    uint64_t copied, uploaded, uploads;
+    JNI_GLOBAL::renderer->GetCompositingCopyStats(copied, uploaded, uploads);
+    jlong stats[] = { (jlong) copied, (jlong) uploaded, (jlong) uploads };
+    jlongArray result = env->NewLongArray(3);
+    env->SetLongArrayRegion(result, 0, 3, stats);
+    return result;
 }
 
 extern "C" JNIEXPORT jfloat JNICALL
@@ -168,18 +491,67 @@ Java_com_dolby_capture_filtersimulation_ContentLoader_EditShadersGetParameter(JN
 }
 
 extern "C" JNIEXPORT jint JNICALL
-Java_com_dolby_capture_filtersimulation_ContentLoader_EditShadersSetCompositingImage(JNIEnv *env, jobject thiz, jbyteArray data) {
+Java_com_dolby_capture_filtersimulation_ContentLoader_EditShadersSetCompositingImage(JNIEnv *env, jobject thiz, jbyteArray data, jint width, jint height, jfloatArray transform) {
+
+    if (width <= 0 || height <= 0 || env->GetArrayLength(data) < (jsize) width * height * 4)
+    {
+        LOGE("EditShadersSetCompositingImage: %d x %d overlay does not fit the data", width, height);
+        return -1;
+    }
+
+    float matrix[4][4];
+    bool hasTransform = getTransformMatrix(env, transform, matrix);
 
     jboolean isCopy;
     jbyte* b = env->GetByteArrayElements(data, &isCopy);
+    if (isCopy)
+        JNI_GLOBAL::renderer->CountCompositingBytesCopied((uint64_t) width * height * 4);
 
-    int result = JNI_GLOBAL::renderer->SetCompositingImage((char *) b);
+    int result = JNI_GLOBAL::renderer->SetCompositingImage((char *) b, width, height, hasTransform ? matrix : nullptr);
 
-    env->ReleaseByteArrayElements( data, b, 0);
+    env->ReleaseByteArrayElements( data, b, JNI_ABORT);
 
     return result;
 }
 
+extern "C" JNIEXPORT void JNICALL
+Java_com_dolby_capture_filtersimulation_ContentLoader_EditShadersSetProgramCacheDir(JNIEnv *env, jobject thiz, jstring directory) {
+    const char *path = env->GetStringUTFChars(directory, nullptr);
+    Simulation::ProgramBinaryCache::SetDirectory(path);
+    env->ReleaseStringUTFChars(directory, path);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_ContentLoader_EditShadersSetLut(JNIEnv *env, jobject thiz, jobject lut, jint size) {
+    auto* data = static_cast<uint16_t*>(env->GetDirectBufferAddress(lut));
+    jlong capacity = env->GetDirectBufferCapacity(lut);
+    if (data == nullptr || size < 2 || capacity < (jlong) size * size * size * 3 * (jlong) sizeof(uint16_t))
+    {
+        LOGE("EditShadersSetLut: %d point LUT not set", size);
+        return -1;
+    }
+    std::unique_lock<std::mutex> lock(JNI_GLOBAL::pendingLutMutex);
+    if (!JNI_GLOBAL::renderer)
+    {
+        // No video was opened yet, the LUT is kept until the shaders are initialised
+        JNI_GLOBAL::pendingLut.assign(data, data + (size_t) size * size * size * 3);
+        JNI_GLOBAL::pendingLutSize = size;
+        LOGI("EditShadersSetLut: %d point LUT pending", size);
+        return 0;
+    }
+    JNI_GLOBAL::pendingLut.clear();
+    return JNI_GLOBAL::renderer->SetLut(data, size) ? -1 : 0;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_dolby_capture_filtersimulation_ContentLoader_EditShadersResetLut(JNIEnv *env, jobject thiz) {
+    std::unique_lock<std::mutex> lock(JNI_GLOBAL::pendingLutMutex);
+    JNI_GLOBAL::pendingLut.clear();
+    if (!JNI_GLOBAL::renderer) return 0;
+    JNI_GLOBAL::renderer->ResetLut();
+    return 0;
+}
+
 extern "C" JNIEXPORT jint JNICALL
 Java_com_dolby_capture_filtersimulation_ContentLoader_EditShadersSetInputTransformMatrix(JNIEnv *env, jobject thiz, _jfloatArray data) {
 //    return JNI_GLOBAL::renderer->SetInputTransformMatrix(data);
@@ -187,7 +559,13 @@ Java_com_dolby_capture_filtersimulation_ContentLoader_EditShadersSetInputTransfo
 }
 
 extern "C" JNIEXPORT jint JNICALL
-Java_com_dolby_capture_filtersimulation_ContentLoader_EditShadersSetCompositorTransformMatrix(JNIEnv *env, jobject thiz, _jfloatArray data) {
-//    return JNI_GLOBAL::renderer->SetCompositorTransformMatrix(data);
+Java_com_dolby_capture_filtersimulation_ContentLoader_EditShadersSetCompositorTransformMatrix(JNIEnv *env, jobject thiz, jfloatArray data) {
+    float matrix[4][4];
+    if (!getTransformMatrix(env, data, matrix))
+    {
+        LOGE("EditShadersSetCompositorTransformMatrix: expected a 4x4 matrix");
+        return -1;
+    }
+    JNI_GLOBAL::renderer->SetCompositorTransformMatrix(matrix);
     return 0;
 }
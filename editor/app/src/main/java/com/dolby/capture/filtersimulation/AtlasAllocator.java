@@ -0,0 +1,142 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.util.ArrayList;
+
+/**
+ * Shelf allocator for rectangles in a texture atlas. Slots are placed left to right on
+ * horizontal shelves, a new shelf is opened below the last one when no shelf has room. A shelf
+ * is reused from its left edge once all of its slots are released.
+ */
+public class AtlasAllocator {
+
+    public static final class Slot {
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+        private final Shelf shelf;
+
+        private Slot(int x, int y, int width, int height, Shelf shelf) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.shelf = shelf;
+        }
+
+        public boolean fits(int width, int height) {
+            return width <= this.width && height <= this.height;
+        }
+    }
+
+    private static final class Shelf {
+        final int y;
+        final int height;
+        int used = 0;
+        int slots = 0;
+
+        Shelf(int y, int height) {
+            this.y = y;
+            this.height = height;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final ArrayList<Shelf> shelves = new ArrayList<>();
+
+    public AtlasAllocator(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("empty atlas");
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return Slot of at least width x height, null if the atlas is full.
+     */
+    public Slot allocate(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("empty slot");
+        }
+        if (width > this.width || height > this.height) {
+            return null;
+        }
+        // tightest shelf that has room, so short slots do not waste tall shelves
+        Shelf best = null;
+        for (Shelf shelf : shelves) {
+            if (shelf.height >= height && shelf.used + width <= this.width
+                    && (best == null || shelf.height < best.height)) {
+                best = shelf;
+            }
+        }
+        if (best == null) {
+            int top = shelves.isEmpty() ? 0 : shelves.get(shelves.size() - 1).y + shelves.get(shelves.size() - 1).height;
+            if (top + height > this.height) {
+                return null;
+            }
+            best = new Shelf(top, height);
+            shelves.add(best);
+        }
+        Slot slot = new Slot(best.used, best.y, width, best.height, best);
+        best.used += width;
+        best.slots++;
+        return slot;
+    }
+
+    public void release(Slot slot) {
+        Shelf shelf = slot.shelf;
+        if (--shelf.slots > 0) {
+            return;
+        }
+        shelf.used = 0;
+        // an empty shelf at the bottom gives its height back
+        while (!shelves.isEmpty() && shelves.get(shelves.size() - 1).slots == 0) {
+            shelves.remove(shelves.size() - 1);
+        }
+    }
+
+    public void clear() {
+        shelves.clear();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
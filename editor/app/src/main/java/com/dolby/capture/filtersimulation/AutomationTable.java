@@ -0,0 +1,114 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Values of the automated effect parameters for every frame of an export, baked ahead of time by
+ * {@link ParameterAutomation#bake}. The render thread looks a frame up by its time in constant
+ * time and copies the row into the parameter snapshot it hands to native code.
+ */
+public class AutomationTable {
+
+    private final int fps;
+
+    private final int frameCount;
+
+    // ordinals of the automated parameters
+    private final int[] parameters;
+
+    // frameCount rows of parameters.length values
+    private final float[] values;
+
+    private final long mask;
+
+    AutomationTable(int fps, int frameCount, int[] parameters, float[] values) {
+        this.fps = fps;
+        this.frameCount = frameCount;
+        this.parameters = parameters;
+        this.values = values;
+        long mask = 0;
+        for (int parameter : parameters) {
+            mask |= 1L << parameter;
+        }
+        this.mask = mask;
+    }
+
+    /**
+     * @param timeUs Time from the first frame of the clip.
+     * @return Nearest frame, clamped to the table.
+     */
+    public int frameIndex(long timeUs) {
+        if (timeUs <= 0) {
+            return 0;
+        }
+        long index = (timeUs * fps + 500_000) / 1_000_000;
+        return (int) Math.min(index, frameCount - 1);
+    }
+
+    /**
+     * Writes the automated values of a frame into a snapshot indexed by
+     * {@link EffectParameters#ordinal()}, leaving the other parameters untouched.
+     */
+    public void fill(int frame, FloatBuffer snapshot) {
+        int row = frame * parameters.length;
+        for (int i = 0; i < parameters.length; i++) {
+            snapshot.put(parameters[i], values[row + i]);
+        }
+    }
+
+    public float getValue(int frame, EffectParameters parameter) {
+        int row = frame * parameters.length;
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i] == parameter.ordinal()) {
+                return values[row + i];
+            }
+        }
+        throw new IllegalArgumentException(parameter + " is not automated");
+    }
+
+    /**
+     * @return Bit i is set if parameter i is automated.
+     */
+    public long getMask() {
+        return mask;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getFps() {
+        return fps;
+    }
+}
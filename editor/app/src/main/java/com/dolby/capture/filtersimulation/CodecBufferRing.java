@@ -0,0 +1,256 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+/**
+ * Preallocated single-producer/single-consumer ring for codec buffer indices.
+ * The codec callback thread publishes index, size, presentation time and flags into parallel
+ * primitive arrays, so handing a buffer over allocates nothing. The consumer blocks while the
+ * ring is empty and is only signalled when it is actually waiting.
+ * <p>
+ * The consumer reads the head entry with the peek methods after {@link #await()} and removes it
+ * with {@link #remove()}. Leaving an entry in place keeps it for the next consumer.
+ */
+public class CodecBufferRing {
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final int[] indices;
+
+    private final int[] sizes;
+
+    private final long[] presentationTimes;
+
+    private final int[] flags;
+
+    private final long[] arrivalTimes;
+
+    // written by the producer only
+    private volatile long tail = 0;
+
+    // advanced by the consumer, reset by clear() and close()
+    private volatile long head = 0;
+
+    private volatile boolean consumerWaiting = false;
+
+    private volatile boolean closed = false;
+
+    private long releases = 0;
+
+    private long wakeups = 0;
+
+    private volatile int maxDepth = 0;
+
+    private volatile long overflows = 0;
+
+    /**
+     * @param capacity Number of entries, rounded up to a power of two. It must cover every
+     *                 buffer the codec can hand out at once.
+     */
+    public CodecBufferRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.indices = new int[size];
+        this.sizes = new int[size];
+        this.presentationTimes = new long[size];
+        this.flags = new int[size];
+        this.arrivalTimes = new long[size];
+    }
+
+    /**
+     * Publishes a buffer. Must only be called from the producer thread.
+     *
+     * @return False if the ring is closed or full. A full ring is counted as an overflow.
+     */
+    public boolean offer(int index, int size, long presentationTimeUs, int bufferFlags) {
+        if (closed) {
+            return false;
+        }
+        long t = tail;
+        long depth = t - head;
+        if (depth >= capacity) {
+            overflows++;
+            return false;
+        }
+        int slot = (int) t & mask;
+        indices[slot] = index;
+        sizes[slot] = size;
+        presentationTimes[slot] = presentationTimeUs;
+        flags[slot] = bufferFlags;
+        arrivalTimes[slot] = System.nanoTime();
+        tail = t + 1;
+
+        if (depth + 1 > maxDepth) {
+            maxDepth = (int) (depth + 1);
+        }
+        if (consumerWaiting) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Blocks until an entry is available.
+     *
+     * @return False if the ring was closed, or the consumer was released with {@link #release()}.
+     * @throws InterruptedException If the consumer is interrupted while waiting.
+     */
+    public boolean await() throws InterruptedException {
+        if (head != tail) {
+            return !closed;
+        }
+        synchronized (this) {
+            long generation = releases;
+            consumerWaiting = true;
+            try {
+                while (head == tail && !closed && generation == releases) {
+                    wait();
+                    wakeups++;
+                }
+            } finally {
+                consumerWaiting = false;
+            }
+            return head != tail && !closed;
+        }
+    }
+
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    public int peekIndex() {
+        return indices[(int) head & mask];
+    }
+
+    public int peekSize() {
+        return sizes[(int) head & mask];
+    }
+
+    public long peekPresentationTime() {
+        return presentationTimes[(int) head & mask];
+    }
+
+    public int peekFlags() {
+        return flags[(int) head & mask];
+    }
+
+    /**
+     * @return System.nanoTime() at which the head entry was published.
+     */
+    public long peekArrivalTime() {
+        return arrivalTimes[(int) head & mask];
+    }
+
+    /**
+     * Drops the head entry after the consumer has used it. Must only be called from the
+     * consumer thread.
+     */
+    public void remove() {
+        long h = head;
+        if (h != tail) {
+            head = h + 1;
+        }
+    }
+
+    /**
+     * Drops all published entries, e.g. after the codec has been flushed. The consumer must not
+     * be holding a peeked entry.
+     */
+    public synchronized void clear() {
+        head = tail;
+    }
+
+    /**
+     * Wakes a consumer blocked in {@link #await()} without closing the ring.
+     */
+    public synchronized void release() {
+        releases++;
+        notifyAll();
+    }
+
+    /**
+     * Drops all entries and releases the consumer. Further offers are ignored.
+     */
+    public synchronized void close() {
+        closed = true;
+        head = tail;
+        notifyAll();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getOfferedCount() {
+        return tail;
+    }
+
+    /**
+     * @return Number of times a waiting consumer was woken up.
+     */
+    public synchronized long getWakeupCount() {
+        return wakeups;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getOverflowCount() {
+        return overflows;
+    }
+
+    @Override
+    public String toString() {
+        return "offered=" + getOfferedCount() + ", wakeups=" + getWakeupCount() + ", depth=" + size()
+                + ", maxDepth=" + maxDepth + ", overflows=" + overflows;
+    }
+}
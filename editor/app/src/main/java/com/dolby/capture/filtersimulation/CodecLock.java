@@ -0,0 +1,151 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes calls into a MediaCodec between the decode stages and codec shutdown.
+ * The lock must only be held for the codec call itself: stages never sleep or wait for another
+ * stage while holding it, so stopping the codec only ever waits for one in-flight codec call.
+ * Once {@link #lockForStop()} has been called, {@link #lock()} fails and stages drop out at their
+ * next codec call.
+ * <pre>
+ *     if (codecLock.lock()) {
+ *         try {
+ *             codec.queueInputBuffer(...);
+ *         } finally {
+ *             codecLock.unlock();
+ *         }
+ *     }
+ * </pre>
+ */
+public class CodecLock {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile boolean stopped = false;
+
+    private long lockedAt;
+
+    // stats, only updated while holding the lock
+    private long acquisitions = 0;
+    private long contended = 0;
+    private long totalWaitNs = 0;
+    private long maxWaitNs = 0;
+    private long maxHoldNs = 0;
+
+    /**
+     * Acquires the lock for a codec call.
+     *
+     * @return False, without holding the lock, if the codec is being stopped.
+     */
+    public boolean lock() {
+        if (stopped) {
+            return false;
+        }
+        acquire();
+        if (stopped) {
+            unlock();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Marks the codec as stopping and acquires the lock. Only waits for a codec call that is
+     * already in progress.
+     */
+    public void lockForStop() {
+        stopped = true;
+        acquire();
+    }
+
+    public void unlock() {
+        long held = System.nanoTime() - lockedAt;
+        if (held > maxHoldNs) {
+            maxHoldNs = held;
+        }
+        lock.unlock();
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    private void acquire() {
+        if (lock.tryLock()) {
+            lockedAt = System.nanoTime();
+            acquisitions++;
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        lockedAt = System.nanoTime();
+        long waited = lockedAt - start;
+        acquisitions++;
+        contended++;
+        totalWaitNs += waited;
+        if (waited > maxWaitNs) {
+            maxWaitNs = waited;
+        }
+    }
+
+    public long getMaxWaitNs() {
+        lock.lock();
+        try {
+            return maxWaitNs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMaxHoldNs() {
+        lock.lock();
+        try {
+            return maxHoldNs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getStats() {
+        lock.lock();
+        try {
+            return "acquired=" + acquisitions + ", contended=" + contended
+                    + ", total wait=" + (totalWaitNs / 1000) + "us, max wait=" + (maxWaitNs / 1000)
+                    + "us, max hold=" + (maxHoldNs / 1000) + "us";
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -82,4 +82,32 @@ public class Constants {
     public static final int RESOLUTION_8K_WIDTH = 7680;
     public static final int RESOLUTION_8K_HEIGHT = 4320;
 
+    // Compressed video samples read ahead of the decoder, see SampleReadAhead
+    public static final int READ_AHEAD_MAX_SAMPLES = 32;
+    public static final long READ_AHEAD_MAX_BYTES = 48L * 1024 * 1024;
+
+    // Frames in flight between decode, GPU processing and encode, see InFlightWindow
+    public static final int IN_FLIGHT_DEPTH = 4;
+
+    // How long the encode window may stay full with no frame coming back before the oldest frame
+    // queued to the encoder is counted lost, see EncodeTracker
+    public static final long ENCODE_STALL_TIMEOUT_MS = 2000;
+
+    // Frames submitted to the GPU at once, see GpuRenderThread
+    public static final int GPU_FRAMES_IN_FLIGHT = 2;
+
+    // Largest overlay atlas texture, wide enough for an 8K frame, see OverlayCompositor
+    public static final int OVERLAY_ATLAS_MAX_SIZE = 8192;
+
+    // Static colour edits are baked into one 3D LUT once unchanged for this long, see StaticLutBaker
+    public static final boolean BAKE_STATIC_COLOR_LUT = true;
+    public static final long STATIC_LUT_DEBOUNCE_NS = 100_000_000L;
+    public static final int STATIC_LUT_CACHE_SIZE = 3;
+
+    // Linked edit shaders are saved to the code cache directory and loaded on the next run
+    public static final boolean CACHE_PROGRAM_BINARIES = true;
+
+    // Parsed .cube LUTs kept in memory, a 65 point LUT takes 1.6 MB, see LutCache
+    public static final long LUT_CACHE_BYTES = 8L * 1024 * 1024;
+
 }
@@ -40,7 +40,12 @@ import android.util.Log;
 import android.util.Size;
 import android.view.Surface;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
 
 public class ContentLoader {
 
@@ -71,12 +76,234 @@ public class ContentLoader {
 
 
 
-    public native int EditShadersSetParameter(int parameter, float val);
-    public native int EditShadersSetCompositingImage(byte[] data);
+    // effect parameters shared by every preview and export, handed to the render thread per frame
+    private static final EffectParameterBlock effectParameters = new EffectParameterBlock();
+
+    /**
+     * Sets and publishes a single parameter. Use {@link #getEffectParameters()} to change several
+     * parameters at once.
+     */
+    public void setEffectParameter(EffectParameters parameter, float val) {
+        effectParameters.set(parameter, val);
+        effectParameters.publish();
+    }
+
+    public EffectParameterBlock getEffectParameters() {
+        return effectParameters;
+    }
+
+    // keyframed parameters, baked into per-frame values when an export starts
+    private static final ParameterAutomation parameterAutomation = new ParameterAutomation();
+
+    public ParameterAutomation getParameterAutomation() {
+        return parameterAutomation;
+    }
+
+    // overlay layers and their pixels, kept to upload them again to the atlas of a new render thread
+    private static volatile OverlayCompositor overlayCompositor;
+    private static final HashMap<Integer, ByteBuffer> overlayPixels = new HashMap<>();
+    // buffers for layer pixels, a replaced layer's buffer comes back once the render thread is done with it
+    private static final DirectBufferPool overlayBufferPool = new DirectBufferPool(4);
+
+    /**
+     * Adds an overlay layer or replaces its pixels and placement. Only this layer's atlas region
+     * is uploaded, unless the atlas had to be repacked to make room.
+     *
+     * @param frame  Size of the frame the layer bounds are given in, a different size drops all
+     *               layers.
+     * @param pixels Direct buffer of width * height RGBA pixels, owned by the loader from now on.
+     * @param startUs First presentation time the layer is shown at.
+     * @param endUs   Presentation time the layer is hidden from, Long.MAX_VALUE for the whole clip.
+     * @param editNs  System.nanoTime() of the edit that led to this layer, the time until the
+     *                first frame showing it is recorded. 0 to not record it.
+     */
+    public void setOverlayLayer(Size frame, int id, ByteBuffer pixels, int width, int height, int left, int top,
+                                float opacity, int z, long startUs, long endUs, long editNs) {
+        List<OverlayCompositor.Upload> uploads;
+        synchronized (overlayPixels) {
+            if (overlayCompositor == null || overlayCompositor.getFrameWidth() != frame.getWidth()
+                    || overlayCompositor.getFrameHeight() != frame.getHeight()) {
+                overlayCompositor = new OverlayCompositor(frame.getWidth(), frame.getHeight(), Constants.OVERLAY_ATLAS_MAX_SIZE);
+                for (ByteBuffer replaced : overlayPixels.values()) {
+                    recycleOverlayBuffer(replaced);
+                }
+                overlayPixels.clear();
+                if (frameHandler != null) {
+                    frameHandler.setOverlayCompositor(overlayCompositor);
+                }
+            }
+            try {
+                uploads = overlayCompositor.setLayer(id, width, height, left, top, opacity, z, startUs, endUs);
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "overlay layer " + id + " dropped: " + e.getMessage());
+                overlayBufferPool.release(pixels);
+                return;
+            }
+            ByteBuffer replaced = overlayPixels.put(id, pixels);
+            if (replaced != null && replaced != pixels) {
+                recycleOverlayBuffer(replaced);
+            }
+        }
+        uploadOverlayLayers(uploads, id, editNs);
+        setEffectParameter(EffectParameters.COMPOSITOR_ENABLE, 1.0f);
+    }
+
+    public void removeOverlayLayer(int id) {
+        synchronized (overlayPixels) {
+            if (overlayCompositor == null || !overlayCompositor.removeLayer(id)) {
+                return;
+            }
+            recycleOverlayBuffer(overlayPixels.remove(id));
+        }
+    }
+
+    /**
+     * @return Direct buffer of at least size bytes for the pixels of an overlay layer.
+     */
+    public ByteBuffer acquireOverlayBuffer(int size) {
+        return overlayBufferPool.acquire(size);
+    }
+
+    /**
+     * Returns a buffer from {@link #acquireOverlayBuffer} that was not passed to setOverlayLayer.
+     */
+    public void releaseOverlayBuffer(ByteBuffer buffer) {
+        overlayBufferPool.release(buffer);
+    }
+
+    // Uploads of the buffer may still be queued on the render thread, it runs tasks in order
+    private void recycleOverlayBuffer(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        FrameHandler handler = this.frameHandler;
+        if (handler == null || !handler.runOnRenderThread(() -> overlayBufferPool.release(buffer))) {
+            overlayBufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Uploads all overlay layers again, after the edit shaders were (re)initialized.
+     */
+    public void refreshOverlayLayers() {
+        List<OverlayCompositor.Upload> uploads;
+        synchronized (overlayPixels) {
+            if (overlayCompositor == null) {
+                return;
+            }
+            uploads = overlayCompositor.invalidate();
+        }
+        uploadOverlayLayers(uploads, -1, 0);
+    }
+
+    private void uploadOverlayLayers(List<OverlayCompositor.Upload> uploads, int editedId, long editNs) {
+        FrameHandler handler = this.frameHandler;
+        if (handler == null) {
+            return;
+        }
+        for (OverlayCompositor.Upload upload : uploads) {
+            ByteBuffer pixels;
+            synchronized (overlayPixels) {
+                pixels = overlayPixels.get(upload.id);
+            }
+            if (pixels != null) {
+                handler.setCompositingLayer(pixels, upload, upload.id == editedId ? editNs : 0, null);
+            }
+        }
+    }
+
+    /**
+     * @param data      RGBA pixels of the overlay, width * height * 4 bytes.
+     * @param transform Placement of the overlay in the frame, see {@link OverlayTransform}.
+     */
+    public native int EditShadersSetCompositingImage(byte[] data, int width, int height, float[] transform);
+
+    public native int EditShadersSetCompositorTransformMatrix(float[] transform);
+
+    /**
+     * @return Overlay bytes copied on the CPU, bytes uploaded to the GPU and number of overlays set.
+     */
+    public native long[] EditShadersGetCompositingCopyStats();
+
+    /**
+     * Uploads a compositing overlay without intermediate copies, see
+     * {@link FrameHandler#setCompositingImage(ByteBuffer, int, int, int, float[], Runnable)}.
+     *
+     * @return False if nothing is rendering and onUploaded will not run.
+     */
+    public boolean setCompositingImage(ByteBuffer pixels, int width, int height, float[] transform, Runnable onUploaded) {
+        FrameHandler handler = this.frameHandler;
+        return handler != null && handler.setCompositingImage(pixels, width, height, width * 4, transform, onUploaded);
+    }
+
+    // parsed .cube LUTs, and the one the shader uses instead of the built-in LUT, null if none
+    private static final LutCache lutCache = new LutCache(Constants.LUT_CACHE_BYTES);
+    private static volatile CubeLut outputLut;
+
+    /**
+     * @param lut  size^3 RGB half floats in native order, red varying fastest.
+     */
+    public native int EditShadersSetLut(ByteBuffer lut, int size);
+
+    public native int EditShadersResetLut();
+
+    /**
+     * Replaces the built-in output LUT with a .cube 3D LUT for every preview and export from now
+     * on. A LUT loaded before is taken from the cache instead of being parsed again. Before the
+     * first video is opened the renderer does not exist yet, it takes the LUT once its shaders
+     * are initialised.
+     *
+     * @throws IOException if the stream fails or does not hold a supported .cube LUT.
+     */
+    public CubeLut loadCubeLut(InputStream in) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] chunk = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(chunk)) > 0) {
+            content.write(chunk, 0, read);
+        }
+
+        long start = System.nanoTime();
+        CubeLut lut = lutCache.load(content.toByteArray());
+        Log.d(TAG, "cube LUT \"" + lut.getTitle() + "\" " + lut.getSize() + " points in "
+                + (System.nanoTime() - start) / 1000 + " us, " + lutCache.getStats());
+
+        if (EditShadersSetLut(lut.getHalfData(), lut.getSize()) != 0) {
+            throw new IOException("LUT of " + lut.getSize() + " points not accepted by the renderer");
+        }
+        outputLut = lut;
+        FrameHandler handler = this.frameHandler;
+        if (handler != null) {
+            handler.setOutputLut(lut);
+        }
+        return lut;
+    }
+
+    /**
+     * Goes back to the built-in output LUT.
+     */
+    public void resetOutputLut() {
+        EditShadersResetLut();
+        outputLut = null;
+        FrameHandler handler = this.frameHandler;
+        if (handler != null) {
+            handler.setOutputLut(null);
+        }
+    }
+
+    public CubeLut getOutputLut() {
+        return outputLut;
+    }
+
+    /**
+     * @param directory Where linked shader programs are saved, empty to always compile them.
+     */
+    public native void EditShadersSetProgramCacheDir(String directory);
 
     public ContentLoader(MainActivity activity) {
         Log.v(TAG, "CTOR");
         this.activity = activity;
+        EditShadersSetProgramCacheDir(Constants.CACHE_PROGRAM_BINARIES ? activity.getCodeCacheDir().getAbsolutePath() : "");
     }
 
 
@@ -114,6 +341,9 @@ public class ContentLoader {
 //        this.frameHandler = new FrameHandler(true, sync, pipeline);
         this.pipeline = new ImagePipeline(inputSize, screenDim, screen, true, profile, encoderFormat);
         this.frameHandler = new FrameHandler(true, null, pipeline);
+        this.frameHandler.setEffectParameters(effectParameters);
+        this.frameHandler.setOverlayCompositor(overlayCompositor);
+        this.frameHandler.setOutputLut(outputLut);
 
         server = new BroadcastServer(this.activity);
         try {
@@ -193,8 +423,22 @@ public class ContentLoader {
         this.pipeline = new ImagePipeline(inputSize, outputSize, encoder.getInputSurface(), false, profile, encoderFormat);
 
         this.frameHandler = new FrameHandler(false, null, pipeline);    // sync is only used during preview
+        this.frameHandler.setEffectParameters(effectParameters);
+        this.frameHandler.setOverlayCompositor(overlayCompositor);
+        this.frameHandler.setOutputLut(outputLut);
+        if (!parameterAutomation.isEmpty()) {
+            long durationUs = getDurationUs(appContext, inputUri);
+            if (durationUs > 0) {
+                AutomationTable automation = parameterAutomation.bake(durationUs, inputFPS);
+                Log.d(TAG, "automation baked for " + automation.getFrameCount() + " frames");
+                this.frameHandler.setAutomation(automation);
+            } else {
+                Log.w(TAG, "no duration, effect parameter automation is not applied");
+            }
+        }
 
         encoder.setOnFrameCallback(frameHandler);
+        encoder.setStageLatency(frameHandler.getStageLatency());
 
         if (encoder != null) {
             new Thread(encoder).start();
@@ -258,7 +502,7 @@ public class ContentLoader {
 
     /*
      Helper method to create MediaMetadataRetriever.
-     Used by getResolution(), getRotation(), and getBitrate().
+     Used by getResolution(), getRotation(), getDurationUs(), and getBitrate().
      */
     private static MediaMetadataRetriever getRetriever(Context appContext, Uri inputUri) {
         MediaMetadataRetriever retriever = new MediaMetadataRetriever();
@@ -279,6 +523,36 @@ public class ContentLoader {
         return rotation;
     }
 
+    /**
+     * @return Duration from the container metadata, else from the video track format, or -1 if
+     * neither has one.
+     */
+    public static long getDurationUs(Context appContext, Uri inputUri) {
+        MediaMetadataRetriever retriever = getRetriever(appContext, inputUri);
+        String durationMs = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+        if (durationMs != null) {
+            try {
+                return Long.parseLong(durationMs) * 1000;
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "unreadable duration metadata " + durationMs);
+            }
+        }
+
+        MediaExtractor extractor = getExtractor(appContext, inputUri);
+        long durationUs = -1;
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat format = extractor.getTrackFormat(i);
+            String mimeType = format.getString(MediaFormat.KEY_MIME);
+            if (mimeType != null && mimeType.startsWith("video/") &&
+                    format.containsKey(MediaFormat.KEY_DURATION)) {
+                durationUs = format.getLong(MediaFormat.KEY_DURATION);
+                break;
+            }
+        }
+        extractor.release();
+        return durationUs;
+    }
+
     public static int getBitrate(Context appContext, Uri inputUri) {
         MediaMetadataRetriever retriever = getRetriever(appContext, inputUri);
         int bitrate = Integer.parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_BITRATE));
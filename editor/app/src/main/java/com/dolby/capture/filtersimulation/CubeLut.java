@@ -0,0 +1,499 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 3D LUT parsed from the text of a .cube file, as written by Resolve and most grading tools.
+ * The entries are kept as RGB half floats, red varying fastest, in a direct buffer that is
+ * uploaded to the output LUT texture as is. The parser works on the raw bytes and never builds
+ * strings for the data lines, a 65 point LUT has 274625 of them.
+ *
+ * {@link #sample} is the CPU reference of the LUT: tetrahedral interpolation between the entries,
+ * with inputs clamped to [0, 1].
+ */
+public final class CubeLut {
+
+    public static final int MIN_SIZE = 2;
+    public static final int MAX_SIZE = 256;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final int size;
+    private final String title;
+    private final long hash;
+    private final ByteBuffer bytes;
+    private final ShortBuffer data;
+
+    private CubeLut(int size, String title, long hash, ByteBuffer bytes) {
+        this.size = size;
+        this.title = title;
+        this.hash = hash;
+        this.bytes = bytes;
+        this.data = bytes.asShortBuffer();
+    }
+
+    /**
+     * Parses the content of a .cube file. Only 3D LUTs over the [0, 1] domain are supported.
+     *
+     * @throws IOException if the content is not such a LUT, with the line at fault.
+     */
+    public static CubeLut parse(byte[] content) throws IOException {
+        Parser parser = new Parser(content);
+        String title = "";
+        int size = 0;
+        int count = 0;
+        int total = 0;
+        ByteBuffer bytes = null;
+        ShortBuffer data = null;
+
+        while (parser.nextLine()) {
+            byte c = content[parser.pos];
+            if (isNumberStart(c)) {
+                if (data == null) {
+                    throw parser.error("data before LUT_3D_SIZE");
+                }
+                if (count == total) {
+                    throw parser.error("more than " + size + "^3 entries");
+                }
+                for (int i = 0; i < 3; i++) {
+                    data.put(count * 3 + i, floatToHalf(parser.nextFloat()));
+                }
+                count++;
+                parser.endLine();
+                continue;
+            }
+
+            String keyword = parser.nextWord();
+            switch (keyword) {
+                case "TITLE":
+                    title = parser.rest().replace("\"", "").trim();
+                    break;
+                case "LUT_3D_SIZE":
+                    if (data != null) {
+                        throw parser.error("LUT_3D_SIZE given twice");
+                    }
+                    size = (int) parser.nextFloat();
+                    if (size < MIN_SIZE || size > MAX_SIZE) {
+                        throw parser.error("unsupported LUT_3D_SIZE " + size);
+                    }
+                    total = size * size * size;
+                    bytes = ByteBuffer.allocateDirect(total * 3 * 2).order(ByteOrder.nativeOrder());
+                    data = bytes.asShortBuffer();
+                    parser.endLine();
+                    break;
+                case "DOMAIN_MIN":
+                case "DOMAIN_MAX":
+                    float expected = keyword.equals("DOMAIN_MIN") ? 0.0f : 1.0f;
+                    for (int i = 0; i < 3; i++) {
+                        if (parser.nextFloat() != expected) {
+                            throw parser.error(keyword + " other than " + expected + " is not supported");
+                        }
+                    }
+                    parser.endLine();
+                    break;
+                case "LUT_3D_INPUT_RANGE":
+                    if (parser.nextFloat() != 0.0f || parser.nextFloat() != 1.0f) {
+                        throw parser.error("LUT_3D_INPUT_RANGE other than 0 1 is not supported");
+                    }
+                    parser.endLine();
+                    break;
+                case "LUT_1D_SIZE":
+                case "LUT_1D_INPUT_RANGE":
+                    throw parser.error("1D LUTs are not supported");
+                default:
+                    // Vendor keywords, such as LUT_IN_VIDEO_RANGE, do not change the data
+                    parser.rest();
+                    break;
+            }
+        }
+
+        if (data == null) {
+            throw new IOException("No LUT_3D_SIZE in .cube file");
+        }
+        if (count != total) {
+            throw new IOException("LUT has " + count + " entries, LUT_3D_SIZE " + size + " needs " + total);
+        }
+        return new CubeLut(size, title, hash(content), bytes);
+    }
+
+    /**
+     * 64 bit FNV-1a hash of LUT file content, never 0.
+     */
+    public static long hash(byte[] content) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : content) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Hash of the file content the LUT was parsed from.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    public int getByteCount() {
+        return data.capacity() * 2;
+    }
+
+    /**
+     * Entries as size^3 * 3 half floats in native order, red varying fastest. The view is read
+     * only, the data is shared.
+     */
+    public ByteBuffer getHalfData() {
+        return bytes.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Component i of the entries, i = 3 * (r + size * (g + size * b)) + channel.
+     */
+    public float getValue(int i) {
+        return halfToFloat(data.get(i));
+    }
+
+    /**
+     * Entries as RGB floats, the layout the output LUT of {@link StaticColorLut} takes.
+     */
+    public float[] toFloatArray() {
+        float[] values = new float[data.capacity()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = halfToFloat(data.get(i));
+        }
+        return values;
+    }
+
+    /**
+     * Maps an RGB triple through the LUT with tetrahedral interpolation.
+     *
+     * @param out 3 floats, may be rgb.
+     */
+    public void sample(float r, float g, float b, float[] out) {
+        float max = size - 1;
+        float x = clamp(r) * max;
+        float y = clamp(g) * max;
+        float z = clamp(b) * max;
+        int x0 = Math.min((int) x, size - 2);
+        int y0 = Math.min((int) y, size - 2);
+        int z0 = Math.min((int) z, size - 2);
+        float fx = x - x0;
+        float fy = y - y0;
+        float fz = z - z0;
+
+        // Entries at the corners of the cell, indexed by the red, green and blue offsets
+        int c000 = ((z0 * size + y0) * size + x0) * 3;
+        int dx = 3;
+        int dy = size * 3;
+        int dz = size * size * 3;
+        int c111 = c000 + dx + dy + dz;
+
+        // Each ordering of the fractions selects one of six tetrahedra along the cell's diagonal
+        int a;
+        int b1;
+        float w0;
+        float w1;
+        float w2;
+        if (fx > fy) {
+            if (fy > fz) {
+                a = c000 + dx;
+                b1 = c000 + dx + dy;
+                w0 = fx; w1 = fy; w2 = fz;
+            } else if (fx > fz) {
+                a = c000 + dx;
+                b1 = c000 + dx + dz;
+                w0 = fx; w1 = fz; w2 = fy;
+            } else {
+                a = c000 + dz;
+                b1 = c000 + dx + dz;
+                w0 = fz; w1 = fx; w2 = fy;
+            }
+        } else {
+            if (fz > fy) {
+                a = c000 + dz;
+                b1 = c000 + dy + dz;
+                w0 = fz; w1 = fy; w2 = fx;
+            } else if (fz > fx) {
+                a = c000 + dy;
+                b1 = c000 + dy + dz;
+                w0 = fy; w1 = fz; w2 = fx;
+            } else {
+                a = c000 + dy;
+                b1 = c000 + dx + dy;
+                w0 = fy; w1 = fx; w2 = fz;
+            }
+        }
+        for (int i = 0; i < 3; i++) {
+            float v000 = getValue(c000 + i);
+            float va = getValue(a + i);
+            float vb = getValue(b1 + i);
+            float v111 = getValue(c111 + i);
+            out[i] = v000 + w0 * (va - v000) + w1 * (vb - va) + w2 * (v111 - vb);
+        }
+    }
+
+    private static float clamp(float v) {
+        return v > 0.0f ? (v < 1.0f ? v : 1.0f) : 0.0f;
+    }
+
+    private static boolean isNumberStart(byte c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+    }
+
+    /**
+     * IEEE 754 half float closest to v, rounding ties to even. Values beyond the half range
+     * become infinities.
+     */
+    public static short floatToHalf(float v) {
+        int bits = Float.floatToRawIntBits(v);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+
+        if (exponent == 0xff) {
+            // Infinity or NaN, NaN keeps a mantissa bit
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+        if (halfExponent <= 0) {
+            // Subnormal half or zero
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = (halfExponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1fff;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            // May carry into the exponent, up to infinity, which is the right result
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    public static float halfToFloat(short h) {
+        int bits = h & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            // Zero or subnormal, 2^-24 per step
+            float value = mantissa * 5.9604645e-8f;
+            return sign != 0 ? -value : value;
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * Line oriented tokenizer over the file bytes.
+     */
+    private static final class Parser {
+        private final byte[] content;
+        private int pos = 0;
+        private int line = 1;
+
+        Parser(byte[] content) {
+            this.content = content;
+        }
+
+        /**
+         * Moves to the first token of the next line that is not blank or a comment.
+         */
+        boolean nextLine() {
+            while (true) {
+                skipSpaces();
+                if (pos >= content.length) {
+                    return false;
+                }
+                byte c = content[pos];
+                if (c == '\n') {
+                    pos++;
+                    line++;
+                } else if (c == '#') {
+                    skipToEndOfLine();
+                } else {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Expects nothing but a comment up to the end of the line.
+         */
+        void endLine() throws IOException {
+            skipSpaces();
+            if (pos < content.length && content[pos] != '\n' && content[pos] != '#') {
+                throw error("unexpected " + rest());
+            }
+            skipToEndOfLine();
+        }
+
+        String nextWord() {
+            int start = pos;
+            while (pos < content.length && !isSpace(content[pos]) && content[pos] != '\n') {
+                pos++;
+            }
+            return new String(content, start, pos - start, StandardCharsets.US_ASCII);
+        }
+
+        /**
+         * Remainder of the line, the line is consumed.
+         */
+        String rest() {
+            skipSpaces();
+            int start = pos;
+            skipToEndOfLine();
+            int end = pos;
+            while (end > start && (content[end - 1] == '\n' || content[end - 1] == '\r')) {
+                end--;
+            }
+            return new String(content, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        float nextFloat() throws IOException {
+            skipSpaces();
+            int start = pos;
+            boolean negative = false;
+            if (pos < content.length && (content[pos] == '-' || content[pos] == '+')) {
+                negative = content[pos] == '-';
+                pos++;
+            }
+            long mantissa = 0;
+            int exponent = 0;
+            int digits = 0;
+            boolean fraction = false;
+            for (; pos < content.length; pos++) {
+                byte c = content[pos];
+                if (c >= '0' && c <= '9') {
+                    if (mantissa < 100000000000000000L) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        if (fraction) {
+                            exponent--;
+                        }
+                    } else if (!fraction) {
+                        // Digits beyond what a long holds only scale the value
+                        exponent++;
+                    }
+                    digits++;
+                } else if (c == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    break;
+                }
+            }
+            if (digits == 0) {
+                pos = start;
+                throw error("number expected, found " + rest());
+            }
+            if (pos < content.length && (content[pos] == 'e' || content[pos] == 'E')) {
+                pos++;
+                boolean negativeExponent = false;
+                if (pos < content.length && (content[pos] == '-' || content[pos] == '+')) {
+                    negativeExponent = content[pos] == '-';
+                    pos++;
+                }
+                int value = 0;
+                int exponentDigits = 0;
+                for (; pos < content.length && content[pos] >= '0' && content[pos] <= '9'; pos++) {
+                    value = Math.min(value * 10 + (content[pos] - '0'), 1000);
+                    exponentDigits++;
+                }
+                if (exponentDigits == 0) {
+                    throw error("bad exponent");
+                }
+                exponent += negativeExponent ? -value : value;
+            }
+            if (pos < content.length && !isSpace(content[pos]) && content[pos] != '\n' && content[pos] != '#') {
+                pos = start;
+                throw error("number expected, found " + rest());
+            }
+            double value = mantissa;
+            if (exponent < 0) {
+                value = -exponent < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[-exponent] : value * Math.pow(10, exponent);
+            } else if (exponent > 0) {
+                value = exponent < POWERS_OF_TEN.length ? value * POWERS_OF_TEN[exponent] : value * Math.pow(10, exponent);
+            }
+            return (float) (negative ? -value : value);
+        }
+
+        IOException error(String message) {
+            return new IOException(".cube line " + line + ": " + message);
+        }
+
+        private void skipSpaces() {
+            while (pos < content.length && isSpace(content[pos])) {
+                pos++;
+            }
+        }
+
+        private void skipToEndOfLine() {
+            while (pos < content.length && content[pos] != '\n') {
+                pos++;
+            }
+        }
+
+        private static boolean isSpace(byte c) {
+            return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Worker thread that only runs the latest request of a burst, for UI edits that arrive faster
+ * than they can be rendered. A request starts once no newer one came in for the debounce delay;
+ * requests replaced before they start are dropped, and a running task can poll its cancelled
+ * flag to give up as soon as a newer request is submitted.
+ */
+public class DebouncedWorker<T> {
+
+    public interface Task<T> {
+        /**
+         * @param cancelled True once a newer request was submitted.
+         * @return False if the task gave up because it was cancelled.
+         */
+        boolean run(T request, BooleanSupplier cancelled);
+    }
+
+    private final Object lock = new Object();
+    private final Thread thread;
+    private final Task<T> task;
+    private final long debounceNs;
+
+    private T pending;
+    // bumped by every submit, a task whose generation is behind has been cancelled
+    private long generation = 0;
+    private long lastSubmitNs;
+    private boolean running = true;
+
+    private long submitted = 0;
+    private long coalesced = 0;
+    private long completed = 0;
+    private long cancelled = 0;
+
+    public DebouncedWorker(String name, long debounceNs, Task<T> task) {
+        this.task = task;
+        this.debounceNs = debounceNs;
+        this.thread = new Thread(this::loop, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Replaces any request that has not started yet.
+     *
+     * @return False after shutdown.
+     */
+    public boolean submit(T request) {
+        synchronized (lock) {
+            if (!running) {
+                return false;
+            }
+            if (pending != null) {
+                coalesced++;
+            }
+            pending = request;
+            generation++;
+            submitted++;
+            lastSubmitNs = System.nanoTime();
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Drops the pending request, cancels the running one and waits for the thread to end.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            running = false;
+            pending = null;
+            generation++;
+            lock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void loop() {
+        while (true) {
+            T request;
+            long requestGeneration;
+            synchronized (lock) {
+                try {
+                    while (running && pending == null) {
+                        lock.wait();
+                    }
+                    if (!running) {
+                        return;
+                    }
+                    long waitNs = lastSubmitNs + debounceNs - System.nanoTime();
+                    if (waitNs > 0) {
+                        lock.wait(waitNs / 1_000_000, (int) (waitNs % 1_000_000));
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                request = pending;
+                pending = null;
+                requestGeneration = generation;
+            }
+
+            boolean done = task.run(request, () -> isCancelled(requestGeneration));
+            synchronized (lock) {
+                if (done) {
+                    completed++;
+                } else {
+                    cancelled++;
+                }
+            }
+        }
+    }
+
+    private boolean isCancelled(long requestGeneration) {
+        synchronized (lock) {
+            return generation != requestGeneration;
+        }
+    }
+
+    public String getStats() {
+        synchronized (lock) {
+            return "submitted=" + submitted + ", coalesced=" + coalesced + ", completed=" + completed
+                    + ", cancelled=" + cancelled;
+        }
+    }
+
+    public long getSubmittedCount() {
+        synchronized (lock) {
+            return submitted;
+        }
+    }
+
+    public long getCoalescedCount() {
+        synchronized (lock) {
+            return coalesced;
+        }
+    }
+
+    public long getCompletedCount() {
+        synchronized (lock) {
+            return completed;
+        }
+    }
+
+    public long getCancelledCount() {
+        synchronized (lock) {
+            return cancelled;
+        }
+    }
+}
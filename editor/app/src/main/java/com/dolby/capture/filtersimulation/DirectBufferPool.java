@@ -0,0 +1,116 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Pool of direct buffers, so overlays of similar size do not allocate a new native buffer each
+ * time. The smallest free buffer that is large enough is handed out; at most maxBuffers are kept,
+ * the smallest one is dropped first.
+ */
+public class DirectBufferPool {
+
+    private final int maxBuffers;
+    private final ArrayList<ByteBuffer> free = new ArrayList<>();
+    private long allocated = 0;
+    private long reused = 0;
+
+    public DirectBufferPool(int maxBuffers) {
+        this.maxBuffers = maxBuffers;
+    }
+
+    /**
+     * @return Cleared direct buffer with its limit at the given size.
+     */
+    public synchronized ByteBuffer acquire(int size) {
+        int best = -1;
+        for (int i = 0; i < free.size(); i++) {
+            int capacity = free.get(i).capacity();
+            if (capacity >= size && (best < 0 || capacity < free.get(best).capacity())) {
+                best = i;
+            }
+        }
+        ByteBuffer buffer;
+        if (best >= 0) {
+            buffer = free.remove(best);
+            reused++;
+        } else {
+            buffer = ByteBuffer.allocateDirect(size);
+            allocated++;
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer nobody reads or writes anymore.
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        // ByteBuffer.equals compares contents, look for this very buffer
+        for (ByteBuffer pooled : free) {
+            if (pooled == buffer) {
+                return;
+            }
+        }
+        if (free.size() >= maxBuffers) {
+            int smallest = 0;
+            for (int i = 1; i < free.size(); i++) {
+                if (free.get(i).capacity() < free.get(smallest).capacity()) {
+                    smallest = i;
+                }
+            }
+            if (free.get(smallest).capacity() >= buffer.capacity()) {
+                return;
+            }
+            free.remove(smallest);
+        }
+        free.add(buffer);
+    }
+
+    public synchronized int getFreeCount() {
+        return free.size();
+    }
+
+    public synchronized long getAllocatedCount() {
+        return allocated;
+    }
+
+    public synchronized long getReusedCount() {
+        return reused;
+    }
+}
@@ -0,0 +1,148 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Java copy of the effect parameters in the shader uniform block. The UI stages any number of
+ * values with {@link #set} and makes them visible with a single {@link #publish}, so a filter
+ * made of several parameters is never seen half applied. The render thread picks up the latest
+ * published snapshot once per frame with {@link #acquire} and passes it to native code in one call.
+ *
+ * Snapshots are kept in direct FloatBuffers in native byte order. The writer fills a back buffer
+ * and swaps it with a spare slot; the reader swaps its front buffer with the spare slot when a
+ * newer snapshot is there. Neither side ever waits for the other.
+ */
+public class EffectParameterBlock {
+
+    public static final int COUNT = EffectParameters.PARAMETER_COUNT.ordinal();
+
+    // set in the spare slot index when it holds a snapshot the reader has not taken yet
+    private static final int FRESH = 4;
+
+    private final float[] staging = new float[COUNT];
+
+    // parameters that were ever set from Java, the others keep their native values
+    private long stagingMask = 0;
+
+    private final FloatBuffer[] buffers = new FloatBuffer[3];
+
+    private final long[] masks = new long[3];
+
+    private final long[] versions = new long[3];
+
+    // slot the writer fills, only used under the writer lock
+    private int back = 0;
+
+    // slot the reader uses, only used by the render thread
+    private int front = 1;
+
+    private final AtomicInteger spare = new AtomicInteger(2);
+
+    private long version = 0;
+
+    public EffectParameterBlock() {
+        if (COUNT > 64) {
+            throw new IllegalStateException("parameter mask holds 64 parameters");
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(COUNT * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+    }
+
+    /**
+     * Stages a value. It is not seen by the render thread before {@link #publish()}.
+     */
+    public synchronized void set(EffectParameters parameter, float value) {
+        int index = parameter.ordinal();
+        if (index >= COUNT) {
+            throw new IllegalArgumentException("not a uniform block parameter: " + parameter);
+        }
+        staging[index] = value;
+        stagingMask |= 1L << index;
+    }
+
+    public synchronized float get(EffectParameters parameter) {
+        return staging[parameter.ordinal()];
+    }
+
+    /**
+     * Makes all staged values visible to the render thread as one snapshot.
+     */
+    public synchronized void publish() {
+        FloatBuffer buffer = buffers[back];
+        buffer.clear();
+        buffer.put(staging);
+        buffer.flip();
+        masks[back] = stagingMask;
+        versions[back] = ++version;
+        back = spare.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Takes the latest published snapshot, if any. Must only be called from the render thread.
+     *
+     * @return True if the snapshot changed since the last call.
+     */
+    public boolean acquire() {
+        if ((spare.get() & FRESH) == 0) {
+            return false;
+        }
+        front = spare.getAndSet(front) & ~FRESH;
+        return true;
+    }
+
+    /**
+     * @return Values of the acquired snapshot, indexed by {@link EffectParameters#ordinal()}.
+     */
+    public FloatBuffer getValues() {
+        return buffers[front];
+    }
+
+    /**
+     * @return Bit i is set if parameter i was set from Java in the acquired snapshot.
+     */
+    public long getMask() {
+        return masks[front];
+    }
+
+    /**
+     * @return Version of the acquired snapshot, 0 before the first one.
+     */
+    public long getVersion() {
+        return versions[front];
+    }
+}
@@ -0,0 +1,203 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+/**
+ * Tracks the frames queued to the encoder until it returns them, each holding a slot of the
+ * encode window. Frames are matched by presentation time, encoders with B-frames or lookahead
+ * return them out of queue order.
+ * A frame the encoder never returns is counted lost and its slot freed once more than
+ * {@link #LOST_FRAME_REORDER_LIMIT} frames queued after it came back, or once the window has been
+ * full for the stall timeout without any frame coming back. The window is usually shallower than
+ * the reorder limit, so without the timeout a few lost frames would hold every slot and stall the
+ * export.
+ * Frames are queued on one thread and returned on another, the thread acquiring slots retires
+ * stalled frames, so retiring is synchronized.
+ */
+public class EncodeTracker {
+
+    /** Returned by {@link #encoded} when the frame is not tracked. */
+    public static final long MISSING = TimestampMap.MISSING;
+
+    // frames are counted lost once this many frames queued after them came back from the encoder
+    public static final int LOST_FRAME_REORDER_LIMIT = 16;
+
+    public interface Listener {
+        /**
+         * Called on the thread that found the frame lost.
+         *
+         * @param stalled True if the window was full for the stall timeout, false if later frames
+         *                came back without it.
+         */
+        void onFrameLost(long timestamp, long lostCount, boolean stalled);
+    }
+
+    private final InFlightWindow window;
+
+    private final long stallTimeoutMs;
+
+    private final Listener listener;
+
+    // timestamps of frames queued to the encoder, in queue order, kept until older frames are resolved
+    private final TimestampRing order = new TimestampRing(LOST_FRAME_REORDER_LIMIT + 2 * ImagePipeline.MAX_IMAGES);
+
+    // timestamp of each frame queued to the encoder -> when it was queued
+    private final TimestampMap pending = new TimestampMap(2 * ImagePipeline.MAX_IMAGES);
+
+    // frames encoded, lost or untracked again
+    private long resolved = 0;
+    // entries taken off the order ring
+    private long retired = 0;
+    private long lost = 0;
+    private long stalls = 0;
+
+    /**
+     * @param stallTimeoutMs How long the window may stay full without a frame coming back before
+     *                       the oldest queued frame is counted lost.
+     * @param listener       May be null.
+     */
+    public EncodeTracker(InFlightWindow window, long stallTimeoutMs, Listener listener) {
+        this.window = window;
+        this.stallTimeoutMs = stallTimeoutMs;
+        this.listener = listener;
+    }
+
+    /**
+     * Takes a window slot for the next frame, blocking while the window is full. Each time no slot
+     * frees up for the stall timeout the oldest frame still queued to the encoder is counted lost.
+     *
+     * @return False if the window was released for shutdown.
+     */
+    public boolean acquire() throws InterruptedException {
+        while (!window.tryAcquire(stallTimeoutMs)) {
+            if (window.isReleased()) {
+                return false;
+            }
+            synchronized (this) {
+                stalls++;
+            }
+            retire(true);
+        }
+        return true;
+    }
+
+    /**
+     * Starts tracking a frame that holds a window slot and was handed to the encoder. Must only be
+     * called from one thread.
+     *
+     * @return False if the frame could not be tracked, the caller releases its slot.
+     */
+    public boolean queued(long timestamp, long queuedNs) {
+        if (!pending.put(timestamp, queuedNs)) {
+            return false;
+        }
+        // a frame missing from the order still matches when it comes back, it just can't be found lost
+        order.offer(timestamp);
+        return true;
+    }
+
+    /**
+     * Stops tracking a frame the encoder did not take. The caller releases its slot.
+     */
+    public void untrack(long timestamp) {
+        if (pending.remove(timestamp) != TimestampMap.MISSING) {
+            synchronized (this) {
+                resolved++;
+            }
+        }
+    }
+
+    /**
+     * A frame came back from the encoder, its slot is released.
+     *
+     * @return When the frame was queued, or {@link #MISSING} if it is not tracked.
+     */
+    public long encoded(long timestamp) {
+        long queuedNs = pending.remove(timestamp);
+        if (queuedNs == TimestampMap.MISSING) {
+            return MISSING;
+        }
+        synchronized (this) {
+            resolved++;
+        }
+        window.release();
+        retire(false);
+        return queuedNs;
+    }
+
+    /**
+     * Drops the oldest queued frames once too many later frames have come back without them, or
+     * the oldest one if the window stalled.
+     */
+    private synchronized void retire(boolean stalled) {
+        long head;
+        while ((head = order.peek()) != TimestampRing.EMPTY) {
+            if (pending.contains(head)) {
+                // frames queued after head that were already resolved
+                long resolvedAfter = resolved - retired;
+                if (!stalled && resolvedAfter <= LOST_FRAME_REORDER_LIMIT) {
+                    return;
+                }
+                if (pending.remove(head) != TimestampMap.MISSING) {
+                    resolved++;
+                    lost++;
+                    window.release();
+                    if (listener != null) {
+                        listener.onFrameLost(head, lost, stalled);
+                    }
+                }
+                stalled = false;
+            }
+            order.poll();
+            retired++;
+        }
+    }
+
+    /**
+     * Frames still queued to the encoder.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized long getLostCount() {
+        return lost;
+    }
+
+    public synchronized long getStallCount() {
+        return stalls;
+    }
+
+    public void clear() {
+        pending.clear();
+    }
+}
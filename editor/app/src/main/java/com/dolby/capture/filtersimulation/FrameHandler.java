@@ -37,7 +37,9 @@ import android.media.ImageWriter;
 import android.media.MediaCodec;
 import android.util.Log;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.concurrent.Semaphore;
 
 public class FrameHandler implements VideoCallback, OnFrameEncoded{
@@ -46,12 +48,52 @@ public class FrameHandler implements VideoCallback, OnFrameEncoded{
     private ImageWriter writer;
     private boolean preview;
     private CodecSynchro sync;
-    private ConcurrentLinkedQueue<Long> buffers;
-    private Semaphore bufferLock = new Semaphore(1);
-    private Semaphore dowait = new Semaphore(10);
-    private static int totalEncodeTime = 0;
+    private long encodedFrames = 0;
+    private long reorderedFrames = 0;
+    private long lastEncodedPts = Long.MIN_VALUE;
+    private long totalEncodeLatencyNs = 0;
+    private long maxEncodeLatencyNs = 0;
+    private final InFlightWindow encodeWindow;
+    // frames queued to the encoder until it returns them, or they are found lost
+    private final EncodeTracker encodeTracker;
+    // per-frame latency between pipeline stages, only recorded for exports
+    private final StageLatency stageLatency = new StageLatency(4 * ImagePipeline.MAX_IMAGES);
     private static final String TAG = "FrameHandler";
     private boolean isFirstFrameEncodeDone = false;
+    // GPU work is submitted from here, the ImageReader thread only hands frames over
+    private final GpuRenderThread<Frame> renderThread;
+    // upper bound for a fence wait before the frame is dropped
+    private static final long FENCE_TIMEOUT_NS = 1_000_000_000L;
+    // called once for every image passed to onFrameAvailable, when the GPU is done with it
+    private Runnable onFrameDone;
+    // effect parameters, the latest snapshot is applied before each frame
+    private volatile EffectParameterBlock effectParameters;
+    // per-frame values of the automated parameters, laid over the effect parameters
+    private volatile AutomationTable automation;
+    // overlay layers, the ones visible at a frame are handed to the edit shader before it renders
+    private volatile OverlayCompositor overlayCompositor;
+    // time from an overlay edit to the first frame rendered with it
+    private final LatencyHistogram overlayLatency = new LatencyHistogram();
+    // edit time of the last uploaded overlay layer, 0 once recorded, only used on the render thread
+    private long overlayEditNs = 0;
+    // bake the static colour chain into one LUT, see StaticColorLut
+    private volatile boolean staticLutBaking = Constants.BAKE_STATIC_COLOR_LUT;
+    // created by the render thread once a LUT is needed
+    private StaticLutBaker staticLutBaker;
+    // .cube LUT the shader uses as output LUT, null for the built-in one
+    private volatile CubeLut outputLut;
+    // hits, misses, evictions and size of the native EGLImage cache when the render thread stopped
+    private long[] bufferCacheStats = new long[4];
+    // compile times and hit rate of the specialized edit shaders when the render thread stopped
+    private String shaderVariantReport = "";
+    // program binary loads, misses, rejects and saves when the render thread stopped
+    private long[] programCacheStats = new long[4];
+    // time to first processed frame, from construction to the first frame queued to the writer
+    private final long createdNs = System.nanoTime();
+    private volatile long timeToFirstFrameNs = -1;
+    private volatile long shaderInitNs = -1;
+    // GPU time of the passes per frame, recorded on the render thread
+    private final GpuFrameTimes gpuTimes = new GpuFrameTimes();
     private Semaphore waitFirstFrameEncodeDone = new Semaphore(5);
 
     enum FrameHandlerState {
@@ -63,16 +105,52 @@ public class FrameHandler implements VideoCallback, OnFrameEncoded{
     private FrameHandlerState handlerState;
 
     public FrameHandler(boolean preview, CodecSynchro sync, ImagePipeline pipeline)
+    {
+        this(preview, sync, pipeline, Constants.IN_FLIGHT_DEPTH);
+    }
+
+    /**
+     * @param inFlightDepth Number of frames that may be in flight between decoder output, GPU
+     *                      processing and the encoder, bounded by ImagePipeline.MAX_IMAGES.
+     *                      1 runs the stages in lockstep.
+     */
+    public FrameHandler(boolean preview, CodecSynchro sync, ImagePipeline pipeline, int inFlightDepth)
     {
         this.preview = preview;
+        this.encodeWindow = new InFlightWindow(inFlightDepth);
+        this.encodeTracker = new EncodeTracker(encodeWindow, Constants.ENCODE_STALL_TIMEOUT_MS,
+                (timestamp, lostCount, stalled) -> Log.w(TAG, "frame " + timestamp / 1000
+                        + " was not returned by the encoder" + (stalled ? " before the stall timeout, " : ", ")
+                        + lostCount + " lost"));
+        this.stageLatency.setEnabled(!preview);
         this.sync = sync;
         this.pipeline = pipeline;
 
         this.writer = this.pipeline.getImageWriter();
 
-        buffers = new ConcurrentLinkedQueue<Long>();
-
         handlerState = FrameHandlerState.INITIALIZED;
+
+        this.renderThread = new GpuRenderThread<>("gpuRender", new FrameRenderer(), Constants.GPU_FRAMES_IN_FLIGHT);
+        this.renderThread.start();
+    }
+
+    /**
+     * Decoded image and the ImageWriter image it is rendered to.
+     */
+    private static final class Frame {
+        final Image input;
+        final HardwareBuffer inputBuffer;
+        final Image output;
+        final HardwareBuffer outputBuffer;
+        final long pts;
+
+        Frame(Image input, HardwareBuffer inputBuffer, Image output, HardwareBuffer outputBuffer, long pts) {
+            this.input = input;
+            this.inputBuffer = inputBuffer;
+            this.output = output;
+            this.outputBuffer = outputBuffer;
+            this.pts = pts;
+        }
     }
 
     public void release()
@@ -82,17 +160,38 @@ public class FrameHandler implements VideoCallback, OnFrameEncoded{
             this.sync.release();
         }
 
-        if (bufferLock != null && bufferLock.getQueueLength() > 0) {
-            int queueLen = bufferLock.getQueueLength();
-            bufferLock.release(queueLen);
-            bufferLock = null;
+        // waits for frames still on the GPU and gives up the EGL context
+        renderThread.shutdown();
+        Log.d(TAG, "render thread " + renderThread.getStats());
+        if (staticLutBaker != null) {
+            staticLutBaker.release();
+            Log.d(TAG, "static colour LUT " + staticLutBaker.getStats());
+        }
+        Log.d(TAG, "buffer cache hits=" + bufferCacheStats[0] + ", misses=" + bufferCacheStats[1]
+                + ", evictions=" + bufferCacheStats[2] + ", cached=" + bufferCacheStats[3]);
+        Log.d(TAG, "shader " + shaderVariantReport);
+        Log.d(TAG, "gpu " + gpuTimes.getStats());
+        Log.d(TAG, "program binaries loaded=" + programCacheStats[0] + ", missed=" + programCacheStats[1]
+                + ", rejected=" + programCacheStats[2] + ", saved=" + programCacheStats[3]);
+        if (overlayLatency.getCount() > 0) {
+            Log.d(TAG, "overlay edit to frame " + overlayLatency.getStats());
         }
 
-        if (dowait != null && dowait.getQueueLength() > 0) {
-            int queueLen = dowait.getQueueLength();
-            dowait.release(queueLen);
-            dowait = null;
+        encodeWindow.releaseAll();
+        if (!preview) {
+            Log.d(TAG, "encode window " + encodeWindow.getStats());
+            Log.d(TAG, "encoded " + encodedFrames + " frames, reordered " + reorderedFrames
+                    + ", lost " + encodeTracker.getLostCount() + ", stalls " + encodeTracker.getStallCount()
+                    + ", encode latency avg "
+                    + (encodedFrames > 0 ? totalEncodeLatencyNs / encodedFrames / 1000 : 0)
+                    + "us max " + maxEncodeLatencyNs / 1000 + "us");
+            int missing = encodeTracker.getPendingCount();
+            if (missing > 0) {
+                Log.w(TAG, missing + " frames never returned by the encoder");
+            }
+            Log.d(TAG, "stage latency\n" + stageLatency.getStats());
         }
+        encodeTracker.clear();
 
         isFirstFrameEncodeDone = false;
         waitFirstFrameEncodeDone.release(waitFirstFrameEncodeDone.getQueueLength());
@@ -106,79 +205,568 @@ public class FrameHandler implements VideoCallback, OnFrameEncoded{
         handlerState = status;
     }
 
-    public native int processFrame(HardwareBuffer inbuf, HardwareBuffer opbuf);
+    public int getInFlightDepth() {
+        return encodeWindow.getDepth();
+    }
+
+    /**
+     * @return Time from an overlay edit to the first frame rendered with it.
+     */
+    public LatencyHistogram getOverlayLatency() {
+        return overlayLatency;
+    }
+
+    public StageLatency getStageLatency() {
+        return stageLatency;
+    }
+
+    /**
+     * @return Hits, misses, evictions and size of the native cache of EGLImage/texture/FBO
+     * bindings per hardware buffer, as of when the render thread stopped.
+     */
+    public long[] getBufferCacheStats() {
+        return bufferCacheStats.clone();
+    }
+
+    /**
+     * @return Compile time and frames of each specialized edit shader variant, and how many frames
+     * had to use the generic shader, as of when the render thread stopped.
+     */
+    public String getShaderVariantReport() {
+        return shaderVariantReport;
+    }
+
+    /**
+     * @return GPU time per frame of the compute and render passes. Filled in by the render
+     * thread a few frames behind the frames it renders.
+     */
+    public GpuFrameTimes getGpuTimes() {
+        return gpuTimes;
+    }
+
+    /**
+     * Called on the render thread with the time the edit shader took to set up, most of it
+     * compiling or loading the program.
+     */
+    public void setShaderInitTime(long ns) {
+        this.shaderInitNs = ns;
+    }
+
+    /**
+     * @return Milliseconds from this handler's creation until its first frame was processed, -1
+     * while there was none. Includes opening the codecs, decoding and setting up the shader.
+     */
+    public double getTimeToFirstFrameMs() {
+        long ns = timeToFirstFrameNs;
+        return ns < 0 ? -1 : ns / 1e6;
+    }
+
+    /**
+     * @return Milliseconds the edit shader took to set up, -1 if it was not set up yet.
+     */
+    public double getShaderInitMs() {
+        long ns = shaderInitNs;
+        return ns < 0 ? -1 : ns / 1e6;
+    }
+
+    /**
+     * @return Edit shader programs created from saved binaries, not found, refused by the driver
+     * and saved, as of when the render thread stopped.
+     */
+    public long[] getProgramCacheStats() {
+        return programCacheStats.clone();
+    }
+
+    public void setEffectParameters(EffectParameterBlock effectParameters) {
+        this.effectParameters = effectParameters;
+    }
+
+    /**
+     * Sets the automated parameter values for the frames to come, null stops automation. Frame
+     * times are counted from the first frame rendered after this call.
+     */
+    public void setAutomation(AutomationTable automation) {
+        this.automation = automation;
+    }
+
+    public void setOverlayCompositor(OverlayCompositor overlayCompositor) {
+        this.overlayCompositor = overlayCompositor;
+    }
+
+    /**
+     * While enabled, static colour edits and the output LUT are baked into one 3D LUT that the
+     * shader samples instead of evaluating them per pixel.
+     */
+    public void setStaticLutBaking(boolean enabled) {
+        this.staticLutBaking = enabled;
+    }
+
+    /**
+     * Tells the renderer which output LUT the shader was given, see ContentLoader.loadCubeLut.
+     *
+     * @param lut Loaded LUT, null for the built-in one.
+     */
+    public void setOutputLut(CubeLut lut) {
+        this.outputLut = lut;
+    }
+
+    public void setOnFrameDone(Runnable onFrameDone) {
+        this.onFrameDone = onFrameDone;
+    }
+
+    /**
+     * Runs GL work on the render thread, which owns the EGL context, ahead of frames that are not
+     * submitted yet.
+     */
+    public boolean runOnRenderThread(Runnable task) {
+        return renderThread.post(task);
+    }
+
+    /**
+     * Uploads a compositing overlay on the render thread, read in place from a direct buffer of
+     * RGBA pixels. The buffer must not be written before onUploaded has run.
+     *
+     * @param transform   Placement of the overlay, see {@link OverlayTransform}.
+     * @param onUploaded  Called on the render thread once the pixels have been read, may be null.
+     * @return False if the render thread is shut down and onUploaded will not run.
+     */
+    public boolean setCompositingImage(ByteBuffer pixels, int width, int height, int rowBytes, float[] transform, Runnable onUploaded) {
+        if (!pixels.isDirect()) {
+            throw new IllegalArgumentException("compositing pixels must be in a direct buffer");
+        }
+        return renderThread.post(() -> {
+            if (uploadCompositingBuffer(pixels, width, height, rowBytes, transform) != 0) {
+                Log.w(TAG, "compositing upload of " + width + "x" + height + " failed");
+            }
+            if (onUploaded != null) {
+                onUploaded.run();
+            }
+        });
+    }
+
+    /**
+     * Uploads a layer of the overlay compositor to its atlas slot on the render thread, read in
+     * place from a direct buffer of width * height RGBA pixels. The layer is shown from the next
+     * frame on. The buffer must not be written before onUploaded has run.
+     *
+     * @param editNs System.nanoTime() of the edit the pixels come from, 0 if not measured.
+     * @return False if the render thread is shut down and onUploaded will not run.
+     */
+    public boolean setCompositingLayer(ByteBuffer pixels, OverlayCompositor.Upload upload, long editNs, Runnable onUploaded) {
+        if (!pixels.isDirect()) {
+            throw new IllegalArgumentException("compositing pixels must be in a direct buffer");
+        }
+        return renderThread.post(() -> {
+            OverlayCompositor compositor = overlayCompositor;
+            if (uploadCompositingRegion(pixels, upload.atlasWidth, upload.atlasHeight,
+                    upload.x, upload.y, upload.width, upload.height, upload.width * 4) != 0) {
+                Log.w(TAG, "upload of compositing layer " + upload.id + " failed");
+            } else if (compositor != null && compositor.markUploaded(upload.id, upload.generation) && editNs != 0) {
+                overlayEditNs = editNs;
+            }
+            if (onUploaded != null) {
+                onUploaded.run();
+            }
+        });
+    }
+
+    /**
+     * Uploads a compositing overlay on the render thread, read in place from a CPU readable
+     * RGBA_8888 hardware buffer. The buffer must not be written before onUploaded has run.
+     *
+     * @see #setCompositingImage(ByteBuffer, int, int, int, float[], Runnable)
+     */
+    public boolean setCompositingImage(HardwareBuffer buffer, float[] transform, Runnable onUploaded) {
+        return renderThread.post(() -> {
+            if (uploadCompositingHardwareBuffer(buffer, transform) != 0) {
+                Log.w(TAG, "compositing upload of " + buffer.getWidth() + "x" + buffer.getHeight() + " failed");
+            }
+            if (onUploaded != null) {
+                onUploaded.run();
+            }
+        });
+    }
+
+    /**
+     * Renders the input to the output and returns a fence for the GPU work, 0 if the frame was
+     * finished synchronously. Must be called on the render thread.
+     */
+    private native long submitFrame(HardwareBuffer inbuf, HardwareBuffer opbuf);
+
+    /**
+     * Waits for and deletes a fence returned by submitFrame.
+     * @return 0 once the fence has signalled, -1 on timeout or error.
+     */
+    private native int waitFence(long fence, long timeoutNs);
+
+    /**
+     * Writes a parameter snapshot to the shader uniform block. Native code skips a version it
+     * has already applied.
+     * @param values Direct buffer indexed by EffectParameters ordinal.
+     * @param mask   Bit i set if parameter i is to be written.
+     */
+    private native int applyParameters(FloatBuffer values, long mask, long version);
+
+    /**
+     * Uploads the overlay straight from the direct buffer to the compositing texture.
+     */
+    private native int uploadCompositingBuffer(ByteBuffer pixels, int width, int height, int rowBytes, float[] transform);
+
+    /**
+     * Uploads the overlay straight from the locked hardware buffer to the compositing texture.
+     */
+    private native int uploadCompositingHardwareBuffer(HardwareBuffer buffer, float[] transform);
+
+    /**
+     * Writes pixels to a region of the overlay atlas, which is (re)allocated at the given size.
+     */
+    private native int uploadCompositingRegion(ByteBuffer pixels, int atlasWidth, int atlasHeight, int x, int y, int width, int height, int rowBytes);
+
+    /**
+     * Sets the overlay layers the edit shader blends, see {@link OverlayCompositor#fillLayerTable}.
+     */
+    private native int applyCompositingLayers(float[] table, int count);
+
+    /**
+     * Copies the parameters of the uniform block, native defaults included.
+     * @return 1 if the shader edits in Rec. 2020, 0 in Rec. 709.
+     */
+    private native int readEffectParameters(float[] values);
+
+    /**
+     * @return Output LUT of the edit shader, RGB floats with red varying fastest.
+     */
+    private native float[] readOutputLut();
+
+    /**
+     * Writes a baked colour LUT to its texture, see {@link StaticColorLut}. Must be called on the
+     * render thread.
+     */
+    private native int uploadBakedLut(FloatBuffer lut, int size, long key);
+
+    /**
+     * Lets the shader use the baked LUT if it was uploaded with this key, 0 turns it off.
+     * @return True if the baked LUT is used.
+     */
+    private native boolean selectBakedLut(long key);
+
+    /**
+     * Releases the EGL context from the calling thread.
+     */
+    private native int releaseContext();
+
+    /**
+     * @return Hits, misses, evictions and size of the native EGLImage cache.
+     */
+    private native long[] readBufferCacheStats();
+
+    /**
+     * @return Report of the edit shader variants compiled since the shader was built.
+     */
+    private native String readShaderVariantReport();
+
+    /**
+     * @return Program binaries loaded, missed, rejected and saved since the app started.
+     */
+    private native long[] readProgramCacheStats();
+
+    /**
+     * Moves the GPU times of measured frames to times: times[0] gets the number of frames not
+     * measured since the last call, then a compute and a render pass time in ns per frame.
+     * @return Number of frames.
+     */
+    private native int readGpuTimes(long[] times);
+
+    /**
+     * Deletes the timer queries, the context is made current for it.
+     */
+    private native int releaseGpuTimer();
+
+    /**
+     * Deletes the cached EGLImages, textures and FBOs and resets the counters. Must be called on
+     * the render thread.
+     */
+    private native int clearBufferCache();
 
     @Override
     public void onFrameAvailable(Image inputImage, String codecName, Constants.ColorStandard standard) {
         if(handlerState != FrameHandlerState.INITIALIZED) {
             // not in initialized state, do nothing
+            inputImage.close();
+            frameDone();
             return;
         }
 
+        if(!preview) {
+            try {
+                // wait until fewer than the window depth of frames are still being encoded
+                if (!encodeTracker.acquire()) {
+                    inputImage.close();
+                    frameDone();
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Log.e(TAG, "onFrameAvailable: interrupted waiting for an encode slot", e);
+                inputImage.close();
+                frameDone();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
         long inputPts = inputImage.getTimestamp();
         HardwareBuffer input = inputImage.getHardwareBuffer();
         Image outputImage = writer.dequeueInputImage();
 
         HardwareBuffer output = outputImage.getHardwareBuffer();
 
+        Frame frame = new Frame(inputImage, input, outputImage, output, inputPts);
         if (input.isClosed() || output.isClosed()) {
             Log.w(TAG, "input or output hardware buffer is closed");
+            discardFrame(frame);
             return;
         }
 
-        processFrame(input, output);
+        // returns straight away, the next image can be acquired while this one is on the GPU
+        if (!renderThread.submit(frame)) {
+            discardFrame(frame);
+        }
+    }
+
+    private void frameDone() {
+        if (onFrameDone != null) {
+            onFrameDone.run();
+        }
+    }
 
-        inputImage.close();
-        input.close();
+    private void discardFrame(Frame frame) {
+        frame.input.close();
+        frame.inputBuffer.close();
+        frame.output.close();
+        frame.outputBuffer.close();
+        if (!preview) {
+            encodeWindow.release();
+        }
+        frameDone();
+    }
 
-        try{
-            outputImage.setDataSpace(pipeline.getOutputDataSpace());
-            outputImage.setTimestamp(inputPts);
-        } catch (IllegalStateException e){
-            Log.e(TAG, "Image already closed", e);
-            return;
+    /**
+     * Queues a frame to the ImageWriter once the GPU has finished rendering it.
+     */
+    private void queueFrame(Frame frame) {
+        stageLatency.mark(StageLatency.PROCESSED, frame.pts / 1000);
+        if (timeToFirstFrameNs < 0) {
+            timeToFirstFrameNs = System.nanoTime() - createdNs;
+            Log.d(TAG, "first frame processed after " + getTimeToFirstFrameMs() + " ms, shader init "
+                    + getShaderInitMs() + " ms");
         }
 
-        if(!preview) {
+        frame.input.close();
+        frame.inputBuffer.close();
+        frameDone();
+
+        Image outputImage = frame.output;
+        // the window slot is released by onFrameEncoded once the encoder returns a tracked frame
+        boolean tracked = false;
+        long ts = frame.pts;
+        try {
+            if (handlerState != FrameHandlerState.INITIALIZED) {
+                return;
+            }
+
             try {
-                bufferLock.acquire();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                outputImage.setDataSpace(pipeline.getOutputDataSpace());
+                outputImage.setTimestamp(frame.pts);
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Image already closed", e);
+                return;
             }
-//            Log.d(TAG, "onFrameAvailable: " + buffers );
-//            Log.d(TAG, "onFrameAvailable: QUEUED FRAME TS: " + outputImage.getTimestamp() );
-            buffers.add(outputImage.getTimestamp());
-//            Log.d(TAG, "onFrameAvailable: QUEUED FRAME Size: " + buffers.size());
 
-            bufferLock.release();
+            if (!preview) {
+                ts = outputImage.getTimestamp();
+                tracked = encodeTracker.queued(ts, System.nanoTime());
+                if (!tracked) {
+                    Log.e(TAG, "queueFrame: too many frames queued to the encoder, frame " + ts / 1000 + " untracked");
+                }
+            }
 
+            writer.queueInputImage(outputImage);
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "queueFrame: writer rejected the frame", e);
+            if (tracked) {
+                encodeTracker.untrack(ts);
+                tracked = false;
+            }
+        } finally {
+            outputImage.close();
+            frame.outputBuffer.close();
+            if (!preview && !tracked) {
+                encodeWindow.release();
+            }
         }
+    }
 
-        long start = System.currentTimeMillis();
-
-        writer.queueInputImage(outputImage);
+    private class FrameRenderer implements GpuRenderThread.Renderer<Frame> {
+
+        // effect parameter snapshot with the automated values of the current frame laid over it
+        private final FloatBuffer automatedValues = ByteBuffer.allocateDirect(EffectParameterBlock.COUNT * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        private AutomationTable automationStarted;
+        private long automationStartUs;
+        private final float[] layerTable = new float[OverlayCompositor.MAX_LAYERS * OverlayCompositor.LAYER_FLOATS];
+        private final float[] appliedLayerTable = new float[OverlayCompositor.MAX_LAYERS * OverlayCompositor.LAYER_FLOATS];
+        // -1 until a layer table was applied
+        private int appliedLayerCount = -1;
+        // parameters the frame renders with, read back for the baked colour LUT
+        private final float[] effectValues = new float[EffectParameterBlock.COUNT];
+        private boolean bakedLutSelected = false;
+        private final long[] gpuTimeBuffer = new long[1 + 16 * GpuFrameTimes.PASSES];
+        // output LUTs as floats for baking, read once
+        private float[] builtInLut;
+        private CubeLut bakeLut;
+        private float[] bakeLutValues;
+
+        @Override
+        public long submit(Frame frame) {
+            EffectParameterBlock parameters = effectParameters;
+            long mask = 0;
+            long version = 0;
+            if (parameters != null) {
+                parameters.acquire();
+                mask = parameters.getMask();
+                version = parameters.getVersion();
+            }
 
-        if (!preview) {
+            AutomationTable table = automation;
+            if (table == null) {
+                if (version > 0) {
+                    applyParameters(parameters.getValues(), mask, version);
+                }
+            } else {
+                long ptsUs = frame.pts / 1000;
+                if (table != automationStarted) {
+                    automationStarted = table;
+                    automationStartUs = ptsUs;
+                }
+                int index = table.frameIndex(ptsUs - automationStartUs);
+                automatedValues.clear();
+                if (version > 0) {
+                    automatedValues.put(parameters.getValues());
+                    parameters.getValues().rewind();
+                    automatedValues.rewind();
+                }
+                table.fill(index, automatedValues);
+                // one version per effect parameter snapshot and frame, the native side skips repeats
+                applyParameters(automatedValues, mask | table.getMask(), (version << 32) | (index + 1));
+            }
+            selectStaticLut();
+
+            OverlayCompositor compositor = overlayCompositor;
+            if (compositor != null) {
+                int count = compositor.fillLayerTable(frame.pts / 1000, layerTable);
+                int floats = count * OverlayCompositor.LAYER_FLOATS;
+                // layers rarely change between frames, only pass the table on when they do
+                if (count != appliedLayerCount || !tableEquals(layerTable, appliedLayerTable, floats)) {
+                    applyCompositingLayers(layerTable, count);
+                    System.arraycopy(layerTable, 0, appliedLayerTable, 0, floats);
+                    appliedLayerCount = count;
+                    if (overlayEditNs != 0) {
+                        overlayLatency.record(System.nanoTime() - overlayEditNs);
+                        overlayEditNs = 0;
+                    }
+                }
+            }
+            long fence = submitFrame(frame.inputBuffer, frame.outputBuffer);
+            collectGpuTimes();
+            return fence;
+        }
 
-            try {
-//                Log.d(TAG, "onFrameAvailable: WAITING ON ENCODER...");
-                dowait.acquire();
+        private void collectGpuTimes() {
+            int count = readGpuTimes(gpuTimeBuffer);
+            long now = System.nanoTime();
+            gpuTimes.addDropped(gpuTimeBuffer[0]);
+            for (int i = 0; i < count; i++) {
+                gpuTimes.record(gpuTimeBuffer[1 + i * GpuFrameTimes.PASSES + GpuFrameTimes.COMPUTE],
+                        gpuTimeBuffer[1 + i * GpuFrameTimes.PASSES + GpuFrameTimes.RENDER], now);
+            }
+        }
 
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        // Uses the baked LUT of the frame's parameters, or has it baked for the frames to come
+        private void selectStaticLut() {
+            long key = 0;
+            boolean rec2020 = false;
+            CubeLut lut = outputLut;
+            if (staticLutBaking) {
+                rec2020 = readEffectParameters(effectValues) == 1;
+                if (StaticColorLut.isBakeable(effectValues)) {
+                    key = StaticColorLut.key(effectValues, rec2020, lut == null ? 0 : lut.getHash());
+                }
+            } else if (!bakedLutSelected) {
+                return;
             }
+            bakedLutSelected = selectBakedLut(key);
+            if (bakedLutSelected || key == 0) {
+                return;
+            }
+            if (staticLutBaker == null) {
+                staticLutBaker = new StaticLutBaker(Constants.STATIC_LUT_CACHE_SIZE, Constants.STATIC_LUT_DEBOUNCE_NS,
+                        (bakedKey, baked) -> renderThread.post(() -> uploadBakedLut(baked, StaticColorLut.SIZE, bakedKey)));
+            }
+            float[] baseLut;
+            int baseSize;
+            if (lut == null) {
+                if (builtInLut == null) {
+                    builtInLut = readOutputLut();
+                }
+                baseLut = builtInLut;
+                baseSize = (int) Math.round(Math.cbrt(builtInLut.length / 3));
+            } else {
+                if (lut != bakeLut) {
+                    bakeLut = lut;
+                    bakeLutValues = lut.toFloatArray();
+                }
+                baseLut = bakeLutValues;
+                baseSize = lut.getSize();
+            }
+            staticLutBaker.request(key, effectValues, rec2020, baseLut, baseSize);
+        }
 
-            long end = System.currentTimeMillis();
+        private boolean tableEquals(float[] a, float[] b, int length) {
+            for (int i = 0; i < length; i++) {
+                if (a[i] != b[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
 
-            long encodeTime = (end -  start);
+        @Override
+        public boolean waitFence(long fence) {
+            return FrameHandler.this.waitFence(fence, FENCE_TIMEOUT_NS) == 0;
+        }
 
-            totalEncodeTime += encodeTime;
+        @Override
+        public void complete(Frame frame) {
+            queueFrame(frame);
+        }
 
-//            Log.d(TAG, "onFrameAvailable: Encode time " +  encodeTime + " " + totalEncodeTime);
+        @Override
+        public void discard(Frame frame) {
+            Log.w(TAG, "frame " + frame.pts / 1000 + " dropped before rendering finished");
+            discardFrame(frame);
         }
 
-        outputImage.close();
-        output.close();
+        @Override
+        public void onStop() {
+            // the ImageReader/ImageWriter buffers go away with the pipeline
+            bufferCacheStats = readBufferCacheStats();
+            shaderVariantReport = readShaderVariantReport();
+            programCacheStats = readProgramCacheStats();
+            collectGpuTimes();
+            releaseGpuTimer();
+            clearBufferCache();
+            releaseContext();
+        }
     }
 
 
@@ -195,39 +783,32 @@ public class FrameHandler implements VideoCallback, OnFrameEncoded{
     @Override
     public void onFrameEncoded(MediaCodec.BufferInfo info) {
 
-        try {
-            bufferLock.acquire();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-
-
-        Long ts = buffers.poll();
-        if(ts != null) {
-
-            if (ts == (info.presentationTimeUs * 1000)) {
-//                Log.d(TAG, "onFrameEncoded: Frame check okay " + info.presentationTimeUs);
-                dowait.release();
-
-                if (!isFirstFrameEncodeDone) {
-                    /** wait for encode to finish encoding the first frames,
-                     * since this could be a long time
-                     */
-                    Log.d(TAG, "first frame encode done");
-                    waitFirstFrameEncodeDone.release();
-                    isFirstFrameEncodeDone = true;
-                }
+        long ts = info.presentationTimeUs * 1000;
+        // match by timestamp, encoders with B-frames or lookahead return frames out of queue order
+        long queuedNs = encodeTracker.encoded(ts);
+        if(queuedNs != EncodeTracker.MISSING) {
+//            Log.d(TAG, "onFrameEncoded: Frame check okay " + info.presentationTimeUs);
+            long latencyNs = System.nanoTime() - queuedNs;
+            totalEncodeLatencyNs += latencyNs;
+            maxEncodeLatencyNs = Math.max(maxEncodeLatencyNs, latencyNs);
+            encodedFrames++;
+            if (ts < lastEncodedPts) {
+                reorderedFrames++;
+            } else {
+                lastEncodedPts = ts;
             }
-            else
-            {
-                throw new IllegalStateException("TS miss match!");
+
+            if (!isFirstFrameEncodeDone) {
+                /** wait for encode to finish encoding the first frames,
+                 * since this could be a long time
+                 */
+                Log.d(TAG, "first frame encode done");
+                waitFirstFrameEncodeDone.release();
+                isFirstFrameEncodeDone = true;
             }
         } else {
-            Log.w(TAG, "onFrameEncoded: Queue empty, likely CSD buffer. Ignoring." );
+            Log.w(TAG, "onFrameEncoded: no queued frame for " + info.presentationTimeUs + ", ignoring");
         }
-
-        bufferLock.release();
-
     }
 
 }
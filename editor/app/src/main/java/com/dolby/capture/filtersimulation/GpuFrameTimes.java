@@ -0,0 +1,125 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.util.Locale;
+
+/**
+ * GPU time per frame of the edit compute pass and of the render pass into the output buffer,
+ * from timer queries the render thread reads back a few frames after the fact. Set against the
+ * wall time the frames took, it tells whether the GPU is what limits the frame rate: near 100%
+ * busy the GPU is the bottleneck, well below it the decoder or encoder is.
+ * Recording is meant for the render thread; reading from another thread gives a close snapshot.
+ */
+public class GpuFrameTimes {
+
+    public static final int COMPUTE = 0;
+    public static final int RENDER = 1;
+    public static final int PASSES = 2;
+
+    private final LatencyHistogram[] histograms = {new LatencyHistogram(), new LatencyHistogram()};
+    private final long[] totalNs = new long[PASSES];
+    private final long[] lastNs = new long[PASSES];
+    private long frames = 0;
+    private long dropped = 0;
+    private long firstWallNs = 0;
+    private long lastWallNs = 0;
+
+    /**
+     * @param wallNs System.nanoTime() when the frame's times were read back.
+     */
+    public void record(long computeNs, long renderNs, long wallNs) {
+        histograms[COMPUTE].record(computeNs);
+        histograms[RENDER].record(renderNs);
+        totalNs[COMPUTE] += computeNs;
+        totalNs[RENDER] += renderNs;
+        lastNs[COMPUTE] = computeNs;
+        lastNs[RENDER] = renderNs;
+        if (frames == 0) {
+            firstWallNs = wallNs;
+        }
+        lastWallNs = wallNs;
+        frames++;
+    }
+
+    /**
+     * Counts frames that were rendered but not measured.
+     */
+    public void addDropped(long count) {
+        dropped += count;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * @param pass {@link #COMPUTE} or {@link #RENDER}.
+     */
+    public LatencyHistogram getHistogram(int pass) {
+        return histograms[pass];
+    }
+
+    public double getLastMs(int pass) {
+        return lastNs[pass] / 1e6;
+    }
+
+    public double getAverageMs(int pass) {
+        return frames > 0 ? totalNs[pass] / 1e6 / frames : 0;
+    }
+
+    /**
+     * @return Fraction of the wall time from the first to the last measured frame that the GPU
+     * spent on the passes, 0 until two frames were measured. Frames that were not measured are
+     * accounted for at the average.
+     */
+    public double getBusyFraction() {
+        long wallNs = lastWallNs - firstWallNs;
+        if (frames < 2 || wallNs <= 0) {
+            return 0;
+        }
+        // the first frame only marks the start of the interval
+        double perFrameNs = (double) (totalNs[COMPUTE] + totalNs[RENDER]) / frames;
+        double measured = (frames - 1) + dropped;
+        return perFrameNs * measured / wallNs;
+    }
+
+    public String getStats() {
+        return String.format(Locale.ROOT, "frames=%d, dropped=%d, compute avg %.2f ms max %.2f ms, render avg %.2f ms max %.2f ms, busy %.0f%%",
+                frames, dropped, getAverageMs(COMPUTE), histograms[COMPUTE].getMax() / 1e6,
+                getAverageMs(RENDER), histograms[RENDER].getMax() / 1e6, getBusyFraction() * 100);
+    }
+}
@@ -0,0 +1,284 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.util.ArrayDeque;
+
+/**
+ * Thread that owns the GPU context and submits frames without waiting for each one to finish.
+ * A frame is submitted through the {@link Renderer}, which returns a sync fence, and completed
+ * in submission order once its fence has signalled. Up to maxInFlight frames can be on the GPU
+ * at once, so the producer can hand over the next frame while the previous one is still being
+ * rendered. Tasks posted with {@link #post} run on the same thread, ahead of frames not yet
+ * submitted, for GL work that is not per frame.
+ */
+public class GpuRenderThread<F> extends Thread {
+
+    /** Returned by {@link Renderer#submit} when there is nothing to wait for. */
+    public static final long NO_FENCE = 0;
+
+    public interface Renderer<F> {
+
+        /**
+         * Submits the frame to the GPU. Called on the render thread.
+         *
+         * @return A fence that signals when the GPU is done with the frame, or {@link #NO_FENCE}.
+         */
+        long submit(F frame);
+
+        /**
+         * Blocks until the fence has signalled and releases it.
+         *
+         * @return False if the wait timed out or failed.
+         */
+        boolean waitFence(long fence);
+
+        /** The GPU is done with the frame. Called in submission order. */
+        void complete(F frame);
+
+        /** The frame is dropped without being rendered, or its fence failed. */
+        void discard(F frame);
+
+        /** Called on the render thread before it exits. */
+        void onStop();
+    }
+
+    private final Renderer<F> renderer;
+
+    private final Object lock = new Object();
+
+    private final ArrayDeque<F> pending = new ArrayDeque<>();
+
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+    // frames submitted to the GPU, oldest first, only touched by the render thread
+    private final Object[] inFlight;
+
+    private final long[] fences;
+
+    private int inFlightHead = 0;
+
+    private int inFlightCount = 0;
+
+    private boolean running = true;
+
+    private long submitted = 0;
+
+    private long completed = 0;
+
+    private long discarded = 0;
+
+    private long fenceFailures = 0;
+
+    private long maxFenceWaitNs = 0;
+
+    private long totalFenceWaitNs = 0;
+
+    private int maxPending = 0;
+
+    private int maxInFlight = 0;
+
+    /**
+     * @param maxInFlight Number of frames that may be on the GPU at once, at least 1.
+     */
+    public GpuRenderThread(String name, Renderer<F> renderer, int maxInFlight) {
+        super(name);
+        this.renderer = renderer;
+        int depth = Math.max(1, maxInFlight);
+        this.inFlight = new Object[depth];
+        this.fences = new long[depth];
+    }
+
+    /**
+     * Queues a frame for rendering. Called by the producer.
+     *
+     * @return False once the thread is shutting down, the frame is not taken.
+     */
+    public boolean submit(F frame) {
+        synchronized (lock) {
+            if (!running) {
+                return false;
+            }
+            pending.add(frame);
+            maxPending = Math.max(maxPending, pending.size());
+            lock.notify();
+            return true;
+        }
+    }
+
+    /**
+     * Runs a task on the render thread before any frame that is not yet submitted.
+     *
+     * @return False once the thread is shutting down, the task will not run. A task taken before
+     * that always runs, at the latest when the thread stops.
+     */
+    public boolean post(Runnable task) {
+        synchronized (lock) {
+            if (!running) {
+                return false;
+            }
+            tasks.add(task);
+            lock.notify();
+            return true;
+        }
+    }
+
+    /**
+     * Stops accepting work, waits for the frames on the GPU to finish, runs the tasks still queued
+     * and discards the frames that were not submitted yet.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            running = false;
+            lock.notify();
+        }
+        if (Thread.currentThread() != this) {
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Runnable task;
+            F frame;
+            synchronized (lock) {
+                while (running && tasks.isEmpty() && pending.isEmpty() && inFlightCount == 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        running = false;
+                    }
+                }
+                if (!running) {
+                    break;
+                }
+                task = tasks.poll();
+                frame = task == null ? pending.poll() : null;
+            }
+
+            if (task != null) {
+                task.run();
+            } else if (frame != null) {
+                // submit before retiring the previous frame, so the GPU always has work queued
+                if (inFlightCount == inFlight.length) {
+                    retireOldest();
+                }
+                long fence = renderer.submit(frame);
+                int tail = (inFlightHead + inFlightCount) % inFlight.length;
+                inFlight[tail] = frame;
+                fences[tail] = fence;
+                inFlightCount++;
+                maxInFlight = Math.max(maxInFlight, inFlightCount);
+                submitted++;
+            } else {
+                // nothing new to submit
+                retireOldest();
+            }
+        }
+
+        while (inFlightCount > 0) {
+            retireOldest();
+        }
+        // posted tasks still run, their callers may be waiting on them or handing back resources
+        while (true) {
+            Runnable task;
+            F frame;
+            synchronized (lock) {
+                task = tasks.poll();
+                frame = task == null ? pending.poll() : null;
+            }
+            if (task != null) {
+                task.run();
+            } else if (frame != null) {
+                discarded++;
+                renderer.discard(frame);
+            } else {
+                break;
+            }
+        }
+        renderer.onStop();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void retireOldest() {
+        F frame = (F) inFlight[inFlightHead];
+        long fence = fences[inFlightHead];
+        inFlight[inFlightHead] = null;
+        inFlightHead = (inFlightHead + 1) % inFlight.length;
+        inFlightCount--;
+
+        boolean ok = true;
+        if (fence != NO_FENCE) {
+            long start = System.nanoTime();
+            ok = renderer.waitFence(fence);
+            long waitNs = System.nanoTime() - start;
+            totalFenceWaitNs += waitNs;
+            maxFenceWaitNs = Math.max(maxFenceWaitNs, waitNs);
+        }
+        if (ok) {
+            completed++;
+            renderer.complete(frame);
+        } else {
+            fenceFailures++;
+            discarded++;
+            renderer.discard(frame);
+        }
+    }
+
+    /**
+     * Read once the thread has been shut down.
+     */
+    public String getStats() {
+        return "submitted=" + submitted + ", completed=" + completed + ", discarded=" + discarded
+                + ", fence failures=" + fenceFailures + ", max queued=" + maxPending
+                + ", max in flight=" + maxInFlight + ", fence wait avg="
+                + (completed > 0 ? totalFenceWaitNs / completed / 1000 : 0) + "us max="
+                + maxFenceWaitNs / 1000 + "us";
+    }
+
+    public long getSubmittedCount() {
+        return submitted;
+    }
+
+    public long getCompletedCount() {
+        return completed;
+    }
+
+    public long getDiscardedCount() {
+        return discarded;
+    }
+}
@@ -0,0 +1,168 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the number of frames in flight between two pipeline stages.
+ * The upstream stage acquires a slot before it hands a frame on and the downstream stage
+ * releases it once the frame is done, so up to {@code depth} frames overlap instead of the stages
+ * running in lockstep. The depth is bounded by {@link ImagePipeline#MAX_IMAGES}, the number of
+ * buffers the ImageReader and ImageWriter cycle through.
+ */
+public class InFlightWindow {
+
+    private final int depth;
+
+    private final Semaphore slots;
+
+    private volatile boolean released = false;
+
+    private int inFlight = 0;
+    private int maxInFlight = 0;
+    private long acquisitions = 0;
+    private long blocked = 0;
+    private long blockedNs = 0;
+
+    public InFlightWindow(int depth) {
+        this.depth = clampDepth(depth);
+        this.slots = new Semaphore(this.depth);
+    }
+
+    public static int clampDepth(int depth) {
+        return Math.max(1, Math.min(depth, ImagePipeline.MAX_IMAGES));
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Takes a slot, blocking while {@code depth} frames are in flight.
+     *
+     * @return False if the window was released for shutdown.
+     */
+    public boolean acquire() throws InterruptedException {
+        if (released) {
+            return false;
+        }
+        if (!slots.tryAcquire()) {
+            long start = System.nanoTime();
+            slots.acquire();
+            synchronized (this) {
+                blocked++;
+                blockedNs += System.nanoTime() - start;
+            }
+        }
+        return taken();
+    }
+
+    /**
+     * Takes a slot like {@link #acquire()}, but gives up once the window has been full for the
+     * timeout.
+     *
+     * @return False if no slot freed up in time or the window was released, see {@link #isReleased()}.
+     */
+    public boolean tryAcquire(long timeoutMs) throws InterruptedException {
+        if (released) {
+            return false;
+        }
+        if (!slots.tryAcquire()) {
+            long start = System.nanoTime();
+            boolean acquired = slots.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+            synchronized (this) {
+                blocked++;
+                blockedNs += System.nanoTime() - start;
+            }
+            if (!acquired) {
+                return false;
+            }
+        }
+        return taken();
+    }
+
+    private boolean taken() {
+        if (released) {
+            return false;
+        }
+        synchronized (this) {
+            acquisitions++;
+            inFlight++;
+            maxInFlight = Math.max(maxInFlight, inFlight);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the slot of a frame that has left the downstream stage.
+     */
+    public void release() {
+        synchronized (this) {
+            if (inFlight == 0) {
+                return;
+            }
+            inFlight--;
+        }
+        slots.release();
+    }
+
+    /**
+     * Wakes every stage blocked in {@link #acquire()} for shutdown. Later acquires fail.
+     */
+    public void releaseAll() {
+        released = true;
+        slots.release(slots.getQueueLength() + depth);
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public synchronized long getBlockedNs() {
+        return blockedNs;
+    }
+
+    public synchronized String getStats() {
+        return "depth=" + depth + ", frames=" + acquisitions + ", max in flight=" + maxInFlight
+                + ", blocked=" + blocked + " (" + (blockedNs / 1000) + "us)";
+    }
+}
@@ -0,0 +1,222 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.util.ArrayList;
+
+/**
+ * Keyframes of one effect parameter over the timeline. Between two keyframes the value follows
+ * the interpolation of the first one; before the first and after the last keyframe it holds.
+ * Times are in microseconds from the first frame of the clip.
+ *
+ * Not thread safe, {@link ParameterAutomation} guards access.
+ */
+public class KeyframeTrack {
+
+    public enum Interpolation {
+        LINEAR,
+        // cubic bezier easing curve from (0, 0) to (1, 1), like CSS cubic-bezier()
+        BEZIER
+    }
+
+    private static final class Keyframe {
+        final long timeUs;
+        final float value;
+        final Interpolation interpolation;
+        final float x1, y1, x2, y2;
+
+        Keyframe(long timeUs, float value, Interpolation interpolation, float x1, float y1, float x2, float y2) {
+            this.timeUs = timeUs;
+            this.value = value;
+            this.interpolation = interpolation;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+        }
+    }
+
+    private static final int NEWTON_ITERATIONS = 8;
+    private static final float BEZIER_EPSILON = 1e-6f;
+
+    // sorted by time, at most one keyframe per time
+    private final ArrayList<Keyframe> keyframes = new ArrayList<>();
+
+    /**
+     * Adds a keyframe with linear interpolation to the next one, replacing any keyframe at the
+     * same time.
+     */
+    public void addLinear(long timeUs, float value) {
+        add(new Keyframe(timeUs, value, Interpolation.LINEAR, 0, 0, 1, 1));
+    }
+
+    /**
+     * Adds a keyframe eased to the next one along the bezier curve with control points
+     * (x1, y1) and (x2, y2), replacing any keyframe at the same time.
+     *
+     * @param x1 Time of the first control point, 0 to 1.
+     * @param x2 Time of the second control point, 0 to 1.
+     */
+    public void addBezier(long timeUs, float value, float x1, float y1, float x2, float y2) {
+        if (x1 < 0 || x1 > 1 || x2 < 0 || x2 > 1) {
+            throw new IllegalArgumentException("bezier control point times must be in [0, 1]");
+        }
+        add(new Keyframe(timeUs, value, Interpolation.BEZIER, x1, y1, x2, y2));
+    }
+
+    private void add(Keyframe keyframe) {
+        int index = search(keyframe.timeUs);
+        if (index >= 0) {
+            keyframes.set(index, keyframe);
+        } else {
+            keyframes.add(-index - 1, keyframe);
+        }
+    }
+
+    public boolean remove(long timeUs) {
+        int index = search(timeUs);
+        if (index < 0) {
+            return false;
+        }
+        keyframes.remove(index);
+        return true;
+    }
+
+    public int size() {
+        return keyframes.size();
+    }
+
+    public boolean isEmpty() {
+        return keyframes.isEmpty();
+    }
+
+    /**
+     * @return Value at the given time, 0 if there are no keyframes.
+     */
+    public float evaluate(long timeUs) {
+        int count = keyframes.size();
+        if (count == 0) {
+            return 0;
+        }
+        int index = search(timeUs);
+        if (index >= 0) {
+            return keyframes.get(index).value;
+        }
+        int next = -index - 1;
+        if (next == 0) {
+            return keyframes.get(0).value;
+        }
+        if (next == count) {
+            return keyframes.get(count - 1).value;
+        }
+        Keyframe from = keyframes.get(next - 1);
+        Keyframe to = keyframes.get(next);
+        float progress = (float) (timeUs - from.timeUs) / (to.timeUs - from.timeUs);
+        if (from.interpolation == Interpolation.BEZIER) {
+            progress = ease(progress, from.x1, from.y1, from.x2, from.y2);
+        }
+        return from.value + (to.value - from.value) * progress;
+    }
+
+    /**
+     * Binary search by time, same contract as {@link java.util.Arrays#binarySearch(long[], long)}.
+     */
+    private int search(long timeUs) {
+        int low = 0;
+        int high = keyframes.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midTime = keyframes.get(mid).timeUs;
+            if (midTime < timeUs) {
+                low = mid + 1;
+            } else if (midTime > timeUs) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Solves the curve for the parameter t where x(t) = x and returns y(t). x(t) is monotonic
+     * because both control point times are in [0, 1]; Newton's method is tried first and
+     * bisection takes over where the slope is too flat.
+     */
+    static float ease(float x, float x1, float y1, float x2, float y2) {
+        if (x <= 0) {
+            return 0;
+        }
+        if (x >= 1) {
+            return 1;
+        }
+        float t = x;
+        for (int i = 0; i < NEWTON_ITERATIONS; i++) {
+            float error = bezier(t, x1, x2) - x;
+            if (Math.abs(error) < BEZIER_EPSILON) {
+                return bezier(t, y1, y2);
+            }
+            float slope = bezierSlope(t, x1, x2);
+            if (Math.abs(slope) < BEZIER_EPSILON) {
+                break;
+            }
+            t -= error / slope;
+        }
+        float low = 0;
+        float high = 1;
+        t = x;
+        while (high - low > BEZIER_EPSILON) {
+            float value = bezier(t, x1, x2);
+            if (Math.abs(value - x) < BEZIER_EPSILON) {
+                break;
+            }
+            if (value < x) {
+                low = t;
+            } else {
+                high = t;
+            }
+            t = (low + high) / 2;
+        }
+        return bezier(t, y1, y2);
+    }
+
+    // one coordinate of the cubic bezier with end points 0 and 1
+    private static float bezier(float t, float p1, float p2) {
+        float u = 1 - t;
+        return 3 * u * u * t * p1 + 3 * u * t * t * p2 + t * t * t;
+    }
+
+    private static float bezierSlope(float t, float p1, float p2) {
+        float u = 1 - t;
+        return 3 * u * u * p1 + 6 * u * t * (p2 - p1) + 3 * t * t * (1 - p2);
+    }
+}
@@ -0,0 +1,132 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsed .cube LUTs by content hash, least recently used first out once they hold more than the
+ * byte budget. Loading a LUT again, say when switching back and forth between looks, costs a
+ * hash of the file instead of a parse.
+ */
+public class LutCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<Long, CubeLut> luts = new LinkedHashMap<>(8, 0.75f, true);
+
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxBytes Budget for the half float data of the cached LUTs. The LUT loaded last is
+     *                 kept even if it alone exceeds it.
+     */
+    public LutCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the LUT of a .cube file's content, parsing it unless it is cached.
+     *
+     * @throws IOException if the content does not parse, see {@link CubeLut#parse}.
+     */
+    public CubeLut load(byte[] content) throws IOException {
+        long hash = CubeLut.hash(content);
+        synchronized (this) {
+            CubeLut lut = luts.get(hash);
+            if (lut != null) {
+                hits++;
+                return lut;
+            }
+            misses++;
+        }
+
+        // Parse outside the lock, a concurrent load of the same content only costs a second parse
+        CubeLut lut = CubeLut.parse(content);
+        synchronized (this) {
+            CubeLut previous = luts.put(hash, lut);
+            if (previous != null) {
+                bytes -= previous.getByteCount();
+            }
+            bytes += lut.getByteCount();
+            trim(hash);
+        }
+        return lut;
+    }
+
+    private void trim(long keep) {
+        Iterator<Map.Entry<Long, CubeLut>> it = luts.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<Long, CubeLut> eldest = it.next();
+            if (eldest.getKey() == keep) {
+                continue;
+            }
+            bytes -= eldest.getValue().getByteCount();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        luts.clear();
+        bytes = 0;
+    }
+
+    public synchronized int getCount() {
+        return luts.size();
+    }
+
+    public synchronized long getByteCount() {
+        return bytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized String getStats() {
+        return "luts=" + luts.size() + ", bytes=" + bytes + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+    }
+}
@@ -127,7 +127,8 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
     private Size inSize;
     private AlertDialog progressDialog;
     private View loadingProgress;
-    private static ByteBuffer reusableBuffer;
+    // draws the text overlay on its own thread
+    private TextOverlayRenderer textOverlayRenderer;
     private static final int APP_STORAGE_ACCESS_REQUEST_CODE = 2;
 
     @Override
@@ -209,7 +210,7 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
             @Override
             public void onValueChange(@NonNull Slider slider, float value, boolean fromUser) {
                 if (p != null) {
-                    p.EditShadersSetParameter(EffectParameters.GAIN.ordinal(), value * 0.01f);
+                    p.setEffectParameter(EffectParameters.GAIN, value * 0.01f);
                 }
             }
         });
@@ -218,7 +219,7 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
             @Override
             public void onValueChange(@NonNull Slider slider, float value, boolean fromUser) {
                 if (p != null) {
-                    p.EditShadersSetParameter(EffectParameters.OFFSET.ordinal(), value * 0.01f);
+                    p.setEffectParameter(EffectParameters.OFFSET, value * 0.01f);
                 }
             }
         });
@@ -227,7 +228,7 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
             @Override
             public void onValueChange(@NonNull Slider slider, float value, boolean fromUser) {
                 if (p != null) {
-                    p.EditShadersSetParameter(EffectParameters.CONTRAST.ordinal(), value * 0.01f);
+                    p.setEffectParameter(EffectParameters.CONTRAST, value * 0.01f);
                 }
             }
         });
@@ -236,7 +237,7 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
             @Override
             public void onValueChange(@NonNull Slider slider, float value, boolean fromUser) {
                 if (p != null) {
-                    p.EditShadersSetParameter(EffectParameters.SATURATION.ordinal(), value * 0.01f);
+                    p.setEffectParameter(EffectParameters.SATURATION, value * 0.01f);
                 }
             }
         });
@@ -245,7 +246,7 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
             @Override
             public void onValueChange(@NonNull Slider slider, float value, boolean fromUser) {
                 if (p != null) {
-                    p.EditShadersSetParameter(EffectParameters.WIPER_LEFT.ordinal(), value * 0.01f);
+                    p.setEffectParameter(EffectParameters.WIPER_LEFT, value * 0.01f);
                 }
             }
         });
@@ -259,9 +260,9 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
             public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
                 if (p != null) {
                     if (isChecked) {
-                        p.EditShadersSetParameter(EffectParameters.ZEBRA_ENABLE.ordinal(), 1.0f);
+                        p.setEffectParameter(EffectParameters.ZEBRA_ENABLE, 1.0f);
                     } else {
-                        p.EditShadersSetParameter(EffectParameters.ZEBRA_ENABLE.ordinal(), 0.0f);
+                        p.setEffectParameter(EffectParameters.ZEBRA_ENABLE, 0.0f);
                     }
                 }
             }
@@ -271,9 +272,9 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
             public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
                 if (p != null) {
                     if (isChecked) {
-                        p.EditShadersSetParameter(EffectParameters.GAMUT_ENABLE.ordinal(), 1.0f);
+                        p.setEffectParameter(EffectParameters.GAMUT_ENABLE, 1.0f);
                     } else {
-                        p.EditShadersSetParameter(EffectParameters.GAMUT_ENABLE.ordinal(), 0.0f);
+                        p.setEffectParameter(EffectParameters.GAMUT_ENABLE, 0.0f);
                     }
                 }
             }
@@ -400,13 +401,16 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
 
     private void loadVideoEffects() {
         if (p != null) {
-            p.EditShadersSetParameter(EffectParameters.GAIN.ordinal(), sliderGainValue.getValue() * 0.01f);
-            p.EditShadersSetParameter(EffectParameters.OFFSET.ordinal(), sliderOffsetValue.getValue() * 0.01f);
-            p.EditShadersSetParameter(EffectParameters.CONTRAST.ordinal(), sliderContrastValue.getValue() * 0.01f);
-            p.EditShadersSetParameter(EffectParameters.SATURATION.ordinal(), sliderSaturationValue.getValue() * 0.01f);
-            p.EditShadersSetParameter(EffectParameters.WIPER_LEFT.ordinal(), sliderWiperValue.getValue() * 0.01f);
-            p.EditShadersSetParameter(EffectParameters.ZEBRA_ENABLE.ordinal(), switchZebra.isChecked() ? 1.0f : 0.0f);
-            p.EditShadersSetParameter(EffectParameters.GAMUT_ENABLE.ordinal(), switchGamut.isChecked() ? 1.0f : 0.0f);
+            // staged together and published once, so a frame never sees half of the effects
+            EffectParameterBlock params = p.getEffectParameters();
+            params.set(EffectParameters.GAIN, sliderGainValue.getValue() * 0.01f);
+            params.set(EffectParameters.OFFSET, sliderOffsetValue.getValue() * 0.01f);
+            params.set(EffectParameters.CONTRAST, sliderContrastValue.getValue() * 0.01f);
+            params.set(EffectParameters.SATURATION, sliderSaturationValue.getValue() * 0.01f);
+            params.set(EffectParameters.WIPER_LEFT, sliderWiperValue.getValue() * 0.01f);
+            params.set(EffectParameters.ZEBRA_ENABLE, switchZebra.isChecked() ? 1.0f : 0.0f);
+            params.set(EffectParameters.GAMUT_ENABLE, switchGamut.isChecked() ? 1.0f : 0.0f);
+            params.publish();
         }
     }
 
@@ -495,26 +499,28 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
             return;
         }
 
+        EffectParameterBlock params = p.getEffectParameters();
         switch (filter) {
             case Constants.FILTER_BW:
-                p.EditShadersSetParameter(EffectParameters.OVERRIDE_Y.ordinal(), -1.0f);
-                p.EditShadersSetParameter(EffectParameters.OVERRIDE_U.ordinal(), 0.5f);
-                p.EditShadersSetParameter(EffectParameters.OVERRIDE_V.ordinal(), 0.5f);
-                p.EditShadersSetParameter(EffectParameters.OVERRIDE_A.ordinal(), -1.0f);
+                params.set(EffectParameters.OVERRIDE_Y, -1.0f);
+                params.set(EffectParameters.OVERRIDE_U, 0.5f);
+                params.set(EffectParameters.OVERRIDE_V, 0.5f);
+                params.set(EffectParameters.OVERRIDE_A, -1.0f);
                 break;
             case Constants.FILTER_SEPIA:
-                p.EditShadersSetParameter(EffectParameters.OVERRIDE_Y.ordinal(), -1.0f);
-                p.EditShadersSetParameter(EffectParameters.OVERRIDE_U.ordinal(), 0.45f);
-                p.EditShadersSetParameter(EffectParameters.OVERRIDE_V.ordinal(), 0.55f);
-                p.EditShadersSetParameter(EffectParameters.OVERRIDE_A.ordinal(), -1.0f);
+                params.set(EffectParameters.OVERRIDE_Y, -1.0f);
+                params.set(EffectParameters.OVERRIDE_U, 0.45f);
+                params.set(EffectParameters.OVERRIDE_V, 0.55f);
+                params.set(EffectParameters.OVERRIDE_A, -1.0f);
                 break;
             default:
-                p.EditShadersSetParameter(EffectParameters.OVERRIDE_Y.ordinal(), -1.0f);
-                p.EditShadersSetParameter(EffectParameters.OVERRIDE_U.ordinal(), -1.0f);
-                p.EditShadersSetParameter(EffectParameters.OVERRIDE_V.ordinal(), -1.0f);
-                p.EditShadersSetParameter(EffectParameters.OVERRIDE_A.ordinal(), -1.0f);
+                params.set(EffectParameters.OVERRIDE_Y, -1.0f);
+                params.set(EffectParameters.OVERRIDE_U, -1.0f);
+                params.set(EffectParameters.OVERRIDE_V, -1.0f);
+                params.set(EffectParameters.OVERRIDE_A, -1.0f);
                 break;
         }
+        params.publish();
     }
 
     private void errorDialog(String title, String message) {
@@ -574,7 +580,7 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
             } else {
                 try {
                     animateView(progressOverlayView, View.VISIBLE, 0.4f, 200);
-                    p.EditShadersSetParameter(EffectParameters.WIPER_LEFT.ordinal(), 0.0f);
+                    p.setEffectParameter(EffectParameters.WIPER_LEFT, 0.0f);
                     if (trimOnly) {
                         p.load_trim(inputUri, screenSurface, this, this.screen);
                     } else {
@@ -745,6 +751,19 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
         Log.d(TAG, "onPause: ");
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // stops the overlay worker thread, recreate() starts a new activity with its own
+        if (textOverlayRenderer != null) {
+            textOverlayRenderer.release();
+            textOverlayRenderer = null;
+        }
+
+        Log.d(TAG, "onDestroy: ");
+    }
+
     public Size setVideoSize(Size videoDimensions, int rotation) {
         // Get the dimensions of the video
         int videoWidth = videoDimensions.getWidth();
@@ -904,6 +923,7 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
             Log.d(TAG, "EditShaderInitDone, load video effects");
             loadVideoEffects();
             loadVideoFilter();
+            p.refreshOverlayLayers();
             applyTextCompositing();
             hideProgressDialog();
         } else if (message.getPayload() instanceof VideoDecoder && message.getTitle().equals("Done")) {
@@ -985,11 +1005,6 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
         }
 
         String text = simpleEditText.getText().toString();
-        if (text.length() == 0) {
-            // no text added
-            return;
-        }
-
         String color = (String) spinnerTextColor.getSelectedItem();
         float opacity = sliderOpacityValue.getValue();
 
@@ -997,72 +1012,11 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
         int index = rgTextPosition.indexOfChild(selectedRadioButton);
         Constants.TextPosition position = Constants.TextPosition.values()[index];
 
-        Log.d(TAG, "Compositing:  text=" + text + "  color=" + color + "  opacity=" + opacity + "  position=" + position);
-
-
-        // The text bitmap is created in Java
-        Size textResolution = inSize;
-        Bitmap bitmap = Bitmap.createBitmap(textResolution.getWidth(), textResolution.getHeight(), Bitmap.Config.ARGB_8888);
-        bitmap.eraseColor(0);
-        Canvas canvas = new Canvas(bitmap);
-        Paint textPaint = new Paint();
-
-        Rect r = new Rect();
-        textPaint.getTextBounds(text, 0, text.length(), r);
-        textPaint.setTextSize(textResolution.getHeight() / 9);
-        textPaint.setAntiAlias(true);
-        textPaint.setTextAlign(Paint.Align.CENTER);
-        switch (color) {
-            case Constants.BLACK:
-                textPaint.setARGB(0xff, 0x00, 0x00, 0x00);
-                break;
-            case Constants.WHITE:
-                textPaint.setARGB(0xff, 0xff, 0xff, 0xff);
-                break;
-            case Constants.GRAY:
-                textPaint.setARGB(0x80, 0x80, 0x80, 0x00);
-                break;
-            case Constants.PURPLE:
-                textPaint.setARGB(0xff, 0x62, 0x00, 0xee);
-                break;
-        }
-        textPaint.setAlpha((int)(255 * opacity));
-
-        int mStartX = (canvas.getWidth() / 2);
-        int mStartY = (Math.abs(r.height())) / 2;
-        int offset = canvas.getHeight() / 6;
-        switch (position) {
-            case TOP:
-                mStartY += offset;
-                break;
-            case MIDDLE:
-                mStartY += (offset * 3);
-                break;
-            case BOTTOM:
-                mStartY += (offset * 5);
-                break;
+        // Rendering the text happens off the UI thread, only the latest edit of a burst is drawn
+        if (textOverlayRenderer == null) {
+            textOverlayRenderer = new TextOverlayRenderer();
         }
-
-        // Render text to the bitmap
-        canvas.drawText(text, mStartX, mStartY, textPaint);
-
-        // Convert bitmap to byte array
-        int num_bytes = bitmap.getRowBytes() * bitmap.getHeight();
-        ByteBuffer byteBuffer;
-        if (reusableBuffer != null && reusableBuffer.capacity() == num_bytes){
-            byteBuffer = reusableBuffer;
-            byteBuffer.clear();
-        }
-        else{
-            byteBuffer = ByteBuffer.allocate(num_bytes);
-            reusableBuffer = byteBuffer;
-        }
-        bitmap.copyPixelsToBuffer(byteBuffer);
-        byte[] byteArray = byteBuffer.array();
-
-        // Send byte array to C++ shader
-        p.EditShadersSetCompositingImage(byteArray);
-        p.EditShadersSetParameter(EffectParameters.COMPOSITOR_ENABLE.ordinal(), 1.0f);
+        textOverlayRenderer.submit(new TextOverlayRenderer.Request(p, text, color, opacity, position, inSize));
     }
 
     /*
@@ -1101,8 +1055,8 @@ public class MainActivity extends Activity implements View.OnClickListener, Adap
         bitmap.copyPixelsToBuffer(byteBuffer);
         byte[] byteArray = byteBuffer.array();
 
-        p.EditShadersSetCompositingImage(byteArray);
-        p.EditShadersSetParameter(EffectParameters.COMPOSITOR_ENABLE.ordinal(), 1.0f);
+        p.EditShadersSetCompositingImage(byteArray, bitmap.getWidth(), bitmap.getHeight(), OverlayTransform.identity());
+        p.setEffectParameter(EffectParameters.COMPOSITOR_ENABLE, 1.0f);
     }
 
     private int makeEven(int value) { return (value % 2 == 0) ? value : value + 1; }
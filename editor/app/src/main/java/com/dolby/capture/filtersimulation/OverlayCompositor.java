@@ -0,0 +1,361 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Layer list of the compositing overlay, for example a caption, a watermark and a logo. Each
+ * layer has its own bounds in the frame, opacity, z-order and time range, and its pixels live in
+ * a slot of one shared texture atlas. Changing a layer only re-uploads that layer's slot; the
+ * edit compute shader blends all layers visible at a frame in one pass, using the table from
+ * {@link #fillLayerTable}.
+ *
+ * Layers are edited from the UI and read by the render thread, all methods are synchronized.
+ */
+public class OverlayCompositor {
+
+    // must match MAX_COMPOSITING_LAYERS in the edit compute shader
+    public static final int MAX_LAYERS = 8;
+
+    // floats per layer in the table: frame bounds, atlas region and opacity, three vec4
+    public static final int LAYER_FLOATS = 12;
+
+    private static final int MIN_ATLAS_HEIGHT = 256;
+
+    /**
+     * Pixels to write to the atlas, for the layer with the given id and generation.
+     */
+    public static final class Upload {
+        public final int id;
+        public final int generation;
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+        public final int atlasWidth;
+        public final int atlasHeight;
+
+        Upload(Layer layer, int atlasWidth, int atlasHeight) {
+            this.id = layer.id;
+            this.generation = layer.generation;
+            this.x = layer.slot.x;
+            this.y = layer.slot.y;
+            this.width = layer.width;
+            this.height = layer.height;
+            this.atlasWidth = atlasWidth;
+            this.atlasHeight = atlasHeight;
+        }
+    }
+
+    private static final class Layer {
+        final int id;
+        int width;
+        int height;
+        int left;
+        int top;
+        float opacity;
+        int z;
+        long startUs;
+        long endUs;
+        AtlasAllocator.Slot slot;
+        // bumped whenever the layer's pixels or slot change, an older upload does not count
+        int generation = 0;
+        boolean uploaded = false;
+
+        Layer(int id) {
+            this.id = id;
+        }
+    }
+
+    private static final Comparator<Layer> BACK_TO_FRONT = (a, b) -> a.z != b.z ? Integer.compare(a.z, b.z) : Integer.compare(a.id, b.id);
+
+    private final int frameWidth;
+    private final int frameHeight;
+    private final int maxAtlasHeight;
+    private AtlasAllocator atlas;
+    // sorted back to front
+    private final ArrayList<Layer> layers = new ArrayList<>();
+
+    /**
+     * @param frameWidth    Width of the frame layer bounds are given in, also the atlas width.
+     * @param frameHeight   Height of the frame layer bounds are given in.
+     * @param maxAtlasSize  Largest texture size the atlas may grow to.
+     */
+    public OverlayCompositor(int frameWidth, int frameHeight, int maxAtlasSize) {
+        if (frameWidth <= 0 || frameHeight <= 0 || frameWidth > maxAtlasSize) {
+            throw new IllegalArgumentException("frame " + frameWidth + "x" + frameHeight + " does not fit a " + maxAtlasSize + " atlas");
+        }
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.maxAtlasHeight = maxAtlasSize;
+        this.atlas = new AtlasAllocator(frameWidth, Math.min(MIN_ATLAS_HEIGHT, maxAtlasSize));
+    }
+
+    /**
+     * Adds a layer or replaces its pixels and placement. The layer is not shown before its upload
+     * is reported with {@link #markUploaded}.
+     *
+     * @param width   Width of the layer pixels, also its width in the frame.
+     * @param height  Height of the layer pixels, also its height in the frame.
+     * @param left    Left edge in the frame.
+     * @param top     Top edge in the frame.
+     * @param startUs First presentation time the layer is shown at.
+     * @param endUs   Presentation time the layer is hidden from, Long.MAX_VALUE for the whole clip.
+     * @return Uploads to do, this layer's and those of layers moved to make room.
+     */
+    public synchronized List<Upload> setLayer(int id, int width, int height, int left, int top, float opacity, int z, long startUs, long endUs) {
+        if (width <= 0 || height <= 0 || width > frameWidth || height > frameHeight) {
+            throw new IllegalArgumentException("layer " + width + "x" + height + " does not fit the frame");
+        }
+        Layer layer = find(id);
+        boolean added = layer == null;
+        if (added) {
+            layer = new Layer(id);
+        }
+        AtlasAllocator.Slot previous = layer.slot;
+        int previousWidth = layer.width;
+        int previousHeight = layer.height;
+
+        List<Upload> uploads = new ArrayList<>();
+        layer.width = width;
+        layer.height = height;
+        if (previous == null || !previous.fits(width, height)) {
+            AtlasAllocator.Slot slot = atlas.allocate(width, height);
+            if (slot == null) {
+                if (added) {
+                    layers.add(layer);
+                }
+                if (!repack()) {
+                    // keep the previous state, the new pixels cannot be placed
+                    if (added) {
+                        layers.remove(layer);
+                    } else {
+                        layer.width = previousWidth;
+                        layer.height = previousHeight;
+                    }
+                    throw new IllegalStateException("overlay layers do not fit a " + frameWidth + "x" + maxAtlasHeight + " atlas");
+                }
+                place(layer, left, top, opacity, z, startUs, endUs);
+                for (Layer moved : layers) {
+                    uploads.add(new Upload(moved, atlas.getWidth(), atlas.getHeight()));
+                }
+                return uploads;
+            }
+            if (previous != null) {
+                atlas.release(previous);
+            }
+            layer.slot = slot;
+        }
+        layer.generation++;
+        layer.uploaded = false;
+        if (added) {
+            layers.add(layer);
+        }
+        place(layer, left, top, opacity, z, startUs, endUs);
+        uploads.add(new Upload(layer, atlas.getWidth(), atlas.getHeight()));
+        return uploads;
+    }
+
+    /**
+     * Changes where and when a layer is shown without touching its pixels.
+     *
+     * @return False if there is no such layer.
+     */
+    public synchronized boolean moveLayer(int id, int left, int top, float opacity, int z, long startUs, long endUs) {
+        Layer layer = find(id);
+        if (layer == null) {
+            return false;
+        }
+        place(layer, left, top, opacity, z, startUs, endUs);
+        return true;
+    }
+
+    public synchronized boolean removeLayer(int id) {
+        Layer layer = find(id);
+        if (layer == null) {
+            return false;
+        }
+        layers.remove(layer);
+        atlas.release(layer.slot);
+        return true;
+    }
+
+    /**
+     * Shows a layer from the next frame on, once its pixels are in the atlas.
+     *
+     * @return False if the layer changed or moved since the upload was handed out.
+     */
+    public synchronized boolean markUploaded(int id, int generation) {
+        Layer layer = find(id);
+        if (layer == null || layer.generation != generation) {
+            return false;
+        }
+        layer.uploaded = true;
+        return true;
+    }
+
+    /**
+     * Hides every layer until it is uploaded again, for a new render thread whose atlas is empty.
+     *
+     * @return Uploads for all layers.
+     */
+    public synchronized List<Upload> invalidate() {
+        List<Upload> uploads = new ArrayList<>();
+        for (Layer layer : layers) {
+            layer.generation++;
+            layer.uploaded = false;
+            uploads.add(new Upload(layer, atlas.getWidth(), atlas.getHeight()));
+        }
+        return uploads;
+    }
+
+    /**
+     * Writes the layers visible at a presentation time, back to front, to the table the edit
+     * compute shader reads. Per layer: left, top, right and bottom in normalized frame
+     * coordinates; x, y, width and height of its atlas region in texels; opacity and padding.
+     *
+     * @param table At least MAX_LAYERS * LAYER_FLOATS floats.
+     * @return Number of layers written, at most MAX_LAYERS of the front-most ones.
+     */
+    public synchronized int fillLayerTable(long ptsUs, float[] table) {
+        int visible = 0;
+        int first = layers.size();
+        // count from the front so the front-most layers are kept
+        while (first > 0 && visible < MAX_LAYERS) {
+            Layer layer = layers.get(--first);
+            if (isVisible(layer, ptsUs)) {
+                visible++;
+            }
+        }
+        int count = 0;
+        for (int i = first; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            if (!isVisible(layer, ptsUs)) {
+                continue;
+            }
+            int base = count * LAYER_FLOATS;
+            table[base] = (float) layer.left / frameWidth;
+            table[base + 1] = (float) layer.top / frameHeight;
+            table[base + 2] = (float) (layer.left + layer.width) / frameWidth;
+            table[base + 3] = (float) (layer.top + layer.height) / frameHeight;
+            table[base + 4] = layer.slot.x;
+            table[base + 5] = layer.slot.y;
+            table[base + 6] = layer.width;
+            table[base + 7] = layer.height;
+            table[base + 8] = layer.opacity;
+            table[base + 9] = 0;
+            table[base + 10] = 0;
+            table[base + 11] = 0;
+            count++;
+        }
+        return count;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    public synchronized int getLayerCount() {
+        return layers.size();
+    }
+
+    public synchronized int getAtlasWidth() {
+        return atlas.getWidth();
+    }
+
+    public synchronized int getAtlasHeight() {
+        return atlas.getHeight();
+    }
+
+    private static boolean isVisible(Layer layer, long ptsUs) {
+        return layer.uploaded && layer.opacity > 0 && ptsUs >= layer.startUs && ptsUs < layer.endUs;
+    }
+
+    private Layer find(int id) {
+        for (Layer layer : layers) {
+            if (layer.id == id) {
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    private void place(Layer layer, int left, int top, float opacity, int z, long startUs, long endUs) {
+        layer.left = left;
+        layer.top = top;
+        layer.opacity = opacity;
+        layer.startUs = startUs;
+        layer.endUs = endUs;
+        layer.z = z;
+        layers.sort(BACK_TO_FRONT);
+    }
+
+    /**
+     * Packs all layers into a fresh atlas, tallest first, doubling its height until they fit.
+     * Every layer gets a new slot and has to be uploaded again.
+     *
+     * @return False if they do not fit the largest atlas, nothing is changed then.
+     */
+    private boolean repack() {
+        ArrayList<Layer> tallestFirst = new ArrayList<>(layers);
+        tallestFirst.sort((a, b) -> Integer.compare(b.height, a.height));
+        for (int height = atlas.getHeight(); ; height = Math.min(height * 2, maxAtlasHeight)) {
+            AtlasAllocator packed = new AtlasAllocator(atlas.getWidth(), height);
+            AtlasAllocator.Slot[] slots = new AtlasAllocator.Slot[tallestFirst.size()];
+            boolean fits = true;
+            for (int i = 0; i < slots.length && fits; i++) {
+                slots[i] = packed.allocate(tallestFirst.get(i).width, tallestFirst.get(i).height);
+                fits = slots[i] != null;
+            }
+            if (fits) {
+                atlas = packed;
+                for (int i = 0; i < slots.length; i++) {
+                    Layer layer = tallestFirst.get(i);
+                    layer.slot = slots[i];
+                    layer.generation++;
+                    layer.uploaded = false;
+                }
+                return true;
+            }
+            if (height == maxAtlasHeight) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+/**
+ * Placement of a compositing overlay that covers only part of the frame. The edit shader maps
+ * each output pixel, in normalized frame coordinates, through the compositor transform matrix to
+ * normalized overlay coordinates; outside of [0, 1] the overlay is transparent. Matrices are 4x4
+ * in column-major order, as passed to glUniformMatrix4fv.
+ */
+public final class OverlayTransform {
+
+    private OverlayTransform() {
+    }
+
+    /**
+     * @return Matrix for an overlay covering the whole frame.
+     */
+    public static float[] identity() {
+        return new float[]{
+                1, 0, 0, 0,
+                0, 1, 0, 0,
+                0, 0, 1, 0,
+                0, 0, 0, 1
+        };
+    }
+
+    /**
+     * @param frameWidth  Width of the frame the rectangle is given in.
+     * @param frameHeight Height of the frame the rectangle is given in.
+     * @param left        Left edge of the overlay in frame pixels.
+     * @param top         Top edge of the overlay in frame pixels.
+     * @param width       Width of the overlay in frame pixels.
+     * @param height      Height of the overlay in frame pixels.
+     * @return Matrix mapping normalized frame coordinates to normalized overlay coordinates.
+     */
+    public static float[] forRect(int frameWidth, int frameHeight, int left, int top, int width, int height) {
+        if (frameWidth <= 0 || frameHeight <= 0 || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("empty frame or overlay");
+        }
+        float scaleX = (float) frameWidth / width;
+        float scaleY = (float) frameHeight / height;
+        float[] matrix = identity();
+        matrix[0] = scaleX;
+        matrix[5] = scaleY;
+        // translation lives in the last column
+        matrix[12] = (float) -left / width;
+        matrix[13] = (float) -top / height;
+        return matrix;
+    }
+
+    /**
+     * Applies a matrix to a point, as the shader does.
+     *
+     * @return x and y of the transformed point.
+     */
+    public static float[] apply(float[] matrix, float x, float y) {
+        return new float[]{
+                matrix[0] * x + matrix[4] * y + matrix[12],
+                matrix[1] * x + matrix[5] * y + matrix[13]
+        };
+    }
+}
@@ -0,0 +1,127 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Keyframe tracks of the effect parameters that animate over the timeline, for example a gain
+ * ramp fading in from black or a moving wiper. Tracks are edited from the UI and baked into an
+ * {@link AutomationTable} before an export starts, so the render thread never evaluates curves.
+ */
+public class ParameterAutomation {
+
+    private final EnumMap<EffectParameters, KeyframeTrack> tracks = new EnumMap<>(EffectParameters.class);
+
+    public synchronized void addLinear(EffectParameters parameter, long timeUs, float value) {
+        track(parameter).addLinear(timeUs, value);
+    }
+
+    public synchronized void addBezier(EffectParameters parameter, long timeUs, float value, float x1, float y1, float x2, float y2) {
+        track(parameter).addBezier(timeUs, value, x1, y1, x2, y2);
+    }
+
+    public synchronized boolean remove(EffectParameters parameter, long timeUs) {
+        KeyframeTrack track = tracks.get(parameter);
+        if (track == null || !track.remove(timeUs)) {
+            return false;
+        }
+        if (track.isEmpty()) {
+            tracks.remove(parameter);
+        }
+        return true;
+    }
+
+    public synchronized void clear(EffectParameters parameter) {
+        tracks.remove(parameter);
+    }
+
+    public synchronized void clear() {
+        tracks.clear();
+    }
+
+    public synchronized boolean isEmpty() {
+        return tracks.isEmpty();
+    }
+
+    public synchronized float evaluate(EffectParameters parameter, long timeUs) {
+        KeyframeTrack track = tracks.get(parameter);
+        if (track == null) {
+            throw new IllegalArgumentException(parameter + " is not automated");
+        }
+        return track.evaluate(timeUs);
+    }
+
+    private KeyframeTrack track(EffectParameters parameter) {
+        if (parameter.ordinal() >= EffectParameterBlock.COUNT) {
+            throw new IllegalArgumentException("not a uniform block parameter: " + parameter);
+        }
+        KeyframeTrack track = tracks.get(parameter);
+        if (track == null) {
+            track = new KeyframeTrack();
+            tracks.put(parameter, track);
+        }
+        return track;
+    }
+
+    /**
+     * Evaluates every track at every frame of the clip.
+     *
+     * @param durationUs Length of the clip.
+     * @param fps        Frame rate of the clip, frame i is at i / fps seconds.
+     * @return Table of durationUs * fps frames, at least one.
+     */
+    public synchronized AutomationTable bake(long durationUs, int fps) {
+        if (fps <= 0) {
+            throw new IllegalArgumentException("fps must be positive");
+        }
+        long frames = Math.max(1, (Math.max(0, durationUs) * fps + 999_999) / 1_000_000);
+        int[] parameters = new int[tracks.size()];
+        if (frames * parameters.length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("automation table too large: " + frames + " frames");
+        }
+        int frameCount = (int) frames;
+        float[] values = new float[frameCount * parameters.length];
+
+        int column = 0;
+        for (Map.Entry<EffectParameters, KeyframeTrack> entry : tracks.entrySet()) {
+            parameters[column] = entry.getKey().ordinal();
+            KeyframeTrack track = entry.getValue();
+            for (int frame = 0; frame < frameCount; frame++) {
+                values[frame * parameters.length + column] = track.evaluate(frame * 1_000_000L / fps);
+            }
+            column++;
+        }
+        return new AutomationTable(fps, frameCount, parameters, values);
+    }
+}
@@ -0,0 +1,188 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces preview frames by their presentation time against the monotonic System.nanoTime() clock.
+ * The first frame after {@link #reset()} anchors the clock; every later frame is due at the
+ * anchor plus its PTS offset, so variable frame rate content keeps its own timing. Frames that
+ * are later than one frame interval are reported as drops, except that a drop is never allowed
+ * to run longer than {@link #MAX_CONSECUTIVE_DROPS} frames so the picture keeps updating.
+ */
+public class PresentationClock {
+
+    public static final int ON_TIME = 0;
+    public static final int LATE = 1;
+    public static final int DROP = 2;
+
+    public static final int MAX_CONSECUTIVE_DROPS = 4;
+
+    // scheduling jitter that still counts as on time
+    private static final long ON_TIME_TOLERANCE_NS = 1_000_000L;
+
+    private final long defaultFrameIntervalNs;
+
+    private boolean anchored = false;
+    private long anchorPtsUs;
+    private long anchorNs;
+
+    private long lastPtsUs;
+    private long frameIntervalNs;
+    private int consecutiveDrops = 0;
+
+    private volatile boolean cancelled = false;
+    private volatile Thread waiter;
+
+    private long onTime = 0;
+    private long late = 0;
+    private long dropped = 0;
+    private long maxLatenessNs = 0;
+
+    /**
+     * @param defaultFrameIntervalUs Frame interval assumed until two frames have been seen.
+     */
+    public PresentationClock(long defaultFrameIntervalUs) {
+        this.defaultFrameIntervalNs = Math.max(1, defaultFrameIntervalUs) * 1000;
+        this.frameIntervalNs = defaultFrameIntervalNs;
+    }
+
+    /**
+     * Re-anchors the clock on the next frame, e.g. after seeking, looping or resuming from pause.
+     */
+    public synchronized void reset() {
+        anchored = false;
+        consecutiveDrops = 0;
+        frameIntervalNs = defaultFrameIntervalNs;
+    }
+
+    /**
+     * @return The System.nanoTime() at which a frame is due, or -1 before the clock is anchored.
+     */
+    public synchronized long getDueTimeNs(long ptsUs) {
+        return anchored ? anchorNs + (ptsUs - anchorPtsUs) * 1000 : -1;
+    }
+
+    /**
+     * Classifies a frame against the clock and updates the counters.
+     *
+     * @param ptsUs The presentation time of the frame.
+     * @param nowNs The current System.nanoTime().
+     * @return {@link #ON_TIME}, {@link #LATE} or {@link #DROP}.
+     */
+    public synchronized int schedule(long ptsUs, long nowNs) {
+        if (!anchored || ptsUs < lastPtsUs) {
+            // first frame, or the stream went backwards
+            anchored = true;
+            anchorPtsUs = ptsUs;
+            anchorNs = nowNs;
+            lastPtsUs = ptsUs;
+            consecutiveDrops = 0;
+            onTime++;
+            return ON_TIME;
+        }
+
+        if (ptsUs > lastPtsUs) {
+            frameIntervalNs = (ptsUs - lastPtsUs) * 1000;
+        }
+        lastPtsUs = ptsUs;
+
+        long lateness = nowNs - (anchorNs + (ptsUs - anchorPtsUs) * 1000);
+        if (lateness <= ON_TIME_TOLERANCE_NS) {
+            consecutiveDrops = 0;
+            onTime++;
+            return ON_TIME;
+        }
+
+        maxLatenessNs = Math.max(maxLatenessNs, lateness);
+        if (lateness > frameIntervalNs && consecutiveDrops < MAX_CONSECUTIVE_DROPS) {
+            consecutiveDrops++;
+            dropped++;
+            return DROP;
+        }
+
+        consecutiveDrops = 0;
+        late++;
+        return LATE;
+    }
+
+    /**
+     * Blocks the calling thread until the frame's due time.
+     *
+     * @return False if the wait was cut short by {@link #cancel()}.
+     */
+    public boolean waitUntilDue(long ptsUs) {
+        long due = getDueTimeNs(ptsUs);
+        if (due < 0) {
+            return !cancelled;
+        }
+        waiter = Thread.currentThread();
+        try {
+            long remaining;
+            while (!cancelled && (remaining = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            waiter = null;
+        }
+        return !cancelled;
+    }
+
+    /**
+     * Wakes a thread waiting in {@link #waitUntilDue(long)}. Further waits return immediately.
+     */
+    public void cancel() {
+        cancelled = true;
+        Thread t = waiter;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    public synchronized long getOnTimeCount() {
+        return onTime;
+    }
+
+    public synchronized long getLateCount() {
+        return late;
+    }
+
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    public synchronized String getStats() {
+        return "on time=" + onTime + ", late=" + late + ", dropped=" + dropped
+                + ", max lateness=" + (maxLatenessNs / 1000) + "us";
+    }
+}
@@ -0,0 +1,476 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads compressed samples ahead of the decoder on a background thread.
+ * Samples are copied into a fixed ring of reusable direct ByteBuffers, with sample time, flags
+ * and size kept in primitive arrays, so filling a codec input buffer is a single copy and never
+ * waits on storage unless the ring has run dry. The ring is bounded both by sample count and by
+ * the total bytes held.
+ * <p>
+ * In looping mode the end of the source is not passed on. Demux seeks back to the start and keeps
+ * reading, offsetting sample times so they continue one frame interval after the last sample of
+ * the previous pass. The start of the clip is therefore read ahead before the tail is decoded,
+ * and the decoder never has to be flushed at the loop point.
+ */
+public class SampleReadAhead {
+
+    /**
+     * The subset of MediaExtractor used by the read-ahead, so it can be driven without a device.
+     */
+    public interface SampleSource {
+        long getSampleSize();
+
+        int readSampleData(ByteBuffer buffer, int offset);
+
+        long getSampleTime();
+
+        int getSampleFlags();
+
+        boolean advance();
+
+        void seekTo(long timeUs, int mode);
+    }
+
+    public static final int END_OF_STREAM = -1;
+
+    public static final int RELEASED = -2;
+
+    public static final int EMPTY = -3;
+
+    private static final int MIN_BUFFER_SIZE = 64 * 1024;
+
+    private final SampleSource source;
+
+    private final int maxSamples;
+
+    private final long maxBytes;
+
+    private final ByteBuffer[] buffers;
+
+    private final long[] sampleTimes;
+
+    private final int[] sampleFlags;
+
+    private final int[] sampleSizes;
+
+    private int head = 0;
+
+    private int count = 0;
+
+    private long bytes = 0;
+
+    private boolean eosQueued = false;
+
+    private boolean running = false;
+
+    private long generation = 0;
+
+    private long releases = 0;
+
+    private Thread demuxThread;
+
+    private long takenSampleTime;
+
+    // loop state, guarded by the source lock
+    private volatile boolean looping = false;
+    private long loopOffsetUs = 0;
+    private long clipStartUs = -1;
+    private long maxTimeUs = -1;
+    private long prevTimeUs = -1;
+    private long minIntervalUs = Long.MAX_VALUE;
+    private long samplesInLoop = 0;
+
+    private volatile long loopStartUs = -1;
+    private volatile int loopCount = 0;
+
+    private int takenFlags;
+
+    // metrics
+    private long samplesRead = 0;
+    private long bytesRead = 0;
+    private long readTimeNs = 0;
+    private int maxOccupancy = 0;
+    private long maxOccupancyBytes = 0;
+    private long occupancySum = 0;
+    private long takes = 0;
+    private long underruns = 0;
+    private long underrunNs = 0;
+    private long fullStalls = 0;
+
+    /**
+     * @param source The demuxer to read from. It must not be used by anyone else while the
+     *               read-ahead is running.
+     * @param maxSamples Maximum number of samples held in the ring.
+     * @param maxBytes Soft limit on the compressed bytes held in the ring. Demux stops reading
+     *                 once it is reached, so the ring can exceed it by at most one sample.
+     */
+    public SampleReadAhead(SampleSource source, int maxSamples, long maxBytes) {
+        if (maxSamples <= 0) {
+            throw new IllegalArgumentException("maxSamples must be positive");
+        }
+        this.source = source;
+        this.maxSamples = maxSamples;
+        this.maxBytes = maxBytes;
+        this.buffers = new ByteBuffer[maxSamples];
+        this.sampleTimes = new long[maxSamples];
+        this.sampleFlags = new int[maxSamples];
+        this.sampleSizes = new int[maxSamples];
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        demuxThread = new Thread(this::demux, "VideoDecoder-ReadAhead");
+        demuxThread.start();
+    }
+
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            notifyAll();
+            t = demuxThread;
+            demuxThread = null;
+        }
+        if (t != null && t != Thread.currentThread()) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Enables looping mode. Must be set before {@link #start()}.
+     */
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    /**
+     * @return The offset sample time of the first sample of the latest loop, or -1 if the
+     * source has not looped yet.
+     */
+    public long getLoopStartTimeUs() {
+        return loopStartUs;
+    }
+
+    public int getLoopCount() {
+        return loopCount;
+    }
+
+    /**
+     * Drops everything read ahead and repositions the source. Reading resumes from the new
+     * position and sample times are no longer offset.
+     */
+    public void seekTo(long timeUs, int mode) {
+        synchronized (source) {
+            loopOffsetUs = 0;
+            clipStartUs = -1;
+            maxTimeUs = -1;
+            prevTimeUs = -1;
+            samplesInLoop = 0;
+            loopStartUs = -1;
+            synchronized (this) {
+                generation++;
+                head = 0;
+                count = 0;
+                bytes = 0;
+                eosQueued = false;
+                notifyAll();
+            }
+            source.seekTo(timeUs, mode);
+        }
+    }
+
+    /**
+     * Copies the next sample into a codec input buffer, blocking until demux has produced one.
+     * The sample time and flags are available from {@link #getTakenSampleTime()} and
+     * {@link #getTakenFlags()} afterwards.
+     *
+     * @param dst The codec input buffer. It is written from position 0.
+     * @return The sample size, {@link #END_OF_STREAM} or {@link #RELEASED} if the consumer
+     * was released with {@link #release()} before a sample became available.
+     */
+    public synchronized int take(ByteBuffer dst) throws InterruptedException {
+        if (!awaitSample()) {
+            return RELEASED;
+        }
+        return poll(dst);
+    }
+
+    /**
+     * Blocks until demux has produced a sample, without taking it.
+     *
+     * @return False if the consumer was released with {@link #release()} first.
+     */
+    public synchronized boolean awaitSample() throws InterruptedException {
+        long release = releases;
+        if (count == 0 && release == releases) {
+            long waitStart = System.nanoTime();
+            underruns++;
+            while (count == 0 && release == releases) {
+                wait();
+            }
+            underrunNs += System.nanoTime() - waitStart;
+        }
+        return count > 0;
+    }
+
+    /**
+     * Like {@link #take(ByteBuffer)} without blocking.
+     *
+     * @return The sample size, {@link #END_OF_STREAM} or {@link #EMPTY} if no sample has been
+     * read ahead, for example after a seek.
+     */
+    public int poll(ByteBuffer dst) {
+        synchronized (this) {
+            if (count == 0) {
+                return EMPTY;
+            }
+
+            occupancySum += count;
+            takes++;
+
+            int slot = head;
+            int size = sampleSizes[slot];
+            takenSampleTime = sampleTimes[slot];
+            takenFlags = sampleFlags[slot];
+
+            if (size > 0) {
+                ByteBuffer src = buffers[slot].duplicate();
+                src.position(0).limit(size);
+                dst.clear();
+                dst.put(src);
+            }
+
+            head = (head + 1) % maxSamples;
+            count--;
+            bytes -= Math.max(size, 0);
+            notifyAll();
+
+            return size;
+        }
+    }
+
+    /**
+     * Wakes a consumer blocked in {@link #take(ByteBuffer)}, which then returns {@link #RELEASED}.
+     */
+    public synchronized void release() {
+        releases++;
+        notifyAll();
+    }
+
+    public synchronized long getTakenSampleTime() {
+        return takenSampleTime;
+    }
+
+    public synchronized int getTakenFlags() {
+        return takenFlags;
+    }
+
+    public synchronized int getOccupancy() {
+        return count;
+    }
+
+    public synchronized long getOccupancyBytes() {
+        return bytes;
+    }
+
+    public synchronized int getMaxOccupancy() {
+        return maxOccupancy;
+    }
+
+    public synchronized long getMaxOccupancyBytes() {
+        return maxOccupancyBytes;
+    }
+
+    /**
+     * @return Number of times the decoder input had to wait for demux.
+     */
+    public synchronized long getUnderrunCount() {
+        return underruns;
+    }
+
+    public synchronized long getUnderrunTimeNs() {
+        return underrunNs;
+    }
+
+    /**
+     * @return Number of times demux had to wait because the ring was full.
+     */
+    public synchronized long getFullStallCount() {
+        return fullStalls;
+    }
+
+    public synchronized String getStats() {
+        long avgOccupancy = takes == 0 ? 0 : occupancySum * 100 / takes;
+        long avgReadUs = samplesRead == 0 ? 0 : readTimeNs / samplesRead / 1000;
+        return "samples=" + samplesRead + ", bytes=" + bytesRead
+                + ", avg read=" + avgReadUs + "us"
+                + ", avg occupancy=" + (avgOccupancy / 100) + "." + String.format("%02d", avgOccupancy % 100) + "/" + maxSamples
+                + ", max occupancy=" + maxOccupancy + " (" + maxOccupancyBytes + " bytes)"
+                + ", underruns=" + underruns + " (" + (underrunNs / 1000) + "us)"
+                + ", full stalls=" + fullStalls;
+    }
+
+    /**
+     * Offsets a sample time by the current loop and keeps track of the clip timing.
+     * Called with the source lock held.
+     */
+    private long trackSampleTime(long sourceTimeUs) {
+        if (clipStartUs < 0) {
+            clipStartUs = sourceTimeUs;
+        }
+        long time = sourceTimeUs + loopOffsetUs;
+        if (prevTimeUs >= 0 && time != prevTimeUs) {
+            // samples are in decode order, the smallest step is the frame interval
+            minIntervalUs = Math.min(minIntervalUs, Math.abs(time - prevTimeUs));
+        }
+        prevTimeUs = time;
+        maxTimeUs = Math.max(maxTimeUs, time);
+        samplesInLoop++;
+        return time;
+    }
+
+    /**
+     * Seeks back to the start of the clip so that its first sample follows the last presented
+     * sample by one frame interval. Called with the source lock held.
+     */
+    private void loopToStart() {
+        long interval = minIntervalUs == Long.MAX_VALUE ? 0 : minIntervalUs;
+        loopOffsetUs = maxTimeUs + interval - clipStartUs;
+        source.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+        samplesInLoop = 0;
+        prevTimeUs = -1;
+        loopStartUs = clipStartUs + loopOffsetUs;
+        loopCount++;
+    }
+
+    private void demux() {
+        while (true) {
+            int slot;
+            long gen;
+            synchronized (this) {
+                boolean stalled = false;
+                while (running && (eosQueued || count == maxSamples || (count > 0 && bytes >= maxBytes))) {
+                    if (!eosQueued && !stalled) {
+                        stalled = true;
+                        fullStalls++;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                slot = (head + count) % maxSamples;
+                gen = generation;
+            }
+
+            synchronized (source) {
+                synchronized (this) {
+                    // a seek while this thread was waiting for the source moves the ring back
+                    if (gen != generation) {
+                        continue;
+                    }
+                }
+                long readStart = System.nanoTime();
+                long sampleSize = source.getSampleSize();
+                if (sampleSize < 0 && looping && samplesInLoop > 0) {
+                    loopToStart();
+                    sampleSize = source.getSampleSize();
+                }
+                int size;
+                long time;
+                int flags;
+
+                if (sampleSize < 0) {
+                    size = END_OF_STREAM;
+                    time = 0;
+                    flags = MediaCodec.BUFFER_FLAG_END_OF_STREAM;
+                } else {
+                    ByteBuffer buffer = buffers[slot];
+                    if (buffer == null || buffer.capacity() < sampleSize) {
+                        buffer = ByteBuffer.allocateDirect(Math.max(MIN_BUFFER_SIZE, Integer.highestOneBit((int) sampleSize - 1) << 1));
+                        buffers[slot] = buffer;
+                    }
+                    buffer.clear();
+                    size = source.readSampleData(buffer, 0);
+                    time = source.getSampleTime();
+                    flags = source.getSampleFlags();
+                    if (size < 0) {
+                        size = END_OF_STREAM;
+                        flags = MediaCodec.BUFFER_FLAG_END_OF_STREAM;
+                    } else {
+                        source.advance();
+                        time = trackSampleTime(time);
+                    }
+                }
+
+                synchronized (this) {
+                    if (gen != generation) {
+                        continue;
+                    }
+                    sampleSizes[slot] = size;
+                    sampleTimes[slot] = time;
+                    sampleFlags[slot] = flags;
+                    count++;
+                    if (size > 0) {
+                        bytes += size;
+                        samplesRead++;
+                        bytesRead += size;
+                        readTimeNs += System.nanoTime() - readStart;
+                    } else {
+                        eosQueued = true;
+                    }
+                    maxOccupancy = Math.max(maxOccupancy, count);
+                    maxOccupancyBytes = Math.max(maxOccupancyBytes, bytes);
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
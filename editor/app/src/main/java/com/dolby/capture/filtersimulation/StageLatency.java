@@ -0,0 +1,133 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+/**
+ * Per-frame latency between the stage boundaries of the export pipeline. Each stage marks a frame
+ * by its presentation time as it passes; the time since the frame passed the previous boundary
+ * goes into that interval's histogram. Memory is fixed: frames in flight between two boundaries
+ * are kept in a {@link TimestampMap}, and a map that fills up with frames that never reached the
+ * next stage is cleared.
+ */
+public class StageLatency {
+
+    /** Sample queued to the decoder by the input feed thread. */
+    public static final int QUEUED = 0;
+    /** Decoder output buffer available. */
+    public static final int DECODED = 1;
+    /** Decoded image available from the ImageReader. */
+    public static final int RENDERED = 2;
+    /** GPU processing finished, its fence has signalled. */
+    public static final int PROCESSED = 3;
+    /** Encoder output buffer available. */
+    public static final int ENCODED = 4;
+    /** Encoded sample written to the muxer. */
+    public static final int MUXED = 5;
+
+    private static final String[] INTERVALS = {"decode", "render", "gpu", "encode", "mux"};
+
+    private final TimestampMap[] marks = new TimestampMap[MUXED];
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[MUXED];
+
+    private volatile boolean enabled = true;
+
+    private volatile long evictions = 0;
+
+    /**
+     * @param maxInFlight Number of frames expected between two neighbouring boundaries at once.
+     */
+    public StageLatency(int maxInFlight) {
+        for (int i = 0; i < MUXED; i++) {
+            marks[i] = new TimestampMap(maxInFlight);
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void mark(int stage, long ptsUs) {
+        if (enabled) {
+            mark(stage, ptsUs, System.nanoTime());
+        }
+    }
+
+    /**
+     * Records that a frame passed a boundary. Each stage must be marked from a single thread.
+     */
+    public void mark(int stage, long ptsUs, long nowNs) {
+        if (!enabled) {
+            return;
+        }
+        if (stage > QUEUED) {
+            long previous = marks[stage - 1].remove(ptsUs);
+            if (previous != TimestampMap.MISSING) {
+                histograms[stage - 1].record(nowNs - previous);
+            }
+        }
+        if (stage < MUXED && !marks[stage].put(ptsUs, nowNs)) {
+            // full of frames that were dropped or lost before the next stage
+            marks[stage].clear();
+            evictions++;
+            marks[stage].put(ptsUs, nowNs);
+        }
+    }
+
+    /**
+     * @param interval Stage the interval ends at, from {@link #DECODED} to {@link #MUXED}.
+     */
+    public LatencyHistogram getHistogram(int interval) {
+        return histograms[interval - 1];
+    }
+
+    public void reset() {
+        for (int i = 0; i < MUXED; i++) {
+            marks[i].clear();
+            histograms[i].reset();
+        }
+        evictions = 0;
+    }
+
+    /**
+     * @return One line per interval with p50, p99 and max.
+     */
+    public String getStats() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < MUXED; i++) {
+            sb.append(INTERVALS[i]).append(": ").append(histograms[i].getStats()).append('\n');
+        }
+        sb.append("evictions=").append(evictions);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,268 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+/**
+ * CPU reference of the static colour chain of the edit shader: gain, offset, contrast, saturation,
+ * YUV shifts, gamut restriction and overrides, followed by the output 3D LUT. While none of these
+ * change, the whole chain is baked into one 3D LUT and each pixel costs a single fetch.
+ *
+ * The chain follows the four pixel edit function, the one the compute shader is built with, in
+ * the RGB space the input is converted to. The shader samples LUTs with trilinear filtering,
+ * texel centers at i / (size - 1) and coordinates clamped to [0, 1], as {@link #sample} does.
+ * LUT data is RGB floats, red varying fastest.
+ */
+public final class StaticColorLut {
+
+    // Must match BAKED_LUT_SIZE in EditShaders.h. Twice the output LUT's resolution, so baking
+    // does not add much to the interpolation error the output LUT already has.
+    public static final int SIZE = 65;
+
+    // Parameters the baked LUT depends on
+    private static final EffectParameters[] INPUTS = {
+            EffectParameters.GAIN,
+            EffectParameters.OFFSET,
+            EffectParameters.CONTRAST,
+            EffectParameters.SATURATION,
+            EffectParameters.SHIFT_Y,
+            EffectParameters.SHIFT_U,
+            EffectParameters.SHIFT_V,
+            EffectParameters.OVERRIDE_Y,
+            EffectParameters.OVERRIDE_U,
+            EffectParameters.OVERRIDE_V,
+            EffectParameters.LUT_ENABLE,
+            EffectParameters.GAMUT_ENABLE,
+            EffectParameters.GAMUT_MAX_LUMA,
+            EffectParameters.GAMUT_MID_LUMA,
+            EffectParameters.GAMUT_MIN_LUMA,
+            EffectParameters.GAMUT_MID_CHROMA,
+    };
+
+    // Edit colour space matrices, column major as in the shader
+    private static final float[] REC709_RGB2YCC = {
+            0.212639005871510f, -0.114592177555732f, 0.5f,
+            0.715168678767756f, -0.385407822444268f, -0.454155517037873f,
+            0.072192315360734f, 0.5f, -0.045844482962127f};
+    private static final float[] REC709_YCC2RGB = {
+            1.0f, 1.0f, 1.0f,
+            0.0f, -0.187314089534789f, 1.855615369278533f,
+            1.574721988256979f, -0.468207470556342f, 0.0f};
+    private static final float[] REC2020_RGB2YCC = {
+            0.262700212011267f, -0.139630430187157f, 0.5f,
+            0.677998071518871f, -0.360369569812843f, -0.459784529009814f,
+            0.059301716469862f, 0.5f, -0.040215470990186f};
+    private static final float[] REC2020_YCC2RGB = {
+            1.0f, 1.0f, 1.0f,
+            0.0f, -0.164558057720190f, 1.881396567060276f,
+            1.474599575977466f, -0.571355048803000f, 0.0f};
+
+    private static final float[] NARROW_RANGE_OFFSET = {0.065f, 0.5f, 0.5f};
+
+    private StaticColorLut() {
+    }
+
+    /**
+     * Gamut restriction divides by the distance of each component from luma, it changes too
+     * abruptly near neutral colours for a LUT to follow.
+     *
+     * @return True if the colour chain of these parameters can be baked.
+     */
+    public static boolean isBakeable(float[] values) {
+        return values[EffectParameters.GAMUT_ENABLE.ordinal()] <= 0.5f;
+    }
+
+    /**
+     * @param values   Effect parameters, indexed by {@link EffectParameters#ordinal()}.
+     * @param rec2020  True if the shader edits in Rec. 2020.
+     * @param lutHash  {@link CubeLut#getHash()} of the loaded output LUT, 0 for the built-in one.
+     * @return Non-zero key of everything the baked LUT depends on.
+     */
+    public static long key(float[] values, boolean rec2020, long lutHash) {
+        long hash = 0xcbf29ce484222325L;
+        for (EffectParameters parameter : INPUTS) {
+            hash = (hash ^ Float.floatToIntBits(values[parameter.ordinal()])) * 0x100000001b3L;
+        }
+        hash = (hash ^ (rec2020 ? 1 : 0)) * 0x100000001b3L;
+        hash = (hash ^ lutHash) * 0x100000001b3L;
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Bakes the static colour chain, and the output LUT if enabled, into a LUT of size^3 entries.
+     *
+     * @param baseLut  Output LUT of the shader, baseSize^3 entries.
+     * @param out      size^3 * 3 floats.
+     */
+    public static void bake(float[] values, boolean rec2020, float[] baseLut, int baseSize, int size, float[] out) {
+        float[] rgb = new float[3];
+        float scale = 1.0f / (size - 1);
+        int i = 0;
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    rgb[0] = r * scale;
+                    rgb[1] = g * scale;
+                    rgb[2] = b * scale;
+                    apply(values, rec2020, baseLut, baseSize, rgb);
+                    out[i++] = rgb[0];
+                    out[i++] = rgb[1];
+                    out[i++] = rgb[2];
+                }
+            }
+        }
+    }
+
+    /**
+     * Unbaked chain: the edits, then the output LUT if enabled. Works in place on rgb.
+     */
+    public static void apply(float[] values, boolean rec2020, float[] baseLut, int baseSize, float[] rgb) {
+        edit(values, rec2020, rgb);
+        if (values[EffectParameters.LUT_ENABLE.ordinal()] >= 0.5f) {
+            sample(baseLut, baseSize, rgb[0], rgb[1], rgb[2], rgb);
+        }
+    }
+
+    /**
+     * Colour edits of the shader, without the output LUT. Works in place on rgb.
+     */
+    public static void edit(float[] values, boolean rec2020, float[] rgb) {
+        float gain = values[EffectParameters.GAIN.ordinal()];
+        float offset = values[EffectParameters.OFFSET.ordinal()];
+        float[] toYcc = rec2020 ? REC2020_RGB2YCC : REC709_RGB2YCC;
+        float[] toRgb = rec2020 ? REC2020_YCC2RGB : REC709_YCC2RGB;
+
+        // RGB gain and offset
+        for (int c = 0; c < 3; c++) {
+            rgb[c] = rgb[c] * gain + offset;
+        }
+
+        // YUV processing
+        float[] yuv = new float[3];
+        multiply(toYcc, rgb, yuv);
+        for (int c = 0; c < 3; c++) {
+            yuv[c] += NARROW_RANGE_OFFSET[c];
+        }
+        float saturation = values[EffectParameters.SATURATION.ordinal()];
+        yuv[0] = (yuv[0] - 0.5f) * values[EffectParameters.CONTRAST.ordinal()] + values[EffectParameters.SHIFT_Y.ordinal()] + 0.5f;
+        yuv[1] = (yuv[1] - 0.5f) * saturation + values[EffectParameters.SHIFT_U.ordinal()] + 0.5f;
+        yuv[2] = (yuv[2] - 0.5f) * saturation + values[EffectParameters.SHIFT_V.ordinal()] + 0.5f;
+
+        if (values[EffectParameters.GAMUT_ENABLE.ordinal()] > 0.5f) {
+            gamut(values, toRgb, yuv);
+        }
+
+        // Overrides
+        EffectParameters[] overrides = {EffectParameters.OVERRIDE_Y, EffectParameters.OVERRIDE_U, EffectParameters.OVERRIDE_V};
+        for (int c = 0; c < 3; c++) {
+            float override = values[overrides[c].ordinal()];
+            if (override >= 0.0f) {
+                yuv[c] = override;
+            }
+        }
+
+        toRgb(toRgb, yuv, rgb);
+    }
+
+    // Four pixel shader version: the ratio only limits the highlights, its lower bound term
+    // does not take part in the result
+    private static void gamut(float[] values, float[] toRgb, float[] yuv) {
+        float maxLuma = values[EffectParameters.GAMUT_MAX_LUMA.ordinal()];
+        float midLuma = values[EffectParameters.GAMUT_MID_LUMA.ordinal()];
+        float minLuma = values[EffectParameters.GAMUT_MIN_LUMA.ordinal()];
+        float midChroma = values[EffectParameters.GAMUT_MID_CHROMA.ordinal()];
+
+        float[] test = new float[3];
+        toRgb(toRgb, yuv, test);
+        yuv[0] = Math.max(Math.min(yuv[0], maxLuma), minLuma);
+        float luma = (yuv[0] - midLuma) / (maxLuma - midLuma);
+        float limit = Math.min(maxLuma, maxLuma - luma);
+        float ratio = Float.MAX_VALUE;
+        for (int c = 0; c < 3; c++) {
+            ratio = Math.min(ratio, limit / Math.max(0.0001f, test[c] - luma));
+        }
+        ratio = Math.min(1.0f, Math.max(0.0f, ratio));
+        yuv[1] = (yuv[1] - midChroma) * ratio + midChroma;
+        yuv[2] = (yuv[2] - midChroma) * ratio + midChroma;
+    }
+
+    private static void toRgb(float[] toRgb, float[] yuv, float[] rgb) {
+        float[] centered = new float[3];
+        for (int c = 0; c < 3; c++) {
+            centered[c] = yuv[c] - NARROW_RANGE_OFFSET[c];
+        }
+        multiply(toRgb, centered, rgb);
+    }
+
+    private static void multiply(float[] matrix, float[] in, float[] out) {
+        float x = in[0];
+        float y = in[1];
+        float z = in[2];
+        for (int row = 0; row < 3; row++) {
+            out[row] = matrix[row] * x + matrix[3 + row] * y + matrix[6 + row] * z;
+        }
+    }
+
+    /**
+     * Trilinear lookup as the shader's sampler does it.
+     *
+     * @param out Receives the RGB result, may be the same array the coordinates came from.
+     */
+    public static void sample(float[] lut, int size, float r, float g, float b, float[] out) {
+        float fr = clamp(r) * (size - 1);
+        float fg = clamp(g) * (size - 1);
+        float fb = clamp(b) * (size - 1);
+        int r0 = Math.min((int) fr, size - 2);
+        int g0 = Math.min((int) fg, size - 2);
+        int b0 = Math.min((int) fb, size - 2);
+        float dr = fr - r0;
+        float dg = fg - g0;
+        float db = fb - b0;
+        float out0 = 0, out1 = 0, out2 = 0;
+        for (int corner = 0; corner < 8; corner++) {
+            int ir = corner & 1;
+            int ig = (corner >> 1) & 1;
+            int ib = (corner >> 2) & 1;
+            float weight = (ir == 0 ? 1 - dr : dr) * (ig == 0 ? 1 - dg : dg) * (ib == 0 ? 1 - db : db);
+            int index = (((b0 + ib) * size + (g0 + ig)) * size + (r0 + ir)) * 3;
+            out0 += weight * lut[index];
+            out1 += weight * lut[index + 1];
+            out2 += weight * lut[index + 2];
+        }
+        out[0] = out0;
+        out[1] = out1;
+        out[2] = out2;
+    }
+
+    private static float clamp(float value) {
+        return Math.min(1.0f, Math.max(0.0f, value));
+    }
+}
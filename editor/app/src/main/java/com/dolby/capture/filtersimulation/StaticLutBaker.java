@@ -0,0 +1,167 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bakes the static colour chain into a 3D LUT on a worker thread, see {@link StaticColorLut}.
+ * Baked LUTs are cached by the key of the parameters they were baked from, so going back to
+ * earlier settings costs no bake. Requests are debounced: while parameters change every frame,
+ * as they do under automation, nothing is baked and the shader keeps evaluating the chain.
+ */
+public class StaticLutBaker {
+
+    public interface Listener {
+        /**
+         * Called on the requesting thread for cached LUTs, on the worker thread for baked ones.
+         *
+         * @param lut SIZE^3 RGB floats, must not be modified.
+         */
+        void onBaked(long key, FloatBuffer lut);
+    }
+
+    private static class Request {
+        final long key;
+        final float[] values;
+        final boolean rec2020;
+        final float[] baseLut;
+        final int baseSize;
+
+        Request(long key, float[] values, boolean rec2020, float[] baseLut, int baseSize) {
+            this.key = key;
+            this.values = values;
+            this.rec2020 = rec2020;
+            this.baseLut = baseLut;
+            this.baseSize = baseSize;
+        }
+    }
+
+    private final Listener listener;
+    private final DebouncedWorker<Request> worker;
+    private final LinkedHashMap<Long, FloatBuffer> cache;
+
+    // key of the request the worker has not finished yet, 0 if none
+    private long pendingKey = 0;
+    private long hits = 0;
+    private long bakes = 0;
+
+    /**
+     * @param cacheSize Number of baked LUTs kept.
+     */
+    public StaticLutBaker(int cacheSize, long debounceNs, Listener listener) {
+        this.listener = listener;
+        this.cache = new LinkedHashMap<Long, FloatBuffer>(cacheSize + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, FloatBuffer> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.worker = new DebouncedWorker<>("StaticLutBaker", debounceNs, this::bake);
+    }
+
+    /**
+     * Hands the LUT for key to the listener, from the cache or once it is baked. Repeated
+     * requests for the key being baked are ignored.
+     *
+     * @param values  Effect parameters, indexed by {@link EffectParameters#ordinal()}. Copied.
+     * @param baseLut Output LUT of the shader, baseSize^3 RGB floats, the key must cover it.
+     *                Not copied and must not be modified.
+     */
+    public void request(long key, float[] values, boolean rec2020, float[] baseLut, int baseSize) {
+        FloatBuffer lut;
+        synchronized (cache) {
+            lut = cache.get(key);
+            if (lut == null) {
+                if (key == pendingKey) {
+                    return;
+                }
+                pendingKey = key;
+            } else {
+                hits++;
+            }
+        }
+        if (lut != null) {
+            listener.onBaked(key, lut);
+        } else {
+            worker.submit(new Request(key, values.clone(), rec2020, baseLut, baseSize));
+        }
+    }
+
+    public void release() {
+        worker.shutdown();
+    }
+
+    private boolean bake(Request request, BooleanSupplier cancelled) {
+        float[] lut = new float[StaticColorLut.SIZE * StaticColorLut.SIZE * StaticColorLut.SIZE * 3];
+        StaticColorLut.bake(request.values, request.rec2020, request.baseLut, request.baseSize, StaticColorLut.SIZE, lut);
+        FloatBuffer buffer = ByteBuffer.allocateDirect(lut.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        buffer.put(lut);
+        buffer.flip();
+        synchronized (cache) {
+            cache.put(request.key, buffer);
+            bakes++;
+            if (pendingKey == request.key) {
+                pendingKey = 0;
+            }
+        }
+        // a newer request replaced this one while baking, it stays cached for later
+        if (cancelled.getAsBoolean()) {
+            return false;
+        }
+        listener.onBaked(request.key, buffer);
+        return true;
+    }
+
+    public String getStats() {
+        synchronized (cache) {
+            return "bakes=" + bakes + ", cache hits=" + hits + ", cached=" + cache.size() + ", " + worker.getStats();
+        }
+    }
+
+    public long getBakeCount() {
+        synchronized (cache) {
+            return bakes;
+        }
+    }
+
+    public long getCacheHitCount() {
+        synchronized (cache) {
+            return hits;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+import android.util.Size;
+
+import java.nio.ByteBuffer;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Rasterizes the text overlay on a worker thread, so typing does not block the UI thread. Edits
+ * are debounced and only the latest one is drawn; a render that is overtaken by a newer edit is
+ * dropped before its pixels reach the compositor. The bitmap, paint and pixel buffers are reused
+ * between renders.
+ */
+public class TextOverlayRenderer {
+
+    private static final String TAG = "TextOverlayRenderer";
+
+    // overlay compositor layer holding the text
+    public static final int TEXT_OVERLAY_LAYER = 0;
+    // transparent pixels around the text overlay, room for anti-aliasing
+    private static final int TEXT_OVERLAY_MARGIN = 2;
+    // quiet time after the last edit before the text is rendered
+    private static final long DEBOUNCE_NS = 30_000_000L;
+
+    /**
+     * Snapshot of the text settings taken on the UI thread.
+     */
+    public static class Request {
+        final ContentLoader loader;
+        final String text;
+        final String color;
+        final float opacity;
+        final Constants.TextPosition position;
+        final Size frame;
+        final long editNs;
+
+        public Request(ContentLoader loader, String text, String color, float opacity,
+                       Constants.TextPosition position, Size frame) {
+            this.loader = loader;
+            this.text = text;
+            this.color = color;
+            this.opacity = opacity;
+            this.position = position;
+            this.frame = frame;
+            this.editNs = System.nanoTime();
+        }
+    }
+
+    private final DebouncedWorker<Request> worker;
+    // only used on the worker thread
+    private final Paint textPaint = new Paint();
+    private Bitmap bitmap;
+
+    public TextOverlayRenderer() {
+        worker = new DebouncedWorker<>(TAG, DEBOUNCE_NS, this::render);
+    }
+
+    /**
+     * Replaces any edit that has not been rendered yet.
+     */
+    public void submit(Request request) {
+        worker.submit(request);
+    }
+
+    public void release() {
+        worker.shutdown();
+        Log.d(TAG, "text overlay renders " + worker.getStats());
+        if (bitmap != null) {
+            bitmap.recycle();
+            bitmap = null;
+        }
+    }
+
+    private boolean render(Request request, BooleanSupplier cancelled) {
+        ContentLoader p = request.loader;
+        String text = request.text;
+        if (text.length() == 0) {
+            // no text added
+            p.removeOverlayLayer(TEXT_OVERLAY_LAYER);
+            return true;
+        }
+
+        Log.d(TAG, "Compositing:  text=" + text + "  color=" + request.color + "  opacity=" + request.opacity
+                + "  position=" + request.position);
+
+        // The text bitmap is only as large as the text
+        Size textResolution = request.frame;
+        textPaint.reset();
+
+        Rect r = new Rect();
+        textPaint.getTextBounds(text, 0, text.length(), r);
+        textPaint.setTextSize(textResolution.getHeight() / 9);
+        textPaint.setAntiAlias(true);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        switch (request.color) {
+            case Constants.BLACK:
+                textPaint.setARGB(0xff, 0x00, 0x00, 0x00);
+                break;
+            case Constants.WHITE:
+                textPaint.setARGB(0xff, 0xff, 0xff, 0xff);
+                break;
+            case Constants.GRAY:
+                textPaint.setARGB(0x80, 0x80, 0x80, 0x00);
+                break;
+            case Constants.PURPLE:
+                textPaint.setARGB(0xff, 0x62, 0x00, 0xee);
+                break;
+        }
+        // opacity is applied by the compositor
+        textPaint.setAlpha(0xff);
+
+        int mStartX = (textResolution.getWidth() / 2);
+        int mStartY = (Math.abs(r.height())) / 2;
+        int offset = textResolution.getHeight() / 6;
+        switch (request.position) {
+            case TOP:
+                mStartY += offset;
+                break;
+            case MIDDLE:
+                mStartY += (offset * 3);
+                break;
+            case BOTTOM:
+                mStartY += (offset * 5);
+                break;
+        }
+
+        // Text bounds in frame pixels, with a margin for anti-aliasing, clipped to the frame
+        Rect bounds = new Rect();
+        textPaint.getTextBounds(text, 0, text.length(), bounds);
+        // bounds are relative to the left end of the text, which is centered on mStartX
+        float textLeft = mStartX - textPaint.measureText(text) / 2;
+        Rect overlay = new Rect((int) Math.floor(textLeft + bounds.left), mStartY + bounds.top,
+                (int) Math.ceil(textLeft + bounds.right), mStartY + bounds.bottom);
+        overlay.inset(-TEXT_OVERLAY_MARGIN, -TEXT_OVERLAY_MARGIN);
+        if (!overlay.intersect(0, 0, textResolution.getWidth(), textResolution.getHeight())) {
+            p.removeOverlayLayer(TEXT_OVERLAY_LAYER);
+            return true;
+        }
+
+        // Render text to the reused bitmap
+        int num_bytes = overlay.width() * overlay.height() * 4;
+        if (bitmap == null || bitmap.getAllocationByteCount() < num_bytes) {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            bitmap = Bitmap.createBitmap(overlay.width(), overlay.height(), Bitmap.Config.ARGB_8888);
+        } else {
+            bitmap.reconfigure(overlay.width(), overlay.height(), Bitmap.Config.ARGB_8888);
+        }
+        bitmap.eraseColor(0);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawText(text, mStartX - overlay.left, mStartY - overlay.top, textPaint);
+        if (cancelled.getAsBoolean()) {
+            return false;
+        }
+
+        // Copy the bitmap to a pooled direct buffer, native code reads it in place. The buffer is
+        // handed over to the loader, which keeps it for uploads to a new render thread.
+        ByteBuffer byteBuffer = p.acquireOverlayBuffer(num_bytes);
+        bitmap.copyPixelsToBuffer(byteBuffer);
+        byteBuffer.rewind();
+        if (cancelled.getAsBoolean()) {
+            p.releaseOverlayBuffer(byteBuffer);
+            return false;
+        }
+        Log.d(TAG, "Compositing overlay " + overlay.toShortString() + ", " + num_bytes + " bytes");
+
+        // Send the pixels to the C++ shader as the text layer, placed over the text bounds
+        p.setOverlayLayer(textResolution, TEXT_OVERLAY_LAYER, byteBuffer, overlay.width(), overlay.height(),
+                overlay.left, overlay.top, request.opacity, 0, 0, Long.MAX_VALUE, request.editNs);
+        return true;
+    }
+}
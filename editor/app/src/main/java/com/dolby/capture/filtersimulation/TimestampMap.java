@@ -0,0 +1,201 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive long keys to primitive long values, with linear probing
+ * and backward-shift deletion so no tombstones build up. Used to match encoder output to queued
+ * frames by presentation time, which lets the encoder return frames out of order without boxing
+ * keys or allocating entries per frame.
+ * The table never grows: a put that would exceed 3/4 load is rejected. All methods are
+ * synchronized since frames are added and removed on different threads.
+ */
+public class TimestampMap {
+
+    /** Returned by {@link #get} and {@link #remove} when the key is not present. */
+    public static final long MISSING = Long.MIN_VALUE;
+
+    // marks a free slot, presentation times never take this value
+    private static final long FREE = Long.MIN_VALUE;
+
+    private final long[] keys;
+
+    private final long[] values;
+
+    private final int mask;
+
+    private final int maxSize;
+
+    private int size = 0;
+
+    private long rejected = 0;
+
+    /**
+     * @param expectedSize Number of entries expected at once. The table is sized to a power of two
+     *                     at least twice as large.
+     */
+    public TimestampMap(int expectedSize) {
+        if (expectedSize <= 0) {
+            throw new IllegalArgumentException("expectedSize must be positive");
+        }
+        int capacity = Integer.highestOneBit(expectedSize * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+        this.maxSize = capacity - capacity / 4;
+        Arrays.fill(keys, FREE);
+    }
+
+    /**
+     * Adds or replaces an entry.
+     *
+     * @return False if the key is {@link #MISSING} or the table is at its load limit. The entry is
+     * not added and counted as rejected.
+     */
+    public synchronized boolean put(long key, long value) {
+        if (key == FREE) {
+            rejected++;
+            return false;
+        }
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size >= maxSize) {
+            rejected++;
+            return false;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return The value for the key, or {@link #MISSING} if there is none.
+     */
+    public synchronized long get(long key) {
+        int slot = find(key);
+        return slot < 0 ? MISSING : values[slot];
+    }
+
+    public synchronized boolean contains(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @return The removed value, or {@link #MISSING} if the key was not present.
+     */
+    public synchronized long remove(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return MISSING;
+        }
+        long value = values[slot];
+
+        // shift later entries of the probe chain back so lookups never stop at a hole
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = slot(keys[next]);
+            // move the entry unless its home lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = FREE;
+        size--;
+        return value;
+    }
+
+    /**
+     * @return A copy of the keys currently present, in no particular order.
+     */
+    public synchronized long[] keys() {
+        long[] out = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != FREE) {
+                out[n++] = key;
+            }
+        }
+        return out;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    private int find(long key) {
+        if (key == FREE) {
+            return -1;
+        }
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slot(long key) {
+        // presentation times are regular multiples of the frame duration, mix before masking
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
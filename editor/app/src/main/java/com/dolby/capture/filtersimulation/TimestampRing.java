@@ -0,0 +1,124 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+/**
+ * Lock-free single-producer/single-consumer ring of primitive longs.
+ * Used for the timestamps of frames in flight between the ImageWriter and the encoder, so
+ * tracking a frame neither boxes a Long nor allocates a queue node. A full ring rejects the
+ * value and counts an overflow instead of overwriting older entries.
+ */
+public class TimestampRing {
+
+    public static final long EMPTY = Long.MIN_VALUE;
+
+    private final long[] values;
+
+    private final int mask;
+
+    // written by the producer only
+    private volatile long tail = 0;
+
+    // written by the consumer only
+    private volatile long head = 0;
+
+    private volatile long overflows = 0;
+
+    /**
+     * @param capacity Number of entries, rounded up to a power of two.
+     */
+    public TimestampRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.values = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Appends a value. Must only be called from the producer thread.
+     *
+     * @return False if the ring is full. The value is dropped and counted as an overflow.
+     */
+    public boolean offer(long value) {
+        long t = tail;
+        if (t - head >= values.length) {
+            overflows++;
+            return false;
+        }
+        values[(int) t & mask] = value;
+        tail = t + 1;
+        return true;
+    }
+
+    /**
+     * Removes the oldest value. Must only be called from the consumer thread.
+     *
+     * @return The value, or {@link #EMPTY} if there is none.
+     */
+    public long poll() {
+        long h = head;
+        if (h == tail) {
+            return EMPTY;
+        }
+        long value = values[(int) h & mask];
+        head = h + 1;
+        return value;
+    }
+
+    /**
+     * @return The oldest value without removing it, or {@link #EMPTY} if there is none.
+     */
+    public long peek() {
+        long h = head;
+        if (h == tail) {
+            return EMPTY;
+        }
+        return values[(int) h & mask];
+    }
+
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    public int getCapacity() {
+        return values.length;
+    }
+
+    public long getOverflowCount() {
+        return overflows;
+    }
+}
@@ -48,10 +48,7 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import java.io.IOException;
-import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
-import java.util.Comparator;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 
 public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAvailableListener, MediaCodec.OnFrameRenderedListener {
@@ -62,6 +59,8 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
 
     private MediaExtractor mediaExtractor;
 
+    private SampleReadAhead readAhead;
+
     private CodecBuilderImpl builder;
 
     private final FrameHandler frameHandler;
@@ -76,9 +75,12 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
 
     private boolean shaderinit = false;
 
-    private final ConcurrentLinkedQueue<DecoderInputInfo> decoderOutputBuffers = new ConcurrentLinkedQueue<>();
+    // more than any codec hands out at once
+    private static final int CODEC_BUFFER_RING_SIZE = 64;
+
+    private final CodecBufferRing decoderOutputBuffers = new CodecBufferRing(CODEC_BUFFER_RING_SIZE);
 
-    private final ConcurrentLinkedQueue<DecoderInputInfo> decoderIntputBuffers = new ConcurrentLinkedQueue<>();
+    private final CodecBufferRing decoderIntputBuffers = new CodecBufferRing(CODEC_BUFFER_RING_SIZE);
 
     private BufferProcessor bufferProcessor = null;
 
@@ -88,9 +90,10 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
 
     private final Semaphore regulator = new Semaphore(0);
 
-    private final Semaphore down = new Semaphore(1);
+    // frames released to the ImageReader that the GPU stage has not finished yet
+    private final InFlightWindow decodeWindow;
 
-    private final Semaphore up = new Semaphore(0);
+    private final StageLatency stageLatency;
 
     private Constants.ColorStandard standard;
 
@@ -105,13 +108,18 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
     public native int EditShadersRelease();
     public native int EditShadersEnableLut(int enable);
 
-    private final Object codecLock = new Object();
+    private final CodecLock codecLock = new CodecLock();
 
 
     public VideoDecoder(Uri inputUri, Context appContext, FrameHandler frameHandler, BroadcastAction encoderComms, ImagePipeline pipeline, boolean preview, int transfer, int profile, String encoderFormat, boolean outputFormatChange) {
         super(inputUri, false, appContext);
         this.frameHandler = frameHandler;
 
+        this.decodeWindow = new InFlightWindow(frameHandler.getInFlightDepth());
+        this.stageLatency = frameHandler.getStageLatency();
+        // the GPU stage finishes on the render thread, after onImageAvailable has returned
+        this.frameHandler.setOnFrameDone(decodeWindow::release);
+
         this.encoderComms = encoderComms;
 
         this.preview = preview;
@@ -152,6 +160,9 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
 
             try {
                 mediaExtractor = builder.configure(this.getCodec(), this.getInputSurface(), this, transfer);
+                readAhead = createReadAhead(mediaExtractor);
+                // preview loops by reading the clip again, without flushing the decoder
+                readAhead.setLooping(preview);
             } catch (CodecBuilderImpl.NoCodecException e) {
                 e.printStackTrace();
             }
@@ -170,32 +181,80 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
         }
         Log.d("VideoDecoder", "standard.ordinal()=" + this.standard.ordinal());
 
-        bufferProcessor = new BufferProcessor(decoderOutputBuffers, fr, this.preview, regulator, down, up, mediaExtractor);
+        bufferProcessor = new BufferProcessor(decoderOutputBuffers, fr, this.preview, regulator, decodeWindow, mediaExtractor);
         bufferProcessor.setEOSCallback(encoderComms);
         bufferProcessor.setStarted();
     }
 
+    private static SampleReadAhead createReadAhead(MediaExtractor extractor) {
+        return new SampleReadAhead(new SampleReadAhead.SampleSource() {
+            @Override
+            public long getSampleSize() {
+                return extractor.getSampleSize();
+            }
+
+            @Override
+            public int readSampleData(ByteBuffer buffer, int offset) {
+                return extractor.readSampleData(buffer, offset);
+            }
+
+            @Override
+            public long getSampleTime() {
+                return extractor.getSampleTime();
+            }
+
+            @Override
+            public int getSampleFlags() {
+                return extractor.getSampleFlags();
+            }
+
+            @Override
+            public boolean advance() {
+                return extractor.advance();
+            }
+
+            @Override
+            public void seekTo(long timeUs, int mode) {
+                extractor.seekTo(timeUs, mode);
+            }
+        }, Constants.READ_AHEAD_MAX_SAMPLES, Constants.READ_AHEAD_MAX_BYTES);
+    }
+
     public void editShaderRelease() {
         Log.d(TAG, "Release editor shader");
         if (shaderinit) {
-            EditShadersRelease();
+            // GL objects are deleted on the render thread that owns the EGL context, after the frames queued ahead
+            if (frameHandler == null || !frameHandler.runOnRenderThread(this::EditShadersRelease)) {
+                Log.w(TAG, "render thread already stopped, editor shaders not released");
+            }
             shaderinit = false;
         }
     }
 
     @Override
     void stop() {
-        synchronized (codecLock) {
-            Log.d(TAG, "stop");
-            if (inputFeedThread != null) {
-                inputFeedThread.setStop();
-                inputFeedThread = null;
-            }
-            if (frameHandler != null) {
-                frameHandler.setHandlerState(FrameHandler.FrameHandlerState.RELEASING);
-            }
-            setPaused();
+        Log.d(TAG, "stop");
+        if (inputFeedThread != null) {
+            inputFeedThread.setStop();
+            inputFeedThread = null;
+        }
+        if (frameHandler != null) {
+            frameHandler.setHandlerState(FrameHandler.FrameHandlerState.RELEASING);
+        }
+        setPaused();
+
+        // stages drop out at their next codec call, this only waits for a call in progress
+        codecLock.lockForStop();
+        try {
             super.stop();
+        } finally {
+            codecLock.unlock();
+        }
+        Log.d(TAG, "codec lock " + codecLock.getStats());
+
+        if (readAhead != null) {
+            readAhead.stop();
+            Log.d(TAG, "read-ahead " + readAhead.getStats());
         }
     }
 
@@ -207,24 +266,18 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
             bufferProcessor.setStopped();
         }
 
-        if(up != null && up.getQueueLength() != 0) {
-            int queueLen = up.getQueueLength();
-            up.release(queueLen);
-        }
-        if(down != null && down.getQueueLength() != 0) {
-            int queueLen = down.getQueueLength();
-            down.release(queueLen);
-        }
+        decodeWindow.releaseAll();
+        Log.d(TAG, "decode window " + decodeWindow.getStats());
 
-        shaderinit = false;
         editShaderRelease();
     }
 
     @Override
     public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
 
-        DecoderInputInfo inputInfo = new DecoderInputInfo(index, -1, -1, -1, codec);
-        decoderIntputBuffers.add(inputInfo);
+        if (!decoderIntputBuffers.offer(index, -1, -1, -1) && !decoderIntputBuffers.isClosed()) {
+            Log.e(TAG, "input buffer ring overflow, dropped index " + index);
+        }
     }
 
     public void setPaused() {
@@ -242,9 +295,12 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
         Log.d(TAG, "setPlay");
         if(paused) {
             paused = false;
+            if (bufferProcessor != null) {
+                bufferProcessor.resetClock();
+            }
             if(inputFeedThread == null) {
                 Log.d(TAG, "create new InputFeedThread");
-                inputFeedThread = new InputFeedThread(mediaExtractor, decoderIntputBuffers);
+                inputFeedThread = new InputFeedThread(readAhead, decoderIntputBuffers);
                 inputFeedThread.setStart();
             }
         }
@@ -252,18 +308,27 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
 
     @Override
     public void onStart() {
+        super.onStart();
+
+        if (readAhead != null) {
+            readAhead.start();
+        }
+
         if (inputFeedThread == null) {
-            inputFeedThread = new InputFeedThread(mediaExtractor, decoderIntputBuffers);
+            inputFeedThread = new InputFeedThread(readAhead, decoderIntputBuffers);
             inputFeedThread.setStart();
         }
-
-        super.onStart();
     }
 
     @Override
     public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
+        if (info.size > 0) {
+            stageLatency.mark(StageLatency.DECODED, info.presentationTimeUs);
+        }
 
-        decoderOutputBuffers.add(new DecoderInputInfo(index, info.size, info.presentationTimeUs, info.flags, codec));
+        if (!decoderOutputBuffers.offer(index, info.size, info.presentationTimeUs, info.flags) && !decoderOutputBuffers.isClosed()) {
+            Log.e(TAG, "output buffer ring overflow, dropped index " + index);
+        }
     }
 
 
@@ -292,12 +357,6 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
 
         if (in != null) {
 
-            try {
-                down.acquire();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
             if (!shaderinit) {
                 /**
                  * 0: YUV color space
@@ -305,27 +364,39 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
                  */
                 int inputColorSpace = isRGB(in) ? 1 : 0;
                 Log.d(TAG, "onImageAvailable, input color space: " + inputColorSpace);
-                EditShadersInit(in.getWidth(), in.getHeight(), this.standard.ordinal(), inputColorSpace, 0); // Set color configuration here
-
-                if (!builder.isDolbyDecoder(codecName) && preview && standard == Constants.ColorStandard.eColorStandard10BitRec2020) {
-                    Log.d(TAG, "Enable LUT");
-                    EditShadersEnableLut(1);
-                } else {
-                    Log.d(TAG, "Do not enable LUT");
-                    EditShadersEnableLut(0);
-                }
+                int width = in.getWidth();
+                int height = in.getHeight();
+                boolean enableLut = !builder.isDolbyDecoder(codecName) && preview && standard == Constants.ColorStandard.eColorStandard10BitRec2020;
+
+                // shaders are built on the render thread that owns the EGL context, before the first frame
+                frameHandler.runOnRenderThread(() -> {
+                    long initStart = System.nanoTime();
+                    EditShadersInit(width, height, this.standard.ordinal(), inputColorSpace, 0); // Set color configuration here
+                    frameHandler.setShaderInitTime(System.nanoTime() - initStart);
+
+                    if (enableLut) {
+                        Log.d(TAG, "Enable LUT");
+                        EditShadersEnableLut(1);
+                    } else {
+                        Log.d(TAG, "Do not enable LUT");
+                        EditShadersEnableLut(0);
+                    }
+
+                    sendEditShaderInitDone();
+                });
 
                 shaderinit = true;
-                sendEditShaderInitDone();
             }
 
             if (shaderinit) {
+                stageLatency.mark(StageLatency.RENDERED, timestamp / 1000);
+                // releases the decode window slot once the GPU is done with the image
                 frameHandler.onFrameAvailable(in, this.codecName, this.standard);
             } else {
                 Log.w(TAG, "shader not initialized, skip the buffer " + timestamp);
                 if(in != null) in.close();
+                decodeWindow.release();
             }
-            up.release();
 
         }
     }
@@ -357,17 +428,16 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
     }
 
     public class BufferProcessor extends Thread {
-        private final WeakReference<ConcurrentLinkedQueue<DecoderInputInfo>> bufferList;
+        private final CodecBufferRing bufferList;
 
         private Semaphore regulator;
-        private Semaphore down;
-        private Semaphore up;
+        private InFlightWindow window;
 
         private boolean isStarted = false;
 
         private long lastFramePts = -1;
 
-        private final long frDelay;
+        private final PresentationClock clock;
 
         private final boolean preview;
 
@@ -377,15 +447,20 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
 
         private final String TAG = "VideoDecoder-BufferProcessor";
 
-        public BufferProcessor(ConcurrentLinkedQueue<DecoderInputInfo> bufferList, long frDelay, boolean preview, Semaphore regulator, Semaphore down, Semaphore up, MediaExtractor ex)
+        private long lastReleaseNs = 0;
+        private long handledLoopStartUs = -1;
+        private int loops = 0;
+        private long totalLoopGapNs = 0;
+        private long maxLoopGapNs = 0;
+
+        public BufferProcessor(CodecBufferRing bufferList, long frDelay, boolean preview, Semaphore regulator, InFlightWindow window, MediaExtractor ex)
         {
-            this.bufferList = new WeakReference<>(bufferList);
-            this.frDelay = frDelay;
+            this.bufferList = bufferList;
+            this.clock = new PresentationClock(frDelay * 1000);
             this.preview = preview;
 
             this.regulator = regulator;
-            this.down = down;
-            this.up = up;
+            this.window = window;
 
             mediaExtractor = ex;
 
@@ -410,43 +485,105 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
         {
             Log.d(TAG, "setStopped");
             this.isStarted = false;
-            bufferList.clear();
+            bufferList.close();
+            clock.cancel();
+        }
+
+        /**
+         * Re-anchors preview pacing on the next frame, e.g. after resuming from pause.
+         */
+        public void resetClock()
+        {
+            clock.reset();
         }
 
-        private void renderBuffer(DecoderInputInfo x)
+        private void renderBuffer(int index, boolean render)
         {
-//            Log.d(TAG, "renderBuffer: " + x.sampleTime );
             try {
-                x.getCodec().releaseOutputBuffer(x.getIndex(), true);
+                getCodec().releaseOutputBuffer(index, render);
             }
             catch (IllegalStateException ignore)
             {}
         }
 
-        private void frameRateDelay(long renderTime)
+        /**
+         * Holds a preview frame until it is due on the presentation clock.
+         *
+         * @return False if the frame is too late and should be dropped.
+         */
+        private boolean pace(long sampleTime)
         {
-            if(preview) {
-                try {
-                    Thread.sleep(Math.max(0, frDelay - renderTime));
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            if (!preview) {
+                return true;
+            }
+            int decision = clock.schedule(sampleTime, System.nanoTime());
+            if (decision == PresentationClock.ON_TIME) {
+                clock.waitUntilDue(sampleTime);
+            }
+            return decision != PresentationClock.DROP;
+        }
+
+        /**
+         * Measures the time from the last frame of a loop to the first frame of the next one.
+         */
+        private void trackLoop(long sampleTime, long releaseNs)
+        {
+            long loopStart = readAhead != null ? readAhead.getLoopStartTimeUs() : -1;
+            if (loopStart >= 0 && loopStart != handledLoopStartUs && sampleTime >= loopStart && lastReleaseNs > 0) {
+                handledLoopStartUs = loopStart;
+                long gap = releaseNs - lastReleaseNs;
+                loops++;
+                totalLoopGapNs += gap;
+                maxLoopGapNs = Math.max(maxLoopGapNs, gap);
+                Log.d(TAG, "loop " + loops + ": first frame " + (gap / 1000) + "us after the last frame");
             }
+            lastReleaseNs = releaseNs;
         }
 
-        private boolean EOS(DecoderInputInfo x)
+        public String getLoopStats()
         {
-            if ((x.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) == MediaCodec.BUFFER_FLAG_END_OF_STREAM && x.size == 0) {
-                Log.d(TAG, "run: EOS Buffer Processor queue size " + bufferList.get().size() );
+            long avg = loops == 0 ? 0 : totalLoopGapNs / loops;
+            return "loops=" + loops + ", avg time to first frame=" + (avg / 1000) + "us, max=" + (maxLoopGapNs / 1000) + "us";
+        }
+
+        private boolean isEOS(int size, int flags)
+        {
+            return (flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) == MediaCodec.BUFFER_FLAG_END_OF_STREAM && size == 0;
+        }
+
+        private boolean EOS(int size, int flags)
+        {
+            if (isEOS(size, flags)) {
+                Log.d(TAG, "run: EOS Buffer Processor queue size " + bufferList.size() );
 
                 if(preview)
                 {
-                    synchronized (mediaExtractor) {
+                    if (!codecLock.lock()) {
+                        return true;
+                    }
+                    try {
+                        getCodec().flush();
+                        bufferList.clear();
+                        // indices handed out before the flush are no longer owned by the app
+                        decoderIntputBuffers.clear();
+                    } finally {
+                        codecLock.unlock();
+                    }
+
+                    // the seek can wait on storage, keep it outside the codec lock
+                    if (inputFeedThread != null) {
                         inputFeedThread.seekToStart();
                     }
-                    x.getCodec().flush();
-                    bufferList.get().clear();
-                    x.getCodec().start();
+
+                    if (!codecLock.lock()) {
+                        return true;
+                    }
+                    try {
+                        getCodec().start();
+                    } finally {
+                        codecLock.unlock();
+                    }
+                    clock.reset();
                 }
                 else
                 {
@@ -469,15 +606,16 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
             return false;
         }
 
-        private void confirmBuffer()
+        /**
+         * Waits until fewer than the window depth of frames are still waiting for the GPU stage.
+         */
+        private boolean reserveFrame()
         {
             try {
-                up.acquire();
-
+                return window.acquire();
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                return false;
             }
-            down.release();
         }
 
         @Override
@@ -485,49 +623,73 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
         {
             while(this.isStarted)
             {
+                try {
+                    // parked until onOutputBufferAvailable hands over a buffer or the ring is closed
+                    if (!bufferList.await()) {
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
 
-                DecoderInputInfo x = bufferList.get().poll();
-
-                if(x!=null) {
-                    synchronized (codecLock) {
-                        if (bufferList.get() == null) return;
-                        long start = System.currentTimeMillis();
+                int index = bufferList.peekIndex();
+                int size = bufferList.peekSize();
+                long sampleTime = bufferList.peekPresentationTime();
+                int flags = bufferList.peekFlags();
+                bufferList.remove();
 
-                        lastFramePts = lastFramePts > x.sampleTime ? lastFramePts : x.sampleTime;
-                        renderBuffer(x);
+                lastFramePts = lastFramePts > sampleTime ? lastFramePts : sampleTime;
 
-                        if (!EOS(x)) {
-                            confirmBuffer();
-                        }
+                boolean eos = isEOS(size, flags);
+                boolean render = eos || pace(sampleTime);
 
-                        long end = System.currentTimeMillis();
+                // a dropped frame never reaches the ImageReader, so it takes no slot in the window
+                if (render && !eos && !reserveFrame()) {
+                    break;
+                }
 
-                        long renderTime = (end - start);
+                // only the codec call is made under the lock, waiting for the GPU stage and
+                // pacing happen outside of it
+                if (!codecLock.lock()) {
+                    break;
+                }
+                try {
+                    renderBuffer(index, render);
+                } finally {
+                    codecLock.unlock();
+                }
+                if (preview) {
+                    trackLoop(sampleTime, System.nanoTime());
+                }
 
-                        frameRateDelay(renderTime);
-                    }
-                    
-                } else {
-                    try {
-                        // no output buffer available, wait for a while
-                        Thread.sleep(1);
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
+                if (eos) {
+                    EOS(size, flags);
                 }
             }
+            Log.d(TAG, "output ring stats: " + bufferList);
+            if (preview) {
+                Log.d(TAG, "preview pacing: " + clock.getStats());
+                Log.d(TAG, "preview looping: " + getLoopStats());
+            }
         }
     }
 
     private class InputFeedThread extends Thread {
 
-        private final WeakReference<ConcurrentLinkedQueue<DecoderInputInfo>> bufferList;
+        private final CodecBufferRing bufferList;
         private final String TAG = "VideoDecoder-InputFeedThread";
-        private MediaExtractor mediaExtractor;
-        private boolean isStart = false;
-        private boolean receivedEOS = false;
+        private SampleReadAhead readAhead;
+        private volatile boolean isStart = false;
+        private volatile boolean receivedEOS = false;
+        private final Object eosLock = new Object();
         private boolean firstFrameQueued;
 
+        private long filledCount = 0;
+        private long totalWaitNs = 0;
+        private long maxWaitNs = 0;
+        private long totalStallNs = 0;
+        private long maxStallNs = 0;
+
         public boolean isStart() {
             return isStart;
         }
@@ -540,138 +702,153 @@ public class VideoDecoder extends DecoderOutput implements ImageReader.OnImageAv
         }
 
         public void seekToStart() {
-            mediaExtractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
-            receivedEOS = false;
+            readAhead.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+            synchronized (eosLock) {
+                receivedEOS = false;
+                eosLock.notifyAll();
+            }
         }
 
         public void setStop() {
             if (isStart) {
                 isStart = false;
+                synchronized (eosLock) {
+                    eosLock.notifyAll();
+                }
+                bufferList.release();
+                readAhead.release();
             }
         }
 
-        InputFeedThread(MediaExtractor ex, ConcurrentLinkedQueue<DecoderInputInfo> bl) {
-            mediaExtractor = ex;
-            bufferList = new WeakReference<>(bl);
+        InputFeedThread(SampleReadAhead ra, CodecBufferRing bl) {
+            readAhead = ra;
+            bufferList = bl;
             firstFrameQueued = false;
         }
 
-        @Override
-        public void run() {
-
-            while (isStart) {
-
-                if (!receivedEOS && !bufferList.get().isEmpty() && getCodecState() == STATE_STARTED) {
-
-                    if (firstFrameQueued) {
-                        frameHandler.waitFirstEncodeDone();
-                    }
-
-                    DecoderInputInfo inputInfo = bufferList.get().poll();
-
-                    MediaCodec codec = inputInfo.codec;
-                    int index = inputInfo.index;
+        /**
+         * Blocks while the extractor is at EOS. Preview looping resumes feeding with seekToStart().
+         */
+        private void waitForData() throws InterruptedException {
+            synchronized (eosLock) {
+                while (receivedEOS && isStart) {
+                    eosLock.wait();
+                }
+            }
+        }
 
-                    ByteBuffer inputBuffer = null;
-                    try {
-                        inputBuffer = codec.getInputBuffer(index);
-                    } catch (IllegalStateException ignore) {
-                    }
+        private void recordWait(long arrivalTime) {
+            long waitNs = System.nanoTime() - arrivalTime;
+            filledCount++;
+            totalWaitNs += waitNs;
+            maxWaitNs = Math.max(maxWaitNs, waitNs);
+        }
 
-                    if (inputBuffer == null || !inputBuffer.isDirect()) {
-                        continue;
-                    }
+        private void recordStall(long stallNs) {
+            totalStallNs += stallNs;
+            maxStallNs = Math.max(maxStallNs, stallNs);
+        }
 
-                    synchronized (codecLock) {
-                        Log.d(TAG, "Reading sample data to buffer: address=" + inputBuffer + ", size=" + inputBuffer.capacity());
-                        if (!isStart || getCodecState() != STATE_STARTED || mediaExtractor == null) return;
-
-                        try {
-                            int size = mediaExtractor.readSampleData(inputBuffer, 0);
-                            if (size <= 0 ||
-                                    (mediaExtractor.getSampleFlags() & MediaCodec.BUFFER_FLAG_END_OF_STREAM)
-                                            == MediaCodec.BUFFER_FLAG_END_OF_STREAM) {
-                                receivedEOS = true;
-                                codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                            } else {
-                                codec.queueInputBuffer(index, 0, size, mediaExtractor.getSampleTime(), mediaExtractor.getSampleFlags());
-
-                                if (!firstFrameQueued) {
-                                    firstFrameQueued = true;
-                                }
-                            }
-                        } catch (IllegalStateException e) {
-                            Log.e(TAG, "Codec operation failed", e);
-                            return;
-                        }
+        public String getWaitStats() {
+            long avgUs = filledCount == 0 ? 0 : totalWaitNs / filledCount / 1000;
+            return "filled=" + filledCount + ", avg wait=" + avgUs + "us, max wait=" + (maxWaitNs / 1000) + "us"
+                    + ", codec lock stall=" + (totalStallNs / 1000) + "us, max stall=" + (maxStallNs / 1000) + "us";
+        }
 
-                        if(!receivedEOS) {
-                            mediaExtractor.advance();
-                        }
-                        Log.d(TAG, "readSampleData sample data done");
-                    }
-                } else {
-                    try {
-                        // no input buffer available, try to wait for a while
-                        Thread.sleep(5);
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
+        @Override
+        public void run() {
+            try {
+                feed();
+            } catch (InterruptedException e) {
+                Log.w(TAG, "input feed interrupted");
             }
+            Log.d(TAG, "input index " + getWaitStats());
         }
-    }
 
-    public class DecoderInputInfo implements Comparator<DecoderInputInfo> {
+        private void feed() throws InterruptedException {
 
-        private int index;
-        private int size;
-        private long sampleTime;
-        private int flags;
-        private MediaCodec codec;
-
-        public DecoderInputInfo(int index, int size, long sampleTime, int flags, MediaCodec codec) {
-            this.index = index;
-            this.size = size;
-            this.sampleTime = sampleTime;
-            this.flags = flags;
-            this.codec = codec;
-        }
+            while (isStart) {
 
-        public DecoderInputInfo() {}
+                waitForData();
+                if (!isStart) {
+                    break;
+                }
 
-        public int getSize() {
-            return size;
-        }
+                // parked until onInputBufferAvailable hands over an index
+                if (!bufferList.await()) {
+                    continue;
+                }
+                if (!isStart || receivedEOS) {
+                    // leave the index in the ring for the next feeder or for after the loop seek
+                    continue;
+                }
 
-        public int getIndex() {
-            return index;
-        }
+                if (firstFrameQueued) {
+                    frameHandler.waitFirstEncodeDone();
+                }
 
-        public int getFlags() {
-            return flags;
-        }
+                MediaCodec codec = getCodec();
+                int index = bufferList.peekIndex();
+                long arrivalTime = bufferList.peekArrivalTime();
 
-        public long getSampleTime() {
-            return sampleTime;
-        }
+                ByteBuffer inputBuffer = null;
+                try {
+                    inputBuffer = codec.getInputBuffer(index);
+                } catch (IllegalStateException ignore) {
+                }
 
-        public MediaCodec getCodec() {
-            return codec;
-        }
+                if (inputBuffer == null || !inputBuffer.isDirect()) {
+                    bufferList.remove();
+                    continue;
+                }
 
+                // demux itself runs on the read-ahead thread, wait for it outside the codec lock
+                if (!readAhead.awaitSample()) {
+                    continue;
+                }
 
-        @Override
-        public String toString()
-        {
-            return Long.toString(this.getSampleTime());
-        }
+                long lockStart = System.nanoTime();
+                if (!codecLock.lock()) {
+                    return;
+                }
+                recordStall(System.nanoTime() - lockStart);
+                try {
+                    // nothing is taken yet, the sample and the index stay for after a restart
+                    if (!isStart || getCodecState() != STATE_STARTED) return;
 
-        @Override
-        public int compare(DecoderInputInfo o1, DecoderInputInfo o2) {
-            return Long.compare(o1.getSampleTime(), o2.getSampleTime());
+                    // copy from the read-ahead ring, empty again if a loop seek dropped the sample
+                    int size = readAhead.poll(inputBuffer);
+                    if (size == SampleReadAhead.EMPTY) {
+                        continue;
+                    }
+                    bufferList.remove();
+                    long sampleTime = readAhead.getTakenSampleTime();
+                    int sampleFlags = readAhead.getTakenFlags();
 
+                    try {
+                        if (size <= 0 ||
+                                (sampleFlags & MediaCodec.BUFFER_FLAG_END_OF_STREAM)
+                                        == MediaCodec.BUFFER_FLAG_END_OF_STREAM) {
+                            receivedEOS = true;
+                            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        } else {
+                            // marked first, the decoder may return the frame before queueInputBuffer does
+                            stageLatency.mark(StageLatency.QUEUED, sampleTime);
+                            codec.queueInputBuffer(index, 0, size, sampleTime, sampleFlags);
+
+                            if (!firstFrameQueued) {
+                                firstFrameQueued = true;
+                            }
+                        }
+                        recordWait(arrivalTime);
+                    } catch (IllegalStateException e) {
+                        Log.e(TAG, "Codec operation failed", e);
+                        return;
+                    }
+                } finally {
+                    codecLock.unlock();
+                }
+            }
         }
     }
 }
-
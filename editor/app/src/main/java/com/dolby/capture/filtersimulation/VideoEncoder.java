@@ -60,6 +60,8 @@ public class VideoEncoder extends Codec implements BroadcastClient{
 
     private OnFrameEncoded callback;
 
+    private StageLatency stageLatency;
+
     private long endFramePts = -1;
     private Semaphore encodingDone;
 
@@ -211,6 +213,11 @@ public class VideoEncoder extends Codec implements BroadcastClient{
         this.callback = callback;
     }
 
+    public void setStageLatency(StageLatency stageLatency)
+    {
+        this.stageLatency = stageLatency;
+    }
+
     @Override
     public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
 
@@ -223,7 +230,14 @@ public class VideoEncoder extends Codec implements BroadcastClient{
 
         ByteBuffer x = codec.getOutputBuffer(index);
 
+        boolean frame = (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0;
+        if (frame && stageLatency != null) {
+            stageLatency.mark(StageLatency.ENCODED, info.presentationTimeUs);
+        }
         m.writeSampleData(muxID, x, info);
+        if (frame && stageLatency != null) {
+            stageLatency.mark(StageLatency.MUXED, info.presentationTimeUs);
+        }
         codec.releaseOutputBuffer(index, false);
 
         if(!((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == MediaCodec.BUFFER_FLAG_CODEC_CONFIG ))
@@ -0,0 +1,133 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+// Host test of the EGLImage cache bookkeeping, EGL and GL are stubbed, see AndroidStubs.h
+
+#include <cstdio>
+#include <memory>
+
+#include "LruCache.h"
+#include "EGLMap.h"
+
+static int failures = 0;
+
+#define EXPECT_EQ(expected, actual) \
+    do { \
+        long long e = (long long) (expected), a = (long long) (actual); \
+        if (e != a) { printf("%s:%d: expected %s == %lld, was %lld\n", __FILE__, __LINE__, #actual, e, a); failures++; } \
+    } while (0)
+
+static void hitsAndMissesAreCounted()
+{
+    Simulation::LruCache<uint64_t, int> cache(2);
+    EXPECT_EQ(true, cache.find(1) == nullptr);
+    cache.insert(1, std::unique_ptr<int>(new int(10)));
+    EXPECT_EQ(10, *cache.find(1));
+    EXPECT_EQ(10, *cache.find(1));
+    EXPECT_EQ(2, cache.getHits());
+    EXPECT_EQ(1, cache.getMisses());
+    EXPECT_EQ(0, cache.getEvictions());
+    EXPECT_EQ(1, cache.size());
+
+    cache.resetStats();
+    EXPECT_EQ(0, cache.getHits());
+    EXPECT_EQ(0, cache.getMisses());
+}
+
+static void leastRecentlyUsedIsEvicted()
+{
+    Simulation::LruCache<uint64_t, int> cache(2);
+    cache.insert(1, std::unique_ptr<int>(new int(10)));
+    cache.insert(2, std::unique_ptr<int>(new int(20)));
+    cache.find(1); // 2 is now the oldest
+    cache.insert(3, std::unique_ptr<int>(new int(30)));
+    EXPECT_EQ(1, cache.getEvictions());
+    EXPECT_EQ(2, cache.size());
+    EXPECT_EQ(true, cache.find(2) == nullptr);
+    EXPECT_EQ(10, *cache.find(1));
+    EXPECT_EQ(30, *cache.find(3));
+}
+
+static void clearKeepsCounters()
+{
+    Simulation::LruCache<uint64_t, int> cache(4);
+    cache.insert(1, std::unique_ptr<int>(new int(10)));
+    cache.find(1);
+    cache.clear();
+    EXPECT_EQ(0, cache.size());
+    EXPECT_EQ(1, cache.getHits());
+    EXPECT_EQ(true, cache.find(1) == nullptr);
+}
+
+static void evictionReleasesTheEGLImage()
+{
+    Stubs::Reset();
+    {
+        Simulation::LruCache<uint64_t, Simulation::CachedEGLMap> cache(2);
+        AHardwareBuffer *buffers[] = {Stubs::NewBuffer(64, 32), Stubs::NewBuffer(64, 32), Stubs::NewBuffer(64, 32)};
+        for (uint64_t id = 0; id < 3; id++)
+        {
+            cache.insert(id, std::unique_ptr<Simulation::CachedEGLMap>(
+                new Simulation::CachedEGLMap(buffers[id], nullptr, GL_TEXTURE_EXTERNAL_OES)));
+        }
+        EXPECT_EQ(3, Stubs::counters.createdImages);
+        EXPECT_EQ(1, Stubs::counters.destroyedImages);
+        EXPECT_EQ(2, Stubs::counters.liveImages);
+        EXPECT_EQ(2, Stubs::counters.liveFramebuffers);
+        // The evicted map gave its buffer reference back
+        EXPECT_EQ(2, Stubs::counters.bufferReferences);
+        EXPECT_EQ(64, cache.find(2)->getMap().getHardwareBufferWidth());
+
+        // As when the pipeline closes
+        cache.clear();
+        EXPECT_EQ(0, Stubs::counters.liveImages);
+        EXPECT_EQ(0, Stubs::counters.liveTextures);
+        EXPECT_EQ(0, Stubs::counters.liveFramebuffers);
+        EXPECT_EQ(0, Stubs::counters.bufferReferences);
+    }
+    EXPECT_EQ(3, Stubs::counters.destroyedImages);
+}
+
+int main()
+{
+    hitsAndMissesAreCounted();
+    leastRecentlyUsedIsEvicted();
+    clearKeepsCounters();
+    evictionReleasesTheEGLImage();
+
+    if (failures > 0)
+    {
+        printf("%d failed\n", failures);
+        return 1;
+    }
+    printf("OK\n");
+    return 0;
+}
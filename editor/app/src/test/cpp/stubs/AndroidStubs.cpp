@@ -0,0 +1,193 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+#include <cstdio>
+#include <map>
+#include <memory>
+#include <vector>
+
+#include "AndroidStubs.h"
+
+struct AHardwareBuffer
+{
+    AHardwareBuffer_Desc desc;
+    int                  references;
+};
+
+namespace Stubs
+{
+Counters counters;
+
+static std::vector<std::unique_ptr<AHardwareBuffer>> buffers;
+static GLuint nextName = 1;
+static uintptr_t nextImage = 1;
+
+void Reset()
+{
+    counters = Counters();
+    buffers.clear();
+}
+
+AHardwareBuffer *NewBuffer(uint32_t width, uint32_t height)
+{
+    std::unique_ptr<AHardwareBuffer> buffer(new AHardwareBuffer());
+    buffer->desc.width  = width;
+    buffer->desc.height = height;
+    buffer->desc.layers = 1;
+    buffers.push_back(std::move(buffer));
+    return buffers.back().get();
+}
+} // namespace Stubs
+
+namespace Simulation
+{
+// Tools.cpp pulls in the whole shader toolchain, only the error check is needed here
+bool CheckGlError(const char *function, const char *file, int line)
+{
+    return false;
+}
+} // namespace Simulation
+
+int __android_log_print(int prio, const char *tag, const char *fmt, ...)
+{
+    return 0;
+}
+
+int AHardwareBuffer_allocate(const AHardwareBuffer_Desc *desc, AHardwareBuffer **outBuffer)
+{
+    *outBuffer = Stubs::NewBuffer(desc->width, desc->height);
+    return 0;
+}
+
+void AHardwareBuffer_acquire(AHardwareBuffer *buffer)
+{
+    buffer->references++;
+    Stubs::counters.bufferReferences++;
+}
+
+void AHardwareBuffer_release(AHardwareBuffer *buffer)
+{
+    buffer->references--;
+    Stubs::counters.bufferReferences--;
+}
+
+void AHardwareBuffer_describe(const AHardwareBuffer *buffer, AHardwareBuffer_Desc *outDesc)
+{
+    *outDesc = buffer->desc;
+}
+
+int AHardwareBuffer_isSupported(const AHardwareBuffer_Desc *desc)
+{
+    return 1;
+}
+
+int AHardwareBuffer_lockAndGetInfo(AHardwareBuffer *buffer, uint64_t usage, int32_t fence, const ARect *rect,
+                                   void **outVirtualAddress, int32_t *outBytesPerPixel, int32_t *outBytesPerStride)
+{
+    return -1;
+}
+
+int AHardwareBuffer_unlock(AHardwareBuffer *buffer, int32_t *fence)
+{
+    return -1;
+}
+
+EGLint eglGetError(void)
+{
+    return 0x3000;
+}
+
+EGLClientBuffer eglGetNativeClientBufferANDROID(const AHardwareBuffer *buffer)
+{
+    return const_cast<AHardwareBuffer *>(buffer);
+}
+
+EGLImageKHR eglCreateImageKHR(EGLDisplay dpy, EGLContext ctx, EGLenum target, EGLClientBuffer buffer, const EGLint *attrib_list)
+{
+    Stubs::counters.liveImages++;
+    Stubs::counters.createdImages++;
+    return reinterpret_cast<EGLImageKHR>(Stubs::nextImage++);
+}
+
+unsigned int eglDestroyImageKHR(EGLDisplay dpy, EGLImageKHR image)
+{
+    Stubs::counters.liveImages--;
+    Stubs::counters.destroyedImages++;
+    return EGL_TRUE;
+}
+
+GLenum glGetError(void)
+{
+    return GL_NO_ERROR;
+}
+
+void glGenTextures(GLsizei n, GLuint *textures)
+{
+    for (int i = 0; i < n; i++) textures[i] = Stubs::nextName++;
+    Stubs::counters.liveTextures += n;
+}
+
+void glDeleteTextures(GLsizei n, const GLuint *textures)
+{
+    Stubs::counters.liveTextures -= n;
+}
+
+void glGenFramebuffers(GLsizei n, GLuint *framebuffers)
+{
+    for (int i = 0; i < n; i++) framebuffers[i] = Stubs::nextName++;
+    Stubs::counters.liveFramebuffers += n;
+}
+
+void glDeleteFramebuffers(GLsizei n, const GLuint *framebuffers)
+{
+    Stubs::counters.liveFramebuffers -= n;
+}
+
+GLenum glCheckFramebufferStatus(GLenum target)
+{
+    return GL_FRAMEBUFFER_COMPLETE;
+}
+
+void glFinish(void) {}
+void glGetProgramBinary(GLuint program, GLsizei bufSize, GLsizei *length, GLenum *binaryFormat, void *binary) {}
+void glBindTexture(GLenum target, GLuint texture) {}
+void glActiveTexture(GLenum texture) {}
+void glTexParameteri(GLenum target, GLenum pname, GLint param) {}
+void glTexParameterfv(GLenum target, GLenum pname, const GLfloat *params) {}
+void glTexImage2D(GLenum target, GLint level, GLint internalformat, GLsizei width, GLsizei height, GLint border,
+                  GLenum format, GLenum type, const void *pixels) {}
+void glBindFramebuffer(GLenum target, GLuint framebuffer) {}
+void glFramebufferTexture2D(GLenum target, GLenum attachment, GLenum textarget, GLuint texture, GLint level) {}
+void glDrawBuffers(GLsizei n, const GLenum *bufs) {}
+void glViewport(GLint x, GLint y, GLsizei width, GLsizei height) {}
+void glReadBuffer(GLenum src) {}
+void glReadPixels(GLint x, GLint y, GLsizei width, GLsizei height, GLenum format, GLenum type, void *pixels) {}
+void glEGLImageTargetTexture2DOES(GLenum target, GLeglImageOES image) {}
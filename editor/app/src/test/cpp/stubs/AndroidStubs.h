@@ -0,0 +1,196 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+#ifndef FILTERSIMULATION_ANDROIDSTUBS_H
+#define FILTERSIMULATION_ANDROIDSTUBS_H
+
+// Just enough of the NDK, EGL and GLES headers to build the buffer cache on a Linux host. The
+// functions are implemented in AndroidStubs.cpp and count what the code under test does.
+
+#include <cstdint>
+#include <cstdarg>
+
+// android/log.h
+
+enum android_LogPriority
+{
+    ANDROID_LOG_VERBOSE = 2,
+    ANDROID_LOG_INFO    = 4,
+    ANDROID_LOG_ERROR   = 6,
+};
+
+int __android_log_print(int prio, const char *tag, const char *fmt, ...);
+
+// android/hardware_buffer.h
+
+typedef struct AHardwareBuffer AHardwareBuffer;
+
+typedef struct AHardwareBuffer_Desc
+{
+    uint32_t width;
+    uint32_t height;
+    uint32_t layers;
+    uint32_t format;
+    uint64_t usage;
+    uint32_t stride;
+    uint32_t rfu0;
+    uint64_t rfu1;
+} AHardwareBuffer_Desc;
+
+enum AHardwareBuffer_Format
+{
+    AHARDWAREBUFFER_FORMAT_R8G8B8A8_UNORM     = 1,
+    AHARDWAREBUFFER_FORMAT_R8G8B8X8_UNORM     = 2,
+    AHARDWAREBUFFER_FORMAT_R8G8B8_UNORM       = 3,
+    AHARDWAREBUFFER_FORMAT_R5G6B5_UNORM       = 4,
+    AHARDWAREBUFFER_FORMAT_R16G16B16A16_FLOAT = 0x16,
+    AHARDWAREBUFFER_FORMAT_R10G10B10A2_UNORM  = 0x2b,
+    AHARDWAREBUFFER_FORMAT_Y8Cb8Cr8_420       = 0x23,
+};
+
+enum AHardwareBuffer_UsageFlags : uint64_t
+{
+    AHARDWAREBUFFER_USAGE_CPU_WRITE_RARELY  = 2UL << 4,
+    AHARDWAREBUFFER_USAGE_GPU_FRAMEBUFFER   = 1UL << 9,
+    AHARDWAREBUFFER_USAGE_PROTECTED_CONTENT = 1UL << 14,
+    AHARDWAREBUFFER_USAGE_VIDEO_ENCODE      = 1UL << 16,
+};
+
+typedef struct ARect ARect;
+
+int  AHardwareBuffer_allocate(const AHardwareBuffer_Desc *desc, AHardwareBuffer **outBuffer);
+void AHardwareBuffer_acquire(AHardwareBuffer *buffer);
+void AHardwareBuffer_release(AHardwareBuffer *buffer);
+void AHardwareBuffer_describe(const AHardwareBuffer *buffer, AHardwareBuffer_Desc *outDesc);
+int  AHardwareBuffer_isSupported(const AHardwareBuffer_Desc *desc);
+int  AHardwareBuffer_lockAndGetInfo(AHardwareBuffer *buffer, uint64_t usage, int32_t fence, const ARect *rect,
+                                    void **outVirtualAddress, int32_t *outBytesPerPixel, int32_t *outBytesPerStride);
+int  AHardwareBuffer_unlock(AHardwareBuffer *buffer, int32_t *fence);
+
+// EGL/egl.h, EGL/eglext.h
+
+typedef void *EGLDisplay;
+typedef void *EGLContext;
+typedef void *EGLClientBuffer;
+typedef void *EGLImageKHR;
+typedef int32_t EGLint;
+typedef unsigned int EGLenum;
+
+#define EGL_NONE                  0x3038
+#define EGL_TRUE                  1
+#define EGL_NO_CONTEXT            ((EGLContext) 0)
+#define EGL_NO_IMAGE_KHR          ((EGLImageKHR) 0)
+#define EGL_NATIVE_BUFFER_ANDROID 0x3140
+
+EGLint          eglGetError(void);
+EGLClientBuffer eglGetNativeClientBufferANDROID(const AHardwareBuffer *buffer);
+EGLImageKHR     eglCreateImageKHR(EGLDisplay dpy, EGLContext ctx, EGLenum target, EGLClientBuffer buffer, const EGLint *attrib_list);
+unsigned int    eglDestroyImageKHR(EGLDisplay dpy, EGLImageKHR image);
+
+// GLES3/gl32.h, GLES2/gl2ext.h
+
+typedef unsigned int GLenum;
+typedef unsigned int GLuint;
+typedef int GLint;
+typedef int GLsizei;
+typedef float GLfloat;
+typedef unsigned char GLubyte;
+typedef unsigned char GLboolean;
+typedef void GLvoid;
+typedef void *GLeglImageOES;
+
+#define GL_NO_ERROR                         0
+#define GL_INVALID_VALUE                    0x0501
+#define GL_TRUE                             1
+#define GL_UNSIGNED_BYTE                    0x1401
+#define GL_RGBA                             0x1908
+#define GL_LINEAR                           0x2601
+#define GL_TEXTURE_MAG_FILTER               0x2800
+#define GL_TEXTURE_MIN_FILTER               0x2801
+#define GL_TEXTURE_WRAP_S                   0x2802
+#define GL_TEXTURE_WRAP_T                   0x2803
+#define GL_TEXTURE_2D                       0x0DE1
+#define GL_TEXTURE_BORDER_COLOR             0x1004
+#define GL_CLAMP_TO_EDGE                    0x812F
+#define GL_TEXTURE0                         0x84C0
+#define GL_TEXTURE1                         0x84C1
+#define GL_UNSIGNED_INT_2_10_10_10_REV      0x8368
+#define GL_DRAW_FRAMEBUFFER                 0x8CA9
+#define GL_FRAMEBUFFER_COMPLETE             0x8CD5
+#define GL_FRAMEBUFFER_INCOMPLETE_ATTACHMENT 0x8CD6
+#define GL_COLOR_ATTACHMENT0                0x8CE0
+#define GL_FRAMEBUFFER                      0x8D40
+#define GL_TEXTURE_EXTERNAL_OES             0x8D65
+
+GLenum glGetError(void);
+void glFinish(void);
+void glGetProgramBinary(GLuint program, GLsizei bufSize, GLsizei *length, GLenum *binaryFormat, void *binary);
+void glGenTextures(GLsizei n, GLuint *textures);
+void glDeleteTextures(GLsizei n, const GLuint *textures);
+void glBindTexture(GLenum target, GLuint texture);
+void glActiveTexture(GLenum texture);
+void glTexParameteri(GLenum target, GLenum pname, GLint param);
+void glTexParameterfv(GLenum target, GLenum pname, const GLfloat *params);
+void glTexImage2D(GLenum target, GLint level, GLint internalformat, GLsizei width, GLsizei height, GLint border,
+                  GLenum format, GLenum type, const void *pixels);
+void glGenFramebuffers(GLsizei n, GLuint *framebuffers);
+void glDeleteFramebuffers(GLsizei n, const GLuint *framebuffers);
+void glBindFramebuffer(GLenum target, GLuint framebuffer);
+void glFramebufferTexture2D(GLenum target, GLenum attachment, GLenum textarget, GLuint texture, GLint level);
+GLenum glCheckFramebufferStatus(GLenum target);
+void glDrawBuffers(GLsizei n, const GLenum *bufs);
+void glViewport(GLint x, GLint y, GLsizei width, GLsizei height);
+void glReadBuffer(GLenum src);
+void glReadPixels(GLint x, GLint y, GLsizei width, GLsizei height, GLenum format, GLenum type, void *pixels);
+void glEGLImageTargetTexture2DOES(GLenum target, GLeglImageOES image);
+
+namespace Stubs
+{
+// Live objects and calls made through the stubs since the last Reset
+struct Counters
+{
+    int liveImages;
+    int createdImages;
+    int destroyedImages;
+    int liveTextures;
+    int liveFramebuffers;
+    int bufferReferences;
+};
+
+extern Counters counters;
+
+void Reset();
+
+// A fake buffer of the given size, owned by the stubs
+AHardwareBuffer *NewBuffer(uint32_t width, uint32_t height);
+} // namespace Stubs
+
+#endif //FILTERSIMULATION_ANDROIDSTUBS_H
@@ -0,0 +1,2 @@
+// Host build stub, see AndroidStubs.h
+#include "../AndroidStubs.h"
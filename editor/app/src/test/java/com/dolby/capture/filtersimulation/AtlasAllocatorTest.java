@@ -0,0 +1,95 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AtlasAllocatorTest {
+
+    @Test
+    public void packsSlotsOnShelves() {
+        AtlasAllocator atlas = new AtlasAllocator(100, 100);
+        AtlasAllocator.Slot a = atlas.allocate(60, 20);
+        AtlasAllocator.Slot b = atlas.allocate(40, 10);
+        AtlasAllocator.Slot c = atlas.allocate(50, 30);
+
+        assertEquals(0, a.x);
+        assertEquals(0, a.y);
+        assertEquals(60, b.x);
+        assertEquals(0, b.y);
+        assertEquals(20, b.height);
+        assertEquals(0, c.x);
+        assertEquals(20, c.y);
+    }
+
+    @Test
+    public void fullAtlasReturnsNull() {
+        AtlasAllocator atlas = new AtlasAllocator(100, 50);
+        assertNotNull(atlas.allocate(100, 30));
+        assertNull(atlas.allocate(10, 30));
+        assertNull(atlas.allocate(101, 1));
+        assertNotNull(atlas.allocate(100, 20));
+    }
+
+    @Test
+    public void releasedShelfIsReused() {
+        AtlasAllocator atlas = new AtlasAllocator(100, 40);
+        AtlasAllocator.Slot a = atlas.allocate(50, 20);
+        AtlasAllocator.Slot b = atlas.allocate(50, 20);
+        AtlasAllocator.Slot c = atlas.allocate(100, 20);
+        assertNull(atlas.allocate(10, 10));
+
+        atlas.release(a);
+        assertNull(atlas.allocate(10, 10));
+        atlas.release(b);
+        AtlasAllocator.Slot d = atlas.allocate(70, 15);
+        assertEquals(0, d.x);
+        assertEquals(0, d.y);
+
+        atlas.release(c);
+        atlas.release(d);
+        AtlasAllocator.Slot e = atlas.allocate(100, 40);
+        assertEquals(0, e.y);
+    }
+
+    @Test
+    public void slotFitsSmallerContent() {
+        AtlasAllocator atlas = new AtlasAllocator(100, 100);
+        atlas.allocate(10, 40);
+        AtlasAllocator.Slot slot = atlas.allocate(30, 25);
+        assertEquals(40, slot.height);
+        assertTrue(slot.fits(30, 40));
+        assertFalse(slot.fits(31, 10));
+    }
+}
@@ -0,0 +1,272 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class CodecBufferRingTest {
+
+    /**
+     * Stands in for the decoder's onOutputBufferAvailable callback.
+     */
+    private static class FakeCodec {
+        private final CodecBufferRing output;
+        private int index = 0;
+
+        FakeCodec(CodecBufferRing output) {
+            this.output = output;
+        }
+
+        boolean emitOutputBuffer() {
+            boolean queued = output.offer(index % 16, 1000 + index, index * 33333L, 0);
+            index++;
+            return queued;
+        }
+    }
+
+    /**
+     * Per-buffer object as handed over before the ring, kept for the comparison below.
+     */
+    private static class BufferInfo {
+        final int index;
+        final int size;
+        final long pts;
+        final int flags;
+
+        BufferInfo(int index, int size, long pts, int flags) {
+            this.index = index;
+            this.size = size;
+            this.pts = pts;
+            this.flags = flags;
+        }
+    }
+
+    @Test
+    public void idleConsumerUsesNoCpu() throws Exception {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        assumeTrue(mx.isThreadCpuTimeSupported());
+        mx.setThreadCpuTimeEnabled(true);
+
+        CodecBufferRing ring = new CodecBufferRing(16);
+        AtomicLong consumerId = new AtomicLong();
+        Thread consumer = new Thread(() -> {
+            consumerId.set(Thread.currentThread().getId());
+            try {
+                while (ring.await()) {
+                    ring.remove();
+                }
+            } catch (InterruptedException ignore) {
+            }
+        });
+        consumer.start();
+        Thread.sleep(50);
+
+        long before = mx.getThreadCpuTime(consumerId.get());
+        Thread.sleep(500);
+        long after = mx.getThreadCpuTime(consumerId.get());
+        long wakeups = ring.getWakeupCount();
+
+        ring.close();
+        consumer.join(1000);
+
+        // a 1 ms sleep loop would wake up ~500 times here
+        assertTrue("idle consumer burned " + (after - before) + " ns", after - before < 5_000_000L);
+        assertEquals(0, wakeups);
+        assertFalse(consumer.isAlive());
+    }
+
+    @Test
+    public void everyOfferedBufferIsConsumedInOrder() throws Exception {
+        CodecBufferRing ring = new CodecBufferRing(16);
+        FakeCodec codec = new FakeCodec(ring);
+        final int frames = 10000;
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+
+        Thread consumer = new Thread(() -> {
+            try {
+                while (next.get() < frames && ring.await()) {
+                    int i = next.getAndIncrement();
+                    if (ring.peekIndex() != i % 16 || ring.peekSize() != 1000 + i
+                            || ring.peekPresentationTime() != i * 33333L || ring.peekFlags() != 0) {
+                        errors.incrementAndGet();
+                    }
+                    ring.remove();
+                }
+            } catch (InterruptedException ignore) {
+            }
+        });
+        consumer.start();
+
+        for (int i = 0; i < frames; ) {
+            if (codec.emitOutputBuffer()) {
+                i++;
+            } else {
+                // full, a real codec would not hand out more buffers than it owns
+                codec.index--;
+                Thread.yield();
+            }
+        }
+        consumer.join(5000);
+
+        assertFalse(consumer.isAlive());
+        assertEquals(frames, next.get());
+        assertEquals(0, errors.get());
+        assertEquals(frames, ring.getOfferedCount());
+        assertTrue(ring.getMaxDepth() <= 16);
+    }
+
+    @Test
+    public void fullRingCountsOverflow() {
+        CodecBufferRing ring = new CodecBufferRing(3);
+        assertEquals(4, ring.getCapacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i, 0, 0, 0));
+        }
+        assertFalse(ring.offer(4, 0, 0, 0));
+        assertEquals(1, ring.getOverflowCount());
+        assertEquals(4, ring.getMaxDepth());
+        ring.clear();
+        assertTrue(ring.isEmpty());
+        assertTrue(ring.offer(5, 0, 0, 0));
+        assertEquals(5, ring.peekIndex());
+    }
+
+    @Test
+    public void releaseWakesConsumerWithoutClosing() throws Exception {
+        CodecBufferRing ring = new CodecBufferRing(4);
+        Thread consumer = new Thread(() -> {
+            try {
+                assertFalse(ring.await());
+            } catch (InterruptedException ignore) {
+            }
+        });
+        consumer.start();
+        Thread.sleep(20);
+        ring.release();
+        consumer.join(1000);
+
+        assertFalse(consumer.isAlive());
+        assertFalse(ring.isClosed());
+        assertTrue(ring.offer(7, 0, 0, 0));
+        assertTrue(ring.await());
+        // an entry that is not removed stays for the next consumer
+        assertEquals(7, ring.peekIndex());
+        assertTrue(ring.await());
+        assertEquals(7, ring.peekIndex());
+        ring.remove();
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void closeReleasesWaitingConsumer() throws Exception {
+        CodecBufferRing ring = new CodecBufferRing(4);
+        Thread consumer = new Thread(() -> {
+            try {
+                assertFalse(ring.await());
+            } catch (InterruptedException ignore) {
+            }
+        });
+        consumer.start();
+        Thread.sleep(20);
+        ring.close();
+        consumer.join(1000);
+
+        assertFalse(consumer.isAlive());
+        assertFalse(ring.offer(1, 0, 0, 0));
+        assertEquals(0, ring.size());
+    }
+
+    /**
+     * The ring hands buffers off without allocating, unlike the object-per-buffer
+     * ConcurrentLinkedQueue it replaced, which also shows the allocation counter works.
+     */
+    @Test
+    public void handOffDoesNotAllocate() {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        assumeTrue(mx instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean alloc = (com.sun.management.ThreadMXBean) mx;
+        assumeTrue(alloc.isThreadAllocatedMemorySupported());
+        alloc.setThreadAllocatedMemoryEnabled(true);
+        long tid = Thread.currentThread().getId();
+
+        final int ops = 2_000_000;
+        CodecBufferRing ring = new CodecBufferRing(64);
+        ConcurrentLinkedQueue<BufferInfo> queue = new ConcurrentLinkedQueue<>();
+        long sink = 0;
+
+        // warm up both paths
+        sink += runRing(ring, ops);
+        sink += runQueue(queue, ops);
+
+        long bytes0 = alloc.getThreadAllocatedBytes(tid);
+        sink += runRing(ring, ops);
+        long bytes1 = alloc.getThreadAllocatedBytes(tid);
+        sink += runQueue(queue, ops);
+        long bytes2 = alloc.getThreadAllocatedBytes(tid);
+
+        double ringBytes = (bytes1 - bytes0) / (double) ops;
+        double queueBytes = (bytes2 - bytes1) / (double) ops;
+        assertTrue("ring allocated " + ringBytes + " B/op", ringBytes < 0.01);
+        assertTrue("queue allocated " + queueBytes + " B/op", queueBytes > 16);
+        assertNotEquals(0, sink);
+    }
+
+    private static long runRing(CodecBufferRing ring, int ops) {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+            ring.offer(i & 15, i, i, 0);
+            sum += ring.peekPresentationTime() + ring.peekIndex();
+            ring.remove();
+        }
+        return sum;
+    }
+
+    private static long runQueue(ConcurrentLinkedQueue<BufferInfo> queue, int ops) {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+            queue.add(new BufferInfo(i & 15, i, i, 0));
+            BufferInfo x = queue.poll();
+            sum += x.pts + x.index;
+        }
+        return sum;
+    }
+}
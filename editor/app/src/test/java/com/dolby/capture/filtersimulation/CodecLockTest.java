@@ -0,0 +1,192 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the decode loop's locking pattern with fake codec calls. The output stage makes its
+ * codec call under the lock, then waits for the GPU stage and paces outside of it, as
+ * VideoDecoder.BufferProcessor does. The GPU stage never completes on its own in these tests,
+ * so any wait under the lock would show up as a stall or a hang.
+ */
+public class CodecLockTest {
+
+    private static final long FRAME_PERIOD_MS = 200;
+
+    private static final long MAX_STALL_MS = 50;
+
+    private final CodecLock codecLock = new CodecLock();
+
+    private final Semaphore gpuDone = new Semaphore(0);
+
+    private final CountDownLatch outputWaitingOnGpu = new CountDownLatch(1);
+
+    private final AtomicInteger codecCalls = new AtomicInteger();
+
+    private Thread startOutputStage() {
+        Thread output = new Thread(() -> {
+            while (true) {
+                if (!codecLock.lock()) {
+                    return;
+                }
+                try {
+                    codecCalls.incrementAndGet();   // releaseOutputBuffer
+                } finally {
+                    codecLock.unlock();
+                }
+                outputWaitingOnGpu.countDown();
+                try {
+                    gpuDone.acquire();                  // confirmBuffer
+                    Thread.sleep(FRAME_PERIOD_MS);      // frameRateDelay
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        output.start();
+        return output;
+    }
+
+    @Test
+    public void inputFeedDoesNotStallOnOutputStage() throws Exception {
+        Thread output = startOutputStage();
+        assertTrue(outputWaitingOnGpu.await(1, TimeUnit.SECONDS));
+
+        AtomicLong maxStallNs = new AtomicLong();
+        AtomicInteger queued = new AtomicInteger();
+        Thread input = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                long start = System.nanoTime();
+                if (!codecLock.lock()) {
+                    return;
+                }
+                long stall = System.nanoTime() - start;
+                try {
+                    queued.incrementAndGet();       // queueInputBuffer
+                } finally {
+                    codecLock.unlock();
+                }
+                maxStallNs.set(Math.max(maxStallNs.get(), stall));
+            }
+        });
+        input.start();
+        input.join(FRAME_PERIOD_MS);
+
+        assertFalse("input feed blocked behind the output stage", input.isAlive());
+        assertEquals(100, queued.get());
+        assertTrue("input stalled " + maxStallNs.get() / 1000 + "us",
+                maxStallNs.get() < TimeUnit.MILLISECONDS.toNanos(MAX_STALL_MS));
+
+        codecLock.lockForStop();
+        codecLock.unlock();
+        output.interrupt();
+        output.join(1000);
+    }
+
+    @Test
+    public void stopDoesNotWaitForBlockedStages() throws Exception {
+        Thread output = startOutputStage();
+        assertTrue(outputWaitingOnGpu.await(1, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        codecLock.lockForStop();
+        try {
+            codecCalls.incrementAndGet();           // codec stop and release
+        } finally {
+            codecLock.unlock();
+        }
+        long stopLatencyNs = System.nanoTime() - start;
+
+        assertTrue("stop took " + stopLatencyNs / 1000 + "us",
+                stopLatencyNs < TimeUnit.MILLISECONDS.toNanos(MAX_STALL_MS));
+
+        // once the GPU stage lets go, the output stage sees the stop at its next codec call
+        gpuDone.release();
+        output.join(FRAME_PERIOD_MS * 5);
+        assertFalse(output.isAlive());
+        assertEquals(2, codecCalls.get());
+        assertFalse(codecLock.lock());
+    }
+
+    @Test
+    public void stopWaitsForCodecCallInProgress() throws Exception {
+        CountDownLatch inCall = new CountDownLatch(1);
+        CountDownLatch finishCall = new CountDownLatch(1);
+        AtomicBoolean callFinished = new AtomicBoolean();
+        AtomicBoolean stoppedAfterCall = new AtomicBoolean();
+
+        Thread stage = new Thread(() -> {
+            if (codecLock.lock()) {
+                try {
+                    inCall.countDown();
+                    finishCall.await();
+                    callFinished.set(true);
+                } catch (InterruptedException ignore) {
+                } finally {
+                    codecLock.unlock();
+                }
+            }
+        });
+        stage.start();
+        assertTrue(inCall.await(1, TimeUnit.SECONDS));
+
+        Thread stopper = new Thread(() -> {
+            codecLock.lockForStop();
+            try {
+                stoppedAfterCall.set(callFinished.get());
+            } finally {
+                codecLock.unlock();
+            }
+        });
+        stopper.start();
+        stopper.join(50);
+        assertTrue(stopper.isAlive());
+        assertTrue(codecLock.isStopped());
+
+        finishCall.countDown();
+        stopper.join(1000);
+        stage.join(1000);
+        assertFalse(stopper.isAlive());
+        assertTrue(stoppedAfterCall.get());
+        assertTrue(codecLock.getMaxWaitNs() > 0);
+    }
+}
@@ -0,0 +1,206 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class CubeLutTest {
+
+    private interface Curve {
+        void map(float r, float g, float b, float[] out);
+    }
+
+    private static String cube(int size, Curve curve) {
+        StringBuilder text = new StringBuilder("TITLE \"test\"\nLUT_3D_SIZE " + size + "\n");
+        float[] out = new float[3];
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    curve.map(r / (size - 1.0f), g / (size - 1.0f), b / (size - 1.0f), out);
+                    text.append(String.format(Locale.ROOT, "%.6f %.6f %.6f\n", out[0], out[1], out[2]));
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private static CubeLut parse(String text) throws IOException {
+        return CubeLut.parse(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void assertParseError(String text, String message) {
+        try {
+            parse(text);
+            fail("parsed: " + text);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void parsesHeaderCommentsAndData() throws IOException {
+        CubeLut lut = parse("# Created by hand\r\n"
+                + "TITLE \"Warm look\"\r\n"
+                + "LUT_3D_SIZE 2\r\n"
+                + "DOMAIN_MIN 0 0 0\r\n"
+                + "DOMAIN_MAX 1.0 1.0 1.0\r\n"
+                + "\r\n"
+                + "0 0 0\r\n"
+                + "1 0 0 # red\r\n"
+                + "0 1 0\r\n"
+                + "1 1 0\r\n"
+                + "0 0 1\r\n"
+                + "1 0 1\r\n"
+                + "0 1 1\r\n"
+                + "  1.0e0 +1. .1E1");
+        assertEquals(2, lut.getSize());
+        assertEquals("Warm look", lut.getTitle());
+        assertEquals(2 * 2 * 2 * 3 * 2, lut.getByteCount());
+        assertEquals(1.0f, lut.getValue(3), 0.0f);
+        assertEquals(0.0f, lut.getValue(4), 0.0f);
+        assertArrayEquals(new float[]{1, 1, 1}, new float[]{lut.getValue(21), lut.getValue(22), lut.getValue(23)}, 0.0f);
+
+        ByteBuffer halves = lut.getHalfData();
+        assertTrue(halves.isDirect());
+        assertTrue(halves.isReadOnly());
+        assertEquals(lut.getByteCount(), halves.remaining());
+        assertEquals(0x3c00, halves.getShort(3 * 2));
+    }
+
+    @Test
+    public void rejectsUnsupportedContent() {
+        assertParseError("0 0 0\n", "line 1: data before LUT_3D_SIZE");
+        assertParseError("TITLE \"x\"\n", "No LUT_3D_SIZE");
+        assertParseError("LUT_1D_SIZE 1024\n", "1D LUTs");
+        assertParseError("LUT_3D_SIZE 1\n", "unsupported LUT_3D_SIZE");
+        assertParseError("LUT_3D_SIZE 2\nDOMAIN_MAX 2 2 2\n", "line 2: DOMAIN_MAX");
+        assertParseError("LUT_3D_SIZE 2\n0 0 0\n1 0 0\n", "LUT has 2 entries");
+        assertParseError("LUT_3D_SIZE 2\n0 0 0\n1 x 0\n", "line 3: number expected");
+        assertParseError("LUT_3D_SIZE 2\n0 0 0 0\n", "line 2: unexpected");
+        assertParseError(cube(2, (r, g, b, out) -> out[0] = out[1] = out[2] = 0) + "0 0 0\n", "line 11: more than");
+    }
+
+    @Test
+    public void halfFloatConversion() {
+        assertEquals(0x3c00, CubeLut.floatToHalf(1.0f));
+        assertEquals((short) 0xc000, CubeLut.floatToHalf(-2.0f));
+        assertEquals(0x7bff, CubeLut.floatToHalf(65504.0f));
+        assertEquals(0x7c00, CubeLut.floatToHalf(65520.0f));
+        assertEquals(0x0001, CubeLut.floatToHalf(5.9604645e-8f));
+        assertEquals(0x0000, CubeLut.floatToHalf(2.0e-8f));
+        // Ties round to even
+        assertEquals(0x3c00, CubeLut.floatToHalf(1.0f + 1.0f / 2048));
+        assertEquals(0x3c02, CubeLut.floatToHalf(1.0f + 3.0f / 2048));
+        assertTrue(Float.isNaN(CubeLut.halfToFloat(CubeLut.floatToHalf(Float.NaN))));
+
+        for (int h = 0; h < 0x7c00; h++) {
+            assertEquals(h, CubeLut.floatToHalf(CubeLut.halfToFloat((short) h)));
+            assertEquals((short) (h | 0x8000), CubeLut.floatToHalf(CubeLut.halfToFloat((short) (h | 0x8000))));
+        }
+    }
+
+    @Test
+    public void tetrahedralIsExactOnAffineLut() throws IOException {
+        Curve affine = (r, g, b, out) -> {
+            out[0] = 0.8f * r + 0.1f * g + 0.05f * b + 0.02f;
+            out[1] = 0.1f * r + 0.7f * g + 0.1f * b + 0.05f;
+            out[2] = 0.05f * r + 0.2f * g + 0.6f * b + 0.1f;
+        };
+        CubeLut lut = parse(cube(5, affine));
+        float[] expected = new float[3];
+        float[] out = new float[3];
+        for (int i = 0; i < 1000; i++) {
+            float r = (i % 10) / 9.0f * 1.2f - 0.1f;
+            float g = ((i / 10) % 10) / 9.0f;
+            float b = (i / 100) / 9.0f;
+            lut.sample(r, g, b, out);
+            affine.map(Math.max(0, Math.min(1, r)), g, b, expected);
+            // Only half float rounding of the entries
+            assertArrayEquals(expected, out, 1e-3f);
+        }
+    }
+
+    @Test
+    public void tetrahedralHitsEntriesAndFollowsDiagonal() throws IOException {
+        Curve curve = (r, g, b, out) -> {
+            out[0] = r * g;
+            out[1] = g * b;
+            out[2] = (float) Math.sqrt(b);
+        };
+        int size = 17;
+        CubeLut lut = parse(cube(size, curve));
+        float[] out = new float[3];
+        lut.sample(3 / 16.0f, 7 / 16.0f, 11 / 16.0f, out);
+        int index = ((11 * size + 7) * size + 3) * 3;
+        assertArrayEquals(new float[]{lut.getValue(index), lut.getValue(index + 1), lut.getValue(index + 2)}, out, 0.0f);
+
+        // The neutral axis only interpolates between its own entries
+        float grey = 0.5f / 16.0f;
+        lut.sample(grey, grey, grey, out);
+        int corner = ((size + 1) * size + 1) * 3;
+        for (int c = 0; c < 3; c++) {
+            assertEquals((lut.getValue(c) + lut.getValue(corner + c)) / 2, out[c], 1e-6f);
+        }
+    }
+
+    @Test
+    public void parses65PointLut() throws IOException {
+        byte[] content = cube(65, (r, g, b, out) -> {
+            out[0] = (float) Math.pow(r, 0.8);
+            out[1] = g;
+            out[2] = 1.0f - b;
+        }).getBytes(StandardCharsets.US_ASCII);
+
+        CubeLut lut = null;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            lut = CubeLut.parse(content);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf(Locale.ROOT, "CubeLut: 65 point LUT, %d KB parsed in %.1f ms%n", content.length / 1024, best / 1e6);
+
+        assertEquals(65, lut.getSize());
+        assertEquals(CubeLut.hash(content), lut.getHash());
+        float[] values = lut.toFloatArray();
+        assertEquals(65 * 65 * 65 * 3, values.length);
+        int last = values.length - 3;
+        assertArrayEquals(new float[]{1.0f, 1.0f, 0.0f}, new float[]{values[last], values[last + 1], values[last + 2]}, 0.0f);
+    }
+}
@@ -0,0 +1,132 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DebouncedWorkerTest {
+
+    private static final long DEBOUNCE_NS = 20_000_000L;
+
+    @Test
+    public void burstRunsOnlyLatestRequest() throws InterruptedException {
+        List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        DebouncedWorker<Integer> worker = new DebouncedWorker<>("test", DEBOUNCE_NS, (request, cancelled) -> {
+            ran.add(request);
+            done.countDown();
+            return true;
+        });
+        for (int i = 0; i < 10; i++) {
+            assertTrue(worker.submit(i));
+        }
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        worker.shutdown();
+
+        assertEquals(Collections.singletonList(9), ran);
+        assertEquals(10, worker.getSubmittedCount());
+        assertEquals(9, worker.getCoalescedCount());
+        assertEquals(1, worker.getCompletedCount());
+    }
+
+    @Test
+    public void waitsForDebounceDelay() throws InterruptedException {
+        long[] ranNs = new long[1];
+        CountDownLatch done = new CountDownLatch(1);
+        DebouncedWorker<Long> worker = new DebouncedWorker<>("test", DEBOUNCE_NS, (request, cancelled) -> {
+            ranNs[0] = System.nanoTime() - request;
+            done.countDown();
+            return true;
+        });
+        worker.submit(System.nanoTime());
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        worker.shutdown();
+        assertTrue(ranNs[0] >= DEBOUNCE_NS);
+    }
+
+    @Test
+    public void newerRequestCancelsRunningTask() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(2);
+        List<Integer> completed = Collections.synchronizedList(new ArrayList<>());
+        DebouncedWorker<Integer> worker = new DebouncedWorker<>("test", 0, (request, cancelled) -> {
+            started.countDown();
+            try {
+                if (request == 0) {
+                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+                    while (!cancelled.getAsBoolean()) {
+                        if (System.nanoTime() > deadline) {
+                            break;
+                        }
+                    }
+                    if (cancelled.getAsBoolean()) {
+                        return false;
+                    }
+                }
+                completed.add(request);
+                return true;
+            } finally {
+                finished.countDown();
+            }
+        });
+        worker.submit(0);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        worker.submit(1);
+        assertTrue(finished.await(2, TimeUnit.SECONDS));
+        worker.shutdown();
+
+        assertEquals(Collections.singletonList(1), completed);
+        assertEquals(1, worker.getCancelledCount());
+        assertEquals(1, worker.getCompletedCount());
+    }
+
+    @Test
+    public void shutdownDropsPendingRequest() {
+        List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+        DebouncedWorker<Integer> worker = new DebouncedWorker<>("test", TimeUnit.SECONDS.toNanos(10), (request, cancelled) -> {
+            ran.add(request);
+            return true;
+        });
+        worker.submit(1);
+        worker.shutdown();
+        assertFalse(worker.submit(2));
+        assertTrue(ran.isEmpty());
+    }
+}
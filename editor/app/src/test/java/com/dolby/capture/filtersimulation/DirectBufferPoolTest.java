@@ -0,0 +1,100 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class DirectBufferPoolTest {
+
+    @Test
+    public void reusesReleasedBuffer() {
+        DirectBufferPool pool = new DirectBufferPool(2);
+        ByteBuffer a = pool.acquire(100);
+        assertTrue(a.isDirect());
+        assertEquals(100, a.remaining());
+        pool.release(a);
+
+        ByteBuffer b = pool.acquire(80);
+        assertSame(a, b);
+        assertEquals(0, b.position());
+        assertEquals(80, b.limit());
+        assertEquals(1, pool.getAllocatedCount());
+        assertEquals(1, pool.getReusedCount());
+    }
+
+    @Test
+    public void picksSmallestBufferThatFits() {
+        DirectBufferPool pool = new DirectBufferPool(4);
+        ByteBuffer large = pool.acquire(400);
+        ByteBuffer medium = pool.acquire(200);
+        ByteBuffer small = pool.acquire(50);
+        pool.release(large);
+        pool.release(medium);
+        pool.release(small);
+
+        assertSame(medium, pool.acquire(150));
+        assertNotSame(large, pool.acquire(500));
+        assertEquals(2, pool.getFreeCount());
+    }
+
+    @Test
+    public void keepsLargestBuffersUpToLimit() {
+        DirectBufferPool pool = new DirectBufferPool(2);
+        ByteBuffer a = pool.acquire(10);
+        ByteBuffer b = pool.acquire(20);
+        ByteBuffer c = pool.acquire(30);
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        assertEquals(2, pool.getFreeCount());
+        assertSame(b, pool.acquire(20));
+        assertSame(c, pool.acquire(5));
+    }
+
+    @Test
+    public void releasingTwiceKeepsOneCopy() {
+        DirectBufferPool pool = new DirectBufferPool(4);
+        ByteBuffer a = pool.acquire(16);
+        ByteBuffer b = pool.acquire(16);
+        pool.release(a);
+        pool.release(a);
+        // same contents, different buffer
+        pool.release(b);
+        assertEquals(2, pool.getFreeCount());
+        pool.release(ByteBuffer.allocate(16));
+        assertEquals(2, pool.getFreeCount());
+    }
+}
@@ -0,0 +1,132 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class EffectParameterBlockTest {
+
+    @Test
+    public void stagedValuesAreInvisibleUntilPublished() {
+        EffectParameterBlock block = new EffectParameterBlock();
+        assertFalse(block.acquire());
+        assertEquals(0, block.getVersion());
+
+        block.set(EffectParameters.GAIN, 1.5f);
+        block.set(EffectParameters.SATURATION, 0.25f);
+        assertFalse(block.acquire());
+
+        block.publish();
+        assertTrue(block.acquire());
+        assertFalse(block.acquire());
+        assertEquals(1, block.getVersion());
+        FloatBuffer values = block.getValues();
+        assertTrue(values.isDirect());
+        assertEquals(EffectParameterBlock.COUNT, values.remaining());
+        assertEquals(1.5f, values.get(EffectParameters.GAIN.ordinal()), 0);
+        assertEquals(0.25f, values.get(EffectParameters.SATURATION.ordinal()), 0);
+        assertEquals((1L << EffectParameters.GAIN.ordinal()) | (1L << EffectParameters.SATURATION.ordinal()), block.getMask());
+    }
+
+    @Test
+    public void readerGetsLatestSnapshot() {
+        EffectParameterBlock block = new EffectParameterBlock();
+        for (int i = 1; i <= 5; i++) {
+            block.set(EffectParameters.OFFSET, i);
+            block.publish();
+        }
+        assertTrue(block.acquire());
+        assertEquals(5, block.getVersion());
+        assertEquals(5f, block.getValues().get(EffectParameters.OFFSET.ordinal()), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parameterCountIsNotAParameter() {
+        new EffectParameterBlock().set(EffectParameters.PARAMETER_COUNT, 1f);
+    }
+
+    /**
+     * The UI thread publishes batches where every parameter holds the same value while the render
+     * thread reads. A snapshot mixing two batches or going back in version is a torn read.
+     */
+    @Test
+    public void concurrentSnapshotsAreNeverTorn() throws Exception {
+        EffectParameterBlock block = new EffectParameterBlock();
+        EffectParameters[] all = EffectParameters.values();
+        final int batches = 200_000;
+        AtomicLong torn = new AtomicLong();
+        AtomicLong seen = new AtomicLong();
+
+        Thread writer = new Thread(() -> {
+            for (int batch = 1; batch <= batches; batch++) {
+                for (int i = 0; i < EffectParameterBlock.COUNT; i++) {
+                    block.set(all[i], batch);
+                }
+                block.publish();
+            }
+        });
+        Thread reader = new Thread(() -> {
+            long lastVersion = 0;
+            while (lastVersion < batches) {
+                if (!block.acquire()) {
+                    continue;
+                }
+                FloatBuffer values = block.getValues();
+                float first = values.get(0);
+                for (int i = 1; i < EffectParameterBlock.COUNT; i++) {
+                    if (values.get(i) != first) {
+                        torn.incrementAndGet();
+                        break;
+                    }
+                }
+                if (block.getVersion() <= lastVersion || first != block.getVersion()) {
+                    torn.incrementAndGet();
+                }
+                lastVersion = block.getVersion();
+                seen.incrementAndGet();
+            }
+        });
+        reader.start();
+        writer.start();
+        writer.join(30_000);
+        reader.join(30_000);
+
+        assertFalse(reader.isAlive());
+        assertEquals(0, torn.get());
+        assertTrue(seen.get() > 0);
+    }
+}
@@ -0,0 +1,157 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EncodeTrackerTest {
+
+    private static final long STALL_MS = 50;
+
+    private final List<Long> lostFrames = new ArrayList<>();
+    private final List<Boolean> lostStalled = new ArrayList<>();
+
+    private EncodeTracker newTracker(InFlightWindow window) {
+        return new EncodeTracker(window, STALL_MS, (timestamp, lostCount, stalled) -> {
+            lostFrames.add(timestamp);
+            lostStalled.add(stalled);
+        });
+    }
+
+    private static void queue(EncodeTracker tracker, long timestamp) throws InterruptedException {
+        assertTrue(tracker.acquire());
+        assertTrue(tracker.queued(timestamp, System.nanoTime()));
+    }
+
+    @Test
+    public void returnedFramesReleaseTheirSlots() throws Exception {
+        InFlightWindow window = new InFlightWindow(Constants.IN_FLIGHT_DEPTH);
+        EncodeTracker tracker = newTracker(window);
+        for (int i = 0; i < 3 * Constants.IN_FLIGHT_DEPTH; i++) {
+            queue(tracker, i);
+            assertNotEquals(EncodeTracker.MISSING, tracker.encoded(i));
+        }
+        assertEquals(0, window.getInFlight());
+        assertEquals(0, tracker.getLostCount());
+        assertEquals(EncodeTracker.MISSING, tracker.encoded(0));
+    }
+
+    /**
+     * The encoder drops frame 0 and holds the ones after it for lookahead, so nothing comes back
+     * while the default window is full.
+     */
+    @Test
+    public void droppedFrameIsRetiredWhenTheWindowStalls() throws Exception {
+        InFlightWindow window = new InFlightWindow(Constants.IN_FLIGHT_DEPTH);
+        EncodeTracker tracker = newTracker(window);
+        int depth = window.getDepth();
+        for (int i = 0; i < depth; i++) {
+            queue(tracker, i);
+        }
+        assertTrue(depth <= EncodeTracker.LOST_FRAME_REORDER_LIMIT);
+
+        long start = System.nanoTime();
+        assertTrue(tracker.acquire());
+        long waitedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue("waited " + waitedMs + " ms", waitedMs >= STALL_MS && waitedMs < 2000);
+
+        assertEquals(1, tracker.getLostCount());
+        assertEquals(1, tracker.getStallCount());
+        assertEquals(Long.valueOf(0), lostFrames.get(0));
+        assertTrue(lostStalled.get(0));
+
+        // the held frames still match once they come back
+        assertTrue(tracker.queued(depth, System.nanoTime()));
+        for (int i = 1; i <= depth; i++) {
+            assertNotEquals(EncodeTracker.MISSING, tracker.encoded(i));
+        }
+        assertEquals(0, window.getInFlight());
+        assertEquals(0, tracker.getPendingCount());
+        assertEquals(1, tracker.getLostCount());
+    }
+
+    @Test
+    public void droppedFrameIsRetiredAfterReorderLimit() throws Exception {
+        InFlightWindow window = new InFlightWindow(Constants.IN_FLIGHT_DEPTH);
+        EncodeTracker tracker = newTracker(window);
+        queue(tracker, 0);
+        for (int i = 1; i <= EncodeTracker.LOST_FRAME_REORDER_LIMIT + 1; i++) {
+            queue(tracker, i);
+            tracker.encoded(i);
+            assertEquals(i > EncodeTracker.LOST_FRAME_REORDER_LIMIT ? 1 : 0, tracker.getLostCount());
+        }
+        assertEquals(Long.valueOf(0), lostFrames.get(0));
+        assertFalse(lostStalled.get(0));
+        assertEquals(0, tracker.getStallCount());
+        assertEquals(0, window.getInFlight());
+    }
+
+    @Test
+    public void untrackedFrameIsNotCountedLost() throws Exception {
+        InFlightWindow window = new InFlightWindow(Constants.IN_FLIGHT_DEPTH);
+        EncodeTracker tracker = newTracker(window);
+        queue(tracker, 0);
+        tracker.untrack(0);
+        window.release();
+        for (int i = 1; i <= 2 * EncodeTracker.LOST_FRAME_REORDER_LIMIT; i++) {
+            queue(tracker, i);
+            tracker.encoded(i);
+        }
+        assertEquals(0, tracker.getLostCount());
+        assertEquals(EncodeTracker.MISSING, tracker.encoded(0));
+    }
+
+    @Test
+    public void acquireFailsOnceReleased() throws Exception {
+        InFlightWindow window = new InFlightWindow(1);
+        EncodeTracker tracker = newTracker(window);
+        queue(tracker, 0);
+        final boolean[] result = {true};
+        Thread blocked = new Thread(() -> {
+            try {
+                result[0] = tracker.acquire();
+            } catch (InterruptedException ignore) {
+            }
+        });
+        blocked.start();
+        Thread.sleep(20);
+        window.releaseAll();
+        blocked.join(1000);
+        assertFalse(blocked.isAlive());
+        assertFalse(result[0]);
+    }
+}
@@ -0,0 +1,76 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GpuFrameTimesTest {
+
+    private static final long MS = 1_000_000;
+
+    @Test
+    public void averagesAndLastPerPass() {
+        GpuFrameTimes times = new GpuFrameTimes();
+        times.record(2 * MS, 1 * MS, 0);
+        times.record(4 * MS, 3 * MS, 10 * MS);
+        assertEquals(2, times.getFrameCount());
+        assertEquals(3.0, times.getAverageMs(GpuFrameTimes.COMPUTE), 1e-9);
+        assertEquals(2.0, times.getAverageMs(GpuFrameTimes.RENDER), 1e-9);
+        assertEquals(4.0, times.getLastMs(GpuFrameTimes.COMPUTE), 1e-9);
+        assertEquals(3.0, times.getLastMs(GpuFrameTimes.RENDER), 1e-9);
+        assertEquals(2, times.getHistogram(GpuFrameTimes.COMPUTE).getCount());
+    }
+
+    @Test
+    public void busyFractionOverWallTime() {
+        GpuFrameTimes times = new GpuFrameTimes();
+        assertEquals(0.0, times.getBusyFraction(), 0.0);
+        // 5 ms of GPU work every 10 ms
+        for (int i = 0; i < 5; i++) {
+            times.record(3 * MS, 2 * MS, i * 10 * MS);
+        }
+        assertEquals(0.5, times.getBusyFraction(), 1e-9);
+    }
+
+    @Test
+    public void droppedFramesCountAtTheAverage() {
+        GpuFrameTimes times = new GpuFrameTimes();
+        times.record(3 * MS, 2 * MS, 0);
+        times.record(3 * MS, 2 * MS, 20 * MS);
+        times.addDropped(1);
+        assertEquals(1, times.getDroppedCount());
+        assertEquals(0.5, times.getBusyFraction(), 1e-9);
+        assertTrue(times.getStats().contains("dropped=1"));
+    }
+}
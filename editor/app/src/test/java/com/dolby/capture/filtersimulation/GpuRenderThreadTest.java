@@ -0,0 +1,235 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class GpuRenderThreadTest {
+
+    /**
+     * Records the calls made on the render thread. Fences are frame number + 1 and signal when the
+     * fake GPU, which runs one frame at a time, gets to them.
+     */
+    private static class FakeRenderer implements GpuRenderThread.Renderer<Integer> {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> completed = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> discarded = Collections.synchronizedList(new ArrayList<>());
+        final long gpuFrameNs;
+        final boolean failFences;
+        long gpuFreeAt = 0;
+        final long[] doneAt = new long[1000];
+        volatile boolean stopped = false;
+
+        FakeRenderer(long gpuFrameNs, boolean failFences) {
+            this.gpuFrameNs = gpuFrameNs;
+            this.failFences = failFences;
+        }
+
+        @Override
+        public long submit(Integer frame) {
+            events.add("submit " + frame);
+            long start = Math.max(System.nanoTime(), gpuFreeAt);
+            gpuFreeAt = start + gpuFrameNs;
+            doneAt[frame] = gpuFreeAt;
+            return frame + 1;
+        }
+
+        @Override
+        public boolean waitFence(long fence) {
+            long remaining = doneAt[(int) fence - 1] - System.nanoTime();
+            if (remaining > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return !failFences;
+        }
+
+        @Override
+        public void complete(Integer frame) {
+            events.add("complete " + frame);
+            completed.add(frame);
+        }
+
+        @Override
+        public void discard(Integer frame) {
+            events.add("discard " + frame);
+            discarded.add(frame);
+        }
+
+        @Override
+        public void onStop() {
+            stopped = true;
+        }
+    }
+
+    @Test
+    public void completesInOrderAndOverlapsSubmission() {
+        FakeRenderer renderer = new FakeRenderer(2_000_000, false);
+        GpuRenderThread<Integer> thread = new GpuRenderThread<>("test", renderer, 2);
+        // queue everything before the thread starts, so frames are always waiting
+        for (int i = 0; i < 20; i++) {
+            assertTrue(thread.submit(i));
+        }
+        thread.start();
+        waitFor(() -> renderer.completed.size() == 20);
+        thread.shutdown();
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Integer.valueOf(i), renderer.completed.get(i));
+        }
+        // frame n + 1 is on the GPU before frame n completes
+        for (int i = 0; i < 19; i++) {
+            assertTrue(renderer.events.indexOf("submit " + (i + 1)) < renderer.events.indexOf("complete " + i));
+        }
+        assertTrue(renderer.stopped);
+        assertEquals(20, thread.getCompletedCount());
+    }
+
+    @Test
+    public void completesWithoutWaitingForNextFrame() throws Exception {
+        FakeRenderer renderer = new FakeRenderer(1_000_000, false);
+        GpuRenderThread<Integer> thread = new GpuRenderThread<>("test", renderer, 2);
+        thread.start();
+        thread.submit(0);
+        waitFor(() -> renderer.completed.size() == 1);
+        thread.submit(1);
+        waitFor(() -> renderer.completed.size() == 2);
+        thread.shutdown();
+        assertEquals(0, thread.getDiscardedCount());
+    }
+
+    @Test
+    public void tasksRunBeforeQueuedFrames() throws Exception {
+        FakeRenderer renderer = new FakeRenderer(0, false);
+        GpuRenderThread<Integer> thread = new GpuRenderThread<>("test", renderer, 2);
+        thread.submit(0);
+        thread.post(() -> renderer.events.add("init"));
+        thread.start();
+        waitFor(() -> renderer.completed.size() == 1);
+        thread.shutdown();
+        assertEquals("init", renderer.events.get(0));
+    }
+
+    @Test
+    public void shutdownFinishesInFlightAndDiscardsQueued() throws Exception {
+        FakeRenderer renderer = new FakeRenderer(20_000_000, false);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        GpuRenderThread<Integer> thread = new GpuRenderThread<>("test", renderer, 2);
+        thread.post(() -> {
+            blocked.countDown();
+            try {
+                proceed.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        thread.start();
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            thread.submit(i);
+        }
+        // the task holds the thread, so nothing is submitted when shutdown starts
+        Thread stopper = new Thread(thread::shutdown);
+        stopper.start();
+        waitFor(() -> !thread.post(() -> { }));
+        proceed.countDown();
+        stopper.join(5000);
+
+        assertFalse(thread.isAlive());
+        assertEquals(5, renderer.discarded.size() + renderer.completed.size());
+        assertEquals(5, renderer.discarded.size());
+        assertFalse(thread.post(() -> { }));
+        assertTrue(renderer.stopped);
+    }
+
+    @Test
+    public void shutdownRunsQueuedTasks() throws Exception {
+        FakeRenderer renderer = new FakeRenderer(0, false);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        GpuRenderThread<Integer> thread = new GpuRenderThread<>("test", renderer, 2);
+        thread.post(() -> {
+            blocked.countDown();
+            try {
+                proceed.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        thread.start();
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        thread.submit(0);
+        thread.post(() -> renderer.events.add("release"));
+        Thread stopper = new Thread(thread::shutdown);
+        stopper.start();
+        waitFor(() -> !thread.post(() -> { }));
+        proceed.countDown();
+        stopper.join(5000);
+
+        assertFalse(thread.isAlive());
+        assertEquals("release", renderer.events.get(0));
+        assertEquals(1, renderer.discarded.size());
+        assertTrue(renderer.stopped);
+    }
+
+    @Test
+    public void failedFenceDiscardsFrame() {
+        FakeRenderer renderer = new FakeRenderer(0, true);
+        GpuRenderThread<Integer> thread = new GpuRenderThread<>("test", renderer, 1);
+        thread.start();
+        thread.submit(0);
+        thread.submit(1);
+        waitFor(() -> renderer.discarded.size() == 2);
+        thread.shutdown();
+        assertTrue(renderer.completed.isEmpty());
+        assertTrue(thread.getStats().contains("fence failures=2"));
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.yield();
+        }
+    }
+}
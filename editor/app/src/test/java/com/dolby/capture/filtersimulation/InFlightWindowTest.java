@@ -0,0 +1,181 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.junit.Assert.*;
+
+public class InFlightWindowTest {
+
+    private static final int FRAMES = 60;
+
+    // per-frame latencies of the simulated stages
+    private static final long DECODE_MS = 3;
+    private static final long GPU_MS = 4;
+    private static final long ENCODE_MS = 5;
+
+    @Test
+    public void depthIsBoundedByImagePipeline() {
+        assertEquals(1, new InFlightWindow(0).getDepth());
+        assertEquals(4, new InFlightWindow(4).getDepth());
+        assertEquals(ImagePipeline.MAX_IMAGES, new InFlightWindow(100).getDepth());
+    }
+
+    @Test
+    public void windowNeverExceedsDepth() throws Exception {
+        InFlightWindow window = new InFlightWindow(3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(window.acquire());
+        }
+        Thread blocked = new Thread(() -> {
+            try {
+                window.acquire();
+            } catch (InterruptedException ignore) {
+            }
+        });
+        blocked.start();
+        blocked.join(50);
+        assertTrue(blocked.isAlive());
+        assertEquals(3, window.getInFlight());
+
+        window.release();
+        blocked.join(1000);
+        assertFalse(blocked.isAlive());
+        assertEquals(3, window.getMaxInFlight());
+        assertTrue(window.getBlockedNs() > 0);
+    }
+
+    @Test
+    public void releaseAllUnblocksShutdown() throws Exception {
+        InFlightWindow window = new InFlightWindow(1);
+        assertTrue(window.acquire());
+        final boolean[] result = {true};
+        Thread blocked = new Thread(() -> {
+            try {
+                result[0] = window.acquire();
+            } catch (InterruptedException ignore) {
+            }
+        });
+        blocked.start();
+        Thread.sleep(20);
+        window.releaseAll();
+        blocked.join(1000);
+        assertFalse(blocked.isAlive());
+        assertFalse(result[0]);
+        assertFalse(window.acquire());
+    }
+
+    /**
+     * Runs decode, GPU and encode stages with fixed latencies, coupled the way VideoDecoder and
+     * FrameHandler couple them, and compares export throughput across window depths.
+     */
+    @Test
+    public void throughputByDepth() throws Exception {
+        int[] depths = {1, 2, 4, 8};
+        double[] fps = new double[depths.length];
+        for (int i = 0; i < depths.length; i++) {
+            fps[i] = runPipeline(depths[i]);
+        }
+
+        StringBuilder report = new StringBuilder("in-flight depth throughput:");
+        for (int i = 0; i < depths.length; i++) {
+            report.append(String.format(" depth %d = %.1f fps;", depths[i], fps[i]));
+        }
+        System.out.println(report);
+
+        // in lockstep GPU and encode run one after the other, with a window at the slowest stage
+        double lockstep = 1000.0 / (GPU_MS + ENCODE_MS);
+        double slowest = 1000.0 / ENCODE_MS;
+        assertTrue(fps[0] < lockstep * 1.1);
+        for (int i = 1; i < depths.length; i++) {
+            assertTrue("depth " + depths[i] + " ran at " + fps[i] + " fps", fps[i] > fps[0] * 1.5);
+            assertTrue(fps[i] < slowest * 1.1);
+        }
+    }
+
+    private static double runPipeline(int depth) throws Exception {
+        InFlightWindow decodeWindow = new InFlightWindow(depth);
+        InFlightWindow encodeWindow = new InFlightWindow(depth);
+        BlockingQueue<Integer> toGpu = new ArrayBlockingQueue<>(FRAMES);
+        BlockingQueue<Integer> toEncoder = new ArrayBlockingQueue<>(FRAMES);
+
+        Thread decoder = new Thread(() -> {
+            try {
+                for (int i = 0; i < FRAMES; i++) {
+                    Thread.sleep(DECODE_MS);
+                    decodeWindow.acquire();         // BufferProcessor.reserveFrame
+                    toGpu.put(i);                   // releaseOutputBuffer
+                }
+            } catch (InterruptedException ignore) {
+            }
+        });
+        Thread gpu = new Thread(() -> {
+            try {
+                for (int i = 0; i < FRAMES; i++) {
+                    int frame = toGpu.take();       // onImageAvailable
+                    encodeWindow.acquire();         // FrameHandler.onFrameAvailable
+                    Thread.sleep(GPU_MS);           // processFrame
+                    toEncoder.put(frame);           // queueInputImage
+                    decodeWindow.release();         // end of onImageAvailable
+                }
+            } catch (InterruptedException ignore) {
+            }
+        });
+        Thread encoder = new Thread(() -> {
+            try {
+                for (int i = 0; i < FRAMES; i++) {
+                    toEncoder.take();
+                    Thread.sleep(ENCODE_MS);
+                    encodeWindow.release();         // onFrameEncoded
+                }
+            } catch (InterruptedException ignore) {
+            }
+        });
+
+        long start = System.nanoTime();
+        decoder.start();
+        gpu.start();
+        encoder.start();
+        encoder.join(10000);
+        long elapsed = System.nanoTime() - start;
+        decoder.join(1000);
+        gpu.join(1000);
+
+        assertTrue(decodeWindow.getMaxInFlight() <= depth);
+        assertTrue(encodeWindow.getMaxInFlight() <= depth);
+        return FRAMES * 1e9 / elapsed;
+    }
+}
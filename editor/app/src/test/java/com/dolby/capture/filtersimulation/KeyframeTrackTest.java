@@ -0,0 +1,104 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeyframeTrackTest {
+
+    @Test
+    public void emptyTrackIsZero() {
+        assertEquals(0f, new KeyframeTrack().evaluate(1000), 0);
+    }
+
+    @Test
+    public void linearInterpolatesAndHoldsEnds() {
+        KeyframeTrack track = new KeyframeTrack();
+        track.addLinear(2_000_000, 1f);
+        track.addLinear(1_000_000, 0f);
+        assertEquals(2, track.size());
+
+        assertEquals(0f, track.evaluate(0), 0);
+        assertEquals(0f, track.evaluate(1_000_000), 0);
+        assertEquals(0.25f, track.evaluate(1_250_000), 1e-6);
+        assertEquals(0.5f, track.evaluate(1_500_000), 1e-6);
+        assertEquals(1f, track.evaluate(2_000_000), 0);
+        assertEquals(1f, track.evaluate(9_000_000), 0);
+    }
+
+    @Test
+    public void keyframeAtSameTimeIsReplaced() {
+        KeyframeTrack track = new KeyframeTrack();
+        track.addLinear(0, 1f);
+        track.addLinear(0, 2f);
+        assertEquals(1, track.size());
+        assertEquals(2f, track.evaluate(0), 0);
+        assertTrue(track.remove(0));
+        assertFalse(track.remove(0));
+        assertTrue(track.isEmpty());
+    }
+
+    @Test
+    public void bezierEasesBetweenKeyframes() {
+        KeyframeTrack track = new KeyframeTrack();
+        // ease-in-out
+        track.addBezier(0, 0f, 0.42f, 0f, 0.58f, 1f);
+        track.addLinear(1_000_000, 10f);
+
+        assertEquals(0f, track.evaluate(0), 0);
+        assertEquals(5f, track.evaluate(500_000), 1e-3);
+        assertEquals(10f, track.evaluate(1_000_000), 0);
+        assertTrue(track.evaluate(100_000) < 1f);
+        assertTrue(track.evaluate(900_000) > 9f);
+
+        float previous = -1;
+        for (long t = 0; t <= 1_000_000; t += 10_000) {
+            float value = track.evaluate(t);
+            assertTrue(value >= previous);
+            previous = value;
+        }
+    }
+
+    @Test
+    public void straightBezierIsLinear() {
+        for (float x = 0; x <= 1; x += 0.05f) {
+            assertEquals(x, KeyframeTrack.ease(x, 1f / 3, 1f / 3, 2f / 3, 2f / 3), 1e-4);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bezierControlTimesAreBounded() {
+        new KeyframeTrack().addBezier(0, 0f, 1.5f, 0f, 0.5f, 1f);
+    }
+}
@@ -0,0 +1,101 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class LutCacheTest {
+
+    // 2 point LUT, 48 bytes of half floats
+    private static byte[] cube(float scale) {
+        StringBuilder text = new StringBuilder("LUT_3D_SIZE 2\n");
+        for (int i = 0; i < 8; i++) {
+            text.append((i & 1) * scale).append(' ').append((i >> 1 & 1) * scale).append(' ').append((i >> 2) * scale).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void sameContentIsParsedOnce() throws IOException {
+        LutCache cache = new LutCache(1024);
+        CubeLut first = cache.load(cube(1.0f));
+        CubeLut second = cache.load(cube(1.0f));
+        assertSame(first, second);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(48, cache.getByteCount());
+
+        assertNotSame(first, cache.load(cube(0.5f)));
+        assertEquals(2, cache.getCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        LutCache cache = new LutCache(2 * 48);
+        CubeLut a = cache.load(cube(1.0f));
+        cache.load(cube(0.5f));
+        assertSame(a, cache.load(cube(1.0f)));
+        cache.load(cube(0.25f));
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2 * 48, cache.getByteCount());
+        assertSame(a, cache.load(cube(1.0f)));
+        assertEquals(3, cache.getMissCount());
+        cache.load(cube(0.5f));
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void keepsLutLargerThanBudget() throws IOException {
+        LutCache cache = new LutCache(16);
+        CubeLut lut = cache.load(cube(1.0f));
+        assertSame(lut, cache.load(cube(1.0f)));
+        cache.load(cube(0.5f));
+        assertEquals(1, cache.getCount());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void failedParseIsNotCached() throws IOException {
+        LutCache cache = new LutCache(1024);
+        try {
+            cache.load("LUT_3D_SIZE 2\n".getBytes(StandardCharsets.US_ASCII));
+        } finally {
+            assertEquals(0, cache.getCount());
+        }
+    }
+}
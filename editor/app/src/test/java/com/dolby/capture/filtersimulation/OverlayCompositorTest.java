@@ -0,0 +1,171 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OverlayCompositorTest {
+
+    private static final int TABLE_SIZE = OverlayCompositor.MAX_LAYERS * OverlayCompositor.LAYER_FLOATS;
+
+    private static void uploadAll(OverlayCompositor compositor, List<OverlayCompositor.Upload> uploads) {
+        for (OverlayCompositor.Upload upload : uploads) {
+            assertTrue(compositor.markUploaded(upload.id, upload.generation));
+        }
+    }
+
+    @Test
+    public void layerIsShownOnceUploaded() {
+        OverlayCompositor compositor = new OverlayCompositor(1000, 500, 4096);
+        List<OverlayCompositor.Upload> uploads = compositor.setLayer(1, 200, 50, 100, 400, 0.5f, 0, 0, Long.MAX_VALUE);
+        assertEquals(1, uploads.size());
+
+        float[] table = new float[TABLE_SIZE];
+        assertEquals(0, compositor.fillLayerTable(0, table));
+
+        uploadAll(compositor, uploads);
+        assertEquals(1, compositor.fillLayerTable(0, table));
+        assertArrayEquals(new float[]{0.1f, 0.8f, 0.3f, 0.9f, uploads.get(0).x, uploads.get(0).y, 200, 50, 0.5f, 0, 0, 0},
+                Arrays.copyOf(table, OverlayCompositor.LAYER_FLOATS), 1e-6f);
+    }
+
+    @Test
+    public void changingOneLayerOnlyUploadsThatLayer() {
+        OverlayCompositor compositor = new OverlayCompositor(1000, 500, 4096);
+        uploadAll(compositor, compositor.setLayer(1, 300, 60, 0, 0, 1, 0, 0, Long.MAX_VALUE));
+        uploadAll(compositor, compositor.setLayer(2, 100, 100, 0, 0, 1, 1, 0, Long.MAX_VALUE));
+
+        List<OverlayCompositor.Upload> uploads = compositor.setLayer(1, 280, 50, 10, 10, 1, 0, 0, Long.MAX_VALUE);
+        assertEquals(1, uploads.size());
+        assertEquals(1, uploads.get(0).id);
+
+        // the other layer stays visible while the changed one is uploading
+        float[] table = new float[TABLE_SIZE];
+        assertEquals(1, compositor.fillLayerTable(0, table));
+        assertEquals(100, table[6], 0);
+    }
+
+    @Test
+    public void staleUploadDoesNotShowLayer() {
+        OverlayCompositor compositor = new OverlayCompositor(1000, 500, 4096);
+        OverlayCompositor.Upload first = compositor.setLayer(1, 100, 20, 0, 0, 1, 0, 0, Long.MAX_VALUE).get(0);
+        OverlayCompositor.Upload second = compositor.setLayer(1, 100, 20, 0, 0, 1, 0, 0, Long.MAX_VALUE).get(0);
+        assertFalse(compositor.markUploaded(first.id, first.generation));
+        assertTrue(compositor.markUploaded(second.id, second.generation));
+    }
+
+    @Test
+    public void layersAreSortedBackToFrontAndFilteredByTime() {
+        OverlayCompositor compositor = new OverlayCompositor(1000, 500, 4096);
+        uploadAll(compositor, compositor.setLayer(1, 10, 10, 0, 0, 1, 5, 0, Long.MAX_VALUE));
+        uploadAll(compositor, compositor.setLayer(2, 20, 10, 0, 0, 1, -1, 0, Long.MAX_VALUE));
+        uploadAll(compositor, compositor.setLayer(3, 30, 10, 0, 0, 1, 0, 1_000_000, 2_000_000));
+
+        float[] table = new float[TABLE_SIZE];
+        assertEquals(2, compositor.fillLayerTable(0, table));
+        assertEquals(20, table[6], 0);
+        assertEquals(10, table[OverlayCompositor.LAYER_FLOATS + 6], 0);
+
+        assertEquals(3, compositor.fillLayerTable(1_500_000, table));
+        assertEquals(20, table[6], 0);
+        assertEquals(30, table[OverlayCompositor.LAYER_FLOATS + 6], 0);
+        assertEquals(10, table[2 * OverlayCompositor.LAYER_FLOATS + 6], 0);
+
+        assertTrue(compositor.moveLayer(2, 0, 0, 1, 10, 0, Long.MAX_VALUE));
+        assertEquals(2, compositor.fillLayerTable(2_000_000, table));
+        assertEquals(20, table[OverlayCompositor.LAYER_FLOATS + 6], 0);
+    }
+
+    @Test
+    public void frontMostLayersAreKept() {
+        OverlayCompositor compositor = new OverlayCompositor(1000, 500, 4096);
+        for (int id = 0; id < OverlayCompositor.MAX_LAYERS + 2; id++) {
+            uploadAll(compositor, compositor.setLayer(id, id + 1, 10, 0, 0, 1, id, 0, Long.MAX_VALUE));
+        }
+        float[] table = new float[TABLE_SIZE];
+        assertEquals(OverlayCompositor.MAX_LAYERS, compositor.fillLayerTable(0, table));
+        assertEquals(3, table[6], 0);
+    }
+
+    @Test
+    public void fullAtlasGrowsAndUploadsEverything() {
+        OverlayCompositor compositor = new OverlayCompositor(1000, 1000, 4096);
+        int initialHeight = compositor.getAtlasHeight();
+        uploadAll(compositor, compositor.setLayer(1, 1000, initialHeight, 0, 0, 1, 0, 0, Long.MAX_VALUE));
+
+        List<OverlayCompositor.Upload> uploads = compositor.setLayer(2, 500, 100, 0, 0, 1, 0, 0, Long.MAX_VALUE);
+        assertEquals(2, uploads.size());
+        assertTrue(compositor.getAtlasHeight() > initialHeight);
+        for (OverlayCompositor.Upload upload : uploads) {
+            assertEquals(compositor.getAtlasHeight(), upload.atlasHeight);
+            assertTrue(upload.y + upload.height <= upload.atlasHeight);
+        }
+
+        float[] table = new float[TABLE_SIZE];
+        assertEquals(0, compositor.fillLayerTable(0, table));
+        uploadAll(compositor, uploads);
+        assertEquals(2, compositor.fillLayerTable(0, table));
+    }
+
+    @Test
+    public void layersThatDoNotFitAreRejected() {
+        OverlayCompositor compositor = new OverlayCompositor(100, 100, 200);
+        uploadAll(compositor, compositor.setLayer(1, 100, 100, 0, 0, 1, 0, 0, Long.MAX_VALUE));
+        uploadAll(compositor, compositor.setLayer(2, 100, 100, 0, 0, 1, 0, 0, Long.MAX_VALUE));
+        try {
+            compositor.setLayer(3, 100, 100, 0, 0, 1, 0, 0, Long.MAX_VALUE);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(2, compositor.getLayerCount());
+        float[] table = new float[TABLE_SIZE];
+        assertEquals(2, compositor.fillLayerTable(0, table));
+    }
+
+    @Test
+    public void invalidateHidesLayersUntilUploadedAgain() {
+        OverlayCompositor compositor = new OverlayCompositor(1000, 500, 4096);
+        uploadAll(compositor, compositor.setLayer(1, 100, 20, 0, 0, 1, 0, 0, Long.MAX_VALUE));
+        List<OverlayCompositor.Upload> uploads = compositor.invalidate();
+        float[] table = new float[TABLE_SIZE];
+        assertEquals(0, compositor.fillLayerTable(0, table));
+        uploadAll(compositor, uploads);
+        assertEquals(1, compositor.fillLayerTable(0, table));
+        assertTrue(compositor.removeLayer(1));
+        assertEquals(0, compositor.fillLayerTable(0, table));
+    }
+}
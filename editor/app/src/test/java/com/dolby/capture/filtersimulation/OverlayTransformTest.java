@@ -0,0 +1,75 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OverlayTransformTest {
+
+    private static void assertMaps(float[] matrix, float x, float y, float expectedX, float expectedY) {
+        float[] point = OverlayTransform.apply(matrix, x, y);
+        assertEquals(expectedX, point[0], 1e-5);
+        assertEquals(expectedY, point[1], 1e-5);
+    }
+
+    @Test
+    public void fullFrameOverlayIsIdentity() {
+        float[] matrix = OverlayTransform.forRect(1920, 1080, 0, 0, 1920, 1080);
+        assertArrayEquals(OverlayTransform.identity(), matrix, 0);
+        assertMaps(matrix, 0.25f, 0.75f, 0.25f, 0.75f);
+    }
+
+    @Test
+    public void rectCornersMapToOverlayCorners() {
+        // 400 x 100 caption at (760, 900) in a 1920 x 1080 frame
+        float[] matrix = OverlayTransform.forRect(1920, 1080, 760, 900, 400, 100);
+        assertMaps(matrix, 760f / 1920, 900f / 1080, 0, 0);
+        assertMaps(matrix, 1160f / 1920, 1000f / 1080, 1, 1);
+        assertMaps(matrix, 960f / 1920, 950f / 1080, 0.5f, 0.5f);
+    }
+
+    @Test
+    public void pointsOutsideRectLeaveOverlayRange() {
+        float[] matrix = OverlayTransform.forRect(100, 100, 10, 10, 20, 20);
+        float[] before = OverlayTransform.apply(matrix, 0.05f, 0.05f);
+        float[] after = OverlayTransform.apply(matrix, 0.5f, 0.5f);
+        assertTrue(before[0] < 0 && before[1] < 0);
+        assertTrue(after[0] > 1 && after[1] > 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyOverlayIsRejected() {
+        OverlayTransform.forRect(1920, 1080, 0, 0, 0, 10);
+    }
+}
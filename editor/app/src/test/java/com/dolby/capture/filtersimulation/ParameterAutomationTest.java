@@ -0,0 +1,104 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class ParameterAutomationTest {
+
+    @Test
+    public void bakesOneRowPerFrame() {
+        ParameterAutomation automation = new ParameterAutomation();
+        // fade in from black over the first second
+        automation.addLinear(EffectParameters.GAIN, 0, 0f);
+        automation.addLinear(EffectParameters.GAIN, 1_000_000, 1f);
+        automation.addLinear(EffectParameters.WIPER_LEFT, 0, 0.5f);
+
+        AutomationTable table = automation.bake(2_000_000, 30);
+        assertEquals(60, table.getFrameCount());
+        assertEquals(30, table.getFps());
+        assertEquals((1L << EffectParameters.GAIN.ordinal()) | (1L << EffectParameters.WIPER_LEFT.ordinal()), table.getMask());
+
+        assertEquals(0f, table.getValue(0, EffectParameters.GAIN), 0);
+        assertEquals(0.5f, table.getValue(15, EffectParameters.GAIN), 1e-4);
+        assertEquals(1f, table.getValue(30, EffectParameters.GAIN), 0);
+        assertEquals(1f, table.getValue(59, EffectParameters.GAIN), 0);
+        assertEquals(0.5f, table.getValue(42, EffectParameters.WIPER_LEFT), 0);
+    }
+
+    @Test
+    public void frameIndexIsNearestFrameClamped() {
+        ParameterAutomation automation = new ParameterAutomation();
+        automation.addLinear(EffectParameters.GAIN, 0, 1f);
+        AutomationTable table = automation.bake(1_000_000, 30);
+
+        assertEquals(0, table.frameIndex(-5));
+        assertEquals(0, table.frameIndex(0));
+        assertEquals(1, table.frameIndex(33_333));
+        assertEquals(1, table.frameIndex(40_000));
+        assertEquals(2, table.frameIndex(60_000));
+        assertEquals(29, table.frameIndex(5_000_000));
+    }
+
+    @Test
+    public void fillOnlyWritesAutomatedParameters() {
+        ParameterAutomation automation = new ParameterAutomation();
+        automation.addLinear(EffectParameters.SATURATION, 0, 2f);
+        AutomationTable table = automation.bake(100_000, 30);
+
+        FloatBuffer snapshot = FloatBuffer.allocate(EffectParameterBlock.COUNT);
+        snapshot.put(EffectParameters.GAIN.ordinal(), 3f);
+        table.fill(0, snapshot);
+        assertEquals(2f, snapshot.get(EffectParameters.SATURATION.ordinal()), 0);
+        assertEquals(3f, snapshot.get(EffectParameters.GAIN.ordinal()), 0);
+        assertEquals(0, snapshot.position());
+    }
+
+    @Test
+    public void removingLastKeyframeDropsTrack() {
+        ParameterAutomation automation = new ParameterAutomation();
+        automation.addBezier(EffectParameters.OFFSET, 0, 0f, 0.25f, 0.1f, 0.25f, 1f);
+        assertFalse(automation.isEmpty());
+        assertTrue(automation.remove(EffectParameters.OFFSET, 0));
+        assertTrue(automation.isEmpty());
+        assertEquals(0, automation.bake(1_000_000, 30).getMask());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parameterCountIsNotAutomatable() {
+        new ParameterAutomation().addLinear(EffectParameters.PARAMETER_COUNT, 0, 1f);
+    }
+}
@@ -0,0 +1,133 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PresentationClockTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void framesOnScheduleAreOnTime() {
+        PresentationClock clock = new PresentationClock(33333);
+        long t0 = 5_000 * MS;
+        for (int i = 0; i < 30; i++) {
+            long pts = i * 33333L;
+            assertEquals(PresentationClock.ON_TIME, clock.schedule(pts, t0 + pts * 1000 - MS));
+        }
+        assertEquals(30, clock.getOnTimeCount());
+        assertEquals(0, clock.getLateCount());
+        assertEquals(0, clock.getDroppedCount());
+        assertEquals(t0 - MS + 1_000_000 * 1000L, clock.getDueTimeNs(1_000_000));
+    }
+
+    @Test
+    public void variableFrameRateKeepsPtsTiming() {
+        PresentationClock clock = new PresentationClock(33333);
+        long t0 = 0;
+        // 30 fps footage that drops to 24 fps, with an uneven gap; the nominal rate is wrong
+        long[] pts = {0, 33333, 66666, 108333, 150000, 191666, 250000};
+        for (long p : pts) {
+            assertEquals(PresentationClock.ON_TIME, clock.schedule(p, t0 + p * 1000));
+            assertEquals(t0 + p * 1000, clock.getDueTimeNs(p));
+        }
+    }
+
+    @Test
+    public void slightlyLateFramesAreRenderedLate() {
+        PresentationClock clock = new PresentationClock(33333);
+        clock.schedule(0, 0);
+        assertEquals(PresentationClock.LATE, clock.schedule(33333, 33333 * 1000L + 10 * MS));
+        assertEquals(1, clock.getLateCount());
+    }
+
+    @Test
+    public void framesLaterThanOneIntervalAreDropped() {
+        PresentationClock clock = new PresentationClock(33333);
+        clock.schedule(0, 0);
+        clock.schedule(33333, 33333 * 1000L);
+        // GPU stalls for 120 ms
+        long now = 33333 * 1000L + 120 * MS;
+        assertEquals(PresentationClock.DROP, clock.schedule(66666, now));
+        assertEquals(PresentationClock.DROP, clock.schedule(99999, now));
+        assertEquals(PresentationClock.LATE, clock.schedule(133332, now));
+        assertEquals(PresentationClock.ON_TIME, clock.schedule(166665, now));
+        assertEquals(2, clock.getDroppedCount());
+    }
+
+    @Test
+    public void consecutiveDropsAreBounded() {
+        PresentationClock clock = new PresentationClock(33333);
+        clock.schedule(0, 0);
+        long now = 10_000 * MS;
+        int drops = 0;
+        for (int i = 1; i <= PresentationClock.MAX_CONSECUTIVE_DROPS + 1; i++) {
+            if (clock.schedule(i * 33333L, now) == PresentationClock.DROP) {
+                drops++;
+            }
+        }
+        assertEquals(PresentationClock.MAX_CONSECUTIVE_DROPS, drops);
+        assertEquals(1, clock.getLateCount());
+    }
+
+    @Test
+    public void resetReanchorsOnNextFrame() {
+        PresentationClock clock = new PresentationClock(33333);
+        clock.schedule(0, 0);
+        clock.reset();
+        assertEquals(-1, clock.getDueTimeNs(33333));
+        // resumed ten seconds later, the next frame is not late
+        assertEquals(PresentationClock.ON_TIME, clock.schedule(33333, 10_000 * MS));
+        assertEquals(PresentationClock.ON_TIME, clock.schedule(66666, 10_000 * MS + 33333 * 1000L));
+        assertEquals(0, clock.getDroppedCount());
+    }
+
+    @Test
+    public void waitUntilDueWaitsAndCancels() throws Exception {
+        PresentationClock clock = new PresentationClock(33333);
+        long start = System.nanoTime();
+        clock.schedule(0, start);
+        assertTrue(clock.waitUntilDue(20_000));
+        assertTrue(System.nanoTime() - start >= 20 * MS);
+
+        Thread waiter = new Thread(() -> clock.waitUntilDue(60_000_000));
+        waiter.start();
+        Thread.sleep(20);
+        clock.cancel();
+        waiter.join(1000);
+        assertFalse(waiter.isAlive());
+        assertFalse(clock.waitUntilDue(60_000_000));
+    }
+}
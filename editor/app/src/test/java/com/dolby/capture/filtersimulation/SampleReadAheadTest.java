@@ -0,0 +1,238 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class SampleReadAheadTest {
+
+    /**
+     * In-memory demuxer. Sample i is i + 1 bytes long, every byte set to (byte) i, at i * 33333us.
+     */
+    private static class FakeSource implements SampleReadAhead.SampleSource {
+        private final int samples;
+        private final long readDelayMs;
+        private int position = 0;
+
+        FakeSource(int samples, long readDelayMs) {
+            this.samples = samples;
+            this.readDelayMs = readDelayMs;
+        }
+
+        @Override
+        public long getSampleSize() {
+            return position < samples ? position + 1 : -1;
+        }
+
+        @Override
+        public int readSampleData(ByteBuffer buffer, int offset) {
+            if (position >= samples) {
+                return -1;
+            }
+            if (readDelayMs > 0) {
+                try {
+                    Thread.sleep(readDelayMs);
+                } catch (InterruptedException ignore) {
+                }
+            }
+            for (int i = 0; i <= position; i++) {
+                buffer.put(offset + i, (byte) position);
+            }
+            return position + 1;
+        }
+
+        @Override
+        public long getSampleTime() {
+            return position < samples ? position * 33333L : -1;
+        }
+
+        @Override
+        public int getSampleFlags() {
+            return position % 10 == 0 ? 1 : 0;
+        }
+
+        @Override
+        public boolean advance() {
+            position++;
+            return position < samples;
+        }
+
+        @Override
+        public void seekTo(long timeUs, int mode) {
+            position = (int) (timeUs / 33333L);
+        }
+    }
+
+    private static void assertSample(SampleReadAhead ra, ByteBuffer dst, int i) throws InterruptedException {
+        int size = ra.take(dst);
+        assertEquals(i + 1, size);
+        assertEquals(i * 33333L, ra.getTakenSampleTime());
+        assertEquals(i % 10 == 0 ? 1 : 0, ra.getTakenFlags());
+        for (int b = 0; b < size; b++) {
+            assertEquals((byte) i, dst.get(b));
+        }
+    }
+
+    @Test
+    public void deliversAllSamplesInOrderThenEOS() throws Exception {
+        SampleReadAhead ra = new SampleReadAhead(new FakeSource(200, 0), 8, Long.MAX_VALUE);
+        ra.start();
+        ByteBuffer dst = ByteBuffer.allocateDirect(1024);
+        for (int i = 0; i < 200; i++) {
+            assertSample(ra, dst, i);
+        }
+        assertEquals(SampleReadAhead.END_OF_STREAM, ra.take(dst));
+        ra.stop();
+
+        assertTrue(ra.getMaxOccupancy() <= 8);
+        assertTrue(ra.getFullStallCount() > 0);
+    }
+
+    @Test
+    public void awaitSampleLeavesTheSampleForPoll() throws Exception {
+        SampleReadAhead ra = new SampleReadAhead(new FakeSource(3, 0), 8, Long.MAX_VALUE);
+        ByteBuffer dst = ByteBuffer.allocateDirect(1024);
+        assertEquals(SampleReadAhead.EMPTY, ra.poll(dst));
+        ra.start();
+        assertTrue(ra.awaitSample());
+        assertTrue(ra.awaitSample());
+        assertEquals(1, ra.poll(dst));
+        assertEquals(0, ra.getTakenSampleTime());
+        assertSample(ra, dst, 1);
+        ra.stop();
+    }
+
+    @Test
+    public void boundedByBytes() throws Exception {
+        SampleReadAhead ra = new SampleReadAhead(new FakeSource(100, 0), 64, 200);
+        ra.start();
+        Thread.sleep(50);
+        // the byte limit is soft by at most one sample
+        assertTrue(ra.getOccupancyBytes() < 200 + 100);
+        assertTrue(ra.getOccupancy() < 64);
+        ra.stop();
+    }
+
+    @Test
+    public void slowStorageShowsAsUnderruns() throws Exception {
+        SampleReadAhead ra = new SampleReadAhead(new FakeSource(20, 2), 4, Long.MAX_VALUE);
+        ra.start();
+        ByteBuffer dst = ByteBuffer.allocateDirect(64);
+        for (int i = 0; i < 20; i++) {
+            assertSample(ra, dst, i);
+        }
+        ra.stop();
+
+        assertTrue(ra.getUnderrunCount() > 0);
+        assertTrue(ra.getUnderrunTimeNs() > 0);
+    }
+
+    @Test
+    public void seekDropsReadAheadSamples() throws Exception {
+        SampleReadAhead ra = new SampleReadAhead(new FakeSource(50, 0), 16, Long.MAX_VALUE);
+        ra.start();
+        ByteBuffer dst = ByteBuffer.allocateDirect(64);
+        for (int i = 0; i < 50; i++) {
+            assertSample(ra, dst, i);
+        }
+        assertEquals(SampleReadAhead.END_OF_STREAM, ra.take(dst));
+
+        ra.seekTo(0, 0);
+        for (int i = 0; i < 30; i++) {
+            assertSample(ra, dst, i);
+        }
+        ra.seekTo(10 * 33333L, 0);
+        assertSample(ra, dst, 10);
+        ra.stop();
+    }
+
+    @Test
+    public void loopingContinuesTimelineWithoutEOS() throws Exception {
+        SampleReadAhead ra = new SampleReadAhead(new FakeSource(10, 0), 8, Long.MAX_VALUE);
+        ra.setLooping(true);
+        ra.start();
+        ByteBuffer dst = ByteBuffer.allocateDirect(64);
+        long prev = -1;
+        for (int n = 0; n < 35; n++) {
+            int i = n % 10;
+            int size = ra.take(dst);
+            assertEquals(i + 1, size);
+            assertEquals((byte) i, dst.get(0));
+            // every pass follows the previous one by exactly one frame interval
+            assertEquals(n * 33333L, ra.getTakenSampleTime());
+            assertTrue(ra.getTakenSampleTime() > prev);
+            prev = ra.getTakenSampleTime();
+        }
+        ra.stop();
+
+        assertTrue(ra.getLoopCount() >= 3);
+        assertEquals(ra.getLoopCount() * 10 * 33333L, ra.getLoopStartTimeUs());
+    }
+
+    @Test
+    public void loopingEmptySourceStillEnds() throws Exception {
+        SampleReadAhead ra = new SampleReadAhead(new FakeSource(0, 0), 4, Long.MAX_VALUE);
+        ra.setLooping(true);
+        ra.start();
+        assertEquals(SampleReadAhead.END_OF_STREAM, ra.take(ByteBuffer.allocateDirect(64)));
+        ra.stop();
+        assertEquals(0, ra.getLoopCount());
+    }
+
+    @Test
+    public void releaseWakesBlockedConsumer() throws Exception {
+        SampleReadAhead ra = new SampleReadAhead(new FakeSource(0, 0), 4, Long.MAX_VALUE);
+        ra.start();
+        ByteBuffer dst = ByteBuffer.allocateDirect(64);
+        assertEquals(SampleReadAhead.END_OF_STREAM, ra.take(dst));
+
+        final int[] result = {0};
+        Thread consumer = new Thread(() -> {
+            try {
+                result[0] = ra.take(dst);
+            } catch (InterruptedException ignore) {
+            }
+        });
+        consumer.start();
+        Thread.sleep(20);
+        ra.release();
+        consumer.join(1000);
+        ra.stop();
+
+        assertFalse(consumer.isAlive());
+        assertEquals(SampleReadAhead.RELEASED, result[0]);
+    }
+}
@@ -0,0 +1,103 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StageLatencyTest {
+
+    private static final long MS = 1_000_000;
+
+    @Test
+    public void recordsEachIntervalPerFrame() {
+        StageLatency latency = new StageLatency(8);
+        for (long frame = 0; frame < 10; frame++) {
+            long pts = frame * 33_333;
+            long t = frame * 100 * MS;
+            latency.mark(StageLatency.QUEUED, pts, t);
+            latency.mark(StageLatency.DECODED, pts, t + 8 * MS);
+            latency.mark(StageLatency.RENDERED, pts, t + 9 * MS);
+            latency.mark(StageLatency.PROCESSED, pts, t + 12 * MS);
+            latency.mark(StageLatency.ENCODED, pts, t + 30 * MS);
+            latency.mark(StageLatency.MUXED, pts, t + 30 * MS + 200_000);
+        }
+
+        assertEquals(10, latency.getHistogram(StageLatency.DECODED).getCount());
+        assertEquals(8 * MS, latency.getHistogram(StageLatency.DECODED).getMax());
+        assertEquals(1 * MS, latency.getHistogram(StageLatency.RENDERED).getMax());
+        assertEquals(3 * MS, latency.getHistogram(StageLatency.PROCESSED).getMax());
+        assertEquals(18 * MS, latency.getHistogram(StageLatency.ENCODED).getMax());
+        assertEquals(200_000, latency.getHistogram(StageLatency.MUXED).getMax());
+        assertTrue(latency.getStats().startsWith("decode: n=10"));
+    }
+
+    @Test
+    public void outOfOrderEncoderOutput() {
+        StageLatency latency = new StageLatency(8);
+        latency.mark(StageLatency.PROCESSED, 0, 0);
+        latency.mark(StageLatency.PROCESSED, 33_333, MS);
+        latency.mark(StageLatency.PROCESSED, 66_666, 2 * MS);
+        latency.mark(StageLatency.ENCODED, 66_666, 10 * MS);
+        latency.mark(StageLatency.ENCODED, 0, 11 * MS);
+        latency.mark(StageLatency.ENCODED, 33_333, 12 * MS);
+
+        LatencyHistogram encode = latency.getHistogram(StageLatency.ENCODED);
+        assertEquals(3, encode.getCount());
+        assertEquals(11 * MS, encode.getMax());
+    }
+
+    @Test
+    public void framesThatNeverArriveAreEvicted() {
+        StageLatency latency = new StageLatency(4);
+        // decoded frames that were never rendered fill the map
+        for (long pts = 0; pts < 100; pts++) {
+            latency.mark(StageLatency.DECODED, pts, pts);
+        }
+        assertTrue(latency.getStats().endsWith("evictions=" + (100 / 6)));
+        latency.mark(StageLatency.RENDERED, 99, 150);
+        assertEquals(51, latency.getHistogram(StageLatency.RENDERED).getMax());
+        // untracked frames are skipped
+        latency.mark(StageLatency.RENDERED, 1000, 200);
+        assertEquals(1, latency.getHistogram(StageLatency.RENDERED).getCount());
+    }
+
+    @Test
+    public void disabledRecordsNothing() {
+        StageLatency latency = new StageLatency(4);
+        latency.setEnabled(false);
+        latency.mark(StageLatency.QUEUED, 0, 0);
+        latency.mark(StageLatency.DECODED, 0, MS);
+        assertEquals(0, latency.getHistogram(StageLatency.DECODED).getCount());
+    }
+}
@@ -0,0 +1,172 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StaticColorLutTest {
+
+    private static final int BASE_SIZE = 33;
+
+    private static float[] defaults() {
+        float[] values = new float[EffectParameterBlock.COUNT];
+        values[EffectParameters.GAIN.ordinal()] = 1.0f;
+        values[EffectParameters.CONTRAST.ordinal()] = 1.0f;
+        values[EffectParameters.SATURATION.ordinal()] = 1.0f;
+        values[EffectParameters.OVERRIDE_Y.ordinal()] = -1.0f;
+        values[EffectParameters.OVERRIDE_U.ordinal()] = -1.0f;
+        values[EffectParameters.OVERRIDE_V.ordinal()] = -1.0f;
+        values[EffectParameters.OVERRIDE_A.ordinal()] = -1.0f;
+        values[EffectParameters.GAMUT_MAX_LUMA.ordinal()] = 0.9216f;
+        values[EffectParameters.GAMUT_MID_LUMA.ordinal()] = 0.5f;
+        values[EffectParameters.GAMUT_MIN_LUMA.ordinal()] = 0.0627f;
+        values[EffectParameters.GAMUT_MID_CHROMA.ordinal()] = 0.5f;
+        return values;
+    }
+
+    // Transfer curve with some crosstalk between components, like an HLG to PQ conversion
+    private static float[] curvedLut() {
+        float[] lut = new float[BASE_SIZE * BASE_SIZE * BASE_SIZE * 3];
+        int i = 0;
+        for (int b = 0; b < BASE_SIZE; b++) {
+            for (int g = 0; g < BASE_SIZE; g++) {
+                for (int r = 0; r < BASE_SIZE; r++) {
+                    float[] rgb = {r / (BASE_SIZE - 1.0f), g / (BASE_SIZE - 1.0f), b / (BASE_SIZE - 1.0f)};
+                    float luma = 0.2627f * rgb[0] + 0.678f * rgb[1] + 0.0593f * rgb[2];
+                    for (int c = 0; c < 3; c++) {
+                        lut[i++] = 0.9f * (float) Math.pow(rgb[c], 0.6) + 0.1f * luma * luma;
+                    }
+                }
+            }
+        }
+        return lut;
+    }
+
+    // Largest difference between the baked LUT and the unbaked chain over random colours
+    private static float maxError(float[] values, boolean rec2020, float[] baseLut) {
+        float[] baked = new float[StaticColorLut.SIZE * StaticColorLut.SIZE * StaticColorLut.SIZE * 3];
+        StaticColorLut.bake(values, rec2020, baseLut, BASE_SIZE, StaticColorLut.SIZE, baked);
+        Random random = new Random(7);
+        float[] reference = new float[3];
+        float[] lookup = new float[3];
+        float max = 0;
+        for (int i = 0; i < 20000; i++) {
+            reference[0] = random.nextFloat();
+            reference[1] = random.nextFloat();
+            reference[2] = random.nextFloat();
+            StaticColorLut.sample(baked, StaticColorLut.SIZE, reference[0], reference[1], reference[2], lookup);
+            StaticColorLut.apply(values, rec2020, baseLut, BASE_SIZE, reference);
+            for (int c = 0; c < 3; c++) {
+                max = Math.max(max, Math.abs(reference[c] - lookup[c]));
+            }
+        }
+        return max;
+    }
+
+    @Test
+    public void defaultsAreIdentity() {
+        float[] rgb = {0.2f, 0.5f, 0.9f};
+        StaticColorLut.edit(defaults(), true, rgb);
+        assertArrayEquals(new float[]{0.2f, 0.5f, 0.9f}, rgb, 1e-5f);
+    }
+
+    @Test
+    public void linearEditsBakeExactly() {
+        float[] values = defaults();
+        values[EffectParameters.GAIN.ordinal()] = 0.9f;
+        values[EffectParameters.OFFSET.ordinal()] = 0.02f;
+        values[EffectParameters.CONTRAST.ordinal()] = 1.1f;
+        values[EffectParameters.SATURATION.ordinal()] = 0.7f;
+        values[EffectParameters.SHIFT_U.ordinal()] = 0.01f;
+        assertEquals(0.0f, maxError(values, false, curvedLut()), 1e-5f);
+    }
+
+    @Test
+    public void bakedOutputLutMatchesUnbaked() {
+        float[] values = defaults();
+        values[EffectParameters.LUT_ENABLE.ordinal()] = 1.0f;
+        values[EffectParameters.GAIN.ordinal()] = 0.9f;
+        values[EffectParameters.OFFSET.ordinal()] = 0.02f;
+        values[EffectParameters.CONTRAST.ordinal()] = 1.1f;
+        values[EffectParameters.SATURATION.ordinal()] = 0.8f;
+        // both interpolate the output LUT, at different points near its steep dark end
+        assertEquals(0.0f, maxError(values, true, curvedLut()), 0.02f);
+    }
+
+    @Test
+    public void clippedEditsStayWithinTolerance() {
+        float[] values = defaults();
+        values[EffectParameters.LUT_ENABLE.ordinal()] = 1.0f;
+        values[EffectParameters.GAIN.ordinal()] = 1.2f;
+        values[EffectParameters.SATURATION.ordinal()] = 1.5f;
+        // the output LUT clamps the edited colours, which bends the baked chain within a cell
+        assertEquals(0.0f, maxError(values, true, curvedLut()), 0.04f);
+    }
+
+    @Test
+    public void samplerHitsGridPoints() {
+        float[] lut = curvedLut();
+        float[] out = new float[3];
+        StaticColorLut.sample(lut, BASE_SIZE, 3 / 32.0f, 17 / 32.0f, 1.0f, out);
+        int index = ((32 * BASE_SIZE + 17) * BASE_SIZE + 3) * 3;
+        assertArrayEquals(new float[]{lut[index], lut[index + 1], lut[index + 2]}, out, 1e-6f);
+    }
+
+    @Test
+    public void keyFollowsBakedParametersOnly() {
+        float[] values = defaults();
+        long key = StaticColorLut.key(values, true, 0);
+        assertNotEquals(0, key);
+        assertNotEquals(key, StaticColorLut.key(values, false, 0));
+
+        values[EffectParameters.WIPER_LEFT.ordinal()] = 0.5f;
+        values[EffectParameters.ZEBRA_ENABLE.ordinal()] = 1.0f;
+        assertEquals(key, StaticColorLut.key(values, true, 0));
+
+        assertNotEquals(key, StaticColorLut.key(values, true, 0x1234));
+
+        values[EffectParameters.SATURATION.ordinal()] = 1.5f;
+        assertNotEquals(key, StaticColorLut.key(values, true, 0));
+    }
+
+    @Test
+    public void gamutRestrictionIsNotBaked() {
+        float[] values = defaults();
+        assertTrue(StaticColorLut.isBakeable(values));
+        values[EffectParameters.GAMUT_ENABLE.ordinal()] = 1.0f;
+        assertFalse(StaticColorLut.isBakeable(values));
+    }
+}
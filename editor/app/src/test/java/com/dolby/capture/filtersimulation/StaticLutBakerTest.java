@@ -0,0 +1,136 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StaticLutBakerTest {
+
+    private static final int BASE_SIZE = 2;
+    private static final float[] BASE_LUT = identityLut();
+
+    private static float[] identityLut() {
+        float[] lut = new float[BASE_SIZE * BASE_SIZE * BASE_SIZE * 3];
+        int i = 0;
+        for (int b = 0; b < BASE_SIZE; b++) {
+            for (int g = 0; g < BASE_SIZE; g++) {
+                for (int r = 0; r < BASE_SIZE; r++) {
+                    lut[i++] = r;
+                    lut[i++] = g;
+                    lut[i++] = b;
+                }
+            }
+        }
+        return lut;
+    }
+
+    private static float[] values(float gain) {
+        float[] values = new float[EffectParameterBlock.COUNT];
+        values[EffectParameters.GAIN.ordinal()] = gain;
+        values[EffectParameters.CONTRAST.ordinal()] = 1.0f;
+        values[EffectParameters.SATURATION.ordinal()] = 1.0f;
+        values[EffectParameters.OVERRIDE_Y.ordinal()] = -1.0f;
+        values[EffectParameters.OVERRIDE_U.ordinal()] = -1.0f;
+        values[EffectParameters.OVERRIDE_V.ordinal()] = -1.0f;
+        return values;
+    }
+
+    @Test
+    public void burstOfChangesBakesLatestOnly() throws InterruptedException {
+        List<Long> keys = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch baked = new CountDownLatch(1);
+        StaticLutBaker baker = new StaticLutBaker(2, 20_000_000L, (key, lut) -> {
+            keys.add(key);
+            baked.countDown();
+        });
+        long last = 0;
+        for (int i = 0; i < 10; i++) {
+            float[] values = values(1.0f + i / 100.0f);
+            last = StaticColorLut.key(values, false, 0);
+            baker.request(last, values, false, BASE_LUT, BASE_SIZE);
+        }
+        assertTrue(baked.await(5, TimeUnit.SECONDS));
+        baker.release();
+
+        assertEquals(Collections.singletonList(last), keys);
+        assertEquals(1, baker.getBakeCount());
+    }
+
+    @Test
+    public void cachedLutIsDeliveredWithoutBaking() throws InterruptedException {
+        List<FloatBuffer> luts = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch baked = new CountDownLatch(1);
+        StaticLutBaker baker = new StaticLutBaker(2, 0, (key, lut) -> {
+            luts.add(lut);
+            baked.countDown();
+        });
+        float[] values = values(0.5f);
+        long key = StaticColorLut.key(values, false, 0);
+        baker.request(key, values, false, BASE_LUT, BASE_SIZE);
+        assertTrue(baked.await(5, TimeUnit.SECONDS));
+
+        baker.request(key, values, false, BASE_LUT, BASE_SIZE);
+        baker.release();
+
+        assertEquals(2, luts.size());
+        assertSame(luts.get(0), luts.get(1));
+        assertEquals(1, baker.getBakeCount());
+        assertEquals(1, baker.getCacheHitCount());
+        // gain 0.5 halves white
+        int white = (StaticColorLut.SIZE * StaticColorLut.SIZE * StaticColorLut.SIZE - 1) * 3;
+        assertEquals(0.5f, luts.get(0).get(white), 1e-5f);
+    }
+
+    @Test
+    public void repeatedRequestWhileBakingIsIgnored() throws InterruptedException {
+        CountDownLatch baked = new CountDownLatch(1);
+        StaticLutBaker baker = new StaticLutBaker(2, 10_000_000L, (key, lut) -> baked.countDown());
+        float[] values = values(0.8f);
+        long key = StaticColorLut.key(values, true, 0);
+        for (int i = 0; i < 5; i++) {
+            baker.request(key, values, true, BASE_LUT, BASE_SIZE);
+        }
+        assertTrue(baked.await(5, TimeUnit.SECONDS));
+        baker.release();
+        assertEquals(1, baker.getBakeCount());
+        assertTrue(baker.getStats().contains("submitted=1"));
+    }
+}
@@ -0,0 +1,105 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TimestampMapTest {
+
+    @Test
+    public void outOfOrderRemoval() {
+        TimestampMap map = new TimestampMap(8);
+        assertEquals(16, map.getCapacity());
+        // IPBB-style output order for frames queued in presentation order
+        for (long i = 0; i < 8; i++) {
+            assertTrue(map.put(i * 33_333_000L, i));
+        }
+        long[] encodeOrder = {0, 3, 1, 2, 6, 4, 5, 7};
+        for (long frame : encodeOrder) {
+            assertEquals(frame, map.remove(frame * 33_333_000L));
+        }
+        assertEquals(0, map.size());
+        assertEquals(TimestampMap.MISSING, map.remove(0));
+        assertEquals(TimestampMap.MISSING, map.get(33_333_000L));
+    }
+
+    @Test
+    public void rejectsAtLoadLimit() {
+        TimestampMap map = new TimestampMap(4);
+        for (long i = 0; i < 6; i++) {
+            assertTrue(map.put(i, i));
+        }
+        assertFalse(map.put(6, 6));
+        assertEquals(1, map.getRejectedCount());
+        // replacing an existing key still works when full
+        assertTrue(map.put(5, 50));
+        assertEquals(50, map.get(5));
+        assertFalse(map.put(TimestampMap.MISSING, 0));
+    }
+
+    /**
+     * Random puts and removes against a HashMap reference, on a small table so that probe chains
+     * wrap and removals have to shift entries back.
+     */
+    @Test
+    public void matchesReferenceMap() {
+        TimestampMap map = new TimestampMap(16);
+        Map<Long, Long> reference = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(64) * 16_683_333L;
+            if (random.nextBoolean()) {
+                boolean added = map.put(key, i);
+                if (added) {
+                    reference.put(key, (long) i);
+                } else {
+                    assertFalse(reference.containsKey(key));
+                    assertEquals(24, reference.size());
+                }
+            } else {
+                Long expected = reference.remove(key);
+                assertEquals(expected == null ? TimestampMap.MISSING : expected, map.remove(key));
+            }
+            assertEquals(reference.size(), map.size());
+        }
+        for (Map.Entry<Long, Long> e : reference.entrySet()) {
+            assertEquals((long) e.getValue(), map.get(e.getKey()));
+        }
+        assertEquals(reference.size(), map.keys().length);
+    }
+}
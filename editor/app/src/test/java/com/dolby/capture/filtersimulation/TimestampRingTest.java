@@ -0,0 +1,164 @@
+/******************************************************************************
+ * The Clear BSD License
+ * Copyright (c) 2024 Dolby Laboratories
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted (subject to the limitations in the disclaimer
+ * below) provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of Dolby Laboratories nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * NO EXPRESS OR IMPLIED LICENSES TO ANY PARTY'S PATENT RIGHTS ARE GRANTED BY
+ * THIS LICENSE. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ * OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.dolby.capture.filtersimulation;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class TimestampRingTest {
+
+    @Test
+    public void fifoAndOverflowDetection() {
+        TimestampRing ring = new TimestampRing(3);
+        assertEquals(4, ring.getCapacity());
+        assertEquals(TimestampRing.EMPTY, ring.poll());
+        for (long i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i * 1000));
+        }
+        assertFalse(ring.offer(4000));
+        assertEquals(1, ring.getOverflowCount());
+        assertEquals(0, ring.peek());
+        for (long i = 0; i < 4; i++) {
+            assertEquals(i * 1000, ring.poll());
+        }
+        assertEquals(0, ring.size());
+        assertTrue(ring.offer(5000));
+        assertEquals(5000, ring.poll());
+    }
+
+    /**
+     * One writer thread and one encoder thread hammer a small ring. Every value must come out
+     * exactly once and in order; values rejected as overflow are retried by the producer.
+     */
+    @Test
+    public void concurrentStress() throws Exception {
+        final long count = 5_000_000;
+        TimestampRing ring = new TimestampRing(16);
+        AtomicLong errors = new AtomicLong();
+        AtomicLong received = new AtomicLong();
+
+        Thread consumer = new Thread(() -> {
+            long expected = 0;
+            while (expected < count) {
+                long v = ring.poll();
+                if (v == TimestampRing.EMPTY) {
+                    Thread.yield();
+                    continue;
+                }
+                if (v != expected * 33_333_000L) {
+                    errors.incrementAndGet();
+                }
+                expected++;
+            }
+            received.set(expected);
+        });
+        Thread producer = new Thread(() -> {
+            for (long i = 0; i < count; ) {
+                if (ring.offer(i * 33_333_000L)) {
+                    i++;
+                } else {
+                    Thread.yield();
+                }
+            }
+        });
+        consumer.start();
+        producer.start();
+        producer.join(60_000);
+        consumer.join(60_000);
+
+        assertFalse(consumer.isAlive());
+        assertEquals(count, received.get());
+        assertEquals(0, errors.get());
+        assertEquals(0, ring.size());
+    }
+
+    /**
+     * The ring tracks frames without allocating, unlike the Semaphore-guarded
+     * ConcurrentLinkedQueue<Long> it replaced in FrameHandler, which boxes every timestamp.
+     */
+    @Test
+    public void trackingDoesNotAllocate() throws Exception {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mx.isThreadAllocatedMemorySupported());
+        mx.setThreadAllocatedMemoryEnabled(true);
+        long tid = Thread.currentThread().getId();
+
+        final int ops = 2_000_000;
+        TimestampRing ring = new TimestampRing(32);
+        ConcurrentLinkedQueue<Long> queue = new ConcurrentLinkedQueue<>();
+        Semaphore lock = new Semaphore(1);
+        long sink = runRing(ring, ops) + runQueue(queue, lock, ops);
+
+        long b0 = mx.getThreadAllocatedBytes(tid);
+        sink += runRing(ring, ops);
+        long b1 = mx.getThreadAllocatedBytes(tid);
+        sink += runQueue(queue, lock, ops);
+        long b2 = mx.getThreadAllocatedBytes(tid);
+
+        double ringBytes = (b1 - b0) / (double) ops;
+        double queueBytes = (b2 - b1) / (double) ops;
+        assertTrue("ring allocated " + ringBytes + " B/op", ringBytes < 0.01);
+        assertTrue("queue allocated " + queueBytes + " B/op", queueBytes > 16);
+        assertNotEquals(0, sink);
+    }
+
+    private static long runRing(TimestampRing ring, int ops) {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+            ring.offer(i * 33_333_000L);
+            sum += ring.poll();
+        }
+        return sum;
+    }
+
+    private static long runQueue(ConcurrentLinkedQueue<Long> queue, Semaphore lock, int ops) throws InterruptedException {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+            lock.acquire();
+            queue.add(i * 33_333_000L);
+            lock.release();
+            lock.acquire();
+            Long ts = queue.poll();
+            lock.release();
+            sum += ts;
+        }
+        return sum;
+    }
+}